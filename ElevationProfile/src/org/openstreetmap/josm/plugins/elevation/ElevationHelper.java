@@ -131,6 +131,39 @@ public final class ElevationHelper {
         }
 
         // no HGT, check for elevation data in GPX
+        return getGpxElevation(wpt);
+    }
+
+    /**
+     * Gets the elevations of several GPX way points at once, see {@link #getElevation(WayPoint)}.
+     * SRTM data are looked up in a single batch, which is much faster than looking up each way point.
+     *
+     * @param wpts the way points
+     * @return the elevation of each way point or <code>NO_ELEVATION</code>
+     */
+    public static double[] getElevations(List<WayPoint> wpts) {
+        double[] latLons = new double[2 * wpts.size()];
+        int i = 0;
+        for (WayPoint wpt : wpts) {
+            LatLon ll = wpt != null ? wpt.getCoor() : null;
+            latLons[i++] = ll != null ? ll.lat() : Double.NaN;
+            latLons[i++] = ll != null ? ll.lon() : Double.NaN;
+        }
+        double[] ele = getSrtmElevations(latLons);
+        i = 0;
+        for (WayPoint wpt : wpts) {
+            if (isValidElevation(ele[i])) {
+                ele[i] = convert(ele[i]);
+            } else {
+                // no HGT, check for elevation data in GPX
+                ele[i] = wpt != null ? getGpxElevation(wpt) : NO_ELEVATION;
+            }
+            i++;
+        }
+        return ele;
+    }
+
+    private static double getGpxElevation(WayPoint wpt) {
         if (!wpt.attr.containsKey(HEIGHT_ATTRIBUTE)) {
             // GPX has no elevation data :-(
             return NO_ELEVATION;
@@ -269,6 +302,17 @@ public final class ElevationHelper {
         return NO_ELEVATION;
     }
 
+    /**
+     * Gets the SRTM elevations of several coordinates at once, see {@link HgtReader#getElevationsFromHgt(double[])}.
+     *
+     * @param latLons the packed coordinates: latitude and longitude of the first point,
+     * then latitude and longitude of the second point, and so on
+     * @return the elevation of each point or {@link Double#NaN}, if elevation value could not be obtained
+     */
+    public static double[] getSrtmElevations(double[] latLons) {
+        return hgt.getElevationsFromHgt(latLons);
+    }
+
     /**
      * Checks given area for SRTM data.
      *
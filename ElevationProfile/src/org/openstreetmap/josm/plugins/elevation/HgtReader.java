@@ -2,66 +2,111 @@
 package org.openstreetmap.josm.plugins.elevation;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.nio.ByteBuffer;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.ByteOrder;
 import java.nio.ShortBuffer;
 import java.nio.channels.FileChannel;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
 
 import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.data.coor.LatLon;
 import org.openstreetmap.josm.tools.CheckParameterUtil;
 
 /**
- *  Class HgtReader reads data from SRTM HGT files. Currently this class is restricted to a resolution of 3 arc seconds.
+ *  Class HgtReader reads data from SRTM HGT files. Both SRTM3 (3 arc seconds, 1201 values per row) and
+ *  SRTM1 (1 arc second, 3601 values per row) files are supported, the resolution is detected from the file size.
+ *
+ *  HGT files are memory-mapped and kept in a bounded LRU cache, keyed by their integer tile coordinates.
+ *  This class is thread-safe.
  *
  *  SRTM data files are available at the <a href="http://dds.cr.usgs.gov/srtm/version2_1/SRTM3">NASA SRTM site</a>
  *  @author Oliver Wieland &lt;oliver.wieland@online.de&gt;
  */
 public class HgtReader {
-    private static final int SECONDS_PER_MINUTE = 60;
-
     public static final String HGT_EXT = ".hgt";
 
-    // alter these values for different SRTM resolutions
+    // default (SRTM3) resolution, the resolution of each file is detected from its size
     public static final int HGT_RES = 3; // resolution in arc seconds
     public static final int HGT_ROW_LENGTH = 1201; // number of elevation values per line
+    public static final int HGT1_ROW_LENGTH = 3601; // number of elevation values per line of SRTM1 files
     public static final int HGT_VOID = -32768; // magic number which indicates 'void data' in HGT file
 
-    private final HashMap<String, ShortBuffer> cache = new HashMap<>();
+    /** Default number of HGT files kept in cache */
+    public static final int DEFAULT_CACHE_SIZE = 16;
 
-    public double getElevationFromHgt(LatLon coor) {
-        try {
-            String file = getHgtFileName(coor);
-            // given area in cache?
-            if (!cache.containsKey(file)) {
-
-                // fill initial cache value. If no file is found, then
-                // we use it as a marker to indicate 'file has been searched
-                // but is not there'
-                cache.put(file, null);
-                // Try all resource directories
-                for (String location : Main.pref.getAllPossiblePreferenceDirs()) {
-                    String fullPath = new File(location + File.separator + "elevation", file).getPath();
-                    File f = new File(fullPath);
-                    if (f.exists()) {
-                        // found something: read HGT file...
-                        ShortBuffer data = readHgtFile(fullPath);
-                        // ... and store result in cache
-                        cache.put(file, data);
-                        break;
-                    }
-                }
+    // batches of at least this size are sorted and sampled across threads
+    private static final int PARALLEL_THRESHOLD = 16384;
+    // maximum number of coordinates sampled by a single task
+    private static final int BATCH_CHUNK_SIZE = 4096;
+
+    /**
+     * A memory-mapped HGT file.
+     */
+    private static final class HgtTile {
+        final ShortBuffer data;
+        final int rowLength;
+
+        HgtTile(ShortBuffer data, int rowLength) {
+            this.data = data;
+            this.rowLength = rowLength;
+        }
+    }
+
+    /** Marker for tiles which have been searched but are not there */
+    private static final HgtTile MISSING = new HgtTile(null, 0);
+
+    private final Map<Integer, HgtTile> cache;
+
+    private volatile boolean interpolate;
+
+    /**
+     * Constructs a new {@code HgtReader}, with the cache size and interpolation mode defined in preferences.
+     */
+    public HgtReader() {
+        this(Main.pref.getInt("elevation.hgt.cache.size", DEFAULT_CACHE_SIZE),
+                Main.pref.getBoolean("elevation.hgt.interpolate", false));
+    }
+
+    /**
+     * Constructs a new {@code HgtReader}.
+     * @param cacheSize maximum number of HGT files kept in cache
+     * @param interpolate if {@code true}, elevations are interpolated between the 4 surrounding samples
+     */
+    public HgtReader(final int cacheSize, boolean interpolate) {
+        this.interpolate = interpolate;
+        this.cache = new LinkedHashMap<Integer, HgtTile>(cacheSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, HgtTile> eldest) {
+                return size() > Math.max(1, cacheSize);
             }
+        };
+    }
+
+    /**
+     * Determines if elevations are interpolated (bilinear) or taken from the nearest sample.
+     * @return {@code true} if elevations are interpolated
+     */
+    public boolean isInterpolate() {
+        return interpolate;
+    }
+
+    /**
+     * Sets if elevations are interpolated (bilinear) or taken from the nearest sample.
+     * @param interpolate {@code true} to interpolate elevations
+     */
+    public void setInterpolate(boolean interpolate) {
+        this.interpolate = interpolate;
+    }
 
+    public double getElevationFromHgt(LatLon coor) {
+        try {
+            HgtTile tile = getTile(floor(coor.lat()), floor(coor.lon()), true);
             // read elevation value
-            return readElevation(coor);
-        } catch (FileNotFoundException e) {
-            System.err.println("Get elevation from HGT " + coor + " failed: => " + e.getMessage());
-            // no problem... file not there
-            return ElevationHelper.NO_ELEVATION;
+            return readElevation(tile, coor.lat(), coor.lon(), interpolate);
         } catch (Exception ioe) {
             // oops...
             ioe.printStackTrace(System.err);
@@ -70,63 +115,173 @@ public class HgtReader {
         }
     }
 
-    @SuppressWarnings("resource")
-    private ShortBuffer readHgtFile(String file) throws Exception {
-        CheckParameterUtil.ensureParameterNotNull(file);
+    /**
+     * Gets the elevations of several coordinates at once. The coordinates are grouped by HGT file,
+     * so that each file is looked up once per group; large batches are sampled across threads.
+     *
+     * @param latLons the packed coordinates: latitude and longitude of the first point,
+     * then latitude and longitude of the second point, and so on
+     * @return the elevation of each point, or <code>Double.NaN</code> if no value is present
+     */
+    public double[] getElevationsFromHgt(final double[] latLons) {
+        CheckParameterUtil.ensureParameterNotNull(latLons, "latLons");
+        final double[] result = new double[latLons.length / 2];
+        Arrays.fill(result, ElevationHelper.NO_ELEVATION);
 
-        FileChannel fc = null;
-        ShortBuffer sb = null;
-        try {
-            // Eclipse complains here about resource leak on 'fc' - even with 'finally' clause???
-            fc = new FileInputStream(file).getChannel();
-            // choose the right endianness
-
-            ByteBuffer bb = ByteBuffer.allocateDirect((int) fc.size());
-            while (bb.remaining() > 0) fc.read(bb);
-
-            bb.flip();
-            //sb = bb.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
-            sb = bb.order(ByteOrder.BIG_ENDIAN).asShortBuffer();
-        } finally {
-            if (fc != null) fc.close();
+        // sort point indexes by tile: tile key in the high bits, point index in the low bits
+        long[] order = new long[result.length];
+        int n = 0;
+        for (int i = 0; i < result.length; i++) {
+            double lat = latLons[2 * i];
+            double lon = latLons[2 * i + 1];
+            if (!Double.isNaN(lat) && !Double.isNaN(lon)) {
+                order[n++] = ((long) tileKey(floor(lat), floor(lon)) << 32) | i;
+            }
         }
+        final boolean parallel = n >= PARALLEL_THRESHOLD;
+        if (parallel) {
+            Arrays.parallelSort(order, 0, n);
+        } else {
+            Arrays.sort(order, 0, n);
+        }
+
+        // split in chunks of points of the same tile
+        int[] chunks = new int[n + 1];
+        int chunkCount = 0;
+        int chunkStart = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || (order[i] >>> 32) != (order[i - 1] >>> 32) || i - chunkStart >= BATCH_CHUNK_SIZE) {
+                chunks[chunkCount++] = chunkStart = i;
+            }
+        }
+        chunks[chunkCount] = n;
+
+        final long[] sorted = order;
+        final int[] bounds = chunks;
+        final boolean interpol = interpolate;
+        IntStream stream = IntStream.range(0, chunkCount);
+        (parallel ? stream.parallel() : stream).forEach(
+                c -> sampleChunk(latLons, sorted, bounds[c], bounds[c + 1], interpol, result));
+        return result;
+    }
+
+    private void sampleChunk(double[] latLons, long[] order, int start, int end, boolean interpol, double[] result) {
+        int first = (int) order[start];
+        HgtTile tile = getTile(floor(latLons[2 * first]), floor(latLons[2 * first + 1]), true);
+        if (tile.data == null) {
+            return;
+        }
+        for (int i = start; i < end; i++) {
+            int index = (int) order[i];
+            result[index] = readElevation(tile, latLons[2 * index], latLons[2 * index + 1], interpol);
+        }
+    }
+
+    private static int floor(double d) {
+        return (int) Math.floor(d);
+    }
+
+    private static int tileKey(int lat, int lon) {
+        return (lat + 90) * 360 + (lon + 180);
+    }
 
-        return sb;
+    private HgtTile getTile(int lat, int lon, boolean load) {
+        Integer key = tileKey(lat, lon);
+        synchronized (cache) {
+            HgtTile tile = cache.get(key);
+            if (tile != null || !load) {
+                return tile;
+            }
+        }
+        // Load outside of the lock, so that other threads can read cached tiles meanwhile.
+        // In the worst case, a file is mapped twice.
+        HgtTile tile = loadTile(getHgtFileName(lat, lon));
+        synchronized (cache) {
+            HgtTile cached = cache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            cache.put(key, tile);
+        }
+        return tile;
+    }
+
+    private HgtTile loadTile(String file) {
+        // Try all resource directories
+        for (String location : Main.pref.getAllPossiblePreferenceDirs()) {
+            File f = new File(location + File.separator + "elevation", file);
+            if (f.exists()) {
+                try {
+                    // found something: map HGT file
+                    return readHgtFile(f.getPath());
+                } catch (IOException e) {
+                    System.err.println("Get elevation from HGT " + f + " failed: => " + e.getMessage());
+                    return MISSING;
+                }
+            }
+        }
+        // no problem... file not there
+        return MISSING;
+    }
+
+    private static HgtTile readHgtFile(String file) throws IOException {
+        CheckParameterUtil.ensureParameterNotNull(file);
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel fc = raf.getChannel()) {
+            long size = fc.size();
+            int rowLength = (int) Math.round(Math.sqrt(size / 2.0));
+            if ((long) rowLength * rowLength * 2 != size) {
+                throw new IOException("Unsupported HGT file size: " + size);
+            }
+            // the mapping stays valid after the channel is closed
+            ShortBuffer sb = fc.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.BIG_ENDIAN).asShortBuffer();
+            return new HgtTile(sb, rowLength);
+        }
     }
 
     /**
-     * Reads the elevation value for the given coordinate.
+     * Reads the elevation value for the given coordinate, if its HGT file has already been read.
      *
      * See also <a href="http://gis.stackexchange.com/questions/43743/how-to-extract-elevation-from-hgt-file">stackexchange.com</a>
      * @param coor the coordinate to get the elevation data for
      * @return the elevation value or <code>Double.NaN</code>, if no value is present
      */
     public double readElevation(LatLon coor) {
-        String tag = getHgtFileName(coor);
-
-        ShortBuffer sb = cache.get(tag);
+        return readElevation(getTile(floor(coor.lat()), floor(coor.lon()), false), coor.lat(), coor.lon(), interpolate);
+    }
 
-        if (sb == null) {
+    private static double readElevation(HgtTile tile, double lat, double lon, boolean interpolate) {
+        if (tile == null || tile.data == null) {
             return ElevationHelper.NO_ELEVATION;
         }
 
         // see http://gis.stackexchange.com/questions/43743/how-to-extract-elevation-from-hgt-file
-        double fLat = frac(coor.lat()) * SECONDS_PER_MINUTE;
-        double fLon = frac(coor.lon()) * SECONDS_PER_MINUTE;
-
-        // compute offset within HGT file
-        int row = (int) Math.round(fLat * SECONDS_PER_MINUTE / HGT_RES);
-        int col = (int) Math.round(fLon * SECONDS_PER_MINUTE / HGT_RES);
+        // rows go from north to south, columns from west to east
+        int n = tile.rowLength - 1;
+        double y = (1 - (lat - Math.floor(lat))) * n;
+        double x = (lon - Math.floor(lon)) * n;
 
-        row = HGT_ROW_LENGTH - row;
-        int cell = (HGT_ROW_LENGTH * (row - 1)) + col;
-
-        //System.out.println("Read SRTM elevation data from row/col/cell " + row + "," + col + ", " + cell + ", " + sb.limit());
+        if (interpolate) {
+            int row = Math.min((int) Math.floor(y), n - 1);
+            int col = Math.min((int) Math.floor(x), n - 1);
+            double dy = y - row;
+            double dx = x - col;
+            int cell = tile.rowLength * row + col;
+            short nw = tile.data.get(cell);
+            short ne = tile.data.get(cell + 1);
+            short sw = tile.data.get(cell + tile.rowLength);
+            short se = tile.data.get(cell + tile.rowLength + 1);
+            if (nw != HGT_VOID && ne != HGT_VOID && sw != HGT_VOID && se != HGT_VOID) {
+                return (nw * (1 - dx) + ne * dx) * (1 - dy) + (sw * (1 - dx) + se * dx) * dy;
+            }
+            // data voids around: fall back to the nearest sample
+        }
 
+        int cell = tile.rowLength * (int) Math.round(y) + (int) Math.round(x);
         // valid position in buffer?
-        if (cell < sb.limit()) {
-            short ele = sb.get(cell);
-            //System.out.println("==> Read SRTM elevation data from row/col/cell " + row + "," + col + ", " + cell + " = " + ele);
+        if (cell >= 0 && cell < tile.data.limit()) {
+            short ele = tile.data.get(cell);
             // check for data voids
             if (ele == HGT_VOID) {
                 return ElevationHelper.NO_ELEVATION;
@@ -141,24 +296,30 @@ public class HgtReader {
     /**
      * Gets the associated HGT file name for the given way point. Usually the
      * format is <tt>[N|S]nn[W|E]mmm.hgt</tt> where <i>nn</i> is the integral latitude
-     * without decimals and <i>mmm</i> is the longitude.
+     * without decimals and <i>mmm</i> is the longitude of the south west corner of the tile.
      *
      * @param latLon the coordinate to get the filename for
      * @return the file name of the HGT file
      */
     public String getHgtFileName(LatLon latLon) {
-        int lat = (int) latLon.lat();
-        int lon = (int) latLon.lon();
+        return getHgtFileName(floor(latLon.lat()), floor(latLon.lon()));
+    }
 
-        String latPref = "N";
-        if (lat < 0) latPref = "S";
+    private static String getHgtFileName(int lat, int lon) {
+        StringBuilder sb = new StringBuilder(11);
+        sb.append(lat < 0 ? 'S' : 'N');
+        appendPadded(sb, Math.abs(lat), 2);
+        sb.append(lon < 0 ? 'W' : 'E');
+        appendPadded(sb, Math.abs(lon), 3);
+        return sb.append(HGT_EXT).toString();
+    }
 
-        String lonPref = "E";
-        if (lon < 0) {
-            lonPref = "W";
+    private static void appendPadded(StringBuilder sb, int value, int width) {
+        String s = Integer.toString(value);
+        for (int i = s.length(); i < width; i++) {
+            sb.append('0');
         }
-
-        return String.format("%s%02d%s%03d%s", latPref, lat, lonPref, lon, HGT_EXT);
+        sb.append(s);
     }
 
     public static double frac(double d) {
@@ -1,8 +1,11 @@
 // License: GPL. For details, see LICENSE file.
 package org.openstreetmap.josm.plugins.elevation.gpx;
-import java.util.ArrayList;
+
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.openstreetmap.josm.data.Bounds;
 import org.openstreetmap.josm.data.gpx.WayPoint;
@@ -48,6 +51,7 @@ IGpxWaypointVisitor {
     private IElevationProfile parent;
     private int sumEle; // temp var for average height
     private List<WayPoint> wayPoints;
+    private Map<WayPoint, Integer> elevations; // elevations of the way points, looked up at once
     private int numWayPoints; // cached value
     private int gain;
     private int lastEle;
@@ -126,6 +130,11 @@ IGpxWaypointVisitor {
         gain = 0;
         lastEle = 0;
 
+        double[] ele = ElevationHelper.getElevations(wayPoints);
+        elevations = new IdentityHashMap<>(n);
+        for (int i = 0; i < n; i++) {
+            elevations.put(wayPoints.get(i), (int) ele[i]);
+        }
         for (WayPoint wayPoint : this.wayPoints) {
             visitWayPoint(wayPoint);
         }
@@ -169,7 +178,7 @@ IGpxWaypointVisitor {
      */
     protected void setMinWayPoint(WayPoint wp) {
         importantWayPoints[WAYPOINT_MIN] = wp;
-        this.minHeight = (int) ElevationHelper.getElevation(wp);
+        this.minHeight = getElevation(wp);
     }
 
     /**
@@ -178,7 +187,7 @@ IGpxWaypointVisitor {
      */
     protected void setMaxWayPoint(WayPoint wp) {
         importantWayPoints[WAYPOINT_MAX] = wp;
-        this.maxHeight = (int) ElevationHelper.getElevation(wp);
+        this.maxHeight = getElevation(wp);
     }
 
     /**
@@ -233,7 +242,7 @@ IGpxWaypointVisitor {
     @Override
     public int elevationValueAt(int i) {
         if (checkIndex(i)) {
-            return (int) ElevationHelper.getElevation(wayPoints.get(i));
+            return getElevation(wayPoints.get(i));
         } else {
             throw new IndexOutOfBoundsException(String.format(
                     "Invalid index: %d, expected 0..%d", i,
@@ -391,7 +400,7 @@ IGpxWaypointVisitor {
             bounds.extend(wp.getCoor());
         }
 
-        int ele = (int) ElevationHelper.getElevation(wp);
+        int ele = getElevation(wp);
 
         if (!isIgnoreZeroHeight() || ele > 0) {
             if (ele > maxHeight) {
@@ -410,6 +419,18 @@ IGpxWaypointVisitor {
         }
     }
 
+    /**
+     * Gets the elevation of a way point, as looked up for all way points by
+     * {@link #updateValues()}, or from {@link ElevationHelper} for other way points.
+     *
+     * @param wp the way point
+     * @return the elevation of the way point
+     */
+    protected int getElevation(WayPoint wp) {
+        Integer ele = elevations != null ? elevations.get(wp) : null;
+        return ele != null ? ele : (int) ElevationHelper.getElevation(wp);
+    }
+
     @Override
     public String toString() {
         return name; /*"ElevationProfileBase [start=" + getStart() + ", end=" + getEnd()
@@ -11,6 +11,8 @@ import org.openstreetmap.josm.plugins.elevation.ElevationHelper;
 public class EleVertex {
     private static final int NPOINTS = 3;
     private static final double MIN_DIST = 90;
+    /** Minimum area of a vertex in square meters */
+    static final double MIN_AREA = 30 * 30;
 
     private double avrgEle = Double.NaN;
     private double area = Double.NaN;
@@ -50,6 +52,31 @@ public class EleVertex {
     }
 
     public List<EleVertex> divide() {
+        EleCoordinate[] split = getSplitPoints();
+        return divide(split, getMid(split[0], split[1]));
+    }
+
+    /**
+     * Divides this vertex at the given mid point of its longest edge.
+     *
+     * @param split the points returned by {@link #getSplitPoints()}
+     * @param newP the mid point of the longest edge
+     * @return the two new vertices
+     */
+    static List<EleVertex> divide(EleCoordinate[] split, EleCoordinate newP) {
+        List<EleVertex> res = new ArrayList<>();
+        res.add(new EleVertex(split[0], split[2], newP));
+        res.add(new EleVertex(split[1], split[2], newP));
+
+        return res;
+    }
+
+    /**
+     * Gets the points to divide this vertex: the end points of the longest edge and the opposite point.
+     *
+     * @return the two end points of the longest edge, followed by the third point
+     */
+    EleCoordinate[] getSplitPoints() {
         TriangleEdge[] edges = new TriangleEdge[NPOINTS];
 
         int k = 0;
@@ -79,18 +106,7 @@ public class EleVertex {
         EleCoordinate pI = points[longest.getI()];
         EleCoordinate pJ = points[longest.getJ()];
         EleCoordinate pK = points[longest.getK()];
-        EleCoordinate newP = getMid(pI, pJ);
-        /*
-    System.out.println(pI);
-    System.out.println(pJ);
-    System.out.println(pK);
-    System.out.println(newP);
-         */
-        List<EleVertex> res = new ArrayList<>();
-        res.add(new EleVertex(pI, pK, newP));
-        res.add(new EleVertex(pJ, pK, newP));
-
-        return res;
+        return new EleCoordinate[] {pI, pJ, pK};
     }
 
     /**
@@ -108,7 +124,18 @@ public class EleVertex {
         }*/
 
         // TODO: Check for proper limit
-        return /*z < 75 || */getArea() < (30 * 30); // = 3 * 25
+        return /*z < 75 || */isFinished(MIN_AREA); // = 3 * 25
+    }
+
+    /**
+     * Checks if vertex is small enough for the given error budget.
+     *
+     * @param maxArea the maximum area of a finished vertex in square meters
+     * @return true, if is finished
+     */
+    public boolean isFinished(double maxArea) {
+        // degenerated vertices (area NaN) cannot be divided any further
+        return !(getArea() >= maxArea);
     }
 
     /**
@@ -131,13 +158,40 @@ public class EleVertex {
         double x = (c1.getX() + c2.getX()) / 2.0;
         double y = (c1.getY() + c2.getY()) / 2.0;
 
-        double z = (c1.getEle() + c2.getEle()) / 2.0;
-        if (c1.greatCircleDistance(c2) > MIN_DIST) {
-            double hgtZ = ElevationHelper.getSrtmElevation(new LatLon(y, x));
+        double hgtZ = ElevationHelper.NO_ELEVATION;
+        if (needsSrtmElevation(c1, c2)) {
+            hgtZ = ElevationHelper.getSrtmElevation(new LatLon(y, x));
+        }
 
-            if (ElevationHelper.isValidElevation(hgtZ)) {
-                z = hgtZ;
-            }
+        return getMid(c1, c2, hgtZ);
+    }
+
+    /**
+     * Checks if the elevation of the mid point of c1 and c2 is read from SRTM data or interpolated.
+     *
+     * @param c1 the first coordinate
+     * @param c2 the second coordinate
+     * @return true, if the SRTM elevation of the mid point is required
+     */
+    static boolean needsSrtmElevation(EleCoordinate c1, EleCoordinate c2) {
+        return c1.greatCircleDistance(c2) > MIN_DIST;
+    }
+
+    /**
+     * Gets the mid point of c1 and c2, with the given SRTM elevation.
+     *
+     * @param c1 the first coordinate
+     * @param c2 the second coordinate
+     * @param hgtZ the SRTM elevation of the mid point; if invalid, the elevation is linear interpolated
+     * @return the mid point
+     */
+    static EleCoordinate getMid(EleCoordinate c1, EleCoordinate c2, double hgtZ) {
+        double x = (c1.getX() + c2.getX()) / 2.0;
+        double y = (c1.getY() + c2.getY()) / 2.0;
+
+        double z = (c1.getEle() + c2.getEle()) / 2.0;
+        if (ElevationHelper.isValidElevation(hgtZ)) {
+            z = hgtZ;
         }
 
         return new EleCoordinate(y, x, z);
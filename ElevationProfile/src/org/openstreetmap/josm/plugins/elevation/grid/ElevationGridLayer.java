@@ -32,7 +32,8 @@ import org.openstreetmap.josm.tools.ImageProvider;
  *
  */
 public class ElevationGridLayer extends Layer implements TileLoaderListener {
-    private static final int ELE_ZOOM_LEVEL = 13;
+    // lowest zoom level of the tiles, below it the tiles are reduced on screen
+    private static final int MIN_ZOOM_LEVEL = 8;
     private final IVertexRenderer vertexRenderer;
     private final MemoryTileCache tileCache;
     protected TileSource tileSource;
@@ -41,6 +42,7 @@ public class ElevationGridLayer extends Layer implements TileLoaderListener {
 
     private Bounds lastBounds;
     private TileSet tileSet;
+    private int zoomLevel;
 
     public ElevationGridLayer(String name) {
         super(name);
@@ -52,18 +54,22 @@ public class ElevationGridLayer extends Layer implements TileLoaderListener {
         tileCache = new MemoryTileCache();
         tileCache.setCacheSize(500);
         tileSource = new ElevationGridTileSource(name);
-        tileLoader = new ElevationGridTileLoader(this);
+        tileLoader = new ElevationGridTileLoader(this, vertexRenderer);
         tileController = new ElevationGridTileController(tileSource, tileCache, this, tileLoader);
     }
 
     @Override
     public void paint(Graphics2D g, MapView mv, Bounds box) {
-        boolean needsNewTileSet = tileSet == null || (lastBounds == null || !lastBounds.equals(box));
+        int zoom = getZoomLevel(mv, box);
+        boolean needsNewTileSet = tileSet == null || zoom != zoomLevel || (lastBounds == null || !lastBounds.equals(box));
 
         if (needsNewTileSet) {
-            tileSet = new TileSet(box.getMin(), box.getMax(), ELE_ZOOM_LEVEL); // we use a vector format with constant zoom level
+            tileSet = new TileSet(box.getMin(), box.getMax(), zoom);
             lastBounds = box;
+            zoomLevel = zoom;
             System.out.println("paint " + tileSet);
+            // drop the triangulation of tiles which have left the viewport or have another zoom level
+            tileLoader.cancelTilesOutside(zoom, tileSet.x0, tileSet.y0, tileSet.x1, tileSet.y1);
         }
 
         if (tileSet.insane()) {
@@ -79,19 +85,48 @@ public class ElevationGridLayer extends Layer implements TileLoaderListener {
 
         for (int x = tileSet.x0; x <= tileSet.x1; x++) {
             for (int y = tileSet.y0; y <= tileSet.y1; y++) {
-                Tile t = tileController.getTile(x, y, ELE_ZOOM_LEVEL);
+                Tile t = tileController.getTile(x, y, zoom);
 
-                if (t != null && t.isLoaded() && t instanceof ElevationGridTile) {
+                if (t == null) {
+                    continue;
+                }
+                if (t.isLoaded() && t instanceof ElevationGridTile) {
                     ((ElevationGridTile) t).paintTile(g, mv, vertexRenderer);
                 } else {
                     // give some consolation...
-                    Point topLeft = mv.getPoint(CoordinateConversion.coorToLL(tileSource.tileXYToLatLon(x, y, ELE_ZOOM_LEVEL)));
+                    Point topLeft = mv.getPoint(CoordinateConversion.coorToLL(tileSource.tileXYToLatLon(x, y, zoom)));
                     t.paint(g, topLeft.x, topLeft.y);
                 }
             }
         }
     }
 
+    /**
+     * Gets the zoom level of the tiles to paint: the lowest one whose tiles are not enlarged on screen,
+     * within {@value #MIN_ZOOM_LEVEL} and the maximum zoom level of the tile source.
+     *
+     * @param mv the map view
+     * @param box the bounds of the map view
+     * @return the zoom level of the tiles
+     */
+    private int getZoomLevel(MapView mv, Bounds box) {
+        TileXY p0 = tileSource.latLonToTileXY(box.getMin().lat(), box.getMin().lon(), 0);
+        TileXY p1 = tileSource.latLonToTileXY(box.getMax().lat(), box.getMax().lon(), 0);
+        // width of the view in tiles of zoom level 0
+        double span = Math.abs(p1.getX() - p0.getX());
+        if (span <= 0 || mv.getWidth() <= 0) {
+            return MIN_ZOOM_LEVEL;
+        }
+        int zoom = (int) Math.ceil(Math.log(mv.getWidth() / (span * tileSource.getTileSize())) / Math.log(2));
+        return Math.max(MIN_ZOOM_LEVEL, Math.min(tileSource.getMaxZoom(), zoom));
+    }
+
+    @Override
+    public synchronized void destroy() {
+        super.destroy();
+        tileLoader.shutdown();
+    }
+
     @Override
     public String getToolTipText() {
         // TODO Auto-generated method stub
@@ -9,11 +9,14 @@ import java.awt.Point;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
-import java.util.concurrent.BlockingDeque;
-import java.util.concurrent.LinkedBlockingDeque;
 
 import org.openstreetmap.gui.jmapviewer.Tile;
+import org.openstreetmap.gui.jmapviewer.TileXY;
 import org.openstreetmap.gui.jmapviewer.interfaces.TileCache;
 import org.openstreetmap.gui.jmapviewer.interfaces.TileSource;
 import org.openstreetmap.josm.data.Bounds;
@@ -22,11 +25,16 @@ import org.openstreetmap.josm.data.imagery.CoordinateConversion;
 import org.openstreetmap.josm.gui.MapView;
 import org.openstreetmap.josm.plugins.elevation.ElevationHelper;
 import org.openstreetmap.josm.plugins.elevation.IVertexRenderer;
-import org.openstreetmap.josm.plugins.elevation.gui.Triangle;
 
+/**
+ * A tile of the elevation grid layer. The tile is triangulated in the background by the
+ * {@link ElevationGridTileLoader} and the resulting vertices are rasterized once into the tile image.
+ * The layer paints the tiles of the zoom level matching the scale of the map view, so that the image
+ * is not enlarged on screen and the number of vertices follows the number of pixels on screen.
+ */
 public class ElevationGridTile extends Tile {
-    private final BlockingDeque<EleVertex> toDo = new LinkedBlockingDeque<>();
-    private final BlockingDeque<EleVertex> vertices = new LinkedBlockingDeque<>();
+    // a vertex is small enough if it covers about this number of pixels
+    private static final int PIXELS_PER_VERTEX = 4;
 
     private Bounds box;
 
@@ -34,7 +42,6 @@ public class ElevationGridTile extends Tile {
         super(source, xtile, ytile, zoom);
 
         box = tile2Bounds(xtile, ytile, zoom);
-        initQueue();
     }
 
     public ElevationGridTile(TileSource source, int xtile, int ytile, int zoom,
@@ -71,52 +78,129 @@ public class ElevationGridTile extends Tile {
     }
 
     /**
-     * Paints the vertices of this tile.
+     * Paints the rasterized vertices of this tile.
      *
      * @param g the graphics context
      * @param mv the map view
-     * @param vertexRenderer the vertex renderer
+     * @param vertexRenderer the renderer providing the vertex colors, i.e. the one the tile has been loaded with
      */
     public void paintTile(Graphics2D g, MapView mv, IVertexRenderer vertexRenderer) {
-        BlockingDeque<EleVertex> list = getVertices();
-        for (EleVertex eleVertex : list) {
-            Point p0 = mv.getPoint(eleVertex.get(0));
-            Point p1 = mv.getPoint(eleVertex.get(1));
-            Point p2 = mv.getPoint(eleVertex.get(2));
-            Triangle shape = new Triangle(p0, p1, p2);
-
-            // obtain vertex color
-            g.setColor(vertexRenderer.getElevationColor(eleVertex));
-            // TODO: Move to renderer
-            g.fill(shape);
-        }
+        BufferedImage img = getImage();
+        if (img == null) return;
+
+        LatLon min = box.getMin();
+        LatLon max = box.getMax();
+        Point topLeft = mv.getPoint(new LatLon(Math.max(min.lat(), max.lat()), Math.min(min.lon(), max.lon())));
+        Point botRight = mv.getPoint(new LatLon(Math.min(min.lat(), max.lat()), Math.max(min.lon(), max.lon())));
+        g.drawImage(img, topLeft.x, topLeft.y, botRight.x - topLeft.x, botRight.y - topLeft.y, null);
     }
 
     @Override
     public void loadImage(InputStream input) throws IOException {
+        loadImage(new SimpleVertexRenderer());
+    }
+
+    /**
+     * Triangulates this tile and rasterizes the vertices into the tile image. The triangulation
+     * stops with an {@link InterruptedIOException} as soon as the current thread is interrupted.
+     *
+     * @param vertexRenderer the renderer providing the vertex colors
+     * @throws IOException if the triangulation has been interrupted
+     */
+    public void loadImage(IVertexRenderer vertexRenderer) throws IOException {
         if (isLoaded()) return;
 
-        // TODO: Save
+        Deque<EleVertex> toDo = initQueue();
+        if (toDo == null) return;
 
-        // We abuse the loadImage method to render the vertices...
-        //
-        while (toDo.size() > 0) {
-            EleVertex vertex = toDo.poll();
+        // Vertices are divided level by level, so that the SRTM elevations of all new points of a level
+        // are looked up in a single batch.
+        double maxArea = getMaxVertexArea();
+        List<EleVertex> vertices = new ArrayList<>();
+        List<EleVertex> level = new ArrayList<>();
+        while (!toDo.isEmpty()) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Triangulation of " + this + " canceled");
+            }
+            level.clear();
+            level.addAll(toDo);
+            toDo.clear();
+            divide(level, maxArea, toDo, vertices);
+        }
+        setImage(rasterize(vertices, vertexRenderer));
+        setLoaded(true);
+    }
 
-            if (vertex.isFinished()) {
+    private static void divide(List<EleVertex> level, double maxArea, Deque<EleVertex> toDo, List<EleVertex> vertices) {
+        List<EleCoordinate[]> splits = new ArrayList<>(level.size());
+        for (EleVertex vertex : level) {
+            if (vertex.isFinished(maxArea)) {
                 vertices.add(vertex);
             } else {
-                List<EleVertex> newV = vertex.divide();
-                for (EleVertex eleVertex : newV) {
-                    toDo.add(eleVertex);
-                }
+                splits.add(vertex.getSplitPoints());
             }
         }
-        setLoaded(true);
+
+        // look up the elevations of the new points
+        double[] latLons = new double[2 * splits.size()];
+        int k = 0;
+        for (EleCoordinate[] split : splits) {
+            if (EleVertex.needsSrtmElevation(split[0], split[1])) {
+                latLons[k++] = (split[0].getY() + split[1].getY()) / 2.0;
+                latLons[k++] = (split[0].getX() + split[1].getX()) / 2.0;
+            } else {
+                latLons[k++] = Double.NaN;
+                latLons[k++] = Double.NaN;
+            }
+        }
+        double[] ele = ElevationHelper.getSrtmElevations(latLons);
+
+        for (int i = 0; i < ele.length; i++) {
+            EleCoordinate[] split = splits.get(i);
+            toDo.addAll(EleVertex.divide(split, EleVertex.getMid(split[0], split[1], ele[i])));
+        }
+    }
+
+    /**
+     * Gets the error budget of this tile: vertices are divided until their area is smaller than
+     * {@value #PIXELS_PER_VERTEX} square pixels at the zoom level of the tile, but not below
+     * the SRTM resolution.
+     *
+     * @return the maximum area of a vertex in square meters
+     */
+    private double getMaxVertexArea() {
+        double lat = (box.getMin().lat() + box.getMax().lat()) / 2.0;
+        double width = new LatLon(lat, box.getMin().lon()).greatCircleDistance(new LatLon(lat, box.getMax().lon()));
+        double metersPerPixel = width / source.getTileSize();
+        return Math.max(EleVertex.MIN_AREA, PIXELS_PER_VERTEX * metersPerPixel * metersPerPixel);
     }
 
-    public BlockingDeque<EleVertex> getVertices() {
-        return vertices;
+    /**
+     * Draws the vertices into an image covering this tile.
+     */
+    private BufferedImage rasterize(List<EleVertex> vertices, IVertexRenderer vertexRenderer) {
+        int size = source.getTileSize();
+        BufferedImage img = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        try {
+            int[] xs = new int[3];
+            int[] ys = new int[3];
+            for (EleVertex vertex : vertices) {
+                for (int i = 0; i < 3; i++) {
+                    EleCoordinate c = vertex.get(i);
+                    TileXY xy = source.latLonToTileXY(c.lat(), c.lon(), zoom);
+                    xs[i] = (int) Math.round((xy.getX() - xtile) * size);
+                    ys[i] = (int) Math.round((xy.getY() - ytile) * size);
+                }
+                g.setColor(vertexRenderer.getElevationColor(vertex));
+                g.fillPolygon(xs, ys, 3);
+                // avoid gaps between adjacent vertices
+                g.drawPolygon(xs, ys, 3);
+            }
+        } finally {
+            g.dispose();
+        }
+        return img;
     }
 
     /**
@@ -134,8 +218,10 @@ public class ElevationGridTile extends Tile {
 
     /**
      * Inits the 'todo' queue with the initial vertices.
+     *
+     * @return the initial vertices, or {@code null} if there is no SRTM data
      */
-    private void initQueue() {
+    private Deque<EleVertex> initQueue() {
         LatLon min = box.getMin();
         LatLon max = box.getMax();
 
@@ -143,27 +229,28 @@ public class ElevationGridTile extends Tile {
         LatLon h1 = new LatLon(min.lat(), max.lon());
         LatLon h2 = new LatLon(max.lat(), min.lon());
 
-        double eleMin = ElevationHelper.getSrtmElevation(min);
-        double eleMax = ElevationHelper.getSrtmElevation(max);
+        double[] ele = ElevationHelper.getSrtmElevations(new double[] {
+                min.lat(), min.lon(), h1.lat(), h1.lon(), max.lat(), max.lon(), h2.lat(), h2.lon()});
+        double eleMin = ele[0];
+        double eleMax = ele[2];
 
         // SRTM files present?
         if (!ElevationHelper.isValidElevation(eleMax) || !ElevationHelper.isValidElevation(eleMin)) {
             setError(tr("No SRTM data"));
-            return;
+            return null;
         }
 
         // compute elevation coords
         EleCoordinate p0 = new EleCoordinate(min, eleMin);
-        EleCoordinate p1 = new EleCoordinate(h1, ElevationHelper.getSrtmElevation(h1));
+        EleCoordinate p1 = new EleCoordinate(h1, ele[1]);
         EleCoordinate p2 = new EleCoordinate(max, eleMax);
-        EleCoordinate p3 = new EleCoordinate(h2, ElevationHelper.getSrtmElevation(h2));
+        EleCoordinate p3 = new EleCoordinate(h2, ele[3]);
 
         // compute initial vertices
-        EleVertex v1 = new EleVertex(p0, p1, p2);
-        EleVertex v2 = new EleVertex(p2, p3, p0);
-        // enqueue vertices
-        toDo.add(v1);
-        toDo.add(v2);
+        Deque<EleVertex> toDo = new ArrayDeque<>();
+        toDo.add(new EleVertex(p0, p1, p2));
+        toDo.add(new EleVertex(p2, p3, p0));
+        return toDo;
     }
 
     @Override
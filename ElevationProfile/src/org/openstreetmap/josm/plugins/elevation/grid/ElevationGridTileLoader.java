@@ -1,22 +1,64 @@
 // License: GPL. For details, see LICENSE file.
 package org.openstreetmap.josm.plugins.elevation.grid;
 
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
 import org.openstreetmap.gui.jmapviewer.Tile;
 import org.openstreetmap.gui.jmapviewer.interfaces.TileJob;
 import org.openstreetmap.gui.jmapviewer.interfaces.TileLoader;
 import org.openstreetmap.gui.jmapviewer.interfaces.TileLoaderListener;
+import org.openstreetmap.josm.plugins.elevation.IVertexRenderer;
 import org.openstreetmap.josm.tools.CheckParameterUtil;
+import org.openstreetmap.josm.tools.Utils;
 
 /**
+ * Triangulates the elevation grid tiles in background threads. Jobs of tiles which are not
+ * visible anymore can be canceled, see {@link #cancelTilesOutside(int, int, int, int, int)}.
+ * The threads are stopped by {@link #shutdown()} once the layer is destroyed.
  * @author Olli
  *
  */
 public class ElevationGridTileLoader implements TileLoader {
     protected TileLoaderListener listener;
+    private final IVertexRenderer vertexRenderer;
+
+    private final ExecutorService executor;
+
+    // submitted (queued or running) jobs
+    private final Map<Tile, Future<?>> jobs = new ConcurrentHashMap<>();
 
     public ElevationGridTileLoader(TileLoaderListener listener) {
+        this(listener, new SimpleVertexRenderer());
+    }
+
+    public ElevationGridTileLoader(TileLoaderListener listener, IVertexRenderer vertexRenderer) {
+        this(listener, vertexRenderer, Executors.newFixedThreadPool(
+                Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+                Utils.newThreadFactory("elevation-grid-%d", Thread.MIN_PRIORITY)));
+    }
+
+    /**
+     * Constructs a new {@code ElevationGridTileLoader} running the jobs on the given executor.
+     * @param listener the listener notified when a tile is loaded
+     * @param vertexRenderer the renderer of the tile vertices
+     * @param executor the executor running the jobs, shut down by {@link #shutdown()}
+     */
+    public ElevationGridTileLoader(TileLoaderListener listener, IVertexRenderer vertexRenderer, ExecutorService executor) {
         CheckParameterUtil.ensureParameterNotNull(listener);
+        CheckParameterUtil.ensureParameterNotNull(vertexRenderer);
+        CheckParameterUtil.ensureParameterNotNull(executor);
         this.listener = listener;
+        this.vertexRenderer = vertexRenderer;
+        this.executor = executor;
     }
 
     @Override
@@ -32,33 +74,102 @@ public class ElevationGridTileLoader implements TileLoader {
                         return;
                     tile.initLoading();
                 }
+                boolean canceled = false;
                 try {
-                    tile.loadImage(null);
+                    if (tile instanceof ElevationGridTile) {
+                        ((ElevationGridTile) tile).loadImage(vertexRenderer);
+                    } else {
+                        tile.loadImage(null);
+                    }
                     tile.setLoaded(true);
                     listener.tileLoadingFinished(tile, true);
+                } catch (InterruptedIOException e) {
+                    canceled = true;
                 } catch (Exception e) {
                     tile.setError(e.getMessage());
                     listener.tileLoadingFinished(tile, false);
                 } finally {
                     tile.finishLoading();
+                    if (canceled) {
+                        // finishLoading() sets the tile loaded: it is triangulated again when it becomes visible
+                        tile.setLoaded(false);
+                    }
                 }
             }
 
             @Override
             public void submit() {
-                run();
+                submit(false);
             }
 
             @Override
             public void submit(boolean force) {
-                submit();
+                synchronized (jobs) {
+                    if (!jobs.containsKey(tile) && !executor.isShutdown()) {
+                        // the job is forgotten when it is done or canceled, unless it has already been replaced
+                        FutureTask<Void> job = new FutureTask<Void>(this, null) {
+                            @Override
+                            protected void done() {
+                                jobs.remove(tile, this);
+                            }
+                        };
+                        jobs.put(tile, job);
+                        executor.execute(job);
+                    }
+                }
             }
         };
     }
 
+    /**
+     * Cancels the jobs of the tiles outside the given range, e.g. the tiles which have left the viewport.
+     *
+     * @param zoom the zoom level of the visible tiles
+     * @param x0 the minimum x index of the visible tiles
+     * @param y0 the minimum y index of the visible tiles
+     * @param x1 the maximum x index of the visible tiles
+     * @param y1 the maximum y index of the visible tiles
+     */
+    public void cancelTilesOutside(int zoom, int x0, int y0, int x1, int y1) {
+        synchronized (jobs) {
+            for (Iterator<Map.Entry<Tile, Future<?>>> it = jobs.entrySet().iterator(); it.hasNext();) {
+                Map.Entry<Tile, Future<?>> e = it.next();
+                Tile t = e.getKey();
+                if (t.getZoom() != zoom || t.getXtile() < x0 || t.getXtile() > x1 || t.getYtile() < y0 || t.getYtile() > y1) {
+                    it.remove();
+                    e.getValue().cancel(true);
+                }
+            }
+        }
+    }
+
     @Override
     public void cancelOutstandingTasks() {
-        // intentionally left blank
+        synchronized (jobs) {
+            List<Future<?>> canceled = new ArrayList<>(jobs.values());
+            jobs.clear();
+            for (Future<?> job : canceled) {
+                job.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Determines if a job of the given tile is queued or running.
+     * @param tile the tile
+     * @return {@code true} if a job of the tile is queued or running
+     */
+    public boolean isPending(Tile tile) {
+        return jobs.containsKey(tile);
     }
 
+    /**
+     * Cancels all the jobs and stops the threads. No job is run afterwards.
+     */
+    public void shutdown() {
+        synchronized (jobs) {
+            cancelOutstandingTasks();
+            executor.shutdownNow();
+        }
+    }
 }
@@ -0,0 +1,164 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.elevation.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.openstreetmap.gui.jmapviewer.Tile;
+import org.openstreetmap.gui.jmapviewer.interfaces.TileLoaderListener;
+import org.openstreetmap.josm.plugins.elevation.grid.ElevationGridTileLoader;
+import org.openstreetmap.josm.plugins.elevation.grid.ElevationGridTileSource;
+import org.openstreetmap.josm.plugins.elevation.grid.SimpleVertexRenderer;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+/**
+ * Unit test of {@link ElevationGridTileLoader}.
+ */
+public class ElevationGridTileLoaderTest {
+
+    @Rule
+    public JOSMTestRules rules = new JOSMTestRules().preferences();
+
+    /**
+     * A tile whose loading blocks until it is released. A first load interrupted by a cancellation
+     * only ends when the test allows it.
+     */
+    private static class BlockingTile extends Tile {
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch firstStarted = new CountDownLatch(1);
+        final CountDownLatch firstMayEnd = new CountDownLatch(1);
+        final CountDownLatch secondStarted = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        BlockingTile() {
+            super(new ElevationGridTileSource("test"), 1, 2, 12);
+        }
+
+        @Override
+        public void loadImage(InputStream input) throws IOException {
+            if (loads.incrementAndGet() == 1) {
+                firstStarted.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    awaitUninterruptibly(firstMayEnd);
+                    throw new InterruptedIOException();
+                }
+            } else {
+                secondStarted.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        for (;;) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private final AtomicInteger finished = new AtomicInteger();
+    private ExecutorService executor;
+    private ElevationGridTileLoader loader;
+
+    /**
+     * Creates a loader running its jobs one after another.
+     */
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadExecutor();
+        loader = new ElevationGridTileLoader(new TileLoaderListener() {
+            @Override
+            public void tileLoadingFinished(Tile tile, boolean success) {
+                finished.incrementAndGet();
+            }
+        }, new SimpleVertexRenderer(), executor);
+    }
+
+    /**
+     * Stops the loader.
+     */
+    @After
+    public void tearDown() {
+        loader.shutdown();
+    }
+
+    /**
+     * The end of a canceled job does not forget the job submitted for the same tile in the meantime.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testCanceledJobKeepsNewJob() throws Exception {
+        BlockingTile tile = new BlockingTile();
+        loader.createTileLoaderJob(tile).submit();
+        assertTrue(tile.firstStarted.await(30, TimeUnit.SECONDS));
+        assertTrue(loader.isPending(tile));
+
+        // the tile leaves the viewport, then comes back while its first job is ending
+        loader.cancelTilesOutside(12, 5, 5, 6, 6);
+        assertFalse(loader.isPending(tile));
+        loader.createTileLoaderJob(tile).submit();
+        assertTrue(loader.isPending(tile));
+
+        tile.firstMayEnd.countDown();
+        assertTrue(tile.secondStarted.await(30, TimeUnit.SECONDS));
+        assertTrue(loader.isPending(tile));
+
+        tile.release.countDown();
+        loader.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals(2, tile.loads.get());
+        assertEquals(1, finished.get());
+        assertTrue(tile.isLoaded());
+        assertFalse(loader.isPending(tile));
+    }
+
+    /**
+     * Unit test of {@link ElevationGridTileLoader#shutdown}: jobs are canceled, threads stopped and no job is run afterwards.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testShutdown() throws Exception {
+        BlockingTile tile = new BlockingTile();
+        loader.createTileLoaderJob(tile).submit();
+        assertTrue(tile.firstStarted.await(30, TimeUnit.SECONDS));
+        tile.firstMayEnd.countDown();
+
+        loader.shutdown();
+        assertFalse(loader.isPending(tile));
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        assertFalse(tile.isLoaded());
+
+        loader.createTileLoaderJob(tile).submit();
+        assertFalse(loader.isPending(tile));
+        assertEquals(1, tile.loads.get());
+        assertEquals(0, finished.get());
+    }
+}
@@ -3,8 +3,10 @@ package org.openstreetmap.josm.plugins.elevation.tests;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.DirectoryIteratorException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
@@ -25,6 +27,34 @@ public class HgtReaderTest {
     @Rule
     public JOSMTestRules rules = new JOSMTestRules().preferences();
 
+    /**
+     * Elevation of a synthetic tile at the given row (from north) and column (from west),
+     * rising by 3 m per sample northwards and by 2 m per sample eastwards.
+     */
+    private static double gradient(double row, double col) {
+        return 10000 - 3 * row + 2 * col;
+    }
+
+    /**
+     * Writes a synthetic HGT file following {@link #gradient} to the plugin directory.
+     */
+    private static void writeTile(String name, int rowLength) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(rowLength * rowLength * 2);
+        for (int row = 0; row < rowLength; row++) {
+            for (int col = 0; col < rowLength; col++) {
+                buffer.putShort((short) gradient(row, col));
+            }
+        }
+        Files.write(Config.getDirs().getUserDataDirectory(true).toPath().resolve("elevation").resolve(name), buffer.array());
+    }
+
+    /**
+     * Returns the coordinate of the given fractional row and column of a tile.
+     */
+    private static LatLon sample(int lat, int lon, int rowLength, double row, double col) {
+        return new LatLon(lat + 1 - row / (rowLength - 1), lon + col / (rowLength - 1));
+    }
+
     /**
      * Setup test.
      * @throws IOException if SRTM files cannot be installed
@@ -60,6 +90,80 @@ public class HgtReaderTest {
         //testHgtData(35.360555, 138.727777, "N35E138.hgt", 3741);
     }
 
+    @Test
+    public void testGetHgtFileName() {
+        HgtReader hr = new HgtReader();
+        assertEquals("S05W003.hgt", hr.getHgtFileName(new LatLon(-4.5, -2.5)));
+        assertEquals("N00E000.hgt", hr.getHgtFileName(new LatLon(0.5, 0.5)));
+        assertEquals("S01W180.hgt", hr.getHgtFileName(new LatLon(-0.5, -179.5)));
+    }
+
+    @Test
+    public void testInterpolation() throws IOException {
+        writeTile("N10E020.hgt", HgtReader.HGT_ROW_LENGTH);
+        HgtReader hr = new HgtReader(4, true);
+        LatLon l = sample(10, 20, HgtReader.HGT_ROW_LENGTH, 600.25, 300.75);
+        // bilinear value between the 4 surrounding samples
+        assertEquals(gradient(600.25, 300.75), hr.getElevationFromHgt(l), 1e-6);
+        assertEquals(gradient(0.5, 1199.5), hr.getElevationFromHgt(sample(10, 20, HgtReader.HGT_ROW_LENGTH, 0.5, 1199.5)), 1e-6);
+        // nearest sample
+        hr.setInterpolate(false);
+        assertEquals(gradient(600, 301), hr.readElevation(l), 0);
+    }
+
+    @Test
+    public void testSrtm1() throws IOException {
+        writeTile("N11E020.hgt", HgtReader.HGT1_ROW_LENGTH);
+        HgtReader hr = new HgtReader(4, false);
+        // a SRTM3 row length would give another sample
+        LatLon l = sample(11, 20, HgtReader.HGT1_ROW_LENGTH, 1800.25, 2700.4);
+        assertEquals(gradient(1800, 2700), hr.getElevationFromHgt(l), 0);
+        hr.setInterpolate(true);
+        assertEquals(gradient(1800.25, 2700.4), hr.readElevation(l), 1e-6);
+        double[] ele = hr.getElevationsFromHgt(new double[] {l.lat(), l.lon()});
+        assertEquals(gradient(1800.25, 2700.4), ele[0], 1e-6);
+    }
+
+    @Test
+    public void testCacheSize() throws IOException {
+        writeTile("N10E020.hgt", HgtReader.HGT_ROW_LENGTH);
+        LatLon staufenberg = new LatLon(50.6607106, 8.7337029);
+        LatLon ulrichstein = new LatLon(50.5767627, 9.1938483);
+        LatLon synthetic = sample(10, 20, HgtReader.HGT_ROW_LENGTH, 600, 300);
+        HgtReader hr = new HgtReader(2, false);
+        // no tile read yet
+        assertTrue(Double.isNaN(hr.readElevation(staufenberg)));
+        assertEquals(199, (int) hr.getElevationFromHgt(staufenberg));
+        assertEquals(560, (int) hr.getElevationFromHgt(ulrichstein));
+        // the least recently used tile is dropped
+        assertEquals(199, (int) hr.readElevation(staufenberg));
+        assertEquals(gradient(600, 300), hr.getElevationFromHgt(synthetic), 0);
+        assertTrue(Double.isNaN(hr.readElevation(ulrichstein)));
+        assertEquals(199, (int) hr.readElevation(staufenberg));
+        assertEquals(gradient(600, 300), hr.readElevation(synthetic), 0);
+        // and read again when needed
+        assertEquals(560, (int) hr.getElevationFromHgt(ulrichstein));
+        assertTrue(Double.isNaN(hr.readElevation(staufenberg)));
+    }
+
+    @Test
+    public void testGetElevationsFromHgt() {
+        HgtReader hr = new HgtReader();
+        double[] latLons = {
+                50.5767627, 9.1938483,
+                50.6607106, 8.7337029,
+                Double.NaN, Double.NaN,
+                10.5, 10.5,
+                50.6607106, 8.7337029};
+        double[] ele = hr.getElevationsFromHgt(latLons);
+        assertEquals(5, ele.length);
+        assertEquals(560, (int) ele[0]);
+        assertEquals(199, (int) ele[1]);
+        assertTrue(Double.isNaN(ele[2]));
+        assertTrue(Double.isNaN(ele[3]));
+        assertEquals(199, (int) ele[4]);
+    }
+
     private void testHgtData(final double lat, final double lon,
             final String expTag, final int expHeight) {
         LatLon l = new LatLon(lat, lon);
@@ -2,26 +2,46 @@
 package org.openstreetmap.josm.plugins.fastdraw;
 
 import java.awt.Point;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Set;
 
 import org.openstreetmap.josm.data.coor.LatLon;
 import org.openstreetmap.josm.gui.MapView;
+import org.openstreetmap.josm.gui.MapViewState;
 
+/**
+ * The line being drawn. Screen positions of the points are cached in arrays and recomputed only when the view changes.
+ * The Douglas-Peucker significance of the points is cached too: after new points are appended only the last
+ * fragment of the line (after the last fixed point) needs to be processed again to simplify it.
+ */
 public class DrawnPolyLine {
     MapView mv;
-    private LinkedList<LatLon> points = new LinkedList<>();
-    private LinkedList<LatLon> simplePoints = new LinkedList<>();
-    private Set<LatLon> used;
+    private final ArrayList<LatLon> points = new ArrayList<>();
+    private List<LatLon> simplePoints;
+    private int[] simpleIndexes;
+    // epsilon of the simplified version, which is computed again with it after the line was changed
+    private double simpleEpsilon;
+    private boolean simpleOutdated;
     private Set<LatLon> fixed = new HashSet<>();
 
     private int lastIdx;
     private boolean closedFlag;
 
+    // screen positions of the first projectedCount points, for the view projectedState
+    private double[] xs = new double[256];
+    private double[] ys = new double[256];
+    private int projectedCount;
+    private MapViewState projectedState;
+
+    // the simplified line keeps point i for every epsilon smaller than significance[i],
+    // valid for the first significantCount points
+    private double[] significance = new double[256];
+    private int significantCount;
+
     public DrawnPolyLine() {
         clear();
     }
@@ -36,25 +56,20 @@ public class DrawnPolyLine {
 
     double getLength() {
         List<LatLon> pts = getPoints();
-        Iterator<LatLon> it1, it2;
-        LatLon pp1, pp2;
-        if (pts.size() < 2) return 0;
-        it1 = pts.listIterator(0);
-        it2 = pts.listIterator(1);
         double len = 0;
         for (int i = 0; i < pts.size() - 1; i++) {
-            pp1 = it1.next();
-            pp2 = it2.next();
-            len += pp1.greatCircleDistance(pp2);
+            len += pts.get(i).greatCircleDistance(pts.get(i + 1));
         }
         return len;
     }
 
-    LinkedList<LatLon> getPoints() {
+    List<LatLon> getPoints() {
+        updateSimplifiedVersion();
         if (simplePoints != null) return simplePoints; else return points;
     }
 
     boolean wasSimplified() {
+        updateSimplifiedVersion();
         return (simplePoints != null && simplePoints.size() > 0);
     }
 
@@ -63,8 +78,9 @@ public class DrawnPolyLine {
         int n = points.size();
         int idx = -1;
         double dist, minD = 1e10;
+        project();
         for (int i = 0; i < n; i++) {
-            dist = Math.sqrt(getPoint(points.get(i)).distanceSq(x, y));
+            dist = Math.hypot((int) xs[i] - x, (int) ys[i] - y);
             if (dist < d && dist < minD) {
                 idx = i;
                 minD = dist;
@@ -75,16 +91,33 @@ public class DrawnPolyLine {
 
     void clear() {
         points.clear();
-        used = null;
         lastIdx = 0;
         closedFlag = false;
         fixed.clear();
-        simplePoints = null;
+        clearSimplifiedVersion();
+        projectedCount = 0;
+        significantCount = 0;
+    }
+
+    /**
+     * Forgets the cached values of the points from the given index, after the line was changed there.
+     * The significance of the whole fragment containing the changed point must be computed again,
+     * and the simplified version, if any, too.
+     */
+    private void invalidate(int idx) {
+        if (simplePoints != null) simpleOutdated = true;
+        projectedCount = Math.min(projectedCount, idx);
+        int start = Math.min(significantCount, idx - 1);
+        while (start > 0 && !fixed.contains(points.get(start))) {
+            start--;
+        }
+        significantCount = Math.max(0, start);
     }
 
     void undo() {
         //if (points.size() > 0) points.removeLast();
         if (lastIdx > 0 && lastIdx < points.size()) {
+            invalidate(lastIdx);
             points.remove(lastIdx);
             lastIdx--;
         }
@@ -92,6 +125,8 @@ public class DrawnPolyLine {
 
     void fixPoint(LatLon p) {
         fixed.add(p);
+        int idx = points.indexOf(p);
+        if (idx >= 0) invalidate(idx);
     }
 
     void addFixed(LatLon coor) {
@@ -107,13 +142,15 @@ public class DrawnPolyLine {
         if (closedFlag && lastIdx > points.size()-1) return;
         if (lastIdx >= points.size()-1) {
             //
-            if (points.isEmpty() || !coor.equals(points.getLast())) {
-                points.addLast(coor);
+            if (points.isEmpty() || !coor.equals(points.get(points.size()-1))) {
+                invalidate(points.size());
+                points.add(coor);
                 if (points.size() > 1) lastIdx++;
             }
         } else {
             // insert point into midlle of the line
             if (points.isEmpty() || !coor.equals(points.get(lastIdx))) {
+                invalidate(lastIdx+1);
                 points.add(lastIdx+1, coor);
                 lastIdx++;
             }
@@ -121,7 +158,7 @@ public class DrawnPolyLine {
     }
 
     Point getLastPoint() {
-        if (lastIdx < points.size()) return getPoint(points.get(lastIdx));
+        if (lastIdx < points.size()) return getScreenPoint(lastIdx);
         else return null;
     }
 
@@ -129,7 +166,50 @@ public class DrawnPolyLine {
         return mv.getPoint(p);
     }
 
+    /**
+     * Gets the screen position of the given point of the drawn line.
+     * @param idx index in the list returned by {@link #getPoints()}
+     * @return the screen position
+     */
+    Point getPointOnScreen(int idx) {
+        updateSimplifiedVersion();
+        project();
+        if (simplePoints != null) idx = simpleIndexes[idx];
+        return new Point((int) xs[idx], (int) ys[idx]);
+    }
+
+    private Point getScreenPoint(int idx) {
+        project();
+        return new Point((int) xs[idx], (int) ys[idx]);
+    }
+
+    /**
+     * Computes the screen positions of the points that were added since the last call or, after the view was
+     * changed, of all the points.
+     */
+    private void project() {
+        MapViewState state = mv.getState();
+        if (state != projectedState) {
+            projectedState = state;
+            projectedCount = 0;
+            // distances in pixels have changed
+            significantCount = 0;
+        }
+        int n = points.size();
+        if (xs.length < n) {
+            xs = Arrays.copyOf(xs, Math.max(n, 2 * xs.length));
+            ys = Arrays.copyOf(ys, xs.length);
+        }
+        for (int i = projectedCount; i < n; i++) {
+            Point2D p = mv.getPoint2D(points.get(i));
+            xs[i] = p.getX();
+            ys[i] = p.getY();
+        }
+        projectedCount = n;
+    }
+
     int getSimplePointsCount() {
+        updateSimplifiedVersion();
         if (simplePoints != null) return simplePoints.size(); else return -1;
     }
 
@@ -156,61 +236,96 @@ public class DrawnPolyLine {
         //System.out.println("Simplify polyline...");
         int n = points.size();
         if (n < 3) return;
-        used = new HashSet<>(n);
-        int start = 0;
+        computeSignificance();
+        int[] idx = new int[n];
+        int count = 0;
         for (int i = 0; i < n; i++) {
-            LatLon p = points.get(i);
-            if (fixed.contains(p) || i == n - 1) {
-                if (start < 0) {
-                    start = i;
-                } else {
-                    douglasPeucker(start, i, epsilon, 0);
-                }
+            if (significance[i] > epsilon) {
+                idx[count++] = i;
             }
         }
-        simplePoints = new LinkedList<>();
-        simplePoints.addAll(points);
-        simplePoints.retainAll(used);
+        simplePoints = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            simplePoints.add(points.get(idx[i]));
+        }
+        simpleIndexes = idx;
+        simpleEpsilon = epsilon;
+        simpleOutdated = false;
         //Main.map.mapView.repaint();
-        used = null;
     }
 
     /**
-     * Simplification of the line specified by "points" field.
-     * Remainin points are included to "used" set.
+     * Computes the significance of the points whose significance is not known yet, fragment by fragment
+     * (line parts between fixed points).
+     */
+    private void computeSignificance() {
+        project();
+        int n = points.size();
+        if (significance.length < n) {
+            significance = Arrays.copyOf(significance, Math.max(n, 2 * significance.length));
+        }
+        int start = significantCount;
+        for (int i = start + 1; i < n; i++) {
+            if (fixed.contains(points.get(i)) || i == n - 1) {
+                douglasPeucker(start, i);
+                start = i;
+            }
+        }
+        significantCount = n;
+    }
+
+    /**
+     * Simplification of the line specified by "points" field, without recursion.
+     * Instead of simplifying for a given epsilon, gives to each point the largest epsilon
+     * for which it remains on the simplified line.
      * @param start - starting index
      * @param end - ending index
-     * @param epsilon - min point-to line distance in pixels (tolerance)
-     * @param depth - recursion level
      */
-    private void douglasPeucker(int start, int end, double epsilon, int depth) {
-        if (depth > 500) return;
-        if (end - start < 1) return; // incorrect invocation
-        LatLon first = points.get(start);
-        LatLon last = points.get(end);
-        Point firstp = getPoint(first);
-        Point lastp = getPoint(last);
-        used.add(first);
-        used.add(last);
-
-        if (end - start < 2) return;
-
-        int farthest_node = -1;
-        double farthest_dist = 0;
-
-        double d = 0;
-
-        for (int i = start + 1; i < end; i++) {
-            d = pointLineDistance(getPoint(points.get(i)), firstp, lastp);
-            if (d > farthest_dist) {
-                farthest_dist = d;
-                farthest_node = i;
+    private void douglasPeucker(int start, int end) {
+        significance[start] = Double.POSITIVE_INFINITY;
+        significance[end] = Double.POSITIVE_INFINITY;
+        Arrays.fill(significance, start + 1, end, 0);
+
+        // pending ranges, with the significance of the point that split them
+        int[] ranges = new int[2 * (end - start + 1)];
+        double[] limits = new double[end - start + 1];
+        int size = 0;
+        ranges[0] = start;
+        ranges[1] = end;
+        limits[0] = Double.POSITIVE_INFINITY;
+        size++;
+
+        while (size > 0) {
+            size--;
+            int first = ranges[2 * size];
+            int last = ranges[2 * size + 1];
+            double limit = limits[size];
+            if (last - first < 2) continue;
+
+            int farthest_node = -1;
+            double farthest_dist = 0;
+
+            for (int i = first + 1; i < last; i++) {
+                double d = pointLineDistance(xs[i], ys[i], xs[first], ys[first], xs[last], ys[last]);
+                if (d > farthest_dist) {
+                    farthest_dist = d;
+                    farthest_node = i;
+                }
             }
-        }
 
-        if (farthest_dist > epsilon) {
-            douglasPeucker(start, farthest_node, epsilon, depth + 1);
-            douglasPeucker(farthest_node, end, epsilon, depth + 1);
+            if (farthest_node >= 0) {
+                // a point is removed for a smaller epsilon than the point that split its range
+                double d = Math.min(farthest_dist, limit);
+                significance[farthest_node] = d;
+                ranges[2 * size] = first;
+                ranges[2 * size + 1] = farthest_node;
+                limits[size] = d;
+                size++;
+                ranges[2 * size] = farthest_node;
+                ranges[2 * size + 1] = last;
+                limits[size] = d;
+                size++;
+            }
         }
     }
 
@@ -218,9 +333,10 @@ public class DrawnPolyLine {
      * Gets distance from point p1 to line p2-p3
      */
     public double pointLineDistance(Point p1, Point p2, Point p3) {
-        double x0 = p1.x; double y0 = p1.y;
-        double x1 = p2.x; double y1 = p2.y;
-        double x2 = p3.x; double y2 = p3.y;
+        return pointLineDistance(p1.x, p1.y, p2.x, p2.y, p3.x, p3.y);
+    }
+
+    private static double pointLineDistance(double x0, double y0, double x1, double y1, double x2, double y2) {
         if (x2 == x1 && y2 == y1) {
             return Math.hypot(x1 - x0, y1 - y0);
         } else {
@@ -229,7 +345,8 @@ public class DrawnPolyLine {
     }
 
     void closeLine() {
-        points.add(points.getFirst());
+        invalidate(points.size());
+        points.add(points.get(0));
         closedFlag = true;
     }
 
@@ -239,6 +356,7 @@ public class DrawnPolyLine {
 
     void deleteNode(int idx) {
         if (idx <= lastIdx) lastIdx--;
+        invalidate(idx);
         fixed.remove(points.get(idx));
         points.remove(idx);
     }
@@ -246,70 +364,59 @@ public class DrawnPolyLine {
     void tryToDeleteSegment(Point p) {
         if (points.size() < 3) return;
 
-        LatLon start;
-        start = findBigSegment(p);
-        ListIterator<LatLon> it = points.listIterator();
-        LatLon pp;
-        boolean f = false;
-        int i = 0, idx = -1;
-        while (it.hasNext()) {
-            pp = it.next();
-            if (f && (fixed.contains(pp))) {
-                // if end of line fragment reached
-                lastIdx = idx;
-                return;
-            }
-            if (f && !it.hasNext()) {
-                // if end of whole line reached
-                closedFlag = false;
-                it.remove();
-                lastIdx = points.size()-1;
-                return;
-            }
-
-            // if we are deleting this segment
-            if (f) it.remove();
-            if (pp == start) {
-                f = true;
-                idx = i;
-            } // next node should be removed
-            i++;
+        int startIdx = findBigSegmentIndex(p);
+        if (startIdx < 0) {
+            lastIdx = points.size()-1;
+            return;
+        }
+        invalidate(startIdx + 1);
+        int n = points.size();
+        int endIdx = startIdx + 1;
+        while (endIdx < n && !fixed.contains(points.get(endIdx))) {
+            endIdx++;
+        }
+        if (endIdx < n) {
+            // end of line fragment reached
+            points.subList(startIdx + 1, endIdx).clear();
+            lastIdx = startIdx;
+        } else {
+            // end of whole line reached
+            closedFlag = false;
+            points.subList(startIdx + 1, n).clear();
+            lastIdx = points.size()-1;
         }
-        lastIdx = points.size()-1;
     }
 
     /** find starting point of the polyline line fragment close to p
      *  line fragment = segments between two fixed (green) nodes
      */
     LatLon findBigSegment(Point p) {
-        if (points.size() < 2) return null;
-        Iterator<LatLon> it1 = points.listIterator(0);
-        Iterator<LatLon> it2 = points.listIterator(1);
-        Point p1, p2;
-        LatLon pp1, pp2, start = null;
-        start = points.getFirst();
-        do {
-            pp1 = it1.next();
-            pp2 = it2.next();
-            p1 = getPoint(pp1);
-            p2 = getPoint(pp2);
+        int idx = findBigSegmentIndex(p);
+        return idx < 0 ? null : points.get(idx);
+    }
+
+    private int findBigSegmentIndex(Point p) {
+        if (points.size() < 2) return -1;
+        project();
+        int start = 0;
+        for (int i = 0; i < points.size() - 1; i++) {
             // maintain segment start end end
-            if (fixed.contains(pp1)) {
-                start = pp1;
+            if (fixed.contains(points.get(i))) {
+                start = i;
             }
-            if (pointSegmentDistance(p, p1, p2) < 5) {
+            if (pointSegmentDistance(p, (int) xs[i], (int) ys[i], (int) xs[i + 1], (int) ys[i + 1]) < 5) {
                 return start;
             }
-        } while (it2.hasNext());
-        return null;
+        }
+        return -1;
     }
 
-    private double pointSegmentDistance(Point p, Point p1, Point p2) {
+    private static double pointSegmentDistance(Point p, double x1, double y1, double x2, double y2) {
         double a, b, x, y, l, kt, kn, dist;
-        x = p.x-p1.x;
-        y = p.y-p1.y;
-        a = p2.x-p1.x;
-        b = p2.y-p1.y;
+        x = p.x-x1;
+        y = p.y-y1;
+        a = x2-x1;
+        b = y2-y1;
         l = Math.hypot(a, b);
         if (l == 0) return Math.hypot(x, y); // p1 = p2
         kt = (x*a+y*b)/l;
@@ -322,6 +429,18 @@ public class DrawnPolyLine {
 
     void clearSimplifiedVersion() {
         simplePoints = null;
+        simpleIndexes = null;
+        simpleOutdated = false;
+    }
+
+    /**
+     * Simplifies the line again with the same epsilon if it was changed since it was simplified,
+     * so that the simplified version never refers to points that were moved or removed.
+     */
+    private void updateSimplifiedVersion() {
+        if (!simpleOutdated) return;
+        if (points.size() < 3) clearSimplifiedVersion();
+        else simplify(simpleEpsilon);
     }
 
     boolean isLastPoint(int i) {
@@ -333,6 +452,7 @@ public class DrawnPolyLine {
     }
 
     void toggleFixed(int idx) {
+        invalidate(idx);
         LatLon p = points.get(idx);
         if (fixed.contains(p)) fixed.remove(p);
         else fixed.add(p);
@@ -341,11 +461,13 @@ public class DrawnPolyLine {
     void moveNode(int dragNode, LatLon coor) {
         LatLon dragged = points.get(dragNode);
         // points.getLast().equals(points.getFirst()
-        if (closedFlag && points.getFirst().equals(dragged)) {
+        if (closedFlag && points.get(0).equals(dragged)) {
             // move both ends
+            invalidate(0);
             points.set(0, coor);
             points.set(points.size()-1, coor);
         } else {
+            invalidate(dragNode);
             points.set(dragNode, coor);
         }
         if (fixed.contains(dragged)) {
@@ -360,6 +482,7 @@ public class DrawnPolyLine {
      * @param k - window size (number of points to average points per km
      */
     public double getNodesPerKm(int k) {
+        updateSimplifiedVersion();
         List<LatLon> pts = simplePoints;
         if (!wasSimplified()) pts = points;
         int n = pts.size();
@@ -367,17 +490,9 @@ public class DrawnPolyLine {
         if (k < 2) k = 2;
         if (k > n) k = n;
 
-        LatLon pp1, pp2 = null;
-        Iterator<LatLon> it1, it2;
-        it1 = pts.listIterator(0);
-        it2 = pts.listIterator(1);
         double[] lens = new double[n];
         for (int i = 0; i < n-1; i++) {
-            pp1 = it1.next();
-            //p1 = getPoint(pp1);
-            pp2 = it2.next();
-            //p2 =sa getPoint(pp2);
-            lens[i] = pp1.greatCircleDistance(pp2);
+            lens[i] = pts.get(i).greatCircleDistance(pts.get(i+1));
         }
         double pkm = 0, maxpkm = 0;
         double len = 0;
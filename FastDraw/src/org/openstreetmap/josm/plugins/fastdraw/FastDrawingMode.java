@@ -12,7 +12,6 @@ import java.awt.event.MouseEvent;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -150,7 +149,7 @@ class FastDrawingMode extends MapMode implements MapViewPaintable, KeyPressRelea
     //////////    Event listener methods
     @Override
     public void paint(Graphics2D g, MapView mv, Bounds bbox) {
-        LinkedList<LatLon> pts = line.getPoints();
+        List<LatLon> pts = line.getPoints();
         if (pts.isEmpty()) return;
 
         if (line.wasSimplified()) {
@@ -164,7 +163,7 @@ class FastDrawingMode extends MapMode implements MapViewPaintable, KeyPressRelea
 
         Point p1, p2;
         LatLon pp1, pp2;
-        p1 = line.getPoint(pts.get(0));
+        p1 = line.getPointOnScreen(0);
         g.setColor(settings.COLOR_FIXED.get());
         g.fillOval(p1.x - bigDotSize/2, p1.y - bigDotSize/2, bigDotSize, bigDotSize);
         Color lineColor, initLineColor;
@@ -173,15 +172,12 @@ class FastDrawingMode extends MapMode implements MapViewPaintable, KeyPressRelea
         int rp, dp;
         dp = line.wasSimplified() ? settings.bigDotSize : settings.dotSize; rp = dp/2;
         if (pts.size() > 1) {
-            Iterator<LatLon> it1, it2;
-            it1 = pts.listIterator(0);
-            it2 = pts.listIterator(1);
             fixedPoints.clear();
             for (int i = 0; i < pts.size() - 1; i++) {
-                pp1 = it1.next();
-                p1 = line.getPoint(pp1);
-                pp2 = it2.next();
-                p2 = line.getPoint(pp2);
+                pp1 = pts.get(i);
+                p1 = line.getPointOnScreen(i);
+                pp2 = pts.get(i + 1);
+                p2 = line.getPointOnScreen(i + 1);
                 if (shift && highlightedFragmentStart == pp1 && nearestPointIndex < 0) {
                     lineColor = settings.COLOR_SELECTEDFRAGMENT.get();
                 }
@@ -529,7 +525,7 @@ class FastDrawingMode extends MapMode implements MapViewPaintable, KeyPressRelea
     }
 
     private void saveAsWay(boolean autoExit) {
-        List<LatLon> pts = line.getPoints();
+        List<LatLon> pts = new ArrayList<>(line.getPoints());
         int n = pts.size();
         if (n < 2) return; //do not save oversimplified lines
         if (line.isClosed() && n == 2) return;
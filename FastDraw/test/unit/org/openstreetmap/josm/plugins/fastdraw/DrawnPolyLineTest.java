@@ -0,0 +1,176 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.fastdraw;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.gui.MapView;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+/**
+ * Unit test of {@link DrawnPolyLine} simplification.
+ */
+public class DrawnPolyLineTest {
+
+    @Rule
+    public JOSMTestRules rules = new JOSMTestRules().preferences().projection();
+
+    private final Random random = new Random(42);
+    private MapView mv;
+    private DrawnPolyLine line;
+    // the points of the line, maintained along with it
+    private List<LatLon> points;
+    private double scale;
+
+    /**
+     * Creates the map view and a random line.
+     */
+    @Before
+    public void setUp() {
+        mv = new MapView(MainApplication.getLayerManager(), null);
+        line = new DrawnPolyLine();
+        line.setMv(mv);
+        points = new ArrayList<>();
+        double lat = 48;
+        double lon = 2;
+        for (int i = 0; i < 300; i++) {
+            lat += random.nextGaussian() * 1e-4;
+            lon += random.nextGaussian() * 1e-4 + 5e-5;
+            add(new LatLon(lat, lon), i % 70 == 35);
+        }
+        Point2D first = mv.getPoint2D(points.get(0));
+        Point2D last = mv.getPoint2D(points.get(points.size() - 1));
+        scale = first.distance(last);
+    }
+
+    private void add(LatLon p, boolean fixed) {
+        if (fixed) line.addFixed(p);
+        else line.addLast(p);
+        points.add(p);
+    }
+
+    /**
+     * The simplified line, as computed by the recursive Douglas-Peucker algorithm on each fragment
+     * between fixed points, for the given epsilon in pixels.
+     */
+    private List<LatLon> expected(double epsilon) {
+        int n = points.size();
+        Set<Integer> used = new HashSet<>();
+        int start = 0;
+        for (int i = 1; i < n; i++) {
+            if (line.isFixed(points.get(i)) || i == n - 1) {
+                douglasPeucker(start, i, epsilon, used);
+                start = i;
+            }
+        }
+        List<LatLon> simple = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (used.contains(i)) simple.add(points.get(i));
+        }
+        return simple;
+    }
+
+    private void douglasPeucker(int start, int end, double epsilon, Set<Integer> used) {
+        used.add(start);
+        used.add(end);
+        if (end - start < 2) return;
+        Point2D first = mv.getPoint2D(points.get(start));
+        Point2D last = mv.getPoint2D(points.get(end));
+        int farthest = -1;
+        double farthestDist = 0;
+        for (int i = start + 1; i < end; i++) {
+            Point2D p = mv.getPoint2D(points.get(i));
+            double d;
+            if (first.equals(last)) {
+                d = Math.hypot(first.getX() - p.getX(), first.getY() - p.getY());
+            } else {
+                d = Math.abs((last.getX() - first.getX()) * (first.getY() - p.getY())
+                        - (first.getX() - p.getX()) * (last.getY() - first.getY()))
+                        / Math.hypot(last.getX() - first.getX(), last.getY() - first.getY());
+            }
+            if (d > farthestDist) {
+                farthestDist = d;
+                farthest = i;
+            }
+        }
+        if (farthestDist > epsilon) {
+            douglasPeucker(start, farthest, epsilon, used);
+            douglasPeucker(farthest, end, epsilon, used);
+        }
+    }
+
+    private void assertSimplified(double epsilon) {
+        List<LatLon> simple = line.getPoints();
+        assertEquals(expected(epsilon), simple);
+        for (int i = 0; i < simple.size(); i++) {
+            assertEquals(mv.getPoint(simple.get(i)), line.getPointOnScreen(i));
+        }
+    }
+
+    /**
+     * {@link DrawnPolyLine#simplify} gives the same points as the recursive Douglas-Peucker algorithm.
+     */
+    @Test
+    public void testSimplify() {
+        for (double k : new double[] {1e-4, 1e-3, 1e-2, 5e-2, 0.2, 1}) {
+            line.simplify(k * scale);
+            assertSimplified(k * scale);
+            assertTrue(line.getSimplePointsCount() <= points.size());
+        }
+    }
+
+    /**
+     * The simplified version follows the changes of the line made after it was computed.
+     */
+    @Test
+    public void testInvalidation() {
+        double epsilon = 1e-2 * scale;
+        line.simplify(epsilon);
+        assertSimplified(epsilon);
+
+        line.moveToTheEnd();
+        for (int i = 0; i < 20; i++) {
+            LatLon last = points.get(points.size() - 1);
+            add(new LatLon(last.lat() + 2e-4, last.lon() - 1e-4), false);
+        }
+        assertSimplified(epsilon);
+
+        for (int idx : new int[] {150, 2, 40}) {
+            line.deleteNode(idx);
+            points.remove(idx);
+            assertSimplified(epsilon);
+        }
+
+        LatLon moved = new LatLon(points.get(100).lat() + 1e-3, points.get(100).lon());
+        line.moveNode(100, moved);
+        points.set(100, moved);
+        assertSimplified(epsilon);
+
+        line.toggleFixed(120);
+        assertSimplified(epsilon);
+        line.toggleFixed(120);
+        assertSimplified(epsilon);
+
+        line.closeLine();
+        points.add(points.get(0));
+        assertSimplified(epsilon);
+
+        // the whole line is simplified again when the fragments are cached
+        line.clearSimplifiedVersion();
+        assertEquals(points, line.getPoints());
+        line.simplify(epsilon);
+        assertSimplified(epsilon);
+    }
+}
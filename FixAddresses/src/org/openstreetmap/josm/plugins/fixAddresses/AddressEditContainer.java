@@ -6,13 +6,18 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
 import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
 import org.openstreetmap.josm.data.osm.event.DataChangedEvent;
@@ -34,6 +39,10 @@ import org.openstreetmap.josm.tools.CheckParameterUtil;
  *
  * It listens to changes within instances of {@link IOSMEntity} to notify clients on update.
  *
+ * Changes of the data set are applied with {@link #update(AbstractDatasetChangedEvent)}, which only
+ * revisits the changed primitives and the addresses depending on them, and notifies clients only if
+ * the container content was affected. {@link #invalidate()} rebuilds everything.
+ *
  * {@link AddressEditContainer} is the central class used within actions and UI models to show
  * and alter OSM data.
  *
@@ -77,6 +86,29 @@ public class AddressEditContainer implements OsmPrimitiveVisitor, DataSetListene
     /** The change listeners. */
     private List<IAddressEditContainerListener> listeners = new ArrayList<>();
 
+    /** The data set the container was built from, if no working set is given. */
+    private DataSet dataSet;
+    /** The primitives the container was built from, if a working set is given. */
+    private Set<OsmPrimitive> scope;
+    /** The incomplete addresses, in no particular order. */
+    private Set<OSMAddress> incompleteSet = new HashSet<>();
+    /** The unresolved addresses, in no particular order. */
+    private Set<OSMAddress> unresolvedSet = new HashSet<>();
+    /** The addresses by OSM primitive, in the order they have been found. */
+    private Map<OsmPrimitive, OSMAddress> addressIndex = new LinkedHashMap<>();
+    /** The street names of the addresses. */
+    private Map<OSMAddress, String> addressStreets = new HashMap<>();
+    /** The addresses by street name. */
+    private Map<String, Set<OSMAddress>> streetAddresses = new HashMap<>();
+    /** The street names of the street segments. */
+    private Map<Way, String> segmentNames = new HashMap<>();
+    /** The street segments by street name, in the order they have been found. */
+    private Map<String, Map<Way, OSMStreetSegment>> streetSegments = new HashMap<>();
+    /** The nodes of the ways whose nodes have been visited. */
+    private Map<Way, List<Node>> wayNodes = new HashMap<>();
+    /** The address primitives referred by each relation. */
+    private Map<Relation, Set<OsmPrimitive>> relationAddresses = new HashMap<>();
+
     /**
      * Creates an empty container.
      */
@@ -186,7 +218,6 @@ public class AddressEditContainer implements OsmPrimitiveVisitor, DataSetListene
 
         if (aNode != null) {
             addAndClassifyAddress(aNode);
-            aNode.visit(this, this);
         }
         markNodeAsVisited(n);
     }
@@ -210,6 +241,8 @@ public class AddressEditContainer implements OsmPrimitiveVisitor, DataSetListene
      * @param aNode the address node to add and check
      */
     private void addAndClassifyAddress(OSMAddress aNode) {
+        indexAddress(aNode);
+
         if (!assignAddressToStreet(aNode)) {
             // Assignment failed: Street is not known (yet) -> add to 'unresolved' list
             shadowUnresolvedAddresses.add(aNode);
@@ -234,18 +267,59 @@ public class AddressEditContainer implements OsmPrimitiveVisitor, DataSetListene
             for (Node n : w.getNodes()) {
                 visit(n);
             }
+            wayNodes.put(w, w.getNodes());
+            addTags(w);
+        } // else: node has been processed, no need to look deeper
+    }
 
-            for (String key : w.keySet()) {
-                if (!tags.contains(key)) {
-                    tags.add(key);
-                }
+    /**
+     * Adds the tags and values of a way to the tag and value lists.
+     *
+     * @param w the way
+     */
+    private void addTags(Way w) {
+        for (String key : w.keySet()) {
+            if (!tags.contains(key)) {
+                tags.add(key);
+            }
 
-                String v = w.get(key);
-                if (!values.containsKey(v)) {
-                    values.put(v, key);
-                }
+            String v = w.get(key);
+            if (!values.containsKey(v)) {
+                values.put(v, key);
             }
-        } // else: node has been processed, no need to look deeper
+        }
+    }
+
+    /**
+     * Adds an address to the indexes used to update the container.
+     *
+     * @param aNode the address node
+     */
+    private void indexAddress(OSMAddress aNode) {
+        OsmPrimitive osm = aNode.getOsmObject();
+        addressIndex.put(osm, aNode);
+
+        for (OsmPrimitive referrer : osm.getReferrers()) {
+            if (referrer instanceof Relation) {
+                relationAddresses.computeIfAbsent((Relation) referrer, r -> new HashSet<>()).add(osm);
+            }
+        }
+
+        String streetName = aNode.getStreetName();
+        addressStreets.put(aNode, streetName);
+        streetAddresses.computeIfAbsent(streetName, k -> new LinkedHashSet<>()).add(aNode);
+    }
+
+    /**
+     * Adds a street segment to the indexes used to update the container.
+     *
+     * @param name the street name
+     * @param w the way
+     * @param segment the street segment of the way
+     */
+    private void indexStreetSegment(String name, Way w, OSMStreetSegment segment) {
+        segmentNames.put(w, name);
+        streetSegments.computeIfAbsent(name, k -> new LinkedHashMap<>()).put(w, segment);
     }
 
     /**
@@ -279,6 +353,7 @@ public class AddressEditContainer implements OsmPrimitiveVisitor, DataSetListene
                         // TODO: Check if segment really belongs to the street, even if the
                         // names are the same. Then the streets should be split up...
                         sNode.addStreetSegment(newSegment);
+                        indexStreetSegment(name, w, newSegment);
                         return true;
                     } else {
                         throw new RuntimeException("Street node is null!");
@@ -483,11 +558,11 @@ public class AddressEditContainer implements OsmPrimitiveVisitor, DataSetListene
      */
     public void invalidate() {
         if (workingSet != null) {
-            invalidate(workingSet);
+            rebuild(workingSet, null, new HashSet<>(workingSet));
         } else {
             DataSet ds = MainApplication.getLayerManager().getEditDataSet();
             if (ds != null) {
-                invalidate(ds.allPrimitives());
+                rebuild(ds.allPrimitives(), ds, null);
             }
         }
     }
@@ -501,7 +576,23 @@ public class AddressEditContainer implements OsmPrimitiveVisitor, DataSetListene
         if (osmData == null || osmData.isEmpty())
             return;
 
+        rebuild(osmData, null, new HashSet<>(osmData));
+    }
+
+    /**
+     * Rebuilds the container from the given data collection.
+     *
+     * @param osmData the collection containing the osm data to work on.
+     * @param ds the data set the data collection belongs to, or null if it is a working set
+     * @param osmScope the primitives of the working set, or null if the data set is given
+     */
+    private void rebuild(Collection<? extends OsmPrimitive> osmData, DataSet ds, Set<OsmPrimitive> osmScope) {
+        if (osmData == null || osmData.isEmpty())
+            return;
+
         synchronized (this) {
+            dataSet = ds;
+            scope = osmScope;
             clearData();
             clearProblems();
             // visit data set for problems...
@@ -521,6 +612,15 @@ public class AddressEditContainer implements OsmPrimitiveVisitor, DataSetListene
             incompleteAddresses = new ArrayList<>(shadowIncompleteAddresses);
             unresolvedAddresses = new ArrayList<>(shadowUnresolvedAddresses);
             streetDict = new HashMap<>(shadowStreetDict);
+            incompleteSet = new HashSet<>(shadowIncompleteAddresses);
+            unresolvedSet = new HashSet<>(shadowUnresolvedAddresses);
+
+            // visit addresses for problems, now that all streets are known
+            for (OSMAddress aNode : addressIndex.values()) {
+                if (aNode.getOsmObject() instanceof Node) {
+                    aNode.visit(this, this);
+                }
+            }
             // remove temp data
             shadowStreetDict.clear();
             shadowUnresolvedAddresses.clear();
@@ -540,6 +640,354 @@ public class AddressEditContainer implements OsmPrimitiveVisitor, DataSetListene
         shadowIncompleteAddresses.clear();
         visitedNodes.clear();
         visitedWays.clear();
+        addressIndex.clear();
+        addressStreets.clear();
+        streetAddresses.clear();
+        segmentNames.clear();
+        streetSegments.clear();
+        wayNodes.clear();
+        relationAddresses.clear();
+    }
+
+    /**
+     * Updates the container after a change of the data set. Only the changed primitives and the addresses
+     * depending on them are visited again, so that the container has the same content as after
+     * {@link #invalidate()}. A {@link DataChangedEvent} which consolidates several events is applied as
+     * one batch. Events without details, or from another data set, rebuild the container.
+     *
+     * @param event the data set event
+     */
+    public void update(AbstractDatasetChangedEvent event) {
+        Set<OsmPrimitive> changed = new LinkedHashSet<>();
+        if (collectPrimitives(event, changed)) {
+            update(changed);
+        } else {
+            invalidate();
+        }
+    }
+
+    /**
+     * Collects the primitives changed by an event.
+     *
+     * @param event the data set event
+     * @param changed the changed primitives
+     * @return true, if the changes are known; false, if the container must be rebuilt
+     */
+    private boolean collectPrimitives(AbstractDatasetChangedEvent event, Set<OsmPrimitive> changed) {
+        if (dataSet != null && event.getDataset() != dataSet) {
+            return false;
+        }
+
+        if (event instanceof DataChangedEvent) {
+            List<AbstractDatasetChangedEvent> events = ((DataChangedEvent) event).getEvents();
+            if (events == null) {
+                return false;
+            }
+            for (AbstractDatasetChangedEvent e : events) {
+                if (!collectPrimitives(e, changed)) {
+                    return false;
+                }
+            }
+        } else if (!(event instanceof NodeMovedEvent)) { // positions do not matter
+            changed.addAll(event.getPrimitives());
+        }
+        return true;
+    }
+
+    /**
+     * Updates the container after the given primitives have been changed, added or removed.
+     * Clients are notified once, and only if an address or street of the container was affected.
+     *
+     * @param primitives the changed primitives
+     */
+    public void update(Collection<? extends OsmPrimitive> primitives) {
+        synchronized (this) {
+            if (dataSet == null && scope == null) { // never built
+                invalidate();
+                return;
+            }
+
+            Set<OsmPrimitive> affected = new LinkedHashSet<>();
+            for (OsmPrimitive osm : primitives) {
+                addAffected(osm, affected);
+            }
+
+            // remove what the primitives contributed...
+            boolean changed = false;
+            Set<String> changedStreets = new HashSet<>();
+            Set<IOSMEntity> problemSources = new HashSet<>();
+            for (OsmPrimitive osm : affected) {
+                changed |= removePrimitive(osm, changedStreets, problemSources);
+            }
+
+            // ...and visit them again
+            Set<OSMAddress> revisit = new LinkedHashSet<>();
+            for (OsmPrimitive osm : affected) {
+                changed |= addPrimitive(osm, changedStreets, revisit);
+            }
+
+            if (!changedStreets.isEmpty()) {
+                HashMap<String, OSMStreet> newStreetDict = new HashMap<>(streetDict);
+                for (String name : changedStreets) {
+                    boolean existed = newStreetDict.containsKey(name);
+                    updateStreet(name, newStreetDict);
+                    if (existed != newStreetDict.containsKey(name)) {
+                        // the street name of the addresses became valid or invalid
+                        revisit.addAll(streetAddresses.getOrDefault(name, Collections.<OSMAddress>emptySet()));
+                    }
+                }
+                streetDict = newStreetDict;
+            }
+
+            // visit addresses for problems, with the updated streets
+            problemSources.addAll(revisit);
+            if (!problemSources.isEmpty()) {
+                problems.removeIf(problem -> problemSources.contains(problem.getSource()));
+            }
+            for (OSMAddress aNode : revisit) {
+                if (aNode.getOsmObject() instanceof Node) {
+                    aNode.visit(this, this);
+                }
+            }
+
+            if (changed) {
+                List<OSMAddress> newIncompleteAddresses = new ArrayList<>(incompleteSet);
+                List<OSMAddress> newUnresolvedAddresses = new ArrayList<>(unresolvedSet);
+                Collections.sort(newIncompleteAddresses);
+                Collections.sort(newUnresolvedAddresses);
+                incompleteAddresses = newIncompleteAddresses;
+                unresolvedAddresses = newUnresolvedAddresses;
+
+                // update clients
+                fireContainerChanged();
+            }
+        }
+    }
+
+    /**
+     * Adds a changed primitive and the primitives depending on it.
+     *
+     * @param osm the changed primitive
+     * @param affected the primitives to visit again
+     */
+    private void addAffected(OsmPrimitive osm, Set<OsmPrimitive> affected) {
+        affected.add(osm);
+
+        if (osm instanceof Node) {
+            return;
+        }
+
+        if (osm instanceof Way) {
+            // nodes of other ways are visited, and address interpolations give values to their nodes
+            Way w = (Way) osm;
+            affected.addAll(w.getNodes());
+            List<Node> oldNodes = wayNodes.get(w);
+            if (oldNodes != null) {
+                affected.addAll(oldNodes);
+            }
+        }
+
+        // associated street relations give values to their addresses, also from their streets
+        Collection<OsmPrimitive> relations = osm instanceof Relation
+                ? Collections.<OsmPrimitive>singleton(osm) : osm.getReferrers();
+        for (OsmPrimitive referrer : relations) {
+            if (referrer instanceof Relation) {
+                Relation r = (Relation) referrer;
+                for (RelationMember member : r.getMembers()) {
+                    affected.add(member.getMember());
+                }
+                Set<OsmPrimitive> oldAddresses = relationAddresses.remove(r);
+                if (oldAddresses != null) {
+                    affected.addAll(oldAddresses);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the address or street segment of a primitive.
+     *
+     * @param osm the primitive
+     * @param changedStreets the names of the streets to update
+     * @param problemSources the addresses whose problems are to remove
+     * @return true, if the primitive was part of the container
+     */
+    private boolean removePrimitive(OsmPrimitive osm, Set<String> changedStreets, Set<IOSMEntity> problemSources) {
+        boolean removed = false;
+
+        OSMAddress aNode = addressIndex.remove(osm);
+        if (aNode != null) {
+            incompleteSet.remove(aNode);
+            unresolvedSet.remove(aNode);
+            String addressStreet = addressStreets.remove(aNode);
+            Set<OSMAddress> addresses = streetAddresses.get(addressStreet);
+            addresses.remove(aNode);
+            if (addresses.isEmpty()) {
+                streetAddresses.remove(addressStreet);
+            }
+            changedStreets.add(addressStreet);
+            problemSources.add(aNode);
+            removed = true;
+        }
+
+        String streetName = segmentNames.remove(osm);
+        if (streetName != null) {
+            Map<Way, OSMStreetSegment> segments = streetSegments.get(streetName);
+            segments.remove(osm);
+            if (segments.isEmpty()) {
+                streetSegments.remove(streetName);
+            }
+            changedStreets.add(streetName);
+            removed = true;
+        }
+
+        wayNodes.remove(osm);
+        return removed;
+    }
+
+    /**
+     * Visits a primitive the same way {@link #invalidate()} does, if it belongs to the container.
+     *
+     * @param osm the primitive
+     * @param changedStreets the names of the streets to update
+     * @param revisit the addresses to visit for problems
+     * @return true, if the primitive is part of the container
+     */
+    private boolean addPrimitive(OsmPrimitive osm, Set<String> changedStreets, Set<OSMAddress> revisit) {
+        if (osm instanceof Node) {
+            Node n = (Node) osm;
+            if (!isVisited(n)) {
+                return false;
+            }
+
+            OSMAddress aNode = OsmFactory.createNode(n);
+            if (aNode == null) {
+                return false;
+            }
+            addAddress(aNode, changedStreets);
+            revisit.add(aNode);
+            return true;
+        }
+
+        if (osm instanceof Way) {
+            Way w = (Way) osm;
+            if (!isInScope(w)) {
+                return false;
+            }
+
+            IOSMEntity ne = OsmFactory.createNodeFromWay(w);
+            if (ne instanceof OSMStreetSegment) {
+                String name = ne.getName();
+                if (!StringUtils.isNullOrEmpty(name)) {
+                    indexStreetSegment(name, w, (OSMStreetSegment) ne);
+                    changedStreets.add(name);
+                    return true;
+                }
+            } else if (ne instanceof OSMAddress) {
+                addAddress((OSMAddress) ne, changedStreets);
+                return true;
+            }
+
+            wayNodes.put(w, w.getNodes());
+            addTags(w);
+        }
+        return false;
+    }
+
+    /**
+     * Adds an address and checks its completeness. Whether the address is resolved depends on the
+     * streets, see {@link #updateStreet(String, Map)}.
+     *
+     * @param aNode the address node
+     * @param changedStreets the names of the streets to update
+     */
+    private void addAddress(OSMAddress aNode, Set<String> changedStreets) {
+        indexAddress(aNode);
+        changedStreets.add(addressStreets.get(aNode));
+
+        if (!aNode.isComplete()) {
+            incompleteSet.add(aNode);
+        }
+    }
+
+    /**
+     * Creates the street of the given name again from its segments and addresses, or removes it,
+     * and resolves its addresses.
+     *
+     * @param name the street name
+     * @param dict the street dictionary to update
+     */
+    private void updateStreet(String name, Map<String, OSMStreet> dict) {
+        Set<OSMAddress> addresses = streetAddresses.getOrDefault(name, Collections.<OSMAddress>emptySet());
+        Map<Way, OSMStreetSegment> segments = streetSegments.get(name);
+        OSMStreet sNode = null;
+        if (segments != null) {
+            sNode = new OSMStreet(segments.keySet().iterator().next());
+            for (OSMStreetSegment segment : segments.values()) {
+                sNode.addStreetSegment(segment);
+            }
+            dict.put(name, sNode);
+        } else {
+            dict.remove(name);
+        }
+
+        for (OSMAddress aNode : addresses) {
+            // street name via relation -> implicitly resolved
+            if (aNode.isPartOfRelation()) {
+                unresolvedSet.remove(aNode);
+            } else if (sNode != null) {
+                sNode.addAddress(aNode);
+                unresolvedSet.remove(aNode);
+            } else {
+                unresolvedSet.add(aNode);
+            }
+        }
+    }
+
+    /**
+     * Checks if a primitive is usable and belongs to the data the container was built from.
+     *
+     * @param osm the primitive
+     * @return true, if {@link #invalidate()} visits the primitive
+     */
+    private boolean isInScope(OsmPrimitive osm) {
+        if (!osm.isUsable()) {
+            return false;
+        }
+        return scope != null ? scope.contains(osm) : osm.getDataSet() == dataSet;
+    }
+
+    /**
+     * Checks if a node is visited by {@link #invalidate()}, either itself or as node of a way
+     * which is neither a street nor an address.
+     *
+     * @param n the node
+     * @return true, if the node is visited
+     */
+    private boolean isVisited(Node n) {
+        if (isInScope(n)) {
+            return true;
+        }
+
+        for (OsmPrimitive referrer : n.getReferrers()) {
+            if (referrer instanceof Way && isInScope(referrer) && !isStreetOrAddress((Way) referrer)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a way is a named street segment or an address, see {@link #createNodeFromWay(Way)}.
+     *
+     * @param w the way
+     * @return true, if the nodes of the way are not visited
+     */
+    private static boolean isStreetOrAddress(Way w) {
+        if (TagUtils.hasHighwayTag(w)) {
+            return !StringUtils.isNullOrEmpty(new OSMStreetSegment(w).getName());
+        }
+        return w.isClosed() && TagUtils.hasBuildingTag(w) && TagUtils.isAddress(w);
     }
 
     /**
@@ -587,6 +1035,7 @@ public class AddressEditContainer implements OsmPrimitiveVisitor, DataSetListene
 
     @Override
     public void dataChanged(DataChangedEvent event) {
+        update(event);
     }
 
     @Override
@@ -600,25 +1049,27 @@ public class AddressEditContainer implements OsmPrimitiveVisitor, DataSetListene
 
     @Override
     public void primitivesAdded(PrimitivesAddedEvent event) {
-        invalidate();
+        update(event);
     }
 
     @Override
     public void primitivesRemoved(PrimitivesRemovedEvent event) {
-        invalidate();
+        update(event);
     }
 
     @Override
     public void relationMembersChanged(RelationMembersChangedEvent event) {
+        update(event);
     }
 
     @Override
     public void tagsChanged(TagsChangedEvent event) {
-        invalidate();
+        update(event);
     }
 
     @Override
     public void wayNodesChanged(WayNodesChangedEvent event) {
+        update(event);
     }
 
     @Override
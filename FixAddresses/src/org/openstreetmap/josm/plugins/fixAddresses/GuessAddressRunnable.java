@@ -5,15 +5,24 @@ import static org.openstreetmap.josm.tools.I18n.tr;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.ConcurrentModificationException;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.gui.MainApplication;
 import org.openstreetmap.josm.gui.PleaseWaitRunnable;
 import org.openstreetmap.josm.io.OsmTransferException;
+import org.openstreetmap.josm.tools.JosmRuntimeException;
+import org.openstreetmap.josm.tools.Utils;
 import org.xml.sax.SAXException;
 
 /**
@@ -22,6 +31,10 @@ import org.xml.sax.SAXException;
  * The guessing procedure itself is implemented by defining "guessers" using the {@link GuessedValueHandler}
  * class. A guessed field does not modify the corresponding property of {@link OSMAddress} itself, but
  * adds the guessed value to a shadowed field by calling {@link OSMAddress#setGuessedValue(String, String)}.
+ *
+ * The nodes and ways the guessers may take a value from are put in a {@link GuessedValueIndex} once per run,
+ * so that each address only visits the primitives around it. The guesses are computed in parallel for chunks
+ * of addresses, and then set to the addresses in order.
  */
 public class GuessAddressRunnable extends PleaseWaitRunnable {
     private List<OSMAddress> addressesToGuess;
@@ -29,14 +42,36 @@ public class GuessAddressRunnable extends PleaseWaitRunnable {
     private boolean isRunning = false;
     private boolean canceled;
 
-    private GuessedValueHandler[] wayGuessers = new GuessedValueHandler[]{new GuessStreetValueHandler(TagConstants.ADDR_STREET_TAG)};
-    private GuessedValueHandler[] nodeGuessers = new GuessedValueHandler[]{
-            new GuessedValueHandler(TagConstants.ADDR_POSTCODE_TAG, 500.0),
-            new GuessedValueHandler(TagConstants.ADDR_CITY_TAG, 5000.0),
-            new GuessedValueHandler(TagConstants.ADDR_STATE_TAG, 5000.0),
-            new GuessedValueHandler(TagConstants.ADDR_COUNTRY_TAG, 5000.0),
-            new GuessedValueHandler(TagConstants.ADDR_CITY_TAG, 2000.0)
-    };
+    /** Number of addresses guessed in parallel before the guesses are set. */
+    static final int CHUNK_SIZE = 256;
+
+    private static final ExecutorService WORKERS = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(),
+            Utils.newThreadFactory("fixaddresses-guess-%d", Thread.NORM_PRIORITY));
+
+    /**
+     * Creates the guessers visiting the ways.
+     *
+     * @return new guessers, which are not shared between threads
+     */
+    static GuessedValueHandler[] createWayGuessers() {
+        return new GuessedValueHandler[]{new GuessStreetValueHandler(TagConstants.ADDR_STREET_TAG)};
+    }
+
+    /**
+     * Creates the guessers visiting the nodes.
+     *
+     * @return new guessers, which are not shared between threads
+     */
+    static GuessedValueHandler[] createNodeGuessers() {
+        return new GuessedValueHandler[]{
+                new GuessedValueHandler(TagConstants.ADDR_POSTCODE_TAG, 500.0),
+                new GuessedValueHandler(TagConstants.ADDR_CITY_TAG, 5000.0),
+                new GuessedValueHandler(TagConstants.ADDR_STATE_TAG, 5000.0),
+                new GuessedValueHandler(TagConstants.ADDR_COUNTRY_TAG, 5000.0),
+                new GuessedValueHandler(TagConstants.ADDR_CITY_TAG, 2000.0)
+        };
+    }
 
     /**
      * Instantiates a new guess address runnable.
@@ -133,66 +168,159 @@ public class GuessAddressRunnable extends PleaseWaitRunnable {
             progressMonitor.setTicksCount(addressesToGuess.size());
 
             List<OSMAddress> shadowCopy = new ArrayList<>(addressesToGuess);
-            for (OSMAddress aNode : shadowCopy) {
-                if (!aNode.needsGuess()) { // nothing to do
-                    progressMonitor.worked(1);
-                    continue;
-                }
-
-                // check for cancel
-                if (canceled) {
-                    break;
-                }
-
-                // Update progress monitor
-                progressMonitor.subTask(tr("Guess values for ") + aNode);
+            AddressGuesser guesser = new AddressGuesser(ds);
+            for (int start = 0; start < shadowCopy.size() && !canceled; start += CHUNK_SIZE) {
+                List<OSMAddress> chunk = shadowCopy.subList(start, Math.min(start + CHUNK_SIZE, shadowCopy.size()));
+                List<List<GuessedValue>> guesses = guesser.guess(chunk);
+
+                for (int i = 0; i < chunk.size(); i++) {
+                    OSMAddress aNode = chunk.get(i);
+                    if (!aNode.needsGuess()) { // nothing to do
+                        progressMonitor.worked(1);
+                        continue;
+                    }
 
-                // Run way-related guessers
-                for (int i = 0; i < wayGuessers.length; i++) {
-                    GuessedValueHandler guesser = wayGuessers[i];
+                    // check for cancel
+                    if (canceled) {
+                        break;
+                    }
 
-                    guesser.setAddressNode(aNode);
+                    // Update progress monitor
+                    progressMonitor.subTask(tr("Guess values for ") + aNode);
 
-                    // visit osm data
-                    for (Way way : ds.getWays()) {
-                        if (canceled) {
-                            break;
-                        }
-                        way.accept(guesser);
+                    for (GuessedValue guess : guesses.get(i)) {
+                        aNode.setGuessedValue(guess.tag, guess.value, guess.source);
                     }
 
-                    String guessedVal = guesser.getCurrentValue();
-                    if (guessedVal != null) {
-                        aNode.setGuessedValue(guesser.getTag(), guessedVal, guesser.getSourceNode());
-                    }
+                    // report progress
+                    progressMonitor.worked(1);
                 }
+            }
+        } finally {
+            isRunning = false;
+            fireFinished();
+        }
+    }
 
-                // Run node-related guessers
-                for (int i = 0; i < nodeGuessers.length; i++) {
-                    GuessedValueHandler guesser = nodeGuessers[i];
+    /**
+     * A value guessed for an address, with the node or way it was taken from.
+     */
+    static final class GuessedValue {
+        final String tag;
+        final String value;
+        final OsmPrimitive source;
+
+        GuessedValue(String tag, String value, OsmPrimitive source) {
+            this.tag = tag;
+            this.value = value;
+            this.source = source;
+        }
+    }
 
-                    guesser.setAddressNode(aNode);
+    /**
+     * Guesses the values of addresses from the indexed nodes and ways of a data set.
+     * The guesses are the same as when the guessers visit all nodes and ways of the data set.
+     */
+    static final class AddressGuesser {
+        private final GuessedValueIndex[] wayIndexes;
+        private final GuessedValueIndex[] nodeIndexes;
+
+        /**
+         * Indexes the nodes and ways of the data set, in the order of the data set.
+         *
+         * @param ds the data set
+         */
+        AddressGuesser(DataSet ds) {
+            wayIndexes = createIndexes(ds, createWayGuessers(), false);
+            nodeIndexes = createIndexes(ds, createNodeGuessers(), true);
+        }
 
-                    // visit osm data
-                    for (Node node : ds.getNodes()) {
-                        if (canceled) {
-                            break;
-                        }
-                        node.accept(guesser);
+        private static GuessedValueIndex[] createIndexes(DataSet ds, GuessedValueHandler[] guessers, boolean nodes) {
+            GuessedValueIndex[] indexes = new GuessedValueIndex[guessers.length];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = new GuessedValueIndex();
+            }
+            if (nodes) {
+                for (Node node : ds.getNodes()) {
+                    for (int i = 0; i < indexes.length; i++) {
+                        indexes[i].add(node, guessers[i]);
                     }
-
-                    String guessedVal = guesser.getCurrentValue();
-                    if (guessedVal != null) {
-                        aNode.setGuessedValue(guesser.getTag(), guessedVal, guesser.getSourceNode());
+                }
+            } else {
+                for (Way way : ds.getWays()) {
+                    for (int i = 0; i < indexes.length; i++) {
+                        indexes[i].add(way, guessers[i]);
                     }
                 }
+            }
+            return indexes;
+        }
 
-                // report progress
-                progressMonitor.worked(1);
+        /**
+         * Guesses the values of the addresses on the worker pool. The addresses are not modified.
+         *
+         * @param addresses the addresses
+         * @return the guessed values of each address, empty if the address needs no guess
+         */
+        List<List<GuessedValue>> guess(List<OSMAddress> addresses) {
+            int slices = Math.min(addresses.size(), Runtime.getRuntime().availableProcessors());
+            if (slices <= 1) {
+                return guessSlice(addresses);
+            }
+
+            List<Callable<List<List<GuessedValue>>>> tasks = new ArrayList<>();
+            for (int i = 0; i < slices; i++) {
+                List<OSMAddress> slice = addresses.subList(i * addresses.size() / slices, (i + 1) * addresses.size() / slices);
+                tasks.add(() -> guessSlice(slice));
+            }
+            List<List<GuessedValue>> guesses = new ArrayList<>(addresses.size());
+            try {
+                for (Future<List<List<GuessedValue>>> task : WORKERS.invokeAll(tasks)) {
+                    guesses.addAll(task.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new JosmRuntimeException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new JosmRuntimeException(e.getCause());
+            }
+            return guesses;
+        }
+
+        private List<List<GuessedValue>> guessSlice(List<OSMAddress> addresses) {
+            // guessers keep the search state, so each slice has its own
+            GuessedValueHandler[] wayGuessers = createWayGuessers();
+            GuessedValueHandler[] nodeGuessers = createNodeGuessers();
+            List<List<GuessedValue>> guesses = new ArrayList<>(addresses.size());
+            for (OSMAddress aNode : addresses) {
+                if (!aNode.needsGuess()) {
+                    guesses.add(Collections.<GuessedValue>emptyList());
+                    continue;
+                }
+                List<GuessedValue> values = new ArrayList<>();
+                guess(aNode, wayGuessers, wayIndexes, values);
+                guess(aNode, nodeGuessers, nodeIndexes, values);
+                guesses.add(values);
+            }
+            return guesses;
+        }
+
+        private static void guess(OSMAddress aNode, GuessedValueHandler[] guessers, GuessedValueIndex[] indexes,
+                List<GuessedValue> values) {
+            for (int i = 0; i < guessers.length; i++) {
+                GuessedValueHandler guesser = guessers[i];
+
+                guesser.setAddressNode(aNode);
+                indexes[i].visit(aNode.getCoor(), guesser);
+
+                String guessedVal = guesser.getCurrentValue();
+                if (guessedVal != null) {
+                    values.add(new GuessedValue(guesser.getTag(), guessedVal, guesser.getSourceNode()));
+                }
             }
-        } finally {
-            isRunning = false;
-            fireFinished();
         }
     }
 
@@ -205,6 +333,16 @@ public class GuessAddressRunnable extends PleaseWaitRunnable {
             super(tag, aNode, 200.0);
         }
 
+        @Override
+        public boolean isCandidate(Node n) {
+            return false;
+        }
+
+        @Override
+        public boolean isCandidate(Way w) {
+            return TagUtils.isStreetSupportingHousenumbers(w) && TagUtils.getNameValue(w) != null;
+        }
+
         @Override
         public void visit(Node n) {
             // do nothing
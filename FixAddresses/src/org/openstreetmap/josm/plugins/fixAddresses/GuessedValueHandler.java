@@ -157,11 +157,31 @@ public class GuessedValueHandler implements OsmPrimitiveVisitor {
         return aNode.needsGuessedValue(tag);
     }
 
+    /**
+     * Checks if the node may give a guessed value, whatever its distance.
+     *
+     * @param n the node
+     * @return true, if the node has the tag
+     */
+    public boolean isCandidate(Node n) {
+        return n.hasKey(tag);
+    }
+
+    /**
+     * Checks if the way may give a guessed value, whatever its distance.
+     *
+     * @param w the way
+     * @return true, if the way has the tag
+     */
+    public boolean isCandidate(Way w) {
+        return w.hasKey(tag);
+    }
+
     @Override
     public void visit(Node n) {
         assert aNode != null;
 
-        if (n.hasKey(tag)) {
+        if (isCandidate(n)) {
             double dist = n.getCoor().greatCircleDistance(aNode.getCoor());
             if (dist < minDist && dist < maxDist) {
                 minDist = dist;
@@ -175,7 +195,7 @@ public class GuessedValueHandler implements OsmPrimitiveVisitor {
     public void visit(Way w) {
         assert aNode != null;
 
-        if (w.hasKey(tag)) {
+        if (isCandidate(w)) {
             double dist = OsmUtils.getMinimumDistanceToWay(aNode.getCoor(), w);
             if (dist < minDist && dist < maxDist) {
                 minDist = dist;
@@ -0,0 +1,165 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.fixAddresses;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.osm.visitor.OsmPrimitiveVisitor;
+
+/**
+ * Spatial index of the nodes and ways which may give a guessed value to a {@link GuessedValueHandler}.
+ *
+ * Nodes are put in the cells of a lat/lon grid, and ways in the cells of each of their segments.
+ * {@link #visit(LatLon, GuessedValueHandler)} visits only the primitives whose cells are within the maximum
+ * distance of the handler, in the order they were added. Since the handler only accepts primitives closer
+ * than its maximum distance, and keeps the first of equally close ones, the guess is the same as when
+ * visiting all primitives.
+ */
+final class GuessedValueIndex {
+
+    /** Number of grid cells around the earth, a cell is about 1.2 km high. */
+    static final int CELLS = 1 << 15;
+    private static final double CELL_SIZE = 360.0 / CELLS;
+    /** Segments spanning more cells than this are checked for every address. */
+    private static final int MAX_CELL_SPAN = 16;
+    /** A lower bound of the earth radius used by {@link LatLon#greatCircleDistance}, so that the cells are never too few */
+    private static final double MIN_EARTH_RADIUS = 6300000.0;
+
+    private final List<OsmPrimitive> primitives = new ArrayList<>();
+    private final Map<Long, List<Integer>> cells = new HashMap<>();
+    private final BitSet large = new BitSet();
+
+    /**
+     * Adds a node, if the handler may take its value.
+     * @param n the node
+     * @param handler the handler the index is built for
+     */
+    void add(Node n, GuessedValueHandler handler) {
+        if (!handler.isCandidate(n)) {
+            return;
+        }
+        int index = primitives.size();
+        primitives.add(n);
+        LatLon coor = n.getCoor();
+        if (coor == null) {
+            large.set(index);
+        } else {
+            addToCell(cellX(coor.lon()), cellY(coor.lat()), index);
+        }
+    }
+
+    /**
+     * Adds a way, if the handler may take its value.
+     * @param w the way
+     * @param handler the handler the index is built for
+     */
+    void add(Way w, GuessedValueHandler handler) {
+        if (!handler.isCandidate(w)) {
+            return;
+        }
+        int index = primitives.size();
+        primitives.add(w);
+        List<Node> nodes = w.getNodes();
+        for (int i = 1; i < nodes.size(); i++) {
+            LatLon a = nodes.get(i - 1).getCoor();
+            LatLon b = nodes.get(i).getCoor();
+            if (a == null || b == null) {
+                large.set(index);
+                return;
+            }
+            int minX = cellX(Math.min(a.lon(), b.lon()));
+            int maxX = cellX(Math.max(a.lon(), b.lon()));
+            int minY = cellY(Math.min(a.lat(), b.lat()));
+            int maxY = cellY(Math.max(a.lat(), b.lat()));
+            if (maxX - minX > MAX_CELL_SPAN || maxY - minY > MAX_CELL_SPAN) {
+                large.set(index);
+                return;
+            }
+            for (int x = minX; x <= maxX; x++) {
+                for (int y = minY; y <= maxY; y++) {
+                    addToCell(x, y, index);
+                }
+            }
+        }
+    }
+
+    private void addToCell(int x, int y, int index) {
+        List<Integer> cell = cells.computeIfAbsent(cellKey(x, y), k -> new ArrayList<>());
+        // the segments of a way usually follow each other in the same cell
+        if (cell.isEmpty() || cell.get(cell.size() - 1) != index) {
+            cell.add(index);
+        }
+    }
+
+    /**
+     * Gets the number of indexed primitives.
+     * @return the number of primitives the handler may take its value from
+     */
+    int size() {
+        return primitives.size();
+    }
+
+    /**
+     * Visits the primitives which may be closer to the given coordinate than the maximum distance of the handler.
+     * @param coor the coordinate of the address
+     * @param handler the handler, which must be set to the address
+     */
+    void visit(LatLon coor, GuessedValueHandler handler) {
+        if (coor == null) {
+            return;
+        }
+        BitSet candidates = (BitSet) large.clone();
+
+        // Great circle distances are at least the distance along the meridian, and at least
+        // the distance along the parallel of the latitude the nearest to the pole.
+        double angle = handler.getMaxDistance() / MIN_EARTH_RADIUS;
+        double dLat = Math.toDegrees(angle);
+        double maxLat = Math.min(90.0, Math.abs(coor.lat()) + dLat);
+        double sinHalfLon = Math.sin(angle / 2) / Math.cos(Math.toRadians(maxLat));
+        if (sinHalfLon >= Math.sin(Math.toRadians(45))) {
+            // around the poles or farther than a quarter of the earth
+            candidates.set(0, primitives.size());
+        } else {
+            double dLon = Math.toDegrees(2 * Math.asin(sinHalfLon));
+            int minY = cellY(coor.lat() - dLat);
+            int maxY = cellY(coor.lat() + dLat);
+            int minX = cellX(coor.lon() - dLon);
+            int maxX = cellX(coor.lon() + dLon);
+            for (int x = minX; x <= maxX; x++) {
+                for (int y = minY; y <= maxY; y++) {
+                    List<Integer> cell = cells.get(cellKey(Math.floorMod(x, CELLS), y));
+                    if (cell != null) {
+                        for (int index : cell) {
+                            candidates.set(index);
+                        }
+                    }
+                }
+            }
+        }
+
+        OsmPrimitiveVisitor visitor = handler;
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            primitives.get(i).accept(visitor);
+        }
+    }
+
+    private static int cellX(double lon) {
+        // not wrapped, so that the cells of a query are consecutive
+        return (int) Math.floor((lon + 180.0) / CELL_SIZE);
+    }
+
+    private static int cellY(double lat) {
+        return (int) Math.floor((Math.max(-90.0, Math.min(90.0, lat)) + 90.0) / CELL_SIZE);
+    }
+
+    private static long cellKey(int x, int y) {
+        return ((long) Math.floorMod(x, CELLS) << 32) | y;
+    }
+}
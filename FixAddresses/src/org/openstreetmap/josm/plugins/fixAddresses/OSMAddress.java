@@ -34,6 +34,10 @@ public class OSMAddress extends OSMEntityBase {
 
     public OSMAddress(OsmPrimitive osmObject) {
         super(osmObject);
+
+        // new addresses also take the values of interpolations and relations
+        isPartOfInterpolation = OsmUtils.getValuesFromAddressInterpolation(this);
+        isPartOfAssocStreetRel = OsmUtils.getValuesFromRelation(this);
     }
 
     @Override
@@ -3,6 +3,7 @@ package org.openstreetmap.josm.plugins.fixAddresses.gui;
 
 import static org.openstreetmap.josm.tools.I18n.tr;
 
+import java.util.Collections;
 import java.util.LinkedList;
 
 import javax.swing.JTable;
@@ -86,7 +87,7 @@ public class IncompleteAddressesDialog extends ToggleDialog implements DataSetLi
 
     @Override
     public void dataChanged(DataChangedEvent event) {
-        container.invalidate();
+        container.update(event);
     }
 
     @Override
@@ -101,27 +102,27 @@ public class IncompleteAddressesDialog extends ToggleDialog implements DataSetLi
 
     @Override
     public void primitivesAdded(PrimitivesAddedEvent event) {
-        container.invalidate();
+        container.update(event);
     }
 
     @Override
     public void primitivesRemoved(PrimitivesRemovedEvent event) {
-        container.invalidate();
+        container.update(event);
     }
 
     @Override
     public void relationMembersChanged(RelationMembersChangedEvent event) {
-        container.invalidate();
+        container.update(event);
     }
 
     @Override
     public void tagsChanged(TagsChangedEvent event) {
-        container.invalidate();
+        container.update(event);
     }
 
     @Override
     public void wayNodesChanged(WayNodesChangedEvent event) {
-        container.invalidate();
+        container.update(event);
     }
 
     @Override
@@ -148,8 +149,8 @@ public class IncompleteAddressesDialog extends ToggleDialog implements DataSetLi
 
     @Override
     public void entityChanged(IOSMEntity node) {
-        if (SwingUtilities.isEventDispatchThread()) {
-            container.invalidate();
+        if (SwingUtilities.isEventDispatchThread() && node.getOsmObject() != null) {
+            container.update(Collections.singleton(node.getOsmObject()));
         }
     }
 }
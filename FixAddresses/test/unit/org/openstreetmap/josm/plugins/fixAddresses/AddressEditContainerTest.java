@@ -0,0 +1,347 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.fixAddresses;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataSetListenerAdapter;
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+/**
+ * Unit test of {@link AddressEditContainer} updates.
+ */
+public class AddressEditContainerTest {
+
+    private static final String[] STREETS = {"Main Street", "Station Road", "Church Lane", "Mill Road", "Nowhere"};
+
+    @Rule
+    public JOSMTestRules rules = new JOSMTestRules().preferences().projection();
+
+    private final Random random = new Random(42);
+    private final List<AbstractDatasetChangedEvent> events = new ArrayList<>();
+    private DataSet ds;
+
+    /**
+     * Sets up the plugin preferences and the edit layer.
+     * @throws ReflectiveOperationException if the preferences cannot be set
+     */
+    @Before
+    public void setUp() throws ReflectiveOperationException {
+        Field preferences = FixAddressesPlugin.class.getDeclaredField("preferences");
+        preferences.setAccessible(true);
+        preferences.set(null, new FixAddressesPreferences.Factory().createPreferenceSetting());
+
+        ds = new DataSet();
+        MainApplication.getLayerManager().addLayer(new OsmDataLayer(ds, "test", null));
+        ds.addDataSetListener(new DataSetListenerAdapter(events::add));
+    }
+
+    private Node addNode(String... tags) {
+        Node n = new Node(new LatLon(47 + random.nextDouble() / 100, 8 + random.nextDouble() / 100));
+        for (int i = 0; i < tags.length; i += 2) {
+            n.put(tags[i], tags[i + 1]);
+        }
+        ds.addPrimitive(n);
+        return n;
+    }
+
+    private Way addWay(List<Node> nodes, String... tags) {
+        Way w = new Way();
+        w.setNodes(nodes);
+        for (int i = 0; i < tags.length; i += 2) {
+            w.put(tags[i], tags[i + 1]);
+        }
+        ds.addPrimitive(w);
+        return w;
+    }
+
+    private String randomStreet() {
+        return STREETS[random.nextInt(STREETS.length)];
+    }
+
+    private <T> T pick(Collection<T> primitives) {
+        List<T> list = new ArrayList<>(primitives);
+        return list.isEmpty() ? null : list.get(random.nextInt(list.size()));
+    }
+
+    private Node randomAddressNode() {
+        List<Node> nodes = new ArrayList<>();
+        for (Node n : ds.getNodes()) {
+            if (!n.isDeleted() && TagUtils.isAddress(n)) {
+                nodes.add(n);
+            }
+        }
+        return pick(nodes);
+    }
+
+    private void putAddressTags(OsmPrimitive osm) {
+        osm.put(TagConstants.ADDR_HOUSENUMBER_TAG, Integer.toString(1 + random.nextInt(50)));
+        if (random.nextInt(4) > 0) {
+            osm.put(TagConstants.ADDR_STREET_TAG, randomStreet());
+        }
+        if (random.nextBoolean()) {
+            osm.put(TagConstants.ADDR_CITY_TAG, "Springfield");
+        }
+        if (random.nextBoolean()) {
+            osm.put(TagConstants.ADDR_POSTCODE_TAG, "8000");
+        }
+    }
+
+    /**
+     * Makes a random change of the data set, like a command would do.
+     */
+    private void randomEdit() {
+        Node n;
+        Way w;
+        switch (random.nextInt(10)) {
+        case 0: // new address
+            putAddressTags(addNode());
+            break;
+        case 1: // change an address
+            n = randomAddressNode();
+            if (n != null) {
+                switch (random.nextInt(4)) {
+                case 0:
+                    n.put(TagConstants.ADDR_STREET_TAG, randomStreet());
+                    break;
+                case 1:
+                    n.remove(TagConstants.ADDR_CITY_TAG);
+                    break;
+                case 2:
+                    n.removeAll();
+                    break;
+                default:
+                    putAddressTags(n);
+                }
+            }
+            break;
+        case 2: // remove a node
+            n = pick(ds.getNodes());
+            if (n != null && n.getReferrers().isEmpty()) {
+                ds.removePrimitive(n);
+            }
+            break;
+        case 3: // new street
+            if (random.nextInt(4) > 0) {
+                addWay(Arrays.asList(addNode(), addNode()), "highway", "residential", "name", randomStreet());
+            } else {
+                addWay(Arrays.asList(addNode(), addNode()), "highway", "residential");
+            }
+            break;
+        case 4: // change a way
+            w = pick(ds.getWays());
+            if (w != null) {
+                switch (random.nextInt(4)) {
+                case 0:
+                    w.put("name", randomStreet());
+                    break;
+                case 1:
+                    w.remove("name");
+                    break;
+                case 2:
+                    w.put("highway", random.nextBoolean() ? "residential" : null);
+                    break;
+                default:
+                    if (w.getReferrers().isEmpty()) {
+                        ds.removePrimitive(w);
+                    }
+                }
+            }
+            break;
+        case 5: // address interpolation, or changed nodes of a way
+            w = pick(ds.getWays());
+            Node a = randomAddressNode();
+            Node b = randomAddressNode();
+            if (w != null && random.nextBoolean()) {
+                List<Node> nodes = new ArrayList<>(w.getNodes());
+                if (nodes.size() > 2 && random.nextBoolean()) {
+                    nodes.remove(1);
+                } else if (a != null) {
+                    nodes.add(1, a);
+                }
+                w.setNodes(nodes);
+            } else if (a != null && b != null && a != b) {
+                addWay(Arrays.asList(a, b), "addr:interpolation", "all", TagConstants.ADDR_STREET_TAG, randomStreet(),
+                        TagConstants.ADDR_CITY_TAG, "Shelbyville");
+            }
+            break;
+        case 6: // associated street relation
+            Relation r = pick(ds.getRelations());
+            if (r == null || random.nextInt(4) == 0) {
+                r = new Relation();
+                r.put("type", "associatedStreet");
+                ds.addPrimitive(r);
+            }
+            switch (random.nextInt(4)) {
+            case 0:
+                w = pick(ds.getWays());
+                if (w != null) {
+                    r.addMember(new RelationMember("street", w));
+                }
+                break;
+            case 1:
+                n = randomAddressNode();
+                if (n != null) {
+                    r.addMember(new RelationMember("house", n));
+                }
+                break;
+            case 2:
+                if (r.getMembersCount() > 0) {
+                    r.removeMember(random.nextInt(r.getMembersCount()));
+                }
+                break;
+            default:
+                r.put(TagConstants.ADDR_POSTCODE_TAG, random.nextBoolean() ? "8001" : null);
+            }
+            break;
+        case 7: // building with address
+            Node first = addNode();
+            w = addWay(Arrays.asList(first, addNode(), addNode(), first), "building", "yes");
+            putAddressTags(w);
+            break;
+        case 8: // not an address
+            n = pick(ds.getNodes());
+            if (n != null && !TagUtils.isAddress(n)) {
+                n.put("amenity", "bench");
+            }
+            break;
+        default: // moved node
+            n = pick(ds.getNodes());
+            if (n != null) {
+                n.setCoor(new LatLon(47 + random.nextDouble() / 100, 8 + random.nextDouble() / 100));
+            }
+        }
+    }
+
+    private void applyEvents(AddressEditContainer container) {
+        // one batch, as consolidated by the data set event manager
+        container.update(new DataChangedEvent(ds, new ArrayList<>(events)));
+        events.clear();
+    }
+
+    private static List<Long> ids(Collection<? extends IOSMEntity> entities) {
+        List<Long> ids = new ArrayList<>();
+        if (entities != null) {
+            for (IOSMEntity entity : entities) {
+                ids.add(entity.getOsmObject().getUniqueId());
+            }
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    private static String describe(AddressEditContainer container) {
+        StringBuilder sb = new StringBuilder();
+        for (OSMStreet street : container.getStreetList()) {
+            sb.append(street.getName()).append(": segments ").append(ids(street.getChildren()))
+              .append(", addresses ").append(ids(street.getAddresses())).append('\n');
+        }
+        sb.append("incomplete ").append(ids(container.getIncompleteAddresses())).append('\n');
+        sb.append("unresolved ").append(ids(container.getUnresolvedAddresses())).append('\n');
+
+        List<String> problems = new ArrayList<>();
+        for (IProblem problem : container.getProblems()) {
+            problems.add(problem.getSource().getOsmObject().getUniqueId() + " " + problem.getDescription());
+        }
+        Collections.sort(problems);
+        sb.append("problems ").append(problems);
+        return sb.toString();
+    }
+
+    /**
+     * Checks that updates give the same streets, addresses and problems as a full rebuild,
+     * after each of a random sequence of edits.
+     */
+    @Test
+    public void testSameAsInvalidate() {
+        for (int i = 0; i < 20; i++) {
+            putAddressTags(addNode());
+            addWay(Arrays.asList(addNode(), addNode()), "highway", "residential", "name", randomStreet());
+        }
+        AddressEditContainer container = new AddressEditContainer();
+        container.invalidate();
+        events.clear();
+
+        for (int i = 0; i < 500; i++) {
+            ds.beginUpdate();
+            try {
+                for (int j = random.nextInt(3); j >= 0; j--) {
+                    randomEdit();
+                }
+            } finally {
+                ds.endUpdate();
+            }
+            applyEvents(container);
+            String updated = describe(container);
+
+            AddressEditContainer reference = new AddressEditContainer();
+            reference.invalidate();
+            OSMEntityBase.removeChangedListener(reference);
+            assertEquals("after edit " + i, describe(reference), updated);
+        }
+    }
+
+    /**
+     * Checks that clients are notified once per batch, and only if the container is affected.
+     */
+    @Test
+    public void testNotifications() {
+        Node address = addNode(TagConstants.ADDR_HOUSENUMBER_TAG, "1", TagConstants.ADDR_STREET_TAG, "Main Street");
+        Node bench = addNode("amenity", "bench");
+        AddressEditContainer container = new AddressEditContainer();
+        container.invalidate();
+        events.clear();
+
+        int[] notifications = new int[1];
+        container.addChangedListener(new IAddressEditContainerListener() {
+            @Override
+            public void containerChanged(AddressEditContainer c) {
+                notifications[0]++;
+            }
+
+            @Override
+            public void entityChanged(IOSMEntity entity) {
+                // not fired by updates
+            }
+        });
+
+        bench.put("backrest", "yes");
+        bench.setCoor(new LatLon(47.1, 8.1));
+        applyEvents(container);
+        assertEquals(0, notifications[0]);
+
+        ds.beginUpdate();
+        try {
+            addWay(Arrays.asList(addNode(), addNode()), "highway", "residential", "name", "Main Street");
+            address.put(TagConstants.ADDR_CITY_TAG, "Springfield");
+            addNode(TagConstants.ADDR_HOUSENUMBER_TAG, "2", TagConstants.ADDR_STREET_TAG, "Main Street");
+        } finally {
+            ds.endUpdate();
+        }
+        applyEvents(container);
+        assertEquals(1, notifications[0]);
+        assertEquals(0, container.getNumberOfUnresolvedAddresses());
+        assertEquals(2, container.getStreetDict().get("Main Street").getNumberOfAddresses());
+    }
+}
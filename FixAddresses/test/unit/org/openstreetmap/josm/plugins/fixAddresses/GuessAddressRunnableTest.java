@@ -0,0 +1,189 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.fixAddresses;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.plugins.fixAddresses.GuessAddressRunnable.AddressGuesser;
+import org.openstreetmap.josm.plugins.fixAddresses.GuessAddressRunnable.GuessedValue;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+/**
+ * Unit test of {@link GuessAddressRunnable} and {@link GuessedValueIndex}.
+ */
+public class GuessAddressRunnableTest {
+
+    /** Distance between two streets, in degrees */
+    private static final double BLOCK = 0.002;
+
+    @Rule
+    public JOSMTestRules rules = new JOSMTestRules().preferences();
+
+    private static Node addNode(DataSet ds, double lat, double lon, String... tags) {
+        Node n = new Node(new LatLon(lat, lon));
+        for (int i = 0; i < tags.length; i += 2) {
+            n.put(tags[i], tags[i + 1]);
+        }
+        ds.addPrimitive(n);
+        return n;
+    }
+
+    private static Way addWay(DataSet ds, List<Node> nodes, String... tags) {
+        Way w = new Way();
+        w.setNodes(nodes);
+        for (int i = 0; i < tags.length; i += 2) {
+            w.put(tags[i], tags[i + 1]);
+        }
+        ds.addPrimitive(w);
+        return w;
+    }
+
+    /**
+     * Creates a grid of streets with tagged nodes, and address nodes without street, postcode and city.
+     */
+    private static List<OSMAddress> createStreetNetwork(DataSet ds, int streets, int addresses) {
+        Random random = new Random(42);
+        double lat0 = 47.0;
+        double lon0 = 8.0;
+        double size = streets * BLOCK;
+
+        for (int i = 0; i < streets; i++) {
+            List<Node> row = new ArrayList<>();
+            List<Node> column = new ArrayList<>();
+            for (int j = 0; j < streets; j++) {
+                row.add(addNode(ds, lat0 + i * BLOCK, lon0 + j * BLOCK));
+                column.add(addNode(ds, lat0 + j * BLOCK, lon0 + i * BLOCK));
+            }
+            addWay(ds, row, "highway", "residential", "name", "Row " + i);
+            addWay(ds, column, "highway", "residential", "name", "Column " + i);
+        }
+        // a long road, longer than the grid cells of the index
+        addWay(ds, Arrays.asList(addNode(ds, lat0 - 0.5, lon0 + size / 2), addNode(ds, lat0 + 0.5, lon0 + size / 2)),
+                "highway", "primary", "name", "Long road");
+        // a way without name is no street
+        addWay(ds, Arrays.asList(addNode(ds, lat0, lon0), addNode(ds, lat0 + size, lon0 + size)), "highway", "service");
+
+        for (int i = 0; i < streets * streets / 8; i++) {
+            addNode(ds, lat0 + random.nextDouble() * size, lon0 + random.nextDouble() * size,
+                    TagConstants.ADDR_POSTCODE_TAG, Integer.toString(1000 + i));
+        }
+        for (int i = 0; i < 5; i++) {
+            double lat = lat0 + random.nextDouble() * size;
+            double lon = lon0 + random.nextDouble() * size;
+            addNode(ds, lat, lon, TagConstants.ADDR_CITY_TAG, "City " + i, TagConstants.ADDR_COUNTRY_TAG, "CH");
+            // same place, the first one must win
+            addNode(ds, lat, lon, TagConstants.ADDR_CITY_TAG, "Other city " + i, TagConstants.ADDR_POSTCODE_TAG, "9999");
+        }
+
+        List<OSMAddress> result = new ArrayList<>();
+        for (int i = 0; i < addresses; i++) {
+            Node n = addNode(ds, lat0 + (random.nextDouble() * 1.2 - 0.1) * size, lon0 + (random.nextDouble() * 1.2 - 0.1) * size,
+                    TagConstants.ADDR_HOUSENUMBER_TAG, Integer.toString(i));
+            result.add(new OSMAddress(n));
+        }
+        return result;
+    }
+
+    /**
+     * Guesses the values by visiting all nodes and ways for each address, as before the index.
+     */
+    private static List<String> guessByFullScan(DataSet ds, List<OSMAddress> addresses) {
+        GuessedValueHandler[] wayGuessers = GuessAddressRunnable.createWayGuessers();
+        GuessedValueHandler[] nodeGuessers = GuessAddressRunnable.createNodeGuessers();
+        List<String> result = new ArrayList<>();
+        for (OSMAddress aNode : addresses) {
+            StringBuilder sb = new StringBuilder();
+            for (GuessedValueHandler guesser : wayGuessers) {
+                guesser.setAddressNode(aNode);
+                for (Way way : ds.getWays()) {
+                    way.accept(guesser);
+                }
+                append(sb, guesser.getTag(), guesser.getCurrentValue(), guesser.getSourceNode());
+            }
+            for (GuessedValueHandler guesser : nodeGuessers) {
+                guesser.setAddressNode(aNode);
+                for (Node node : ds.getNodes()) {
+                    node.accept(guesser);
+                }
+                append(sb, guesser.getTag(), guesser.getCurrentValue(), guesser.getSourceNode());
+            }
+            result.add(sb.toString());
+        }
+        return result;
+    }
+
+    private static List<String> guessByIndex(AddressGuesser guesser, List<OSMAddress> addresses) {
+        List<String> result = new ArrayList<>();
+        for (List<GuessedValue> values : guesser.guess(addresses)) {
+            StringBuilder sb = new StringBuilder();
+            for (GuessedValue value : values) {
+                append(sb, value.tag, value.value, value.source);
+            }
+            result.add(sb.toString());
+        }
+        return result;
+    }
+
+    private static void append(StringBuilder sb, String tag, String value, Object source) {
+        if (value != null) {
+            sb.append(tag).append('=').append(value).append('@').append(System.identityHashCode(source)).append(';');
+        }
+    }
+
+    /**
+     * Checks that the indexed guesses are the same as visiting all nodes and ways.
+     */
+    @Test
+    public void testSameAsFullScan() {
+        DataSet ds = new DataSet();
+        List<OSMAddress> addresses = createStreetNetwork(ds, 30, 2000);
+        List<String> expected = guessByFullScan(ds, addresses);
+        List<String> actual = guessByIndex(new AddressGuesser(ds), addresses);
+        assertEquals(expected, actual);
+
+        int guessed = 0;
+        for (String guess : actual) {
+            if (guess.contains(TagConstants.ADDR_STREET_TAG)) {
+                guessed++;
+            }
+        }
+        assertTrue(guessed > addresses.size() / 2);
+    }
+
+    /**
+     * Reports the addresses guessed per second by visiting all nodes and ways, and with the index.
+     */
+    @Test
+    public void testBenchmark() {
+        DataSet ds = new DataSet();
+        List<OSMAddress> addresses = createStreetNetwork(ds, 100, 20000);
+
+        List<OSMAddress> sample = addresses.subList(0, 200);
+        long start = System.nanoTime();
+        guessByFullScan(ds, sample);
+        double fullScan = sample.size() / ((System.nanoTime() - start) / 1e9);
+
+        start = System.nanoTime();
+        AddressGuesser guesser = new AddressGuesser(ds);
+        double build = (System.nanoTime() - start) / 1e6;
+        for (int i = 0; i < addresses.size(); i += GuessAddressRunnable.CHUNK_SIZE) {
+            guesser.guess(addresses.subList(i, Math.min(i + GuessAddressRunnable.CHUNK_SIZE, addresses.size())));
+        }
+        double indexed = addresses.size() / ((System.nanoTime() - start) / 1e9);
+
+        System.out.println(String.format("Address guessing on %d nodes and %d ways: %.0f addresses/s full scan, "
+                + "%.0f addresses/s indexed (index built in %.0f ms)",
+                ds.getNodes().size(), ds.getWays().size(), fullScan, indexed, build));
+    }
+}
@@ -27,7 +27,6 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.text.DecimalFormat;
@@ -43,7 +42,6 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Scanner;
 import java.util.concurrent.CancellationException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -80,22 +78,11 @@ import javax.swing.event.ListSelectionListener;
 import javax.swing.table.DefaultTableModel;
 import javax.swing.text.JTextComponent;
 
-import org.geotools.geometry.jts.JTS;
-import org.geotools.referencing.CRS;
-import org.geotools.referencing.crs.DefaultGeocentricCRS;
-import org.geotools.referencing.crs.DefaultGeographicCRS;
-import org.opengis.geometry.MismatchedDimensionException;
-import org.opengis.referencing.FactoryException;
-import org.opengis.referencing.crs.CoordinateReferenceSystem;
-import org.opengis.referencing.operation.MathTransform;
-import org.opengis.referencing.operation.TransformException;
 import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.actions.JosmAction;
 import org.openstreetmap.josm.command.ChangePropertyCommand;
-import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.Tag;
-import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.data.preferences.BooleanProperty;
 import org.openstreetmap.josm.data.preferences.IntegerProperty;
 import org.openstreetmap.josm.gui.ExtendedDialog;
@@ -109,33 +96,15 @@ import org.openstreetmap.josm.gui.util.GuiHelper;
 import org.openstreetmap.josm.gui.util.WindowGeometry;
 import org.openstreetmap.josm.gui.widgets.PopupMenuLauncher;
 import org.openstreetmap.josm.io.XmlWriter;
-import org.openstreetmap.josm.plugins.osmrec.container.OSMWay;
 import org.openstreetmap.josm.plugins.osmrec.core.TrainWorker;
 import org.openstreetmap.josm.plugins.osmrec.extractor.LanguageDetector;
 import org.openstreetmap.josm.plugins.osmrec.extractor.SampleModelsExtractor;
-import org.openstreetmap.josm.plugins.osmrec.features.ClassFeatures;
-import org.openstreetmap.josm.plugins.osmrec.features.GeometryFeatures;
-import org.openstreetmap.josm.plugins.osmrec.features.OSMClassification;
-import org.openstreetmap.josm.plugins.osmrec.features.TextualFeatures;
-import org.openstreetmap.josm.plugins.osmrec.parsers.Mapper;
-import org.openstreetmap.josm.plugins.osmrec.parsers.OSMParser;
-import org.openstreetmap.josm.plugins.osmrec.parsers.Ontology;
-import org.openstreetmap.josm.plugins.osmrec.parsers.TextualStatistics;
 import org.openstreetmap.josm.plugins.osmrec.personalization.UserDataExtractAndTrainWorker;
 import org.openstreetmap.josm.tools.GBC;
 import org.openstreetmap.josm.tools.Logging;
 import org.openstreetmap.josm.tools.Shortcut;
 
-import com.vividsolutions.jts.geom.Coordinate;
-import com.vividsolutions.jts.geom.Geometry;
-import com.vividsolutions.jts.geom.GeometryFactory;
-import com.vividsolutions.jts.geom.LineString;
-import com.vividsolutions.jts.geom.LinearRing;
-import com.vividsolutions.jts.geom.Point;
-import com.vividsolutions.jts.geom.Polygon;
-
 import de.bwaldvogel.liblinear.FeatureNode;
-import de.bwaldvogel.liblinear.Linear;
 import de.bwaldvogel.liblinear.Model;
 
 /**
@@ -155,8 +124,6 @@ class OSMRecPluginHelper {
     private static String MAIN_PATH;
     private static String MODEL_PATH;
     private static String TEXTUAL_LIST_PATH;
-    private static Map<String, List<String>> indirectClasses;
-    private static Map<String, Integer> indirectClassesWithIDs;
     private static LanguageDetector languageDetector;
     private static String bestModelPath;
     private boolean modelWithClasses;
@@ -1435,17 +1402,9 @@ class OSMRecPluginHelper {
             configureContextsensitiveHelp("/Dialog/AddValue", true /* show help button */);
             final AddTagsDialog addTagsDialog = this;
 
-            loadOntology();
             //if the user did not train a model by running the training process
             //the list does not exist in a file and so we load the default list from the jar.
-
-            System.out.println("path for textual: " + TEXTUAL_LIST_PATH);
-            File textualListFile = new File(TEXTUAL_LIST_PATH);
-            if (textualListFile.exists()) {
-                loadTextualList(textualListFile);
-            } else {
-                loadDefaultTextualList();
-            }
+            textualList = RecommendationService.getInstance().getTextualList(new File(TEXTUAL_LIST_PATH));
 
             //if training process has not been performed, we use two sample SVM models, extracted from the jar
 
@@ -1860,7 +1819,7 @@ class OSMRecPluginHelper {
                         modelFile = new File(modelDirectory.getAbsolutePath() + "/model_with_classes");
                         try {
                             System.out.println("try to load model: " + modelFile.getAbsolutePath());
-                            modelSVM = Model.load(modelFile);
+                            modelSVM = RecommendationService.getInstance().getModel(modelFile);
                             System.out.println("model loaded!");
 
                         } catch (IOException ex) {
@@ -1873,7 +1832,7 @@ class OSMRecPluginHelper {
                         modelFile = new File(modelDirectory.getAbsolutePath() + "/best_model");
                         try {
                             System.out.println("try to load model: " + modelFile.getAbsolutePath());
-                            modelSVM = Model.load(modelFile);
+                            modelSVM = RecommendationService.getInstance().getModel(modelFile);
                             System.out.println("model loaded!");
 
                         } catch (IOException ex) {
@@ -1916,7 +1875,7 @@ class OSMRecPluginHelper {
                     }
                     try {
                         System.out.println("try to load model: " + modelFile.getAbsolutePath());
-                        modelSVM = Model.load(modelFile);
+                        modelSVM = RecommendationService.getInstance().getModel(modelFile);
                         System.out.println("model loaded!");
 
                     } catch (IOException ex) {
@@ -1937,7 +1896,7 @@ class OSMRecPluginHelper {
 
                     try {
                         System.out.println("try to load model: " + modelFile.getAbsolutePath());
-                        modelSVM = Model.load(modelFile);
+                        modelSVM = RecommendationService.getInstance().getModel(modelFile);
                         System.out.println("model loaded!");
 
                     } catch (IOException ex) {
@@ -1958,7 +1917,7 @@ class OSMRecPluginHelper {
 
                 try {
                     System.out.println("try to load model: " + modelFile.getAbsolutePath());
-                    modelSVM = Model.load(modelFile);
+                    modelSVM = RecommendationService.getInstance().getModel(modelFile);
                     System.out.println("model loaded!");
 
                 } catch (IOException ex) {
@@ -1972,18 +1931,6 @@ class OSMRecPluginHelper {
         private void useCombinedSVMmodels(Collection<OsmPrimitive> sel, boolean useClassFeatures) {
             System.out.println("The system will combine " + filesAndWeights.size() + " SVM models.");
 
-            MathTransform transform = null;
-            GeometryFactory geometryFactory = new GeometryFactory();
-            CoordinateReferenceSystem sourceCRS = DefaultGeographicCRS.WGS84;
-            CoordinateReferenceSystem targetCRS = DefaultGeocentricCRS.CARTESIAN;
-            try {
-                transform = CRS.findMathTransform(sourceCRS, targetCRS, true);
-
-            } catch (FactoryException ex) {
-                Logger.getLogger(OSMRecPluginHelper.class.getName()).log(Level.SEVERE, null, ex);
-            }
-
-            OSMWay selectedInstance;
             List<OsmPrimitive> osmPrimitiveSelection = new ArrayList<>(sel);
             OsmPrimitive s;
 
@@ -1994,85 +1941,11 @@ class OSMRecPluginHelper {
                 return;
             }
 
-            selectedInstance = new OSMWay();
-            for (Way selectedWay : s.getDataSet().getSelectedWays()) {
-                List<Node> selectedWayNodes = selectedWay.getNodes();
-                for (Node node : selectedWayNodes) {
-                    node.getCoor();
-                    if (node.isLatLonKnown()) {
-                        double lat = node.getCoor().lat();
-                        double lon = node.getCoor().lon();
-
-                        Coordinate sourceCoordinate = new Coordinate(lon, lat);
-                        Coordinate targetGeometry = null;
-                        try {
-                            targetGeometry = JTS.transform(sourceCoordinate, null, transform);
-                        } catch (MismatchedDimensionException | TransformException ex) {
-                            Logger.getLogger(OSMParser.class.getName()).log(Level.SEVERE, null, ex);
-                        }
-
-                        Geometry geom = geometryFactory.createPoint(new Coordinate(targetGeometry));
-                        selectedInstance.addNodeGeometry(geom);
-                    }
-                }
-            }
-            Geometry fullGeom = geometryFactory.buildGeometry(selectedInstance.getNodeGeometries());
-            if ((selectedInstance.getNodeGeometries().size() > 3) &&
-                    selectedInstance.getNodeGeometries().get(0).equals(selectedInstance.getNodeGeometries()
-                            .get(selectedInstance.getNodeGeometries().size()-1))) {
-                //checks if the beginning and ending node are the same and the number of nodes are more than 3.
-                //the nodes must be more than 3, because jts does not allow a construction of a linear ring with less points.
-                LinearRing linear = geometryFactory.createLinearRing(fullGeom.getCoordinates());
-                Polygon poly = new Polygon(linear, null, geometryFactory);
-                selectedInstance.setGeometry(poly);
-
-                System.out.println("\n\npolygon");
-            } else if (selectedInstance.getNodeGeometries().size() > 1) {
-                //it is an open geometry with more than one nodes, make it linestring
-                System.out.println("\n\nlinestring");
-                LineString lineString = geometryFactory.createLineString(fullGeom.getCoordinates());
-                selectedInstance.setGeometry(lineString);
-            } else { //we assume all the rest geometries are points
-                System.out.println("\n\npoint");
-                Point point = geometryFactory.createPoint(fullGeom.getCoordinate());
-                selectedInstance.setGeometry(point);
-            }
-
-            Map<String, String> selectedTags = s.getInterestingTags();
-            selectedInstance.setAllTags(selectedTags);
-
             //construct vector
-            if (selectedInstance != null) {
-                int id;
-
-                OSMClassification classifier = new OSMClassification();
-                classifier.calculateClasses(selectedInstance, mappings, mapperWithIDs, indirectClasses, indirectClassesWithIDs);
-
-                if (useClassFeatures) {
-                    ClassFeatures classFeatures = new ClassFeatures();
-                    classFeatures.createClassFeatures(selectedInstance, mappings, mapperWithIDs, indirectClasses, indirectClassesWithIDs);
-                    id = 1422;
-                } else {
-                    id = 1;
-                }
-
-                GeometryFeatures geometryFeatures = new GeometryFeatures(id);
-                geometryFeatures.createGeometryFeatures(selectedInstance);
-                id = geometryFeatures.getLastID();
-                TextualFeatures textualFeatures = new TextualFeatures(id, textualList, languageDetector);
-                textualFeatures.createTextualFeatures(selectedInstance);
-
-                List<FeatureNode> featureNodeList = selectedInstance.getFeatureNodeList();
-
-                FeatureNode[] featureNodeArray = new FeatureNode[featureNodeList.size()];
-
-                int i = 0;
-                for (FeatureNode featureNode : featureNodeList) {
-                    featureNodeArray[i] = featureNode;
-                    i++;
-                }
-                FeatureNode[] testInstance2 = featureNodeArray;
-
+            RecommendationService service = RecommendationService.getInstance();
+            FeatureNode[] testInstance2 = service.getFeatures(s, s.getDataSet().getSelectedWays(), useClassFeatures,
+                    textualList, languageDetector);
+            if (testInstance2 != null) {
                 //compute prediction list for every model
                 int[] ranks = new int[10];
 
@@ -2087,36 +1960,24 @@ class OSMRecPluginHelper {
                 for (File modelFile : alignedFilesAndWeights.keySet()) {
 
                     try {
-                        modelSVM = Model.load(modelFile);
+                        modelSVM = service.getModel(modelFile);
                     } catch (IOException ex) {
                         Logger.getLogger(TrainWorker.class.getName()).log(Level.SEVERE, null, ex);
                     }
                     modelSVMLabelSize = modelSVM.getLabels().length;
                     modelSVMLabels = modelSVM.getLabels();
 
-                    Map<Integer, Integer> mapLabelsToIDs = new HashMap<>();
-                    for (int h = 0; h < modelSVMLabelSize; h++) {
-                        mapLabelsToIDs.put(modelSVMLabels[h], h);
-                    }
-                    double[] scores = new double[modelSVMLabelSize];
-                    Linear.predictValues(modelSVM, testInstance2, scores);
-
-                    Map<Double, Integer> scoresValues = new HashMap<>();
-                    for (int h = 0; h < scores.length; h++) {
-                        scoresValues.put(scores[h], h);
-                    }
-
-                    Arrays.sort(scores);
-                    int predicted1 = modelSVMLabels[scoresValues.get(scores[scores.length-1])];
-                    int predicted2 = modelSVMLabels[scoresValues.get(scores[scores.length-2])];
-                    int predicted3 = modelSVMLabels[scoresValues.get(scores[scores.length-3])];
-                    int predicted4 = modelSVMLabels[scoresValues.get(scores[scores.length-4])];
-                    int predicted5 = modelSVMLabels[scoresValues.get(scores[scores.length-5])];
-                    int predicted6 = modelSVMLabels[scoresValues.get(scores[scores.length-6])];
-                    int predicted7 = modelSVMLabels[scoresValues.get(scores[scores.length-7])];
-                    int predicted8 = modelSVMLabels[scoresValues.get(scores[scores.length-8])];
-                    int predicted9 = modelSVMLabels[scoresValues.get(scores[scores.length-9])];
-                    int predicted10 = modelSVMLabels[scoresValues.get(scores[scores.length-10])];
+                    int[] preds = service.predict(modelSVM, testInstance2, 10);
+                    int predicted1 = preds[0];
+                    int predicted2 = preds[1];
+                    int predicted3 = preds[2];
+                    int predicted4 = preds[3];
+                    int predicted5 = preds[4];
+                    int predicted6 = preds[5];
+                    int predicted7 = preds[6];
+                    int predicted8 = preds[7];
+                    int predicted9 = preds[8];
+                    int predicted10 = preds[9];
 
                     String[] predictedTags = new String[10];
                     for (Map.Entry<String, Integer> entry : mapperWithIDs.entrySet()) {
@@ -2184,27 +2045,16 @@ class OSMRecPluginHelper {
                         }
                     }
                 }
+                Logging.debug("OSMRec: {0}", service.getStatistics());
             }
         }
 
         private void createOSMObject(Collection<OsmPrimitive> sel) {
 
-            MathTransform transform = null;
-            GeometryFactory geometryFactory = new GeometryFactory();
-            CoordinateReferenceSystem sourceCRS = DefaultGeographicCRS.WGS84;
-            CoordinateReferenceSystem targetCRS = DefaultGeocentricCRS.CARTESIAN;
-            try {
-                transform = CRS.findMathTransform(sourceCRS, targetCRS, true);
-
-            } catch (FactoryException ex) {
-                Logger.getLogger(OSMRecPluginHelper.class.getName()).log(Level.SEVERE, null, ex);
-            }
-
             //fire an error to the user if he has multiple selection from map
 
             //we consider simple (one instance) selection, so we get the first of the sel list
 
-            OSMWay selectedInstance;
             List<OsmPrimitive> osmPrimitiveSelection = new ArrayList<>(sel);
             OsmPrimitive s;
 
@@ -2215,111 +2065,12 @@ class OSMRecPluginHelper {
                 return;
             }
 
-            selectedInstance = new OSMWay();
-            for (Way selectedWay : s.getDataSet().getSelectedWays()) {
-                List<Node> selectedWayNodes = selectedWay.getNodes();
-                for (Node node : selectedWayNodes) {
-                    node.getCoor();
-                    if (node.isLatLonKnown()) {
-                        double lat = node.getCoor().lat();
-                        double lon = node.getCoor().lon();
-
-                        Coordinate sourceCoordinate = new Coordinate(lon, lat);
-                        Coordinate targetGeometry = null;
-                        try {
-                            targetGeometry = JTS.transform(sourceCoordinate, null, transform);
-                        } catch (MismatchedDimensionException | TransformException ex) {
-                            Logger.getLogger(OSMParser.class.getName()).log(Level.SEVERE, null, ex);
-                        }
-
-                        Geometry geom = geometryFactory.createPoint(new Coordinate(targetGeometry));
-                        selectedInstance.addNodeGeometry(geom);
-                    }
-                }
-            }
-            Geometry fullGeom = geometryFactory.buildGeometry(selectedInstance.getNodeGeometries());
-
-            System.out.println("number of nodes: " + selectedInstance.getNodeGeometries().size());
-
-            if ((selectedInstance.getNodeGeometries().size() > 3) &&
-                    selectedInstance.getNodeGeometries().get(0).equals(selectedInstance.getNodeGeometries()
-                            .get(selectedInstance.getNodeGeometries().size()-1))) {
-                //checks if the beginning and ending node are the same and the number of nodes are more than 3.
-                //the nodes must be more than 3, because jts does not allow a construction of a linear ring with less points.
-                LinearRing linear = geometryFactory.createLinearRing(fullGeom.getCoordinates());
-                Polygon poly = new Polygon(linear, null, geometryFactory);
-                selectedInstance.setGeometry(poly);
-
-                System.out.println("\n\npolygon");
-            } else if (selectedInstance.getNodeGeometries().size() > 1) {
-                //it is an open geometry with more than one nodes, make it linestring
-                System.out.println("\n\nlinestring");
-                LineString lineString = geometryFactory.createLineString(fullGeom.getCoordinates());
-                selectedInstance.setGeometry(lineString);
-            } else { //we assume all the rest geometries are points
-                System.out.println("\n\npoint");
-                Point point = geometryFactory.createPoint(fullGeom.getCoordinate());
-                selectedInstance.setGeometry(point);
-            }
-
-            Map<String, String> selectedTags = s.getInterestingTags();
-            selectedInstance.setAllTags(selectedTags);
-
             //construct vector here
-            if (selectedInstance != null) {
-                int id;
-                if (mappings == null) {
-                    System.out.println("null mappings ERROR");
-                }
-
-                OSMClassification classifier = new OSMClassification();
-                classifier.calculateClasses(selectedInstance, mappings, mapperWithIDs, indirectClasses, indirectClassesWithIDs);
-
-                if (modelWithClasses) {
-                    ClassFeatures classFeatures = new ClassFeatures();
-                    classFeatures.createClassFeatures(selectedInstance, mappings, mapperWithIDs, indirectClasses, indirectClassesWithIDs);
-                    id = 1422;
-                } else {
-                    id = 1;
-                }
-
-                GeometryFeatures geometryFeatures = new GeometryFeatures(id);
-                geometryFeatures.createGeometryFeatures(selectedInstance);
-                id = geometryFeatures.getLastID();
-                TextualFeatures textualFeatures = new TextualFeatures(id, textualList, languageDetector);
-                textualFeatures.createTextualFeatures(selectedInstance);
-
-                List<FeatureNode> featureNodeList = selectedInstance.getFeatureNodeList();
-                System.out.println(featureNodeList);
-
-                FeatureNode[] featureNodeArray = new FeatureNode[featureNodeList.size()];
-
-                int i = 0;
-                for (FeatureNode featureNode : featureNodeList) {
-                    featureNodeArray[i] = featureNode;
-                    i++;
-                }
-                FeatureNode[] testInstance2 = featureNodeArray;
-
-                Map<Integer, Integer> mapLabelsToIDs = new HashMap<>();
-                for (int h = 0; h < modelSVMLabelSize; h++) {
-                    mapLabelsToIDs.put(modelSVMLabels[h], h);
-                }
-
-                double[] scores = new double[modelSVMLabelSize];
-                Linear.predictValues(modelSVM, testInstance2, scores);
-
-                Map<Double, Integer> scoresValues = new HashMap<>();
-                for (int h = 0; h < scores.length; h++) {
-                    scoresValues.put(scores[h], h);
-                }
-
-                Arrays.sort(scores);
-
-                int[] preds = new int[RECOMMENDATIONS_SIZE];
-                for (int p = 0; p < RECOMMENDATIONS_SIZE; p++) {
-                    preds[p] = modelSVMLabels[scoresValues.get(scores[scores.length-(p+1)])];
-                }
+            RecommendationService service = RecommendationService.getInstance();
+            FeatureNode[] testInstance2 = service.getFeatures(s, s.getDataSet().getSelectedWays(), modelWithClasses,
+                    textualList, languageDetector);
+            if (testInstance2 != null) {
+                int[] preds = service.predict(modelSVM, testInstance2, RECOMMENDATIONS_SIZE);
                 String[] predictedTags2 = new String[RECOMMENDATIONS_SIZE];
 
                 for (int p = 0; p < RECOMMENDATIONS_SIZE; p++) {
@@ -2339,54 +2090,15 @@ class OSMRecPluginHelper {
                     }
                 }
                 System.out.println("Optimized - create OSMObject, predicted classes: " + Arrays.toString(predictedTags2));
+                Logging.debug("OSMRec: {0}", service.getStatistics());
             }
         }
 
         private void parseTagsMappedToClasses() {
-
-            InputStream tagsToClassesMapping = TrainWorker.class.getResourceAsStream("/resources/files/Map");
-            Mapper mapper = new Mapper();
-            try {
-                mapper.parseFile(tagsToClassesMapping);
-
-            } catch (FileNotFoundException ex) {
-                Logger.getLogger(Mapper.class.getName()).log(Level.SEVERE, null, ex);
-            }
-            mappings = mapper.getMappings();
-            mapperWithIDs = mapper.getMappingsWithIDs();
-            idsWithMappings = mapper.getIDsWithMappings();
-        }
-
-        private void loadTextualList(File textualListFile) {
-
-            Scanner input = null;
-
-            try {
-                input = new Scanner(textualListFile);
-            } catch (FileNotFoundException ex) {
-                Logging.warn(ex);
-            }
-            while (input.hasNext()) {
-                String nextLine = input.nextLine();
-                textualList.add(nextLine);
-            }
-            System.out.println("Textual List parsed from file successfully." + textualList);
-        }
-
-        private void loadDefaultTextualList() {
-
-            InputStream textualListStream = TrainWorker.class.getResourceAsStream("/resources/files/textualList.txt");
-            TextualStatistics textualStatistics = new TextualStatistics();
-            textualStatistics.parseTextualList(textualListStream);
-            textualList = textualStatistics.getTextualList();
-            System.out.println("Default Textual List parsed from file successfully." + textualList);
-        }
-
-        private void loadOntology() {
-            InputStream ontologyStream = TrainWorker.class.getResourceAsStream("/resources/files/owl.xml");
-            Ontology ontology = new Ontology(ontologyStream);
-            indirectClasses = ontology.getIndirectClasses();
-            indirectClassesWithIDs = ontology.getIndirectClassesIDs();
+            RecommendationService service = RecommendationService.getInstance();
+            mappings = service.getMappings();
+            mapperWithIDs = service.getMappingsWithIDs();
+            idsWithMappings = service.getIDsWithMappings();
         }
 
         private Map<File, Double> getAlignedModels(Map<File, Double> filesAndWeights) {
@@ -0,0 +1,427 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.osmrec;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.geotools.referencing.CRS;
+import org.geotools.referencing.crs.DefaultGeocentricCRS;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.plugins.osmrec.container.OSMWay;
+import org.openstreetmap.josm.plugins.osmrec.extractor.LanguageDetector;
+import org.openstreetmap.josm.plugins.osmrec.features.ClassFeatures;
+import org.openstreetmap.josm.plugins.osmrec.features.GeometryFeatures;
+import org.openstreetmap.josm.plugins.osmrec.features.OSMClassification;
+import org.openstreetmap.josm.plugins.osmrec.features.TextualFeatures;
+import org.openstreetmap.josm.plugins.osmrec.parsers.Mapper;
+import org.openstreetmap.josm.plugins.osmrec.parsers.Ontology;
+import org.openstreetmap.josm.plugins.osmrec.parsers.TextualStatistics;
+import org.openstreetmap.josm.tools.Logging;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+import de.bwaldvogel.liblinear.FeatureNode;
+import de.bwaldvogel.liblinear.Linear;
+import de.bwaldvogel.liblinear.Model;
+
+/**
+ * Keeps what the recommendations need between two requests: the SVM models and the textual lists, reloaded only
+ * when their file changes, the class dictionaries, the coordinate transform, and the feature vectors of the
+ * recently recommended selections. Also counts the cache hits and the time spent in each phase.
+ */
+final class RecommendationService {
+
+    private static final int MAX_MODELS = 16;
+    private static final int MAX_FEATURE_VECTORS = 64;
+
+    private static final RecommendationService INSTANCE = new RecommendationService();
+
+    private final Map<String, Stamped<Model>> models = new LinkedHashMap<String, Stamped<Model>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Stamped<Model>> eldest) {
+            return size() > MAX_MODELS;
+        }
+    };
+    private final Map<String, Stamped<List<String>>> textualLists = new HashMap<>();
+    private List<String> defaultTextualList;
+    private Mapper mapper;
+    private Ontology ontology;
+    private MathTransform transform;
+    private final GeometryFactory geometryFactory = new GeometryFactory();
+
+    private final Map<FeatureKey, FeatureNode[]> featureVectors = new LinkedHashMap<FeatureKey, FeatureNode[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<FeatureKey, FeatureNode[]> eldest) {
+            return size() > MAX_FEATURE_VECTORS;
+        }
+    };
+
+    private long modelHits;
+    private long modelMisses;
+    private long featureHits;
+    private long featureMisses;
+    private long modelNanos;
+    private long geometryNanos;
+    private long featureNanos;
+    private long predictionNanos;
+    private long predictions;
+
+    /**
+     * A value read from a file, with the modification time and length of the file when it was read.
+     */
+    private static final class Stamped<T> {
+        final long lastModified;
+        final long length;
+        final T value;
+
+        Stamped(File file, T value) {
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+            this.value = value;
+        }
+
+        boolean isCurrent(File file) {
+            return lastModified == file.lastModified() && length == file.length();
+        }
+    }
+
+    /**
+     * Identifies the feature vector of a selection: the first selected primitive and its version, the options of
+     * the vector, and the content it is computed from, as local edits do not change the version.
+     */
+    private static final class FeatureKey {
+        private final long uniqueId;
+        private final int version;
+        private final boolean withClassFeatures;
+        private final List<String> textualList;
+        private final Map<String, String> tags;
+        private final double[] coordinates;
+
+        FeatureKey(OsmPrimitive primitive, boolean withClassFeatures, List<String> textualList, double[] coordinates) {
+            this.uniqueId = primitive.getUniqueId();
+            this.version = primitive.getVersion();
+            this.withClassFeatures = withClassFeatures;
+            this.textualList = textualList;
+            this.tags = primitive.getInterestingTags();
+            this.coordinates = coordinates;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(uniqueId, version, withClassFeatures, tags, Arrays.hashCode(coordinates));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (obj == null || getClass() != obj.getClass()) return false;
+            FeatureKey other = (FeatureKey) obj;
+            return uniqueId == other.uniqueId && version == other.version && withClassFeatures == other.withClassFeatures
+                    // the textual lists are shared, a new list is a new file
+                    && textualList == other.textualList
+                    && tags.equals(other.tags) && Arrays.equals(coordinates, other.coordinates);
+        }
+    }
+
+    private RecommendationService() {
+        // Hide default constructor
+    }
+
+    static RecommendationService getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the SVM model saved in the given file, loading it only if the file changed since it was last loaded.
+     * @param modelFile the model file
+     * @return the model
+     * @throws IOException if the model cannot be read
+     */
+    synchronized Model getModel(File modelFile) throws IOException {
+        String path = modelFile.getAbsolutePath();
+        Stamped<Model> model = models.get(path);
+        if (model != null && model.isCurrent(modelFile)) {
+            modelHits++;
+            return model.value;
+        }
+        modelMisses++;
+        long start = System.nanoTime();
+        model = new Stamped<>(modelFile, Model.load(modelFile));
+        modelNanos += System.nanoTime() - start;
+        models.put(path, model);
+        return model.value;
+    }
+
+    /**
+     * Returns the textual list of the given file, or the default list of the plugin if the file does not exist.
+     * The list must not be modified.
+     * @param textualListFile the textual list file, written by the training
+     * @return the textual list
+     */
+    synchronized List<String> getTextualList(File textualListFile) {
+        if (!textualListFile.exists()) {
+            return getDefaultTextualList();
+        }
+        String path = textualListFile.getAbsolutePath();
+        Stamped<List<String>> textualList = textualLists.get(path);
+        if (textualList == null || !textualList.isCurrent(textualListFile)) {
+            try (InputStream in = new FileInputStream(textualListFile)) {
+                textualList = new Stamped<>(textualListFile, readTextualList(in));
+            } catch (IOException ex) {
+                Logging.warn(ex);
+                return getDefaultTextualList();
+            }
+            textualLists.put(path, textualList);
+        }
+        return textualList.value;
+    }
+
+    private List<String> getDefaultTextualList() {
+        if (defaultTextualList == null) {
+            defaultTextualList = readTextualList(getClass().getResourceAsStream("/resources/files/textualList.txt"));
+        }
+        return defaultTextualList;
+    }
+
+    private static List<String> readTextualList(InputStream in) {
+        TextualStatistics textualStatistics = new TextualStatistics();
+        textualStatistics.parseTextualList(in);
+        return textualStatistics.getTextualList();
+    }
+
+    private Mapper getMapper() {
+        if (mapper == null) {
+            Mapper m = new Mapper();
+            try {
+                m.parseFile(getClass().getResourceAsStream("/resources/files/Map"));
+            } catch (FileNotFoundException ex) {
+                Logging.error(ex);
+            }
+            mapper = m;
+        }
+        return mapper;
+    }
+
+    synchronized Map<String, String> getMappings() {
+        return getMapper().getMappings();
+    }
+
+    synchronized Map<String, Integer> getMappingsWithIDs() {
+        return getMapper().getMappingsWithIDs();
+    }
+
+    synchronized Map<Integer, String> getIDsWithMappings() {
+        return getMapper().getIDsWithMappings();
+    }
+
+    private Ontology getOntology() {
+        if (ontology == null) {
+            ontology = new Ontology(getClass().getResourceAsStream("/resources/files/owl.xml"));
+        }
+        return ontology;
+    }
+
+    synchronized Map<String, List<String>> getIndirectClasses() {
+        return getOntology().getIndirectClasses();
+    }
+
+    synchronized Map<String, Integer> getIndirectClassesIDs() {
+        return getOntology().getIndirectClassesIDs();
+    }
+
+    /**
+     * Returns the transform of WGS84 coordinates to the geocentric coordinates used by the geometry features.
+     * @return the transform, or {@code null} if it cannot be created
+     */
+    synchronized MathTransform getTransform() {
+        if (transform == null) {
+            try {
+                transform = CRS.findMathTransform(DefaultGeographicCRS.WGS84, DefaultGeocentricCRS.CARTESIAN, true);
+            } catch (FactoryException ex) {
+                Logging.error(ex);
+            }
+        }
+        return transform;
+    }
+
+    /**
+     * Transforms WGS84 coordinates to geocentric coordinates, all at once.
+     * @param lonLat the longitude and latitude of each point
+     * @return the x, y and z of each point
+     * @throws TransformException if a point cannot be transformed
+     */
+    double[] toGeocentric(double[] lonLat) throws TransformException {
+        int count = lonLat.length / 2;
+        double[] xyz = new double[3 * count];
+        if (count > 0) {
+            getTransform().transform(lonLat, 0, xyz, 0, count);
+        }
+        return xyz;
+    }
+
+    /**
+     * Returns the feature vector of a selection, computing it only if the selection changed since it was last computed.
+     * @param primitive the first selected primitive, giving the tags
+     * @param selectedWays the selected ways, giving the geometry
+     * @param withClassFeatures whether the class features of the tags are included
+     * @param textualList the textual list
+     * @param languageDetector the language detector for the textual features
+     * @return the feature vector, or {@code null} if the geometry cannot be computed
+     */
+    synchronized FeatureNode[] getFeatures(OsmPrimitive primitive, Collection<Way> selectedWays, boolean withClassFeatures,
+            List<String> textualList, LanguageDetector languageDetector) {
+        long start = System.nanoTime();
+        int count = 0;
+        for (Way way : selectedWays) {
+            count += way.getNodesCount();
+        }
+        double[] lonLat = new double[2 * count];
+        int n = 0;
+        for (Way way : selectedWays) {
+            for (Node node : way.getNodes()) {
+                if (node.isLatLonKnown()) {
+                    LatLon coor = node.getCoor();
+                    lonLat[2 * n] = coor.lon();
+                    lonLat[2 * n + 1] = coor.lat();
+                    n++;
+                }
+            }
+        }
+        lonLat = Arrays.copyOf(lonLat, 2 * n);
+
+        FeatureKey key = new FeatureKey(primitive, withClassFeatures, textualList, lonLat);
+        FeatureNode[] features = featureVectors.get(key);
+        if (features != null) {
+            featureHits++;
+            geometryNanos += System.nanoTime() - start;
+            return features;
+        }
+        featureMisses++;
+
+        OSMWay selectedInstance = new OSMWay();
+        try {
+            double[] xyz = toGeocentric(lonLat);
+            for (int i = 0; i < n; i++) {
+                Coordinate coordinate = new Coordinate(xyz[3 * i], xyz[3 * i + 1], xyz[3 * i + 2]);
+                selectedInstance.addNodeGeometry(geometryFactory.createPoint(coordinate));
+            }
+        } catch (TransformException ex) {
+            Logging.error(ex);
+            return null;
+        }
+        Geometry fullGeom = geometryFactory.buildGeometry(selectedInstance.getNodeGeometries());
+        List<Geometry> nodeGeometries = selectedInstance.getNodeGeometries();
+        if ((nodeGeometries.size() > 3) && nodeGeometries.get(0).equals(nodeGeometries.get(nodeGeometries.size()-1))) {
+            //checks if the beginning and ending node are the same and the number of nodes are more than 3.
+            //the nodes must be more than 3, because jts does not allow a construction of a linear ring with less points.
+            LinearRing linear = geometryFactory.createLinearRing(fullGeom.getCoordinates());
+            Polygon poly = new Polygon(linear, null, geometryFactory);
+            selectedInstance.setGeometry(poly);
+        } else if (nodeGeometries.size() > 1) {
+            //it is an open geometry with more than one nodes, make it linestring
+            LineString lineString = geometryFactory.createLineString(fullGeom.getCoordinates());
+            selectedInstance.setGeometry(lineString);
+        } else { //we assume all the rest geometries are points
+            Point point = geometryFactory.createPoint(fullGeom.getCoordinate());
+            selectedInstance.setGeometry(point);
+        }
+        selectedInstance.setAllTags(primitive.getInterestingTags());
+        long geometryEnd = System.nanoTime();
+        geometryNanos += geometryEnd - start;
+
+        int id;
+        Map<String, String> mappings = getMappings();
+        Map<String, Integer> mapperWithIDs = getMappingsWithIDs();
+        OSMClassification classifier = new OSMClassification();
+        classifier.calculateClasses(selectedInstance, mappings, mapperWithIDs, getIndirectClasses(), getIndirectClassesIDs());
+
+        if (withClassFeatures) {
+            ClassFeatures classFeatures = new ClassFeatures();
+            classFeatures.createClassFeatures(selectedInstance, mappings, mapperWithIDs, getIndirectClasses(), getIndirectClassesIDs());
+            id = 1422;
+        } else {
+            id = 1;
+        }
+
+        GeometryFeatures geometryFeatures = new GeometryFeatures(id);
+        geometryFeatures.createGeometryFeatures(selectedInstance);
+        id = geometryFeatures.getLastID();
+        TextualFeatures textualFeatures = new TextualFeatures(id, textualList, languageDetector);
+        textualFeatures.createTextualFeatures(selectedInstance);
+
+        List<FeatureNode> featureNodeList = selectedInstance.getFeatureNodeList();
+        features = featureNodeList.toArray(new FeatureNode[featureNodeList.size()]);
+        featureVectors.put(key, features);
+        featureNanos += System.nanoTime() - geometryEnd;
+        return features;
+    }
+
+    /**
+     * Predicts the most likely classes of a feature vector.
+     * @param model the SVM model
+     * @param features the feature vector
+     * @param count the number of classes to predict, at most the number of classes of the model
+     * @return the labels of the {@code count} classes with the highest scores, best first
+     */
+    int[] predict(Model model, FeatureNode[] features, int count) {
+        long start = System.nanoTime();
+        int[] labels = model.getLabels();
+        double[] scores = new double[labels.length];
+        Linear.predictValues(model, features, scores);
+
+        Map<Double, Integer> scoresValues = new HashMap<>();
+        for (int h = 0; h < scores.length; h++) {
+            scoresValues.put(scores[h], h);
+        }
+
+        Arrays.sort(scores);
+        int[] preds = new int[count];
+        for (int p = 0; p < count; p++) {
+            preds[p] = labels[scoresValues.get(scores[scores.length-(p+1)])];
+        }
+        synchronized (this) {
+            predictionNanos += System.nanoTime() - start;
+            predictions++;
+        }
+        return preds;
+    }
+
+    /**
+     * Returns the cache hit counts and the mean time of each phase, for debugging.
+     * @return the statistics
+     */
+    synchronized String getStatistics() {
+        return String.format("models: %d hits, %d misses, %.1f ms per load; features: %d hits, %d misses, "
+                + "geometry %.2f ms per request, extraction %.2f ms per miss; prediction %.2f ms",
+                modelHits, modelMisses, millisPer(modelNanos, modelMisses),
+                featureHits, featureMisses, millisPer(geometryNanos, featureHits + featureMisses),
+                millisPer(featureNanos, featureMisses), millisPer(predictionNanos, predictions));
+    }
+
+    private static double millisPer(long nanos, long count) {
+        return count == 0 ? 0 : nanos / 1e6 / count;
+    }
+}
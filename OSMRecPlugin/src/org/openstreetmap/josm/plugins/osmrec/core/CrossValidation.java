@@ -0,0 +1,219 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.osmrec.core;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
+
+import de.bwaldvogel.liblinear.Linear;
+import de.bwaldvogel.liblinear.Model;
+import de.bwaldvogel.liblinear.Parameter;
+import de.bwaldvogel.liblinear.SolverType;
+
+/**
+ * 5-fold cross validation of SVM models over a {@link FeatureMatrix}.
+ * The (C, fold) pairs of a grid search are independent and run on a bounded pool of threads; the scores do not
+ * depend on the number of threads or on the order in which the pairs complete.
+ */
+class CrossValidation {
+
+    static final int FOLDS = 5;
+
+    // a, b, c, d, skip: train on fifths [a, b) of the ways, without [c, c+1) if skip, and test on fifths [c, d)
+    private static final int[][] FOLD_BOUNDS = {
+            {0, 4, 4, 5, 0}, {1, 5, 0, 1, 0}, {0, 5, 1, 2, 1}, {0, 5, 2, 3, 1}, {0, 5, 3, 4, 1}};
+
+    private static final double EPS = 0.001;
+
+    private final FeatureMatrix matrix;
+
+    CrossValidation(FeatureMatrix matrix) {
+        this.matrix = matrix;
+    }
+
+    /**
+     * Trains a model on the training ways of a fold and tests it on the remaining ways.
+     * @param fold the fold, from 0 to {@link #FOLDS} - 1
+     * @param param the C parameter
+     * @return the top-1, top-5 and top-10 precisions
+     */
+    double[] validateFold(int fold, double param) {
+        int[] bounds = FOLD_BOUNDS[fold];
+        return validateFold(bounds[0], bounds[1], bounds[2], bounds[3], bounds[4] != 0, param);
+    }
+
+    private double[] validateFold(int a, int b, int c, int d, boolean skip, double param) {
+        int testSize = matrix.size()/5;
+
+        int[] trainList = new int[(b-a)*testSize];
+        int trainSize = 0;
+        for (int g = a*testSize; g < b*testSize; g++) {  // 0~~1~~2~~3~~4~~5
+            if (skip) {
+                if (g == (c)*testSize) {
+                    g = (c+1)*testSize;
+                }
+            }
+            trainList[trainSize++] = g;
+        }
+
+        Parameter parameter = new Parameter(SolverType.getById(2), param, EPS);
+        Model model = Linear.train(matrix.problem(Arrays.copyOf(trainList, trainSize)), parameter);
+        // evaluate the model as written to a file, with its weights rounded to 16 digits
+        try {
+            StringWriter writer = new StringWriter();
+            model.save(writer);
+            model = Model.load(new StringReader(writer.toString()));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        int succededInstances = 0;
+        int succededInstances5 = 0;
+        int succededInstances10 = 0;
+        int[] labels = model.getLabels();
+
+        int wayListSizeWithoutUnclassified2 = (d-c)*testSize;
+        for (int way = c*testSize; way < d*testSize; way++) {
+            int[] classIDs = matrix.getClasses(way);
+            if (classIDs.length == 0) {
+                wayListSizeWithoutUnclassified2 -= 1;
+            }
+
+            double[] scores = new double[labels.length];
+            Linear.predictValues(model, matrix.getFeatures(way), scores);
+
+            //find index of max values in scores array: predicted classes are the elements of these indexes from array model.getlabels
+            Map<Double, Integer> scoresValues = new HashMap<>();
+            for (int h = 0; h < scores.length; h++) {
+                scoresValues.put(scores[h], h);
+            }
+
+            Arrays.sort(scores);
+            for (int rank = 1; rank <= 10; rank++) {
+                if (contains(classIDs, labels[scoresValues.get(scores[scores.length-rank])])) {
+                    if (rank == 1) {
+                        succededInstances++;
+                    }
+                    if (rank <= 5) {
+                        succededInstances5++;
+                    }
+                    succededInstances10++;
+                    break;
+                }
+            }
+        }
+
+        return new double[] {
+                succededInstances/(double) wayListSizeWithoutUnclassified2,
+                succededInstances5/(double) wayListSizeWithoutUnclassified2,
+                succededInstances10/(double) wayListSizeWithoutUnclassified2};
+    }
+
+    private static boolean contains(int[] classIDs, int label) {
+        for (int classID : classIDs) {
+            if (classID == label) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the stream liblinear prints the training output to, which it has no getter for.
+     * @return the stream, null if the output is disabled
+     */
+    private static PrintStream getDebugOutput() {
+        try {
+            Field output = Linear.class.getDeclaredField("DEBUG_OUTPUT");
+            Utils.setObjectsAccessible(output);
+            return (PrintStream) output.get(null);
+        } catch (ReflectiveOperationException | SecurityException | ClassCastException e) {
+            Logging.warn(e);
+            // the default of liblinear
+            return System.out;
+        }
+    }
+
+    /**
+     * Cross validates all given C parameters, running each (C, fold) pair on a pool of at most {@code threads} threads.
+     * Repeated values of C are only validated once.
+     * @param params the C parameters
+     * @param threads the maximum number of threads
+     * @param foldListener run by the calling thread after each validated (C, fold) pair, once per occurrence of C
+     * @return the scores of fold {@code f} for {@code params[i]} in {@code [i][f]}, as returned by {@link #validateFold}
+     * @throws InterruptedException if the calling thread is interrupted, which stops the validation
+     */
+    double[][][] validate(double[] params, int threads, Runnable foldListener) throws InterruptedException {
+        Map<Double, double[][]> scores = new LinkedHashMap<>();
+        Map<Double, Integer> occurrences = new HashMap<>();
+        for (double param : params) {
+            scores.put(param, new double[FOLDS][]);
+            occurrences.merge(param, 1, Integer::sum);
+        }
+
+        List<Callable<Double>> tasks = new ArrayList<>();
+        for (Map.Entry<Double, double[][]> e : scores.entrySet()) {
+            double param = e.getKey();
+            double[][] paramScores = e.getValue();
+            for (int f = 0; f < FOLDS; f++) {
+                int fold = f;
+                tasks.add(() -> {
+                    paramScores[fold] = validateFold(fold, param);
+                    return param;
+                });
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, tasks.size())),
+                Utils.newThreadFactory("osmrec-validation-%d", Thread.NORM_PRIORITY));
+        CompletionService<Double> completion = new ExecutorCompletionService<>(pool);
+        // the training output cannot be silenced by replacing System.out while several models are trained
+        PrintStream debugOutput = getDebugOutput();
+        Linear.disableDebugOutput();
+        try {
+            for (Callable<Double> task : tasks) {
+                completion.submit(task);
+            }
+            for (int i = 0; i < tasks.size(); i++) {
+                Double param = completion.take().get();
+                for (int j = occurrences.get(param); j > 0; j--) {
+                    foldListener.run();
+                }
+            }
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            } else if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        } finally {
+            pool.shutdownNow();
+            Linear.setDebugOutput(debugOutput);
+        }
+
+        double[][][] result = new double[params.length][][];
+        for (int i = 0; i < params.length; i++) {
+            result[i] = scores.get(params[i]);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,236 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.osmrec.core;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import de.bwaldvogel.liblinear.FeatureNode;
+import de.bwaldvogel.liblinear.Problem;
+
+/**
+ * Sparse features and classes of a list of ways, extracted once and shared by all trainings on these ways.
+ * The rows are never modified once built, so that problems over any subset of the ways can be trained concurrently.
+ * <p>
+ * Rows can be written one at a time to a compact binary file by a {@link RowWriter} while the ways are parsed,
+ * and {@link #load loaded} back through a memory mapping once all ways are read.
+ * <p>
+ * liblinear trains on a {@link Problem} holding all its rows, so the loaded rows stay in the heap during training.
+ * To keep them small, the nodes of binary features, most of the features of a way, are shared between rows:
+ * a row of such features costs a reference per feature. The rows must therefore never be modified.
+ */
+class FeatureMatrix {
+
+    /** Magic number starting a feature file. */
+    private static final int MAGIC = 0x4f535246;
+    /** Size of the mapped windows of a feature file, much larger than a row. */
+    private static final int WINDOW_SIZE = 64 << 20;
+
+    private final FeatureNode[][] features;
+    private final int[][] classes;
+    private final int numberOfFeatures;
+
+    /**
+     * Constructs a new {@code FeatureMatrix}.
+     * @param features the features of each way, sorted by index
+     * @param classes the class IDs of each way, empty for unclassified ways
+     * @param numberOfFeatures the largest feature index
+     */
+    FeatureMatrix(FeatureNode[][] features, int[][] classes, int numberOfFeatures) {
+        this.features = features;
+        this.classes = classes;
+        this.numberOfFeatures = numberOfFeatures;
+    }
+
+    int size() {
+        return features.length;
+    }
+
+    FeatureNode[] getFeatures(int way) {
+        return features[way];
+    }
+
+    int[] getClasses(int way) {
+        return classes[way];
+    }
+
+    /**
+     * Builds a training problem over all ways.
+     * @return the problem
+     * @see #problem(int[])
+     */
+    Problem problem() {
+        int[] ways = new int[features.length];
+        for (int i = 0; i < ways.length; i++) {
+            ways[i] = i;
+        }
+        return problem(ways);
+    }
+
+    /**
+     * Builds a training problem over the given ways. A way with several classes gives one instance per class,
+     * sharing the same feature row; unclassified ways are left out.
+     * @param ways the indexes of the ways, in training order
+     * @return the problem
+     */
+    Problem problem(int[] ways) {
+        int l = 0;
+        for (int way : ways) {
+            l += classes[way].length;
+        }
+        FeatureNode[][] x = new FeatureNode[l][];
+        double[] y = new double[l];
+        int k = 0;
+        for (int way : ways) {
+            for (int classID : classes[way]) {
+                x[k] = features[way];
+                y[k] = classID;
+                k++;
+            }
+        }
+        Problem problem = new Problem();
+        problem.l = l;
+        problem.n = numberOfFeatures;
+        problem.x = x;
+        problem.y = y;
+        return problem;
+    }
+
+    /**
+     * Writes feature rows to a file, without keeping them in memory.
+     * The format is a header (magic, number of features), then for each way: the number of classes, the class IDs,
+     * the number of features and the (index, value) pairs.
+     */
+    static final class RowWriter implements Closeable {
+        private final DataOutputStream out;
+        private int rows;
+
+        /**
+         * Constructs a new {@code RowWriter}.
+         * @param file the file, overwritten
+         * @param numberOfFeatures the largest feature index
+         * @throws IOException if the file cannot be written
+         */
+        RowWriter(File file, int numberOfFeatures) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(numberOfFeatures);
+        }
+
+        /**
+         * Appends the row of a way.
+         * @param features the features of the way, sorted by index
+         * @param classes the class IDs of the way, empty for an unclassified way
+         * @throws IOException if the row cannot be written
+         */
+        void write(List<FeatureNode> features, Collection<Integer> classes) throws IOException {
+            out.writeInt(classes.size());
+            for (int classID : classes) {
+                out.writeInt(classID);
+            }
+            out.writeInt(features.size());
+            for (FeatureNode node : features) {
+                out.writeInt(node.index);
+                out.writeDouble(node.value);
+            }
+            rows++;
+        }
+
+        int getRows() {
+            return rows;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * Loads the rows written to a file by a {@link RowWriter}, reading the file through memory-mapped windows.
+     * @param file the file
+     * @return the features and classes of the ways, in writing order
+     * @throws IOException if the file cannot be read or is not a feature file
+     */
+    static FeatureMatrix load(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            Window window = new Window(raf.getChannel());
+            if (window.length < 8 || window.get(8).getInt() != MAGIC) {
+                throw new IOException("Not a feature file: " + file);
+            }
+            int numberOfFeatures = window.buffer.getInt();
+            // the node of value 1 of each feature index, shared by all rows
+            FeatureNode[] ones = new FeatureNode[numberOfFeatures + 1];
+            List<FeatureNode[]> features = new ArrayList<>();
+            List<int[]> classes = new ArrayList<>();
+            while (window.hasRemaining()) {
+                int[] row = new int[window.get(4).getInt()];
+                MappedByteBuffer buffer = window.get(4L * row.length + 4);
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = buffer.getInt();
+                }
+                FeatureNode[] nodes = new FeatureNode[buffer.getInt()];
+                buffer = window.get(12L * nodes.length);
+                for (int i = 0; i < nodes.length; i++) {
+                    int index = buffer.getInt();
+                    double value = buffer.getDouble();
+                    if (value == 1 && index >= 0 && index < ones.length) {
+                        if (ones[index] == null) {
+                            ones[index] = new FeatureNode(index, 1);
+                        }
+                        nodes[i] = ones[index];
+                    } else {
+                        nodes[i] = new FeatureNode(index, value);
+                    }
+                }
+                classes.add(row);
+                features.add(nodes);
+            }
+            return new FeatureMatrix(features.toArray(new FeatureNode[features.size()][]),
+                    classes.toArray(new int[classes.size()][]), numberOfFeatures);
+        }
+    }
+
+    /**
+     * A memory-mapped window sliding over a file read sequentially.
+     */
+    private static final class Window {
+        final FileChannel channel;
+        final long length;
+        long position; // of the window in the file
+        MappedByteBuffer buffer;
+
+        Window(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.length = channel.size();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(length, WINDOW_SIZE));
+        }
+
+        boolean hasRemaining() {
+            return position + buffer.position() < length;
+        }
+
+        /**
+         * Returns the window, moved if needed so that it holds the next {@code bytes} bytes.
+         */
+        MappedByteBuffer get(long bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                position += buffer.position();
+                if (length - position < bytes) {
+                    throw new IOException("Truncated feature file");
+                }
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(length - position, Math.max(bytes, WINDOW_SIZE)));
+            }
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.osmrec.parsers;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Cartesian coordinates of the nodes of an OSM file, by node id.
+ * <p>
+ * The nodes are kept in primitive arrays, grown as needed, until they exceed the heap budget. Then the arrays are sorted
+ * and spilled to a memory-mapped temporary file, so that the heap used does not depend on the number of nodes.
+ * Lookups are a binary search in each chunk whose id range contains the id; when the nodes are added by increasing id,
+ * as in OSM extracts, this is a single chunk.
+ */
+final class NodeStore implements Closeable {
+
+    /** Bytes of a node: id, x, y, z. */
+    static final int NODE_SIZE = 32;
+    /** Initial number of nodes of the arrays. */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int capacity;
+    private long[] ids;
+    private double[] coordinates;
+    private int size;
+    private boolean sorted = true;
+
+    private final List<Chunk> chunks = new ArrayList<>();
+    private File file;
+    private RandomAccessFile raf;
+    private long fileLength;
+
+    private static final class Chunk {
+        final long minId;
+        final long maxId;
+        final int size;
+        final MappedByteBuffer buffer;
+
+        Chunk(long minId, long maxId, int size, MappedByteBuffer buffer) {
+            this.minId = minId;
+            this.maxId = maxId;
+            this.size = size;
+            this.buffer = buffer;
+        }
+
+        boolean get(long id, double[] xyz) {
+            if (id < minId || id > maxId) {
+                return false;
+            }
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int offset = mid * NODE_SIZE;
+                long midId = buffer.getLong(offset);
+                if (midId < id) {
+                    low = mid + 1;
+                } else if (midId > id) {
+                    high = mid - 1;
+                } else {
+                    xyz[0] = buffer.getDouble(offset + 8);
+                    xyz[1] = buffer.getDouble(offset + 16);
+                    xyz[2] = buffer.getDouble(offset + 24);
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Constructs a new {@code NodeStore}.
+     * @param heapBudget the number of bytes of heap the nodes may use before being spilled
+     */
+    NodeStore(long heapBudget) {
+        capacity = (int) Math.max(INITIAL_CAPACITY, Math.min(Integer.MAX_VALUE / NODE_SIZE, heapBudget / NODE_SIZE));
+        ids = new long[INITIAL_CAPACITY];
+        coordinates = new double[3 * INITIAL_CAPACITY];
+    }
+
+    /**
+     * Adds a node.
+     * @param id the node id
+     * @param x the cartesian x coordinate
+     * @param y the cartesian y coordinate
+     * @param z the cartesian z coordinate
+     * @throws IOException if the nodes cannot be spilled
+     */
+    void put(long id, double x, double y, double z) throws IOException {
+        if (size == ids.length) {
+            if (size < capacity) {
+                grow();
+            } else {
+                spill();
+            }
+        }
+        if (size > 0 && ids[size - 1] >= id) {
+            sorted = false;
+        }
+        ids[size] = id;
+        coordinates[3 * size] = x;
+        coordinates[3 * size + 1] = y;
+        coordinates[3 * size + 2] = z;
+        size++;
+    }
+
+    /**
+     * Looks up the coordinates of a node.
+     * @param id the node id
+     * @param xyz the array receiving the x, y and z coordinates
+     * @return {@code true} if the node was found
+     */
+    boolean get(long id, double[] xyz) {
+        if (!sorted) {
+            sort(0, size - 1);
+            sorted = true;
+        }
+        if (size > 0 && id >= ids[0] && id <= ids[size - 1]) {
+            int i = binarySearch(id);
+            if (i >= 0) {
+                xyz[0] = coordinates[3 * i];
+                xyz[1] = coordinates[3 * i + 1];
+                xyz[2] = coordinates[3 * i + 2];
+                return true;
+            }
+        }
+        // the latest chunks first, the nodes of an OSM extract being followed by the ways using them
+        for (int c = chunks.size() - 1; c >= 0; c--) {
+            if (chunks.get(c).get(id, xyz)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of nodes.
+     * @return the number of nodes
+     */
+    long size() {
+        long count = size;
+        for (Chunk chunk : chunks) {
+            count += chunk.size;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of chunks spilled to disk.
+     * @return the number of spilled chunks
+     */
+    int getSpilledChunks() {
+        return chunks.size();
+    }
+
+    private void grow() {
+        int newLength = (int) Math.min(capacity, 2L * ids.length);
+        ids = Arrays.copyOf(ids, newLength);
+        coordinates = Arrays.copyOf(coordinates, 3 * newLength);
+    }
+
+    /**
+     * Returns the number of nodes the arrays can hold before they are grown or spilled.
+     * @return the current capacity of the arrays
+     */
+    int getCapacity() {
+        return ids.length;
+    }
+
+    private void spill() throws IOException {
+        if (!sorted) {
+            sort(0, size - 1);
+            sorted = true;
+        }
+        if (raf == null) {
+            file = File.createTempFile("osmrec-nodes", ".bin");
+            file.deleteOnExit();
+            raf = new RandomAccessFile(file, "rw");
+        }
+        MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, fileLength, (long) size * NODE_SIZE);
+        for (int i = 0; i < size; i++) {
+            buffer.putLong(ids[i]);
+            buffer.putDouble(coordinates[3 * i]);
+            buffer.putDouble(coordinates[3 * i + 1]);
+            buffer.putDouble(coordinates[3 * i + 2]);
+        }
+        chunks.add(new Chunk(ids[0], ids[size - 1], size, buffer));
+        fileLength += (long) size * NODE_SIZE;
+        size = 0;
+    }
+
+    private int binarySearch(long id) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (ids[mid] < id) {
+                low = mid + 1;
+            } else if (ids[mid] > id) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Sorts the nodes by id, moving their coordinates along. Needed only for input not sorted by id.
+     */
+    private void sort(int from, int to) {
+        while (from < to) {
+            long pivot = ids[(from + to) >>> 1];
+            int i = from;
+            int j = to;
+            while (i <= j) {
+                while (ids[i] < pivot) {
+                    i++;
+                }
+                while (ids[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            // recurse into the smaller part, loop on the larger one
+            if (j - from < to - i) {
+                sort(from, j);
+                from = i;
+            } else {
+                sort(i, to);
+                to = j;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        long id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+        for (int k = 0; k < 3; k++) {
+            double c = coordinates[3 * i + k];
+            coordinates[3 * i + k] = coordinates[3 * j + k];
+            coordinates[3 * j + k] = c;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        chunks.clear();
+        size = 0;
+        if (raf != null) {
+            raf.close();
+            raf = null;
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+}
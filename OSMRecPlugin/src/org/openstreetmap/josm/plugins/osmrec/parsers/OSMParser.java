@@ -168,35 +168,7 @@ public class OSMParser extends DefaultHandler {
 				wayTmp.addNodeGeometry(geometry); //add the node geometry in this way
 
 			}
-			Geometry geom = geometryFactory.buildGeometry(wayTmp.getNodeGeometries());
-
-			if ((wayTmp.getNumberOfNodes() > 3) &&
-					wayTmp.getNodeGeometries().get(0).equals(wayTmp.getNodeGeometries()
-							.get(wayTmp.getNodeGeometries().size()-1))) {
-				//checks if the beginning and ending node are the same and the number of nodes are more than 3.
-				//the nodes must be more than 3, because jts does not allow a construction of a linear ring with less points.
-
-				if (!((wayTmp.getTagKeyValue().containsKey("barrier")) || wayTmp.getTagKeyValue().containsKey("highway"))) {
-					//this is not a barrier nor a road, so construct a polygon geometry
-
-					LinearRing linear = geometryFactory.createLinearRing(geom.getCoordinates());
-					Polygon poly = new Polygon(linear, null, geometryFactory);
-					wayTmp.setGeometry(poly);
-				} else {
-					//it is either a barrier or a road, so construct a linear ring geometry
-					LinearRing linear = geometryFactory.createLinearRing(geom.getCoordinates());
-					wayTmp.setGeometry(linear);
-				}
-			} else if (wayTmp.getNumberOfNodes() > 1) {
-				//it is an open geometry with more than one nodes, make it linestring
-
-				LineString lineString = geometryFactory.createLineString(geom.getCoordinates());
-				wayTmp.setGeometry(lineString);
-			} else { //we assume all the rest geometries are points
-				//some ways happen to have only one point. Construct a  Point.
-				Point point = geometryFactory.createPoint(geom.getCoordinate());
-				wayTmp.setGeometry(point);
-			}
+			buildWayGeometry(geometryFactory, wayTmp);
 			wayList.add(wayTmp);
 		}
 
@@ -205,6 +177,44 @@ public class OSMParser extends DefaultHandler {
 		}
 	}
 
+	/**
+	 * Sets the geometry of a way from the geometries of its nodes: a polygon or a linear ring if it is closed,
+	 * a line string if it is open, a point if it has a single node.
+	 * @param geometryFactory the geometry factory
+	 * @param way the way, with its node geometries
+	 */
+	static void buildWayGeometry(GeometryFactory geometryFactory, OSMWay way) {
+		Geometry geom = geometryFactory.buildGeometry(way.getNodeGeometries());
+
+		if ((way.getNumberOfNodes() > 3) &&
+				way.getNodeGeometries().get(0).equals(way.getNodeGeometries()
+						.get(way.getNodeGeometries().size()-1))) {
+			//checks if the beginning and ending node are the same and the number of nodes are more than 3.
+			//the nodes must be more than 3, because jts does not allow a construction of a linear ring with less points.
+
+			if (!((way.getTagKeyValue().containsKey("barrier")) || way.getTagKeyValue().containsKey("highway"))) {
+				//this is not a barrier nor a road, so construct a polygon geometry
+
+				LinearRing linear = geometryFactory.createLinearRing(geom.getCoordinates());
+				Polygon poly = new Polygon(linear, null, geometryFactory);
+				way.setGeometry(poly);
+			} else {
+				//it is either a barrier or a road, so construct a linear ring geometry
+				LinearRing linear = geometryFactory.createLinearRing(geom.getCoordinates());
+				way.setGeometry(linear);
+			}
+		} else if (way.getNumberOfNodes() > 1) {
+			//it is an open geometry with more than one nodes, make it linestring
+
+			LineString lineString = geometryFactory.createLineString(geom.getCoordinates());
+			way.setGeometry(lineString);
+		} else { //we assume all the rest geometries are points
+			//some ways happen to have only one point. Construct a  Point.
+			Point point = geometryFactory.createPoint(geom.getCoordinate());
+			way.setGeometry(point);
+		}
+	}
+
 	public List<OSMNode> getNodeList() {
 		return nodeList;
 	}
@@ -0,0 +1,133 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.osmrec.parsers;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.geotools.referencing.CRS;
+import org.geotools.referencing.crs.DefaultGeocentricCRS;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
+import org.openstreetmap.josm.plugins.osmrec.container.OSMWay;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * Parses the ways of an OSM xml file one at a time, with the same geometries as {@link OSMParser},
+ * in a heap bounded by a budget whatever the size of the file.
+ * <p>
+ * Node coordinates go to a {@link NodeStore}, and each way is handed to a consumer as soon as its end tag is read,
+ * so that it can be turned into a training instance and dropped. Relations follow the ways in OSM files, so they are
+ * not known when the ways are handed over, and are skipped. Ways referencing missing nodes are skipped as well.
+ */
+public class OSMStreamParser extends DefaultHandler {
+
+    private final String osmXmlFileName;
+    private final long heapBudget;
+    private final Consumer<OSMWay> wayConsumer;
+    private final GeometryFactory geometryFactory = new GeometryFactory();
+    private MathTransform transform;
+    private NodeStore nodes;
+    private OSMWay wayTmp; //the way being parsed, null outside of ways
+    private final double[] lonLat = new double[2];
+    private final double[] xyz = new double[3];
+    private int wayCount;
+    private int skippedWayCount;
+
+    /**
+     * Constructs a new {@code OSMStreamParser}.
+     * @param osmXmlFileName the OSM file
+     * @param heapBudget the number of bytes of heap the node coordinates may use before being spilled to disk
+     * @param wayConsumer the consumer of the parsed ways, called in file order
+     */
+    public OSMStreamParser(String osmXmlFileName, long heapBudget, Consumer<OSMWay> wayConsumer) {
+        this.osmXmlFileName = osmXmlFileName;
+        this.heapBudget = heapBudget;
+        this.wayConsumer = wayConsumer;
+        try {
+            transform = CRS.findMathTransform(DefaultGeographicCRS.WGS84, DefaultGeocentricCRS.CARTESIAN, true);
+        } catch (FactoryException ex) {
+            Logging.error(ex);
+        }
+    }
+
+    /**
+     * Parses the file, handing each way to the consumer.
+     */
+    public void parseDocument() {
+        try (NodeStore store = new NodeStore(heapBudget)) {
+            nodes = store;
+            Utils.newSafeSAXParser().parse(osmXmlFileName, this);
+            Logging.info("OSMRec: parsed {0} nodes, {1} ways ({2} skipped), {3} node chunks spilled",
+                    store.size(), wayCount, skippedWayCount, store.getSpilledChunks());
+        } catch (ParserConfigurationException | SAXException | IOException e) {
+            Logging.error(e);
+        } finally {
+            nodes = null;
+        }
+    }
+
+    @Override
+    public void startElement(String s, String s1, String elementName, Attributes attributes) throws SAXException {
+        if (elementName.equalsIgnoreCase("node")) {
+            lonLat[0] = Double.parseDouble(attributes.getValue("lon"));
+            lonLat[1] = Double.parseDouble(attributes.getValue("lat"));
+            try {
+                transform.transform(lonLat, 0, xyz, 0, 1);
+                nodes.put(Long.parseLong(attributes.getValue("id")), xyz[0], xyz[1], xyz[2]);
+            } catch (TransformException | IOException ex) {
+                throw new SAXException(ex);
+            }
+        } else if (elementName.equalsIgnoreCase("way")) {
+            wayTmp = new OSMWay();
+            wayTmp.setID(attributes.getValue("id"));
+            if (attributes.getValue("user") != null) {
+                wayTmp.setUser(attributes.getValue("user"));
+            } else {
+                wayTmp.setUser("undefined");
+            }
+        } else if (wayTmp != null) {
+            if (elementName.equalsIgnoreCase("nd")) {
+                wayTmp.addNodeReference(attributes.getValue("ref"));
+            } else if (elementName.equalsIgnoreCase("tag")) {
+                wayTmp.setTagKeyValue(attributes.getValue("k"), attributes.getValue("v"));
+            }
+        }
+    }
+
+    @Override
+    public void endElement(String s, String s1, String element) throws SAXException {
+        if (element.equalsIgnoreCase("way")) {
+            OSMWay way = wayTmp;
+            wayTmp = null;
+            for (String reference : way.getNodeReferences()) {
+                if (!nodes.get(Long.parseLong(reference), xyz)) {
+                    skippedWayCount++;
+                    return;
+                }
+                way.addNodeGeometry(geometryFactory.createPoint(new Coordinate(xyz[0], xyz[1], xyz[2])));
+            }
+            OSMParser.buildWayGeometry(geometryFactory, way);
+            wayCount++;
+            wayConsumer.accept(way);
+        }
+    }
+
+    /**
+     * Returns the number of ways handed to the consumer.
+     * @return the number of parsed ways
+     */
+    public int getWayCount() {
+        return wayCount;
+    }
+}
@@ -0,0 +1,86 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.osmrec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.bwaldvogel.liblinear.FeatureNode;
+import de.bwaldvogel.liblinear.Linear;
+import de.bwaldvogel.liblinear.Model;
+import de.bwaldvogel.liblinear.Parameter;
+import de.bwaldvogel.liblinear.Problem;
+import de.bwaldvogel.liblinear.SolverType;
+
+/**
+ * Unit test of {@link RecommendationService}.
+ */
+public class RecommendationServiceTest {
+
+    /**
+     * Temporary folder for the model files.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Model trainModel(double c) {
+        Problem problem = new Problem();
+        problem.l = 3;
+        problem.n = 3;
+        problem.x = new FeatureNode[][] {
+            {new FeatureNode(1, 1)}, {new FeatureNode(2, 1)}, {new FeatureNode(3, 1)}};
+        problem.y = new double[] {10, 20, 30};
+        return Linear.train(problem, new Parameter(SolverType.getById(2), c, 0.001));
+    }
+
+    /**
+     * Checks that models are loaded once, and again when their file changes.
+     * @throws IOException if the model cannot be written
+     */
+    @Test
+    public void testGetModel() throws IOException {
+        RecommendationService service = RecommendationService.getInstance();
+        File file = folder.newFile("best_model");
+        trainModel(1).save(file);
+
+        Model model = service.getModel(file);
+        assertSame(model, service.getModel(file));
+        assertEquals(30, service.predict(model, new FeatureNode[] {new FeatureNode(3, 1)}, 1)[0]);
+
+        trainModel(0.01).save(file);
+        assertTrue(file.setLastModified(file.lastModified() + 2000));
+        Model reloaded = service.getModel(file);
+        assertNotSame(model, reloaded);
+        assertSame(reloaded, service.getModel(file));
+    }
+
+    /**
+     * Checks that textual lists are read once, and that the default list is used without file.
+     * @throws IOException if the list cannot be written
+     */
+    @Test
+    public void testGetTextualList() throws IOException {
+        RecommendationService service = RecommendationService.getInstance();
+        File file = folder.newFile("textualList.txt");
+        Files.write(file.toPath(), Arrays.asList("road", "street"), StandardCharsets.UTF_8);
+
+        List<String> list = service.getTextualList(file);
+        assertArrayEquals(new String[] {"road", "street"}, list.toArray());
+        assertSame(list, service.getTextualList(file));
+        assertSame(service.getTextualList(new File(folder.getRoot(), "missing")),
+                service.getTextualList(new File(folder.getRoot(), "other")));
+    }
+}
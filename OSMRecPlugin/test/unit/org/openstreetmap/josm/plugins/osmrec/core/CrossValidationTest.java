@@ -0,0 +1,220 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.osmrec.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.bwaldvogel.liblinear.FeatureNode;
+import de.bwaldvogel.liblinear.Linear;
+import de.bwaldvogel.liblinear.Model;
+import de.bwaldvogel.liblinear.Parameter;
+import de.bwaldvogel.liblinear.Problem;
+import de.bwaldvogel.liblinear.SolverType;
+
+/**
+ * Unit test of {@link CrossValidation}.
+ */
+public class CrossValidationTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final double[] PARAMS = {Math.pow(2, -3), Math.pow(2, 1), Math.pow(2, -10), Math.pow(2, -10)};
+
+    private static final int NUMBER_OF_FEATURES = 60;
+
+    // the arguments of the former calls of TrainWorker.crossValidateFold, fold by fold
+    private static final int[][] FOLD_ARGS = {
+            {0, 4, 4, 5, 0}, {1, 5, 0, 1, 0}, {0, 5, 1, 2, 1}, {0, 5, 2, 3, 1}, {0, 5, 3, 4, 1}};
+
+    private FeatureNode[][] features;
+    private int[][] classes;
+
+    /**
+     * Creates ways of 12 classes, each class having a few likely features, some ways having two or no classes.
+     */
+    private FeatureMatrix createMatrix(int ways, int numberOfFeatures) {
+        Random random = new Random(42);
+        features = new FeatureNode[ways][];
+        classes = new int[ways][];
+        for (int w = 0; w < ways; w++) {
+            int classID = 1 + random.nextInt(12);
+            if (w % 17 == 0) {
+                classes[w] = new int[0];
+            } else if (w % 7 == 0) {
+                classes[w] = new int[] {classID, classID == 12 ? 1 : classID + 1};
+            } else {
+                classes[w] = new int[] {classID};
+            }
+            TreeMap<Integer, Double> row = new TreeMap<>();
+            for (int i = 0; i < 6; i++) {
+                int index = random.nextInt(4) < 3 ? 1 + 3 * classID + random.nextInt(3) : 1 + random.nextInt(numberOfFeatures);
+                row.put(index, random.nextDouble());
+            }
+            features[w] = new FeatureNode[row.size()];
+            int i = 0;
+            for (Integer index : row.keySet()) {
+                features[w][i++] = new FeatureNode(index, row.get(index));
+            }
+        }
+        return new FeatureMatrix(features, classes, numberOfFeatures);
+    }
+
+    /**
+     * Validates a fold the way the former {@code TrainWorker.crossValidateFold} did: a training vector per class
+     * of each classified way, the model written to a file and read back, and the classes of the test ways in a list.
+     */
+    private double[] formerFold(int a, int b, int c, int d, boolean skip, double param) throws IOException {
+        int testSize = features.length/5;
+
+        List<Integer> trainList = new ArrayList<>();
+        for (int g = a*testSize; g < b*testSize; g++) {
+            if (skip) {
+                if (g == (c)*testSize) {
+                    g = (c+1)*testSize;
+                }
+            }
+            trainList.add(g);
+        }
+
+        int wayListSizeWithoutUnclassified = trainList.size();
+        int sizeToBeAddedToArray = 0;
+        for (int way : trainList) {
+            if (classes[way].length == 0) {
+                wayListSizeWithoutUnclassified -= 1;
+            } else {
+                sizeToBeAddedToArray = sizeToBeAddedToArray + classes[way].length-1;
+            }
+        }
+        double[] groups = new double[wayListSizeWithoutUnclassified+sizeToBeAddedToArray];
+        FeatureNode[][] trainingSet = new FeatureNode[wayListSizeWithoutUnclassified+sizeToBeAddedToArray][NUMBER_OF_FEATURES];
+        int k = 0;
+        for (int way : trainList) {
+            // a new array of the feature nodes of the way, as built from its feature node list
+            FeatureNode[] featureNodeArray = Arrays.copyOf(features[way], features[way].length);
+            for (int classID : classes[way]) {
+                trainingSet[k] = featureNodeArray;
+                groups[k] = classID;
+                k++;
+            }
+        }
+
+        Problem problem = new Problem();
+        problem.l = wayListSizeWithoutUnclassified+sizeToBeAddedToArray;
+        problem.n = NUMBER_OF_FEATURES;
+        problem.x = trainingSet;
+        problem.y = groups;
+        Model model = Linear.train(problem, new Parameter(SolverType.getById(2), param, 0.001));
+        File modelFile = folder.newFile();
+        model.save(modelFile);
+        model = Model.load(modelFile);
+
+        int succededInstances = 0;
+        int succededInstances5 = 0;
+        int succededInstances10 = 0;
+        int[] labels = model.getLabels();
+        int wayListSizeWithoutUnclassified2 = (d-c)*testSize;
+        for (int way = c*testSize; way < d*testSize; way++) {
+            List<Integer> classIDs = new ArrayList<>();
+            for (int classID : classes[way]) {
+                classIDs.add(classID);
+            }
+            if (classIDs.isEmpty()) {
+                wayListSizeWithoutUnclassified2 -= 1;
+            }
+            double[] scores = new double[labels.length];
+            Linear.predictValues(model, Arrays.copyOf(features[way], features[way].length), scores);
+            Map<Double, Integer> scoresValues = new HashMap<>();
+            for (int h = 0; h < scores.length; h++) {
+                scoresValues.put(scores[h], h);
+            }
+            Arrays.sort(scores);
+            boolean found = false;
+            for (int rank = 1; rank <= 10; rank++) {
+                found |= classIDs.contains(labels[scoresValues.get(scores[scores.length-rank])]);
+                if (found && rank == 1) {
+                    succededInstances++;
+                }
+                if (found && rank == 5) {
+                    succededInstances5++;
+                }
+            }
+            if (found) {
+                succededInstances10++;
+            }
+        }
+        return new double[] {
+                succededInstances/(double) wayListSizeWithoutUnclassified2,
+                succededInstances5/(double) wayListSizeWithoutUnclassified2,
+                succededInstances10/(double) wayListSizeWithoutUnclassified2};
+    }
+
+    /**
+     * Checks that the parallel grid search gives exactly the scores of the former folds, validated one after the other
+     * over training vectors built for each fold.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testValidateSameAsSerial() throws Exception {
+        CrossValidation validation = new CrossValidation(createMatrix(500, NUMBER_OF_FEATURES));
+
+        double[][][] expected = new double[PARAMS.length][CrossValidation.FOLDS][];
+        for (int i = 0; i < PARAMS.length; i++) {
+            for (int fold = 0; fold < CrossValidation.FOLDS; fold++) {
+                int[] args = FOLD_ARGS[fold];
+                expected[i][fold] = formerFold(args[0], args[1], args[2], args[3], args[4] != 0, PARAMS[i]);
+            }
+        }
+        assertTrue(expected[1][0][0] > 0.5);
+
+        for (int threads : new int[] {1, 4}) {
+            AtomicInteger folds = new AtomicInteger();
+            double[][][] scores = validation.validate(PARAMS, threads, folds::incrementAndGet);
+            assertEquals(PARAMS.length * CrossValidation.FOLDS, folds.get());
+            for (int i = 0; i < PARAMS.length; i++) {
+                for (int fold = 0; fold < CrossValidation.FOLDS; fold++) {
+                    // exact equality, the scores must not depend on the threads
+                    assertArrayEquals(expected[i][fold], scores[i][fold], 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that the training output is sent again where it was before the validation.
+     * @throws InterruptedException never
+     */
+    @Test
+    public void testValidateRestoresDebugOutput() throws InterruptedException {
+        FeatureMatrix matrix = createMatrix(100, NUMBER_OF_FEATURES);
+        CrossValidation validation = new CrossValidation(matrix);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Linear.setDebugOutput(new PrintStream(output));
+        try {
+            validation.validate(new double[] {1}, 2, () -> { });
+            assertEquals(0, output.size());
+            Linear.train(matrix.problem(), new Parameter(SolverType.getById(2), 1, 0.001));
+            assertTrue(output.size() > 0);
+        } finally {
+            Linear.enableDebugOutput();
+        }
+    }
+}
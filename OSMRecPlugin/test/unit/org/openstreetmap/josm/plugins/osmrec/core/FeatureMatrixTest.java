@@ -0,0 +1,102 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.osmrec.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.bwaldvogel.liblinear.FeatureNode;
+import de.bwaldvogel.liblinear.Problem;
+
+/**
+ * Unit test of {@link FeatureMatrix}.
+ */
+public class FeatureMatrixTest {
+
+    /**
+     * Temporary folder for the feature files.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Checks that the rows written one at a time are loaded back unchanged.
+     * @throws IOException if the file cannot be written
+     */
+    @Test
+    public void testWriteLoad() throws IOException {
+        File file = folder.newFile("features");
+        Random random = new Random(42);
+        List<List<FeatureNode>> features = new ArrayList<>();
+        List<List<Integer>> classes = new ArrayList<>();
+        try (FeatureMatrix.RowWriter writer = new FeatureMatrix.RowWriter(file, 1600)) {
+            for (int w = 0; w < 1000; w++) {
+                List<FeatureNode> row = new ArrayList<>();
+                for (int index = 1 + random.nextInt(10); index <= 1600; index += 1 + random.nextInt(200)) {
+                    row.add(new FeatureNode(index, random.nextDouble()));
+                }
+                List<Integer> rowClasses = w % 10 == 0 ? Collections.<Integer>emptyList() : Arrays.asList(w % 7, 100 + w % 3);
+                writer.write(row, rowClasses);
+                features.add(row);
+                classes.add(rowClasses);
+            }
+            assertEquals(1000, writer.getRows());
+        }
+
+        FeatureMatrix matrix = FeatureMatrix.load(file);
+        assertEquals(1000, matrix.size());
+        for (int w = 0; w < 1000; w++) {
+            FeatureNode[] row = matrix.getFeatures(w);
+            assertEquals(features.get(w).size(), row.length);
+            for (int i = 0; i < row.length; i++) {
+                assertEquals(features.get(w).get(i).index, row[i].index);
+                assertEquals(features.get(w).get(i).value, row[i].value, 0);
+            }
+            int[] expected = new int[classes.get(w).size()];
+            for (int i = 0; i < expected.length; i++) {
+                expected[i] = classes.get(w).get(i);
+            }
+            assertArrayEquals(expected, matrix.getClasses(w));
+        }
+        Problem problem = matrix.problem();
+        assertEquals(1800, problem.l);
+        assertEquals(1600, problem.n);
+    }
+
+    /**
+     * Checks that the rows share the nodes of binary features, and only them.
+     * @throws IOException if the file cannot be written
+     */
+    @Test
+    public void testSharedBinaryFeatures() throws IOException {
+        File file = folder.newFile("features");
+        try (FeatureMatrix.RowWriter writer = new FeatureMatrix.RowWriter(file, 10)) {
+            writer.write(Arrays.asList(new FeatureNode(1, 1), new FeatureNode(2, 0.5), new FeatureNode(3, 1)),
+                    Arrays.asList(1));
+            writer.write(Arrays.asList(new FeatureNode(1, 1), new FeatureNode(2, 0.5), new FeatureNode(4, 1)),
+                    Arrays.asList(2));
+        }
+        FeatureMatrix matrix = FeatureMatrix.load(file);
+        FeatureNode[] first = matrix.getFeatures(0);
+        FeatureNode[] second = matrix.getFeatures(1);
+        assertSame(first[0], second[0]);
+        assertNotSame(first[1], second[1]);
+        assertEquals(0.5, second[1].value, 0);
+        assertEquals(3, first[2].index);
+        assertEquals(4, second[2].index);
+        assertEquals(1, second[2].value, 0);
+    }
+}
@@ -0,0 +1,172 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.osmrec.parsers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openstreetmap.josm.plugins.osmrec.container.OSMWay;
+
+/**
+ * Unit test of {@link OSMStreamParser} and {@link NodeStore}.
+ */
+public class OSMStreamParserTest {
+
+    /**
+     * Temporary folder for the OSM files.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Writes an OSM file of closed and open ways on a grid of nodes, optionally with shuffled node ids.
+     */
+    private File createOsmFile(String name, int ways, boolean shuffle) throws IOException {
+        int nodes = 10 * ways;
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= nodes; id++) {
+            ids.add(id);
+        }
+        if (shuffle) {
+            Collections.shuffle(ids, new Random(42));
+        }
+        File file = folder.newFile(name);
+        try (PrintWriter out = new PrintWriter(file, StandardCharsets.UTF_8.name())) {
+            out.println("<?xml version='1.0' encoding='UTF-8'?>");
+            out.println("<osm version='0.6'>");
+            for (long id : ids) {
+                out.println("  <node id='" + id + "' lat='" + (37.9 + (id % 1000) * 1e-4) + "' lon='" + (23.7 + (id / 1000) * 1e-4)
+                        + "'><tag k='name' v='node " + id + "'/></node>");
+            }
+            for (int w = 0; w < ways; w++) {
+                out.println("  <way id='" + (w + 1) + "' user='user" + (w % 7) + "'>");
+                long first = 10L * w + 1;
+                int length = 1 + w % 8;
+                for (int n = 0; n < length; n++) {
+                    out.println("    <nd ref='" + (first + n) + "'/>");
+                }
+                if (w % 3 == 0) {
+                    out.println("    <nd ref='" + first + "'/>");
+                }
+                out.println("    <tag k='" + (w % 2 == 0 ? "building" : "highway") + "' v='yes'/>");
+                out.println("  </way>");
+            }
+            out.println("  <relation id='1'><member type='way' ref='1' role=''/><tag k='type' v='route'/></relation>");
+            out.println("</osm>");
+        }
+        return file;
+    }
+
+    private static List<OSMWay> parse(File file, long heapBudget) {
+        List<OSMWay> ways = new ArrayList<>();
+        new OSMStreamParser(file.getPath(), heapBudget, ways::add).parseDocument();
+        return ways;
+    }
+
+    private static void assertSameWays(List<OSMWay> expected, List<OSMWay> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            OSMWay e = expected.get(i);
+            OSMWay a = actual.get(i);
+            assertEquals(e.getID(), a.getID());
+            assertEquals(e.getUser(), a.getUser());
+            assertEquals(e.getTagKeyValue(), a.getTagKeyValue());
+            assertEquals(e.getNodeReferences(), a.getNodeReferences());
+            assertTrue(e.getID(), e.getGeometry().equalsExact(a.getGeometry()));
+            assertEquals(e.getGeometry().getGeometryType(), a.getGeometry().getGeometryType());
+        }
+    }
+
+    /**
+     * Checks that the streamed ways are those of {@link OSMParser}, with node coordinates spilled to disk or not.
+     * @throws IOException if the file cannot be written
+     */
+    @Test
+    public void testSameWaysAsOSMParser() throws IOException {
+        for (boolean shuffle : new boolean[] {false, true}) {
+            File file = createOsmFile("ways" + shuffle + ".osm", 1000, shuffle);
+            OSMParser osmParser = new OSMParser(file.getPath());
+            osmParser.parseDocument();
+            List<OSMWay> expected = osmParser.getWayList();
+            assertEquals(1000, expected.size());
+
+            assertSameWays(expected, parse(file, 1 << 20));
+            // 10000 nodes in chunks of 1024
+            assertSameWays(expected, parse(file, 0));
+        }
+    }
+
+    /**
+     * Checks the lookups of nodes spilled to disk, by increasing or shuffled ids.
+     * @throws IOException if the nodes cannot be spilled
+     */
+    @Test
+    public void testNodeStore() throws IOException {
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= 5000; id++) {
+            ids.add(id * 3);
+        }
+        for (boolean shuffle : new boolean[] {false, true}) {
+            if (shuffle) {
+                Collections.shuffle(ids, new Random(42));
+            }
+            try (NodeStore store = new NodeStore(1024 * NodeStore.NODE_SIZE)) {
+                for (long id : ids) {
+                    store.put(id, id, -id, 0.5 * id);
+                }
+                assertEquals(5000, store.size());
+                assertEquals(4, store.getSpilledChunks());
+                double[] xyz = new double[3];
+                for (long id = 0; id <= 15003; id++) {
+                    if (id % 3 == 0 && id > 0 && id <= 15000) {
+                        assertTrue(store.get(id, xyz));
+                        assertEquals(id, xyz[0], 0);
+                        assertEquals(-id, xyz[1], 0);
+                        assertEquals(0.5 * id, xyz[2], 0);
+                    } else {
+                        assertFalse(store.get(id, xyz));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that the arrays of the nodes grow up to the heap budget before being spilled.
+     * @throws IOException if the nodes cannot be spilled
+     */
+    @Test
+    public void testNodeStoreGrowth() throws IOException {
+        try (NodeStore store = new NodeStore(10000L * NodeStore.NODE_SIZE)) {
+            assertEquals(1024, store.getCapacity());
+            for (long id = 1; id <= 5000; id++) {
+                store.put(id, id, id, id);
+            }
+            assertEquals(8192, store.getCapacity());
+            assertEquals(0, store.getSpilledChunks());
+            for (long id = 5001; id <= 12000; id++) {
+                store.put(id, id, id, id);
+            }
+            assertEquals(10000, store.getCapacity());
+            assertEquals(1, store.getSpilledChunks());
+            assertEquals(12000, store.size());
+            double[] xyz = new double[3];
+            for (long id : new long[] {1, 8192, 10000, 10001, 12000}) {
+                assertTrue(store.get(id, xyz));
+                assertEquals(id, xyz[0], 0);
+            }
+        }
+    }
+}
@@ -8,13 +8,23 @@ import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.openstreetmap.josm.actions.SimplifyWayAction;
 import org.openstreetmap.josm.command.SequenceCommand;
 import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
 
 /**
  * Edigeo THF file.
@@ -229,6 +239,9 @@ public class EdigeoFileTHF extends EdigeoFile {
         final List<EdigeoFileVEC> vec = new ArrayList<>();
         final List<EdigeoLotFile<?>> allFiles = new ArrayList<>();
 
+        private final Map<String, EdigeoFileVEC> vecBySubset = new HashMap<>();
+        private int indexedVec;
+
         Lot(String type) {
             super(type);
         }
@@ -257,15 +270,58 @@ public class EdigeoFileTHF extends EdigeoFile {
         }
 
         void readFiles(Path path) throws IOException, ReflectiveOperationException {
+            createFiles(path);
+            for (EdigeoFile f : allFiles) {
+                f.read();
+            }
+            resolveFiles();
+        }
+
+        void createFiles(Path path) throws IOException {
             Path dir = path.getParent();
-            allFiles.add(new EdigeoFileGEN(this, genId, dir.resolve(name + genName + ".GEN")).read());
-            allFiles.add(new EdigeoFileGEO(this, geoId, dir.resolve(name + geoName + ".GEO")).read());
-            allFiles.add(new EdigeoFileDIC(this, dicId, dir.resolve(name + dicName + ".DIC")).read());
-            allFiles.add(new EdigeoFileSCD(this, scdId, dir.resolve(name + scdName + ".SCD")).read());
-            allFiles.add(new EdigeoFileQAL(this, qalId, dir.resolve(name + qalName + ".QAL")).read());
+            allFiles.add(new EdigeoFileGEN(this, genId, dir.resolve(name + genName + ".GEN")));
+            allFiles.add(new EdigeoFileGEO(this, geoId, dir.resolve(name + geoName + ".GEO")));
+            allFiles.add(new EdigeoFileDIC(this, dicId, dir.resolve(name + dicName + ".DIC")));
+            allFiles.add(new EdigeoFileSCD(this, scdId, dir.resolve(name + scdName + ".SCD")));
+            allFiles.add(new EdigeoFileQAL(this, qalId, dir.resolve(name + qalName + ".QAL")));
             for (int i = 0; i < getNumberOfGeoData(); i++) {
-                allFiles.add(new EdigeoFileVEC(this, vecId.get(i), dir.resolve(name + vecName.get(i) + ".VEC")).read());
+                allFiles.add(new EdigeoFileVEC(this, vecId.get(i), dir.resolve(name + vecName.get(i) + ".VEC")));
             }
+        }
+
+        /**
+         * Reads the files created by {@link #createFiles} on the given executor, then resolves them.
+         * The SCD file refers to the descriptors of the DIC file, and the VEC files to those of the SCD file,
+         * so they are read in this order. The other files are read independently.
+         * @param executor executor reading the files
+         * @return the completion of the reading and resolution of the files
+         */
+        CompletableFuture<Void> readFiles(Executor executor) {
+            CompletableFuture<Void> scdRead = read(dic, executor).thenRunAsync(() -> readUnchecked(scd), executor);
+            List<CompletableFuture<Void>> reads = new ArrayList<>();
+            reads.add(read(gen, executor));
+            reads.add(read(geo, executor));
+            reads.add(read(qal, executor));
+            reads.add(scdRead);
+            for (EdigeoFileVEC v : vec) {
+                reads.add(scdRead.thenRunAsync(() -> readUnchecked(v), executor));
+            }
+            return CompletableFuture.allOf(reads.toArray(new CompletableFuture<?>[0])).thenRunAsync(this::resolveFiles, executor);
+        }
+
+        private static CompletableFuture<Void> read(EdigeoFile f, Executor executor) {
+            return CompletableFuture.runAsync(() -> readUnchecked(f), executor);
+        }
+
+        private static void readUnchecked(EdigeoFile f) {
+            try {
+                f.read();
+            } catch (IOException | ReflectiveOperationException e) {
+                throw new CompletionException(e);
+            }
+        }
+
+        void resolveFiles() {
             allFiles.forEach(EdigeoFile::resolve);
             for (EdigeoFile f : allFiles) {
                 boolean valid = f.isValid();
@@ -281,6 +337,40 @@ public class EdigeoFileTHF extends EdigeoFile {
             allFiles.forEach(f -> f.fill(ds));
         }
 
+        /**
+         * Releases the files read for this lot, once its data has been filled.
+         */
+        void release() {
+            allFiles.clear();
+            vec.clear();
+            vecBySubset.clear();
+            indexedVec = 0;
+            gen = null;
+            geo = null;
+            dic = null;
+            scd = null;
+            qal = null;
+        }
+
+        /**
+         * Returns the VEC file of the given subset.
+         * @param subsetId subset identifier
+         * @return the VEC file of the given subset
+         * @throws IllegalArgumentException if no VEC file has this subset identifier
+         */
+        EdigeoFileVEC getVec(String subsetId) {
+            if (indexedVec != vec.size()) {
+                vecBySubset.clear();
+                vec.forEach(v -> vecBySubset.putIfAbsent(v.subsetId, v));
+                indexedVec = vec.size();
+            }
+            EdigeoFileVEC v = vecBySubset.get(subsetId);
+            if (v == null) {
+                throw new IllegalArgumentException(subsetId);
+            }
+            return v;
+        }
+
         @Override
         boolean isValid() {
             return super.isValid() && areNotEmpty(name, genName, genId, geoName, geoId);
@@ -492,13 +582,69 @@ public class EdigeoFileTHF extends EdigeoFile {
             //ds.addDataSource(new DataSource(lot.gen.getGeoBounds().getBounds(), support.author));
             lot.fill(ds);
         }
+        simplify(ds);
+        return this;
+    }
+
+    /**
+     * Reads this THF file and fills the data set, the files of all lots being read and resolved on a pool of workers.
+     * Each file is read by its own task, as soon as the files it refers to are read, and a lot is resolved once
+     * all its files are read. The data set is filled on the calling thread, lot after lot in the order of {@link #fill},
+     * and is thus the same as with {@code read().fill(ds)}.
+     * The files of a lot are released as soon as its data has been filled.
+     * @param ds data set to fill
+     * @param threads number of workers
+     * @return this
+     * @throws IOException if any I/O error occurs
+     * @throws ReflectiveOperationException if a block cannot be created
+     */
+    public EdigeoFileTHF readAndFill(DataSet ds, int threads) throws IOException, ReflectiveOperationException {
+        super.read();
+        for (Lot lot : getLots()) {
+            lot.createFiles(path);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads),
+                Utils.newThreadFactory("edigeo-reader-%d", Thread.NORM_PRIORITY));
+        try {
+            List<Future<?>> reads = new ArrayList<>();
+            for (Lot lot : getLots()) {
+                reads.add(lot.readFiles(pool));
+            }
+            super.fill(ds);
+            for (int i = 0; i < lots.size(); i++) {
+                reads.get(i).get();
+                lots.get(i).fill(ds);
+                lots.get(i).release();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof ReflectiveOperationException) {
+                throw (ReflectiveOperationException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } finally {
+            pool.shutdownNow();
+        }
+        simplify(ds);
+        return this;
+    }
+
+    private static void simplify(DataSet ds) {
         ds.getWays().forEach(w -> {
             SequenceCommand command = SimplifyWayAction.simplifyWay(w, 0.25);
             if (command != null) {
                 command.executeCommand();
             }
         });
-        return this;
     }
 
     @Override
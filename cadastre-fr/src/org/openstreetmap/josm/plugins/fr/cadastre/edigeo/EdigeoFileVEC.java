@@ -5,15 +5,16 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import org.openstreetmap.josm.actions.CreateMultipolygonAction;
 import org.openstreetmap.josm.command.SequenceCommand;
@@ -94,18 +95,17 @@ public class EdigeoFileVEC extends EdigeoLotFile<VecBlock<?>> {
         @Override
         void resolvePhase2() {
             super.resolvePhase2();
+            Map<McdAttributeDef, VecBlock<?>> semanticAttributes = null;
             for (int i = 0; i < nAttributes; i++) {
                 EdigeoRecord r = lAttributeValues.get(i);
                 if (r.nature == Nature.COMPOSED) {
                     assert !parentRelations.isEmpty();
+                    if (semanticAttributes == null) {
+                        semanticAttributes = getSemanticAttributes();
+                    }
                     McdAttributeDef def = lot.scd.find(r.values, McdAttributeDef.class);
-                    List<RelationBlock> relations = getSemanticRelations().stream().filter(
-                            rel -> rel.elements.stream().anyMatch(e -> e.attributeDefs.contains(def))).collect(Collectors.toList());
-                    assert relations.size() == 1;
-                    List<VecBlock<?>> elements = relations.get(0).elements.stream().filter(
-                            e -> e.attributeDefs.contains(def)).collect(Collectors.toList());
-                    assert elements.size() == 1;
-                    VecBlock<?> e = elements.get(0);
+                    VecBlock<?> e = semanticAttributes.get(def);
+                    assert e != null : def;
                     attributeValues.set(i, e.attributeValues.get(e.attributeDefs.indexOf(def)));
                     attributeDefs.set(i, def);
                 }
@@ -113,6 +113,22 @@ public class EdigeoFileVEC extends EdigeoLotFile<VecBlock<?>> {
             lAttributeValues.clear();
         }
 
+        /**
+         * Maps each attribute definition found in the elements of the semantic relations to the first element defining it.
+         * @return map of attribute definitions to elements
+         */
+        private Map<McdAttributeDef, VecBlock<?>> getSemanticAttributes() {
+            Map<McdAttributeDef, VecBlock<?>> result = new HashMap<>();
+            for (RelationBlock rel : getSemanticRelations()) {
+                for (VecBlock<?> e : rel.elements) {
+                    for (McdAttributeDef def : e.attributeDefs) {
+                        result.putIfAbsent(def, e);
+                    }
+                }
+            }
+            return result;
+        }
+
         @Override
         boolean isValid() {
             return super.isValid() && areNotNull(scdRef)
@@ -418,9 +434,7 @@ public class EdigeoFileVEC extends EdigeoLotFile<VecBlock<?>> {
         final void resolvePhase1() {
             super.resolvePhase1();
             for (List<String> values : lElements) {
-                VecBlock<?> b = lot.vec.stream().filter(v -> v.subsetId.equals(values.get(1))).findAny()
-                        .orElseThrow(() -> new IllegalArgumentException(values.toString()))
-                        .find(values, VecBlock.class);
+                VecBlock<?> b = lot.getVec(values.get(1)).find(values, VecBlock.class);
                 b.addRelation(this);
                 elements.add(b);
                 compositions.put(b, mCompositions.get(values));
@@ -435,15 +449,82 @@ public class EdigeoFileVEC extends EdigeoLotFile<VecBlock<?>> {
         }
     }
 
-    private static final List<Predicate<ObjectBlock>> ignoredObjects = new ArrayList<>();
-    private static final List<Pair<Predicate<ObjectBlock>, BiConsumer<ObjectBlock, OsmPrimitive>>> postProcessors = new ArrayList<>();
+    /**
+     * Dispatch table of predicates on objects. Predicates defined on a SCD identifier or on an attribute key are only
+     * tested against the objects having this SCD identifier or this attribute. Matching entries are returned in the
+     * order they were added.
+     * @param <T> type of values associated to predicates
+     */
+    private static final class ObjectDispatcher<T> {
+        private final List<Pair<Predicate<ObjectBlock>, T>> entries = new ArrayList<>();
+        private final Map<String, BitSet> byScdIdentifier = new HashMap<>();
+        private final Map<String, BitSet> byAttributeKey = new HashMap<>();
+        private final BitSet others = new BitSet();
+
+        private int addEntry(Predicate<ObjectBlock> predicate, T value) {
+            entries.add(new Pair<>(Objects.requireNonNull(predicate, "predicate"), value));
+            return entries.size() - 1;
+        }
+
+        void add(Predicate<ObjectBlock> predicate, T value) {
+            others.set(addEntry(predicate, value));
+        }
+
+        void addForScdIdentifiers(Predicate<ObjectBlock> predicate, T value, String... types) {
+            int i = addEntry(predicate, value);
+            for (String type : types) {
+                byScdIdentifier.computeIfAbsent(type, k -> new BitSet()).set(i);
+            }
+        }
+
+        void addForAttribute(Predicate<ObjectBlock> predicate, T value, String key) {
+            byAttributeKey.computeIfAbsent(key, k -> new BitSet()).set(addEntry(predicate, value));
+        }
+
+        private BitSet candidates(ObjectBlock o) {
+            BitSet result = (BitSet) others.clone();
+            BitSet scd = byScdIdentifier.get(o.scdRef.identifier);
+            if (scd != null) {
+                result.or(scd);
+            }
+            for (int i = 0; i < o.nAttributes; i++) {
+                BitSet att = byAttributeKey.get(o.attributeDefs.get(i).identifier);
+                if (att != null) {
+                    result.or(att);
+                }
+            }
+            return result;
+        }
+
+        boolean anyMatch(ObjectBlock o) {
+            BitSet candidates = candidates(o);
+            for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                if (entries.get(i).a.test(o)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void forEachMatch(ObjectBlock o, Consumer<T> consumer) {
+            BitSet candidates = candidates(o);
+            for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                if (entries.get(i).a.test(o)) {
+                    consumer.accept(entries.get(i).b);
+                }
+            }
+        }
+    }
+
+    private static final ObjectDispatcher<Boolean> ignoredObjects = new ObjectDispatcher<>();
+    private static final ObjectDispatcher<BiConsumer<ObjectBlock, OsmPrimitive>> postProcessors = new ObjectDispatcher<>();
 
     /**
      * Adds a predicate to ignore a special type of object.
      * @param predicate defines how to identify the object to ignore
      */
     public static void addIgnoredObject(Predicate<ObjectBlock> predicate) {
-        ignoredObjects.add(Objects.requireNonNull(predicate, "predicate"));
+        ignoredObjects.add(predicate, Boolean.TRUE);
     }
 
     /**
@@ -452,7 +533,7 @@ public class EdigeoFileVEC extends EdigeoLotFile<VecBlock<?>> {
      * @param values attribute values
      */
     public static void addIgnoredObject(String key, String... values) {
-        addIgnoredObject(predicate(key, values));
+        ignoredObjects.addForAttribute(predicate(key, values), Boolean.TRUE, key);
     }
 
     /**
@@ -460,7 +541,7 @@ public class EdigeoFileVEC extends EdigeoLotFile<VecBlock<?>> {
      * @param types SCD identifiers to ignore
      */
     public static void addIgnoredScdObjects(String... types) {
-        addIgnoredObject(o -> Arrays.asList(types).contains(o.scdRef.identifier));
+        ignoredObjects.addForScdIdentifiers(o -> true, Boolean.TRUE, types);
     }
 
     private static Predicate<ObjectBlock> predicate(String key, String... values) {
@@ -482,7 +563,16 @@ public class EdigeoFileVEC extends EdigeoLotFile<VecBlock<?>> {
      * @param predicate predicate to match
      */
     public static void addObjectPostProcessor(BiConsumer<ObjectBlock, OsmPrimitive> consumer, Predicate<ObjectBlock> predicate) {
-        postProcessors.add(new Pair<>(Objects.requireNonNull(predicate, "predicate"), Objects.requireNonNull(consumer, "consumer")));
+        postProcessors.add(predicate, Objects.requireNonNull(consumer, "consumer"));
+    }
+
+    /**
+     * Adds a data postprocessor based on SCD identifiers.
+     * @param consumer consumer that will update OSM primitive accordingly
+     * @param types SCD identifiers of objects to process
+     */
+    public static void addScdObjectPostProcessor(BiConsumer<ObjectBlock, OsmPrimitive> consumer, String... types) {
+        postProcessors.addForScdIdentifiers(o -> true, Objects.requireNonNull(consumer, "consumer"), types);
     }
 
     /**
@@ -492,7 +582,7 @@ public class EdigeoFileVEC extends EdigeoLotFile<VecBlock<?>> {
      * @param values attribute values
      */
     public static void addObjectPostProcessor(BiConsumer<ObjectBlock, OsmPrimitive> consumer, String key, String... values) {
-        postProcessors.add(new Pair<>(predicate(key, values), Objects.requireNonNull(consumer, "consumer")));
+        postProcessors.addForAttribute(predicate(key, values), Objects.requireNonNull(consumer, "consumer"), key);
     }
 
     /**
@@ -502,13 +592,13 @@ public class EdigeoFileVEC extends EdigeoLotFile<VecBlock<?>> {
      * @param keyValues OSM attribute key/values (int the form {@code foo=bar;bar=baz})
      */
     public static void addObjectPostProcessor(String symId, String keyValues) {
-        postProcessors.add(new Pair<>(predicate("SYM_id", symId), (o, p) -> {
+        postProcessors.addForAttribute(predicate("SYM_id", symId), (o, p) -> {
             p.remove("SYM_id");
             for (String tag : keyValues.split(";")) {
                 String[] kv = tag.split("=");
                 p.put(kv[0], kv[1]);
             }
-        }));
+        }, "SYM_id");
     }
 
     /**
@@ -549,7 +639,7 @@ public class EdigeoFileVEC extends EdigeoLotFile<VecBlock<?>> {
         super.fill(ds);
         Projection proj = lot.geo.getCoorReference().getProjection();
         for (ObjectBlock obj : getObjects()) {
-            if (!ignoredObjects.stream().anyMatch(p -> p.test(obj))) {
+            if (!ignoredObjects.anyMatch(obj)) {
                 OsmPrimitive p;
                 switch (obj.scdRef.kind) {
                     case POINT: p = fillPoint(ds, proj, obj, obj.getConstructionRelations(), obj.getSemanticRelations()); break;
@@ -559,11 +649,8 @@ public class EdigeoFileVEC extends EdigeoLotFile<VecBlock<?>> {
                     default: throw new IllegalArgumentException(obj.toString());
                 }
                 if (p != null) {
-                    for (Pair<Predicate<ObjectBlock>, BiConsumer<ObjectBlock, OsmPrimitive>> e : postProcessors) {
-                        if (e.a.test(obj)) {
-                            e.b.accept(obj, p);
-                        }
-                    }
+                    final OsmPrimitive osm = p;
+                    postProcessors.forEachMatch(obj, c -> c.accept(obj, osm));
                     if (p.isTagged()) {
                         p.put("source", CadastrePlugin.source);
                     }
@@ -631,21 +718,30 @@ public class EdigeoFileVEC extends EdigeoLotFile<VecBlock<?>> {
         assert arcs.size() >= 1;
         // Some lines are made of several arcs, but they need to be sorted
         if (arcs.size() > 1) {
+            final ArcEndpoints starts = new ArcEndpoints(EPSILON);
+            final ArcEndpoints ends = new ArcEndpoints(EPSILON);
+            for (ArcBlock a : arcs) {
+                starts.add(a.points.get(0), a);
+                ends.add(a.points.get(a.nPoints - 1), a);
+            }
+            // The first arc is the one not following any other arc, or any arc of a closed line
             List<ArcBlock> newArcs = arcs.stream().filter(
-                    a -> arcs.stream().noneMatch(
-                            b -> b.points.get(0).equalsEpsilon(a.points.get(a.nPoints - 1), EPSILON))).collect(Collectors.toList());
-            if (newArcs.size() != 1) {
+                    a -> ends.find(a.points.get(0)).isEmpty()).collect(Collectors.toList());
+            if (newArcs.isEmpty()) {
+                newArcs.add(arcs.get(0));
+            } else if (newArcs.size() != 1) {
                 Logging.warn("Unable to process geometry of: " + obj);
                 return null;
             }
             while (newArcs.size() < arcs.size()) {
                 ArcBlock ab = newArcs.get(newArcs.size() - 1);
-                EastNorth en = ab.points.get(ab.nPoints - 1);
-                Stream<ArcBlock> stream = arcs.stream().filter(a -> a.points.get(0).equalsEpsilon(en, EPSILON));
-                assert stream.count() == 1;
-                newArcs.add(stream.findAny().get());
+                List<ArcBlock> next = starts.find(ab.points.get(ab.nPoints - 1));
+                if (next.size() != 1 || newArcs.contains(next.get(0))) {
+                    Logging.warn("Unable to process geometry of: " + obj);
+                    return null;
+                }
+                newArcs.add(next.get(0));
             }
-            assert newArcs.size() == arcs.size();
             arcs.clear();
             arcs.addAll(newArcs);
         }
@@ -664,6 +760,49 @@ public class EdigeoFileVEC extends EdigeoLotFile<VecBlock<?>> {
         return addPrimitiveAndTags(ds, obj, w);
     }
 
+    /**
+     * Arcs by end point, for chaining arcs into lines.
+     */
+    private static final class ArcEndpoints {
+        private final double epsilon;
+        private final Map<Long, List<Pair<EastNorth, ArcBlock>>> cells = new HashMap<>();
+
+        ArcEndpoints(double epsilon) {
+            this.epsilon = epsilon;
+        }
+
+        private static long key(long x, long y) {
+            return (x << 32) ^ (y & 0xffffffffL);
+        }
+
+        void add(EastNorth en, ArcBlock arc) {
+            cells.computeIfAbsent(key((long) Math.floor(en.east() / epsilon), (long) Math.floor(en.north() / epsilon)),
+                    k -> new ArrayList<>()).add(new Pair<>(en, arc));
+        }
+
+        /**
+         * Returns the arcs having an end point equal to {@code en}, up to epsilon.
+         */
+        List<ArcBlock> find(EastNorth en) {
+            List<ArcBlock> result = new ArrayList<>();
+            long x = (long) Math.floor(en.east() / epsilon);
+            long y = (long) Math.floor(en.north() / epsilon);
+            for (long i = x - 1; i <= x + 1; i++) {
+                for (long j = y - 1; j <= y + 1; j++) {
+                    List<Pair<EastNorth, ArcBlock>> list = cells.get(key(i, j));
+                    if (list != null) {
+                        for (Pair<EastNorth, ArcBlock> p : list) {
+                            if (p.a.equalsEpsilon(en, epsilon)) {
+                                result.add(p.b);
+                            }
+                        }
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
     private static OsmPrimitive fillArea(DataSet ds, Projection proj, ObjectBlock obj,
             List<RelationBlock> constructionRelations, List<RelationBlock> semanticRelations) {
         assert constructionRelations.size() >= 1 : constructionRelations;
@@ -26,6 +26,11 @@ public abstract class EdigeoLotFile<B extends ChildBlock> extends EdigeoFile {
     private final Map<String, Class<? extends B>> classes = new HashMap<>();
     protected final ClassToInstancesMap<B> blocks = new MutableClassToInstancesMap<>();
 
+    // Descriptors by type and identifier, see find(). Rebuilt when a descriptor is not found,
+    // as identifiers are only known once the descriptors are read. Replaced rather than updated,
+    // as the files of a lot read in parallel look up the descriptors of the same SCD file
+    private volatile Map<String, Map<String, B>> index = new HashMap<>();
+
     EdigeoLotFile(Lot lot, String subsetId, Path path) throws IOException {
         super(path);
         this.lot = Objects.requireNonNull(lot, "lot");
@@ -85,22 +90,34 @@ public abstract class EdigeoLotFile<B extends ChildBlock> extends EdigeoFile {
      * @param klass descriptor class
      * @return found descriptor
      */
-    @SuppressWarnings("unchecked")
     public final <T extends B> T find(List<String> values, Class<T> klass) {
         assert values.size() == 4 : values;
         assert values.get(0).equals(lot.identifier) : values + " / " + lot.identifier;
         assert values.get(1).equals(subsetId) : values + " / " + subsetId;
         assert klass.isAssignableFrom(classes.get(values.get(2))) : values;
-        List<T> list = blocks.getInstances(klass);
-        if (list == null) {
-            Class<? extends B> realClass = classes.get(values.get(2));
-            if (klass.isAssignableFrom(realClass)) {
-                list = (List<T>) blocks.getInstances(realClass);
-            } else {
-                throw new IllegalArgumentException(values + " / " + klass + " / " + realClass);
+        Class<? extends B> realClass = classes.get(values.get(2));
+        if (realClass == null || !klass.isAssignableFrom(realClass)) {
+            throw new IllegalArgumentException(values + " / " + klass + " / " + realClass);
+        }
+        B b = lookup(values.get(2), values.get(3));
+        if (b == null) {
+            buildIndex();
+            b = lookup(values.get(2), values.get(3));
+            if (b == null) {
+                throw new IllegalArgumentException(values + " / " + klass);
             }
         }
-        return list.stream().filter(x -> x.identifier.equals(values.get(3))).findAny().orElseThrow(
-                () -> new IllegalArgumentException(values + " / " + klass));
+        return klass.cast(b);
+    }
+
+    private B lookup(String type, String identifier) {
+        Map<String, B> map = index.get(type);
+        return map != null ? map.get(identifier) : null;
+    }
+
+    private void buildIndex() {
+        Map<String, Map<String, B>> map = new HashMap<>();
+        blocks.forEach((k, v) -> v.forEach(b -> map.computeIfAbsent(b.type, t -> new HashMap<>()).putIfAbsent(b.identifier, b)));
+        index = map;
     }
 }
@@ -21,6 +21,7 @@ import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 import org.apache.commons.compress.utils.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.text.WordUtils;
+import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.DataSet.UploadPolicy;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
@@ -115,7 +116,7 @@ public class EdigeoPciReader extends AbstractReader {
         }, "TEX_id");
 
         // Objects mapping
-        EdigeoFileVEC.addObjectPostProcessor((o, p) -> {
+        EdigeoFileVEC.addScdObjectPostProcessor((o, p) -> {
             p.put("highway", "road");
             String name = p.get("name");
             if (name != null && name.contains(" ")) {
@@ -130,18 +131,18 @@ public class EdigeoPciReader extends AbstractReader {
                     }
                 }
             }
-        }, o -> o.hasScdIdentifier("ZONCOMMUNI_id"));
+        }, "ZONCOMMUNI_id");
 
-        EdigeoFileVEC.addObjectPostProcessor((o, p) -> {
+        EdigeoFileVEC.addScdObjectPostProcessor((o, p) -> {
             p.put("boundary", "administrative");
             p.put("admin_level", "8");
             p.put("ref:INSEE", "XX"+p.get("IDU_id")); // TODO: find department number
             p.put("name", WordUtils.capitalizeFully(p.get("TEX2_id")));
             p.remove("IDU_id");
             p.remove("TEX2_id");
-        }, o -> o.hasScdIdentifier("COMMUNE_id"));
+        }, "COMMUNE_id");
 
-        EdigeoFileVEC.addObjectPostProcessor((o, p) -> {
+        EdigeoFileVEC.addScdObjectPostProcessor((o, p) -> {
             p.put("boundary", "cadastral");
             p.put("ref", p.get("IDU_id"));
             p.remove("IDU_id");
@@ -156,37 +157,36 @@ public class EdigeoPciReader extends AbstractReader {
             p.remove("INP_id");
             p.remove("QUPL_id");
             p.remove("SUPF_id");
-        }, o -> o.hasScdIdentifier("SECTION_id") || o.hasScdIdentifier("SUBDSECT_id")
-             || o.hasScdIdentifier("PARCELLE_id") || o.hasScdIdentifier("SUBDFISC_id") || o.hasScdIdentifier("CHARGE_id"));
+        }, "SECTION_id", "SUBDSECT_id", "PARCELLE_id", "SUBDFISC_id", "CHARGE_id");
 
         EdigeoFileVEC.addObjectPostProcessor((o, p) -> p.put("wall", "no"), "DUR_id", "02");
-        EdigeoFileVEC.addObjectPostProcessor((o, p) -> {
+        EdigeoFileVEC.addScdObjectPostProcessor((o, p) -> {
             p.put("building", "yes");
             p.remove("DUR_id");
-        }, o -> o.hasScdIdentifier("BATIMENT_id"));
+        }, "BATIMENT_id");
 
-        EdigeoFileVEC.addObjectPostProcessor((o, p) -> {
+        EdigeoFileVEC.addScdObjectPostProcessor((o, p) -> {
             p.put("addr:housenumber", p.get("name"));
             p.remove("name");
-        }, o -> o.hasScdIdentifier("NUMVOIE_id"));
+        }, "NUMVOIE_id");
 
-        EdigeoFileVEC.addObjectPostProcessor((o, p) -> {
+        EdigeoFileVEC.addScdObjectPostProcessor((o, p) -> {
             p.put("place", "unknown");
             p.put("fixme", "place type");
-        }, o -> o.hasScdIdentifier("LIEUDIT_id"));
+        }, "LIEUDIT_id");
 
-        EdigeoFileVEC.addObjectPostProcessor((o, p) -> {
+        EdigeoFileVEC.addScdObjectPostProcessor((o, p) -> {
             p.remove("ORI_id");
-        }, o -> o.hasScdIdentifier("TPOINT_id"));
+        }, "TPOINT_id");
 
-        EdigeoFileVEC.addObjectPostProcessor((o, p) -> {
+        EdigeoFileVEC.addScdObjectPostProcessor((o, p) -> {
             p.put("highway", "road");
             p.put("area", "yes");
-        }, o -> o.hasScdIdentifier("TRONROUTE_id"));
+        }, "TRONROUTE_id");
 
-        EdigeoFileVEC.addObjectPostProcessor((o, p) -> {
+        EdigeoFileVEC.addScdObjectPostProcessor((o, p) -> {
             p.put("waterway", "riverbank");
-        }, o -> o.hasScdIdentifier("TRONFLUV_id"));
+        }, "TRONFLUV_id");
 
         // Mapping TEX*_id => name (last step)
         for (String t : Arrays.asList("TEX2_id", "TEX3_id", "TEX4_id", "TEX5_id", "TEX6_id", "TEX7_id", "TEX8_id", "TEX9_id")) {
@@ -266,7 +266,10 @@ public class EdigeoPciReader extends AbstractReader {
             }
             DataSet data = new DataSet();
             data.setUploadPolicy(UploadPolicy.DISCOURAGED);
-            EdigeoFileTHF thf = new EdigeoFileTHF(thfPath).read().fill(data);
+            int threads = Main.pref.getInt("cadastrewms.edigeo.threads", Runtime.getRuntime().availableProcessors());
+            EdigeoFileTHF thf = threads > 1
+                    ? new EdigeoFileTHF(thfPath).readAndFill(data, threads)
+                    : new EdigeoFileTHF(thfPath).read().fill(data);
             data.setName(thf.getSupport().getBlockIdentifier());
             return data;
         } finally {
@@ -98,6 +98,10 @@ public class CadastrePreferenceSetting extends DefaultTabPreferenceSetting {
     public static final int DEFAULT_SQUARE_SIZE = 100;
     private JTextField grabMultiplier4Size = new JTextField(5);
 
+    public static final int DEFAULT_GRAB_THREADS = 2;
+    JLabel jLabelGrabThreads = new JLabel(tr("Simultaneous downloads"));
+    private JTextField grabThreads = new JTextField(5);
+
     private JCheckBox enableCache = new JCheckBox(tr("Enable automatic caching."));
 
     public static final int DEFAULT_CACHE_SIZE = 0; // disabled by default
@@ -265,6 +269,12 @@ public class CadastrePreferenceSetting extends DefaultTabPreferenceSetting {
         grabMultiplier4Size.setEnabled(currentScale.equals(Scale.SQUARE_100M.value));
         cadastrewms.add(grabMultiplier4Size, GBC.eol().fill(GBC.HORIZONTAL).insets(5, 5, 0, 5));
 
+        // option to set the number of images downloaded at the same time
+        grabThreads.setText(String.valueOf(getNumber("cadastrewms.grabThreads", DEFAULT_GRAB_THREADS)));
+        grabThreads.setToolTipText(tr("Number of images downloaded at the same time (from 1 to 8)"));
+        cadastrewms.add(jLabelGrabThreads, GBC.std().insets(0, 5, 10, 0));
+        cadastrewms.add(grabThreads, GBC.eol().fill(GBC.HORIZONTAL).insets(5, 5, 200, 5));
+
         // WMS layers selection
         JLabel jLabelLayers = new JLabel(tr("Layers:"));
         cadastrewms.add(jLabelLayers, GBC.std().insets(0, 5, 10, 0));
@@ -418,6 +428,13 @@ public class CadastrePreferenceSetting extends DefaultTabPreferenceSetting {
                 Logging.debug(e);
             }
         }
+        try {
+            int threads = Integer.parseInt(grabThreads.getText());
+            if (threads >= 1 && threads <= 8)
+                Main.pref.put("cadastrewms.grabThreads", grabThreads.getText());
+        } catch (NumberFormatException e) {
+            Logging.debug(e);
+        }
         Main.pref.putBoolean("cadastrewms.layerWater", layerLS3.isSelected());
         Main.pref.putBoolean("cadastrewms.layerBuilding", layerLS2.isSelected());
         Main.pref.putBoolean("cadastrewms.layerSymbol", layerLS1.isSelected());
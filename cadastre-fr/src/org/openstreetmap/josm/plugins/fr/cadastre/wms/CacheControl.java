@@ -3,19 +3,26 @@ package org.openstreetmap.josm.plugins.fr.cadastre.wms;
 
 import static org.openstreetmap.josm.tools.I18n.tr;
 
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+import javax.imageio.ImageIO;
 import javax.swing.JDialog;
 import javax.swing.JOptionPane;
 
@@ -28,11 +35,13 @@ import org.openstreetmap.josm.tools.Logging;
 /**
  * This class handles the WMS layer cache mechanism. The design is oriented for a good performance (no
  * wait status on GUI, fast saving even in big file). A separate thread is created for each WMS
- * layer to not suspend the GUI until disk I/O is terminated (a file for the cache can take
- * several MB's). If the cache file already exists, new images are just appended to the file
- * (performance). Since we use the ObjectStream methods, it is required to modify the standard
- * ObjectOutputStream in order to have objects appended readable (otherwise a stream header
- * is inserted before each append and an exception is raised at objects read).
+ * layer to not suspend the GUI until disk I/O is terminated.
+ * The cache of a layer is an index file holding the layer header followed by the georeference of
+ * each image, and a directory (index file name + ".tiles") holding one PNG file per image. New images
+ * are just appended to the index (performance). When a cache is loaded, only the index is read;
+ * the pixels of an image are read in background when it becomes visible (see WMSLayer.paint).
+ * Cache files written by older versions (serialized GeorefImage stream) are still readable and are
+ * converted to the index format once loaded.
  */
 public class CacheControl implements Runnable {
 
@@ -40,25 +49,21 @@ public class CacheControl implements Runnable {
 
     public static final String C_UTM20N = "UTM";
 
-    public static class ObjectOutputStreamAppend extends ObjectOutputStream {
-        public ObjectOutputStreamAppend(OutputStream out) throws IOException {
-            super(out);
-        }
-
-        @Override
-        protected void writeStreamHeader() throws IOException {
-            reset();
-        }
-    }
-
     public static boolean cacheEnabled = true;
 
     public static int cacheSize = 500;
 
+    /** first int of an index file ("CDX1"); serialized streams written by older versions start with 0xACED */
+    private static final int INDEX_MAGIC = 0x43445831;
+
+    private static final String TILES_DIR_EXTENSION = ".tiles";
+
     public WMSLayer wmsLayer;
 
     private ArrayList<GeorefImage> imagesToSave = new ArrayList<>();
     private Lock imagesLock = new ReentrantLock();
+    // next image file number in the tiles directory, -1 if not known yet
+    private int nextTile = -1;
 
     public boolean isCachePipeEmpty() {
         imagesLock.lock();
@@ -83,33 +88,107 @@ public class CacheControl implements Runnable {
         new Thread(this).start();
     }
 
-    private static void checkDirSize(File path) {
+    /**
+     * Delete the least recently used caches until the cache directory is under the size limit.
+     * A cache is an index file with its tiles directory; its last use is the index modification date,
+     * updated when the cache is loaded. The cache of the current layer is never deleted.
+     */
+    private void checkDirSize(File path) {
         if (cacheSize != 0) {
-            long size = 0;
-            long oldestFileDate = Long.MAX_VALUE;
-            int oldestFile = 0;
             File[] files = path.listFiles();
-            for (int i = 0; i < files.length; i++) {
-                size += files[i].length();
-                if (files[i].lastModified() < oldestFileDate) {
-                    oldestFile = i;
-                    oldestFileDate = files[i].lastModified();
+            if (files == null)
+                return;
+            long size = 0;
+            ArrayList<File> entries = new ArrayList<>();
+            for (File f : files) {
+                if (f.isDirectory()) {
+                    size += dirSize(f);
+                    // orphan tiles directory, the index is counted with its own tiles otherwise
+                    if (!f.getName().endsWith(TILES_DIR_EXTENSION) || !getIndexFile(f).exists())
+                        entries.add(f);
+                } else {
+                    size += f.length();
+                    entries.add(f);
                 }
             }
-            if (size > (long) cacheSize*1024*1024) {
-                Logging.info("Delete oldest file  \""+ files[oldestFile].getName()
+            if (size <= (long) cacheSize*1024*1024)
+                return;
+            File[] sorted = entries.toArray(new File[0]);
+            Arrays.sort(sorted, new Comparator<File>() {
+                @Override
+                public int compare(File f1, File f2) {
+                    return Long.compare(f1.lastModified(), f2.lastModified());
+                }
+            });
+            File current = getCacheFile();
+            for (File f : sorted) {
+                if (size <= (long) cacheSize*1024*1024)
+                    break;
+                if (f.equals(current))
+                    continue;
+                Logging.info("Delete oldest file  \""+ f.getName()
                         + "\" in cache dir to stay under the limit of " + cacheSize + " MB.");
-                files[oldestFile].delete();
-                checkDirSize(path);
+                if (f.isDirectory()) {
+                    size -= dirSize(f);
+                    deleteDir(f);
+                } else {
+                    File tiles = getTilesDir(f);
+                    size -= f.length() + dirSize(tiles);
+                    f.delete();
+                    deleteDir(tiles);
+                }
+            }
+        }
+    }
+
+    private static long dirSize(File dir) {
+        long size = 0;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                size += f.isDirectory() ? dirSize(f) : f.length();
+            }
+        }
+        return size;
+    }
+
+    private static void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
             }
         }
+        dir.delete();
+    }
+
+    private File getCacheFile() {
+        return new File(CadastrePlugin.cacheDir + wmsLayer.getName() + "." + WMSFileExtension());
+    }
+
+    private static File getTilesDir(File indexFile) {
+        return new File(indexFile.getPath() + TILES_DIR_EXTENSION);
+    }
+
+    private static File getIndexFile(File tilesDir) {
+        String path = tilesDir.getPath();
+        return new File(path.substring(0, path.length() - TILES_DIR_EXTENSION.length()));
+    }
+
+    private static boolean isIndexFile(File file) throws IOException {
+        try (DataInputStream dis = new DataInputStream(new FileInputStream(file))) {
+            return dis.readInt() == INDEX_MAGIC;
+        } catch (EOFException e) {
+            Logging.trace(e);
+            return false;
+        }
     }
 
     public boolean loadCacheIfExist() {
         if (!CadastrePlugin.isCadastreProjection()) {
             CadastrePlugin.askToChangeProjection();
         }
-        File file = new File(CadastrePlugin.cacheDir + wmsLayer.getName() + "." + WMSFileExtension());
+        File file = getCacheFile();
         if (file.exists()) {
             int reply = GuiHelper.runInEDTAndWaitAndReturn(new Callable<Integer>() {
                 @Override
@@ -138,12 +217,19 @@ public class CacheControl implements Runnable {
     }
 
     public void deleteCacheFile() {
-        delete(new File(CadastrePlugin.cacheDir + wmsLayer.getName() + "." + WMSFileExtension()));
+        // the images not loaded yet would be lost with their tiles
+        wmsLayer.loadAllImages();
+        File file = getCacheFile();
+        delete(file);
+        delete(getTilesDir(file));
+        nextTile = 0;
     }
 
     private static void delete(File file) {
         Logging.info("Delete file "+file);
-        if (file.exists())
+        if (file.isDirectory())
+            deleteDir(file);
+        else if (file.exists())
             file.delete();
         while (file.exists()) { // wait until file is really gone (otherwise appends to existing one)
             CadastrePlugin.safeSleep(500);
@@ -152,11 +238,19 @@ public class CacheControl implements Runnable {
 
     public boolean loadCache(File file, int currentLambertZone) {
         boolean successfulRead = false;
-        try (
-            FileInputStream fis = new FileInputStream(file);
-            ObjectInputStream ois = new ObjectInputStream(fis);
-        ) {
-            successfulRead = wmsLayer.read(file, ois, currentLambertZone);
+        boolean legacy = false;
+        try {
+            if (isIndexFile(file)) {
+                successfulRead = loadIndex(file, currentLambertZone);
+            } else {
+                legacy = true;
+                try (
+                    FileInputStream fis = new FileInputStream(file);
+                    ObjectInputStream ois = new ObjectInputStream(fis);
+                ) {
+                    successfulRead = wmsLayer.read(file, ois, currentLambertZone);
+                }
+            }
         } catch (IOException | ClassNotFoundException ex) {
             Logging.error(ex);
             GuiHelper.runInEDTAndWait(() -> JOptionPane.showMessageDialog(Main.parent,
@@ -165,12 +259,95 @@ public class CacheControl implements Runnable {
             return false;
         }
         if (successfulRead && wmsLayer.isRaster()) {
+            GeorefImage raster = wmsLayer.getImage(0);
+            if (!raster.isLoaded() && !loadImage(raster))
+                return false;
             // serialized raster bufferedImage hangs-up on Java6. Recreate them here
-            wmsLayer.getImage(0).image = RasterImageModifier.fixRasterImage(wmsLayer.getImage(0).image);
+            raster.image = RasterImageModifier.fixRasterImage(raster.image);
+        }
+        if (successfulRead) {
+            file.setLastModified(System.currentTimeMillis());
+            if (legacy && cacheEnabled && file.equals(getCacheFile())) {
+                // written now, before the overlapping zones are masked: the tiles hold the images as grabbed
+                Logging.info("Convert cache file "+file+" to the indexed format");
+                deleteCacheFile();
+                synchronized (this) {
+                    wmsLayer.imagesLock.lock();
+                    try {
+                        writeImages(new ArrayList<>(wmsLayer.getImages()));
+                    } finally {
+                        wmsLayer.imagesLock.unlock();
+                    }
+                }
+            }
+            if (legacy)
+                wmsLayer.maskImages();
         }
         return successfulRead;
     }
 
+    /**
+     * Read the layer header and the georeference of the images from an index file.
+     * The pixels are not read here, see {@link #loadImage(GeorefImage)}.
+     */
+    private boolean loadIndex(File file, int currentLambertZone) throws IOException {
+        File tiles = getTilesDir(file);
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            dis.readInt(); // INDEX_MAGIC
+            if (!wmsLayer.readHeader(file, dis, currentLambertZone))
+                return false;
+            int count = 0;
+            try {
+                for (;;) {
+                    GeorefImage newImage = GeorefImage.readGeoref(dis, wmsLayer, null);
+                    int tile = dis.readInt();
+                    newImage.cacheFile = new File(tiles, tile + ".png");
+                    wmsLayer.addImage(newImage);
+                    count++;
+                }
+            } catch (EOFException ex) {
+                // expected exception when all images are read
+                Logging.trace(ex);
+            }
+            Logging.info("Cache index loaded for location "+wmsLayer.getLocation()+" with "+count+" images");
+        }
+        return true;
+    }
+
+    /**
+     * Read the pixels of an image from its tile file in the cache.
+     * @return true if the image is loaded
+     */
+    public boolean loadImage(GeorefImage image) {
+        BufferedImage img = readImage(image);
+        if (img != null) {
+            image.setLoadedImage(img);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Read the pixels of an image from its tile file in the cache, without changing the image.
+     * Can be called without holding the layer images lock.
+     * @return the pixels, or null if the tile cannot be read
+     */
+    public BufferedImage readImage(GeorefImage image) {
+        File file = image.cacheFile;
+        if (file == null)
+            return null;
+        try {
+            BufferedImage img = ImageIO.read(file);
+            if (img != null)
+                return img;
+            Logging.warn("Unreadable cache image "+file);
+        } catch (IOException e) {
+            Logging.error(e);
+        }
+        image.cacheFile = null; // don't retry at each repaint
+        return null;
+    }
+
     public synchronized void saveCache(GeorefImage image) {
         imagesLock.lock();
         this.imagesToSave.add(image);
@@ -188,27 +365,10 @@ public class CacheControl implements Runnable {
             int size = imagesToSave.size();
             imagesLock.unlock();
             if (size > 0) {
-                File file = new File(CadastrePlugin.cacheDir + wmsLayer.getName() + "." + WMSFileExtension());
-                try {
-                    if (file.exists()) {
-                        try (ObjectOutputStreamAppend oos = new ObjectOutputStreamAppend(
-                                new BufferedOutputStream(new FileOutputStream(file, true)))) {
-                            for (int i = 0; i < size; i++) {
-                                oos.writeObject(imagesToSave.get(i));
-                            }
-                        }
-                    } else {
-                        try (ObjectOutputStream oos = new ObjectOutputStream(
-                                new BufferedOutputStream(new FileOutputStream(file)))) {
-                            wmsLayer.write(file, oos);
-                            for (int i = 0; i < size; i++) {
-                                oos.writeObject(imagesToSave.get(i));
-                            }
-                        }
-                    }
-                } catch (IOException e) {
-                    Logging.error(e);
-                }
+                imagesLock.lock();
+                List<GeorefImage> images = new ArrayList<>(imagesToSave.subList(0, size));
+                imagesLock.unlock();
+                writeImages(images);
                 imagesLock.lock();
                 for (int i = 0; i < size; i++) {
                     imagesToSave.remove(0);
@@ -223,6 +383,60 @@ public class CacheControl implements Runnable {
         }
     }
 
+    /**
+     * Append the images to the cache index, each one with a new tile file.
+     * Must be called holding this object's monitor.
+     */
+    private void writeImages(List<GeorefImage> images) {
+        File file = getCacheFile();
+        File tiles = getTilesDir(file);
+        try {
+            if (file.exists() && !isIndexFile(file)) {
+                // cache written by an older version and not loaded: replaced by a new one
+                delete(file);
+                delete(tiles);
+                nextTile = 0;
+            }
+            boolean append = file.exists();
+            if (!tiles.exists())
+                tiles.mkdirs();
+            if (nextTile < 0)
+                nextTile = nextTileNumber(tiles);
+            try (DataOutputStream dos = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(file, append)))) {
+                if (!append) {
+                    dos.writeInt(INDEX_MAGIC);
+                    wmsLayer.writeHeader(file, dos);
+                }
+                for (GeorefImage image : images) {
+                    if (image.image == null)
+                        continue;
+                    int tile = nextTile++;
+                    ImageIO.write(image.image, "png", new File(tiles, tile + ".png"));
+                    image.writeGeoref(dos);
+                    dos.writeInt(tile);
+                }
+            }
+        } catch (IOException e) {
+            Logging.error(e);
+        }
+    }
+
+    private static int nextTileNumber(File tiles) {
+        int next = 0;
+        String[] names = tiles.list();
+        if (names != null) {
+            for (String name : names) {
+                try {
+                    next = Math.max(next, Integer.parseInt(name.substring(0, name.indexOf('.'))) + 1);
+                } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+                    Logging.trace(e);
+                }
+            }
+        }
+        return next;
+    }
+
     private String WMSFileExtension() {
         String ext = String.valueOf(wmsLayer.getLambertZone() + 1);
         if (CadastrePlugin.isLambert_cc9())
@@ -20,6 +20,8 @@ public class CadastreGrabber {
 
     private CadastreInterface wmsInterface = new CadastreInterface();
 
+    private String baseUrl = CadastreInterface.BASE_URL;
+
     public GeorefImage grab(WMSLayer wmsLayer, EastNorth lambertMin, EastNorth lambertMax)
             throws IOException, OsmTransferException {
         try {
@@ -42,10 +44,10 @@ public class CadastreGrabber {
         }
     }
 
-    private static URL getURLRaster(WMSLayer wmsLayer, EastNorth lambertMin, EastNorth lambertMax) throws MalformedURLException {
+    private URL getURLRaster(WMSLayer wmsLayer, EastNorth lambertMin, EastNorth lambertMax) throws MalformedURLException {
         // GET /scpc/wms?version=1.1&request=GetMap&layers=CDIF:PMC@QH4480001701&format=image/png&bbox=-1186,0,13555,8830&width=576&height=345&exception=application/vnd.ogc.se_inimage&styles= HTTP/1.1
         final int cRasterX = CadastrePlugin.imageWidth; // keep width constant and adjust width to original image proportions
-        String str = CadastreInterface.BASE_URL+"/scpc/wms?version=1.1&request=GetMap";
+        String str = baseUrl+"/scpc/wms?version=1.1&request=GetMap";
         str += "&layers=CDIF:PMC@";
         str += wmsLayer.getCodeCommune();
         str += "&format=image/png";
@@ -59,10 +61,10 @@ public class CadastreGrabber {
         return new URL(str.replace(" ", "%20"));
     }
 
-    private static URL buildURLVector(String layers, String styles,
+    private URL buildURLVector(String layers, String styles,
             int width, int height,
             EastNorth lambertMin, EastNorth lambertMax) throws MalformedURLException {
-        String str = CadastreInterface.BASE_URL+"/scpc/wms?version=1.1&request=GetMap";
+        String str = baseUrl+"/scpc/wms?version=1.1&request=GetMap";
         str += "&layers="+ layers;
         str += "&format=image/png";
         str += "&bbox="+lambertMin.east()+",";
@@ -76,7 +78,7 @@ public class CadastreGrabber {
         return new URL(str.replace(" ", "%20"));
     }
 
-    private static URL getURLVector(EastNorth lambertMin, EastNorth lambertMax) throws MalformedURLException {
+    private URL getURLVector(EastNorth lambertMin, EastNorth lambertMax) throws MalformedURLException {
         return buildURLVector(CadastrePlugin.grabLayers, CadastrePlugin.grabStyles,
                 CadastrePlugin.imageWidth, CadastrePlugin.imageHeight,
                 lambertMin, lambertMax);
@@ -88,6 +90,13 @@ public class CadastreGrabber {
         }
     }
 
+    /**
+     * Set the server images are grabbed from (tests only, default is {@link CadastreInterface#BASE_URL}).
+     */
+    void setBaseUrl(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
     public CadastreInterface getWmsInterface() {
         return wmsInterface;
     }
@@ -5,6 +5,7 @@ import static org.openstreetmap.josm.tools.I18n.tr;
 
 import java.awt.GridBagLayout;
 import java.io.BufferedReader;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -16,9 +17,12 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.swing.JComboBox;
 import javax.swing.JDialog;
@@ -41,6 +45,8 @@ import org.openstreetmap.josm.tools.Logging;
 public class CadastreInterface {
     public boolean downloadCanceled;
     private HttpURLConnection urlConn;
+    // WMS requests in progress, opened by the grab workers
+    private final Set<HttpURLConnection> contentConns = Collections.synchronizedSet(new HashSet<>());
 
     private String csrfToken;
     private String cookie;
@@ -612,15 +618,45 @@ public class CadastreInterface {
             urlConn.setConnectTimeout(1);
             urlConn.setReadTimeout(1);
         }
+        synchronized (contentConns) {
+            for (HttpURLConnection conn : contentConns) {
+                conn.disconnect();
+            }
+            contentConns.clear();
+        }
         downloadCanceled = true;
         lastWMSLayerName = null;
     }
 
+    /**
+     * Open a WMS request. May be called by several grab workers at the same time.
+     * The request is aborted by {@link #cancel()} until the returned stream is closed.
+     */
     public InputStream getContent(URL url) throws IOException, OsmTransferException {
-        urlConn = (HttpURLConnection) url.openConnection();
-        urlConn.setRequestProperty("Connection", "close");
-        urlConn.setRequestMethod("GET");
-        setCookie();
-        return new ProgressInputStream(urlConn, NullProgressMonitor.INSTANCE);
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestProperty("Connection", "close");
+        conn.setRequestMethod("GET");
+        setCookie(conn);
+        contentConns.add(conn);
+        try {
+            return new FilterInputStream(new ProgressInputStream(conn, NullProgressMonitor.INSTANCE)) {
+                @Override
+                public void close() throws IOException {
+                    contentConns.remove(conn);
+                    super.close();
+                }
+            };
+        } catch (OsmTransferException | RuntimeException e) {
+            contentConns.remove(conn);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of WMS requests in progress.
+     * @return the number of WMS requests in progress
+     */
+    int getContentConnectionCount() {
+        return contentConns.size();
     }
 }
@@ -12,6 +12,9 @@ import java.awt.Image;
 import java.awt.Point;
 import java.awt.image.BufferedImage;
 import java.awt.image.ImageObserver;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -41,6 +44,8 @@ public class GeorefImage implements Serializable, ImageObserver, Cloneable {
 
     public BufferedImage image;
     public WMSLayer wmsLayer;
+    // cache file containing the image pixels while they are not loaded (image is null until then)
+    public transient File cacheFile;
 
     private double pixelPerEast;
     private double pixelPerNorth;
@@ -65,6 +70,28 @@ public class GeorefImage implements Serializable, ImageObserver, Cloneable {
         updatePixelPer();
     }
 
+    /**
+     * Constructs an image read from a cache index, whose pixels are loaded later from the given file.
+     */
+    private GeorefImage(EastNorth min, EastNorth max, File cacheFile) {
+        this.min = min;
+        this.max = max;
+        this.cacheFile = cacheFile;
+    }
+
+    public boolean isLoaded() {
+        return image != null;
+    }
+
+    /**
+     * Set the image pixels loaded from the cache file.
+     */
+    public void setLoadedImage(BufferedImage img) {
+        image = Objects.requireNonNull(img);
+        cacheFile = null;
+        updatePixelPer();
+    }
+
     public static GraphicsConfiguration getDefaultConfiguration() {
         GraphicsEnvironment ge = GraphicsEnvironment.getLocalGraphicsEnvironment();
         GraphicsDevice gd = ge.getDefaultScreenDevice();
@@ -99,6 +126,14 @@ public class GeorefImage implements Serializable, ImageObserver, Cloneable {
                 new EastNorth(highestEast, highestNorth));
     }
 
+    /**
+     * Is this image intersecting the given bbox ?
+     */
+    public boolean intersects(EastNorth bmin, EastNorth bmax) {
+        return min.east() <= bmax.east() && bmin.east() <= max.east() && min.north() <= bmax.north()
+                && bmin.north() <= max.north();
+    }
+
     public boolean contains(EastNorth en) {
         return min.east() <= en.east() && en.east() <= max.east() && min.north() <= en.north()
                 && en.north() <= max.north();
@@ -175,6 +210,8 @@ public class GeorefImage implements Serializable, ImageObserver, Cloneable {
      * Make all pixels masked by the given georefImage transparent in this image
      */
     public void withdraw(GeorefImage georefImage) {
+        if (image == null)
+            return; // not loaded from cache yet, masked when loaded (see WMSLayer.maskImage)
         double minMaskEast = (georefImage.min.east() > this.min.east()) ? georefImage.min.east() : this.min.east();
         double maxMaskEast = (georefImage.max.east() < this.max.east()) ? georefImage.max.east() : this.max.east();
         double minMaskNorth = (georefImage.min.north() > this.min.north()) ? georefImage.min.north() : this.min.north();
@@ -256,6 +293,48 @@ public class GeorefImage implements Serializable, ImageObserver, Cloneable {
         ImageIO.write(image, "png", ImageIO.createImageOutputStream(out));
     }
 
+    /**
+     * Write the georeference of this image (everything but the pixels) into a cache index.
+     */
+    public void writeGeoref(DataOutput out) throws IOException {
+        if (orgRaster == null || orgCroppedRaster == null) {
+            // old cache format where only [min,max] bbox is stored
+            orgRaster = new EastNorth[] {min, new EastNorth(min.east(), max.north()), max, new EastNorth(max.east(), min.north())};
+            orgCroppedRaster = orgRaster.clone();
+        }
+        out.writeDouble(max.getX()); out.writeDouble(max.getY());
+        out.writeDouble(min.getX()); out.writeDouble(min.getY());
+        out.writeDouble(angle);
+        for (int i = 0; i < 4; i++) {
+            out.writeDouble(orgRaster[i].getX()); out.writeDouble(orgRaster[i].getY());
+        }
+        for (int i = 0; i < 4; i++) {
+            out.writeDouble(orgCroppedRaster[i].getX()); out.writeDouble(orgCroppedRaster[i].getY());
+        }
+        out.writeInt(imageOriginalHeight);
+        out.writeInt(imageOriginalWidth);
+    }
+
+    /**
+     * Read the georeference of an image from a cache index. Its pixels are loaded later from cacheFile.
+     */
+    public static GeorefImage readGeoref(DataInput in, WMSLayer wmsLayer, File cacheFile) throws IOException {
+        EastNorth max = new EastNorth(in.readDouble(), in.readDouble());
+        EastNorth min = new EastNorth(in.readDouble(), in.readDouble());
+        GeorefImage img = new GeorefImage(min, max, cacheFile);
+        img.angle = in.readDouble();
+        for (int i = 0; i < 4; i++) {
+            img.orgRaster[i] = new EastNorth(in.readDouble(), in.readDouble());
+        }
+        for (int i = 0; i < 4; i++) {
+            img.orgCroppedRaster[i] = new EastNorth(in.readDouble(), in.readDouble());
+        }
+        img.imageOriginalHeight = in.readInt();
+        img.imageOriginalWidth = in.readInt();
+        img.wmsLayer = wmsLayer;
+        return img;
+    }
+
     private void updatePixelPer() {
         pixelPerEast = image.getWidth()/(max.east()-min.east());
         pixelPerNorth = image.getHeight()/(max.north()-min.north());
@@ -0,0 +1,103 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.fr.cadastre.wms;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.openstreetmap.josm.data.coor.EastNorth;
+
+/**
+ * Spatial index of georeferenced images, used to find the images overlapping a new grabbed image
+ * without scanning all the images of the layer.
+ * The images are stored in the cells of a regular grid whose size is the size of the first image
+ * added (grabbed images of a layer have all the same size). Images covering too many cells are kept
+ * apart and always returned as candidates.
+ * This class is not thread safe.
+ */
+public class GeorefImageIndex {
+
+    private static final int MAX_CELLS = 64;
+
+    private double cellSize;
+
+    private final HashMap<Long, List<GeorefImage>> cells = new HashMap<>();
+
+    private final List<GeorefImage> large = new ArrayList<>();
+
+    private int size;
+
+    public void add(GeorefImage img) {
+        if (img.min == null || img.max == null)
+            return;
+        if (cellSize <= 0) {
+            cellSize = Math.max(img.max.east() - img.min.east(), img.max.north() - img.min.north());
+            if (cellSize <= 0)
+                cellSize = 1;
+        }
+        long x0 = cell(img.min.east());
+        long x1 = cell(img.max.east());
+        long y0 = cell(img.min.north());
+        long y1 = cell(img.max.north());
+        size++;
+        if ((x1 - x0 + 1) * (y1 - y0 + 1) > MAX_CELLS) {
+            large.add(img);
+            return;
+        }
+        for (long x = x0; x <= x1; x++) {
+            for (long y = y0; y <= y1; y++) {
+                List<GeorefImage> list = cells.get(key(x, y));
+                if (list == null) {
+                    list = new ArrayList<>();
+                    cells.put(key(x, y), list);
+                }
+                list.add(img);
+            }
+        }
+    }
+
+    /**
+     * Returns the images intersecting the given bbox (borders included), each one once.
+     */
+    public List<GeorefImage> search(EastNorth min, EastNorth max) {
+        List<GeorefImage> result = new ArrayList<>();
+        if (size == 0)
+            return result;
+        Set<GeorefImage> found = Collections.newSetFromMap(new IdentityHashMap<GeorefImage, Boolean>());
+        for (GeorefImage img : large) {
+            if (img.intersects(min, max) && found.add(img))
+                result.add(img);
+        }
+        long x0 = cell(min.east());
+        long x1 = cell(max.east());
+        long y0 = cell(min.north());
+        long y1 = cell(max.north());
+        for (long x = x0; x <= x1; x++) {
+            for (long y = y0; y <= y1; y++) {
+                List<GeorefImage> list = cells.get(key(x, y));
+                if (list != null) {
+                    for (GeorefImage img : list) {
+                        if (img.intersects(min, max) && found.add(img))
+                            result.add(img);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private long cell(double coord) {
+        return (long) Math.floor(coord / cellSize);
+    }
+
+    private static Long key(long x, long y) {
+        return (x << 32) ^ (y & 0xffffffffL);
+    }
+}
@@ -5,18 +5,49 @@ import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Point;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.data.coor.EastNorth;
 import org.openstreetmap.josm.gui.MapView;
 import org.openstreetmap.josm.io.OsmTransferException;
 import org.openstreetmap.josm.plugins.fr.cadastre.CadastrePlugin;
+import org.openstreetmap.josm.plugins.fr.cadastre.preferences.CadastrePreferenceSetting;
 import org.openstreetmap.josm.tools.Logging;
 
+/**
+ * Thread grabbing the images queued for a WMS layer. Up to "cadastrewms.grabThreads" images are
+ * downloaded at the same time by a pool of workers, but the grabbed images are added to the layer
+ * (overlapping zones masked, then saved in cache) one by one in the order they were queued,
+ * so that the result does not depend on the order the server answers.
+ */
 public class GrabThread extends Thread {
 
+    /**
+     * An image being downloaded by the workers pool.
+     */
+    private static class PendingGrab {
+        final EastNorthBound bbox;
+        final Future<GeorefImage> future;
+
+        PendingGrab(EastNorthBound bbox, Future<GeorefImage> future) {
+            this.bbox = bbox;
+            this.future = future;
+        }
+    }
+
+    private static final AtomicInteger workerCount = new AtomicInteger();
+
     private boolean canceled;
 
     private CadastreGrabber grabber;
@@ -29,7 +60,10 @@ public class GrabThread extends Thread {
 
     private CacheControl cacheControl = null;
 
-    private EastNorthBound currentGrabImage;
+    private final ArrayList<EastNorthBound> currentGrabImages = new ArrayList<>();
+
+    // index of the layer images, rebuilt at each new grab session
+    private GeorefImageIndex imageIndex;
 
     private Lock lockCurrentGrabImage = new ReentrantLock();
 
@@ -73,64 +107,20 @@ public class GrabThread extends Thread {
         lockImagesToGrag.unlock();
     }
 
+    private EastNorthBound pollImageToGrab() {
+        lockImagesToGrag.lock();
+        EastNorthBound bbox = imagesToGrab.isEmpty() ? null : imagesToGrab.remove(0);
+        lockImagesToGrag.unlock();
+        return bbox;
+    }
+
     @Override
     public void run() {
         for (;;) {
-            while (getImagesToGrabSize() > 0) {
-                lockImagesToGrag.lock();
-                lockCurrentGrabImage.lock();
-                currentGrabImage = imagesToGrab.get(0);
-                lockCurrentGrabImage.unlock();
-                imagesToGrab.remove(0);
-                lockImagesToGrag.unlock();
-                if (canceled) {
-                    break;
-                } else {
-                    GeorefImage newImage;
-                    try {
-                        wmsLayer.invalidate(); // paint the current grab box
-                        newImage = grabber.grab(wmsLayer, currentGrabImage.min, currentGrabImage.max);
-                    } catch (IOException e) {
-                        Logging.warn("Download action canceled by user or server did not respond");
-                        setCanceled(true);
-                        break;
-                    } catch (OsmTransferException e) {
-                        Logging.error("OSM transfer failed");
-                        setCanceled(true);
-                        break;
-                    }
-                    if (grabber.getWmsInterface().downloadCanceled) {
-                        Logging.info("Download action canceled by user");
-                        setCanceled(true);
-                        break;
-                    }
-                    try {
-                        if (CadastrePlugin.backgroundTransparent) {
-                            wmsLayer.imagesLock.lock();
-                            for (GeorefImage img : wmsLayer.getImages()) {
-                                if (img.overlap(newImage))
-                                    // mask overlapping zone in already grabbed image
-                                    img.withdraw(newImage);
-                                else
-                                    // mask overlapping zone in new image only when new image covers completely the
-                                    // existing image
-                                    newImage.withdraw(img);
-                            }
-                            wmsLayer.imagesLock.unlock();
-                        }
-                        wmsLayer.addImage(newImage);
-                        wmsLayer.invalidate();
-                        saveToCache(newImage);
-                    } catch (NullPointerException e) {
-                        Logging.info("Layer destroyed. Cancel grab thread");
-                        setCanceled(true);
-                    }
-                }
+            if (getImagesToGrabSize() > 0) {
+                grabImages();
             }
             Logging.info("grab thread list empty");
-            lockCurrentGrabImage.lock();
-            currentGrabImage = null;
-            lockCurrentGrabImage.unlock();
             if (canceled) {
                 clearImagesToGrab();
                 canceled = false;
@@ -142,6 +132,121 @@ public class GrabThread extends Thread {
         }
     }
 
+    /**
+     * Grab all the queued images, keeping the workers pool busy, and add them to the layer in the queue order.
+     */
+    private void grabImages() {
+        int threads = wmsLayer.isRaster() ? 1 : Math.max(1,
+                Main.pref.getInt("cadastrewms.grabThreads", CadastrePreferenceSetting.DEFAULT_GRAB_THREADS));
+        ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "cadastre-grab-" + workerCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        buildImageIndex();
+        ArrayDeque<PendingGrab> pending = new ArrayDeque<>();
+        try {
+            for (;;) {
+                // keep as many requests as workers in progress
+                while (!canceled && pending.size() < threads) {
+                    final EastNorthBound bbox = pollImageToGrab();
+                    if (bbox == null)
+                        break;
+                    lockCurrentGrabImage.lock();
+                    currentGrabImages.add(bbox);
+                    lockCurrentGrabImage.unlock();
+                    pending.add(new PendingGrab(bbox, pool.submit(new Callable<GeorefImage>() {
+                        @Override
+                        public GeorefImage call() throws IOException, OsmTransferException {
+                            return grabber.grab(wmsLayer, bbox.min, bbox.max);
+                        }
+                    })));
+                }
+                if (pending.isEmpty() || canceled)
+                    break;
+                wmsLayer.invalidate(); // paint the current grab boxes
+                PendingGrab grab = pending.poll();
+                GeorefImage newImage = waitGrab(grab);
+                lockCurrentGrabImage.lock();
+                currentGrabImages.remove(grab.bbox);
+                lockCurrentGrabImage.unlock();
+                if (newImage == null) {
+                    setCanceled(true);
+                    break;
+                }
+                if (grabber.getWmsInterface().downloadCanceled) {
+                    Logging.info("Download action canceled by user");
+                    setCanceled(true);
+                    break;
+                }
+                addGrabbedImage(newImage);
+            }
+        } finally {
+            for (PendingGrab grab : pending) {
+                grab.future.cancel(true);
+            }
+            pool.shutdownNow();
+            lockCurrentGrabImage.lock();
+            currentGrabImages.clear();
+            lockCurrentGrabImage.unlock();
+            imageIndex = null;
+        }
+    }
+
+    private GeorefImage waitGrab(PendingGrab grab) {
+        try {
+            return grab.future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof OsmTransferException) {
+                Logging.error("OSM transfer failed");
+            } else {
+                Logging.warn("Download action canceled by user or server did not respond");
+            }
+            Logging.debug(e);
+        } catch (InterruptedException e) {
+            Logging.warn("Grab thread interrupted");
+            Logging.debug(e);
+        }
+        return null;
+    }
+
+    private void buildImageIndex() {
+        imageIndex = new GeorefImageIndex();
+        wmsLayer.imagesLock.lock();
+        for (GeorefImage img : wmsLayer.getImages()) {
+            imageIndex.add(img);
+        }
+        wmsLayer.imagesLock.unlock();
+    }
+
+    private void addGrabbedImage(GeorefImage newImage) {
+        try {
+            if (CadastrePlugin.backgroundTransparent) {
+                wmsLayer.imagesLock.lock();
+                for (GeorefImage img : imageIndex.search(newImage.min, newImage.max)) {
+                    if (img.overlap(newImage))
+                        // mask overlapping zone in already grabbed image
+                        img.withdraw(newImage);
+                    else
+                        // mask overlapping zone in new image only when new image covers completely the
+                        // existing image
+                        newImage.withdraw(img);
+                }
+                wmsLayer.imagesLock.unlock();
+            }
+            imageIndex.add(newImage);
+            wmsLayer.addImage(newImage);
+            wmsLayer.invalidate();
+            saveToCache(newImage);
+        } catch (NullPointerException e) {
+            Logging.info("Layer destroyed. Cancel grab thread");
+            setCanceled(true);
+        }
+    }
+
     public void saveToCache(GeorefImage image) {
         if (CacheControl.cacheEnabled && !wmsLayer.isRaster()) {
             getCacheControl().saveCache(image);
@@ -187,8 +292,8 @@ public class GrabThread extends Thread {
             }
         }
         lockCurrentGrabImage.lock();
-        if (currentGrabImage != null) {
-            paintBox(g, mv, currentGrabImage, Color.orange);
+        for (EastNorthBound img : currentGrabImages) {
+            paintBox(g, mv, img, Color.orange);
         }
         lockCurrentGrabImage.unlock();
     }
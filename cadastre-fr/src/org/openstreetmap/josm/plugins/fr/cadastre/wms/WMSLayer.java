@@ -13,15 +13,18 @@ import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.image.BufferedImage;
 import java.awt.image.ImageObserver;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Locale;
 import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -49,6 +52,7 @@ import org.openstreetmap.josm.plugins.fr.cadastre.actions.MenuActionSaveRasterAs
 import org.openstreetmap.josm.plugins.fr.cadastre.actions.mapmode.WMSAdjustAction;
 import org.openstreetmap.josm.plugins.fr.cadastre.preferences.CadastrePreferenceSetting;
 import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
 
 /**
  * This is a layer that grabs the current screen from the French cadastre WMS
@@ -68,12 +72,19 @@ public class WMSLayer extends Layer implements ImageObserver {
 
     public Lock imagesLock = new ReentrantLock();
 
+    // images read from a cache index whose pixels are being loaded, guarded by imagesLock
+    private final HashSet<GeorefImage> loadingImages = new HashSet<>();
+
+    private final ExecutorService imageLoader = Executors.newSingleThreadExecutor(
+            Utils.newThreadFactory("cadastre-cache-loader-%d", Thread.NORM_PRIORITY));
+
     /**
      * v1 to v2 = not supported
      * v2 to v3 = add 4 more EastNorth coordinates in GeorefImages
      * v3 to v4 = add original raster image width and height
+     * v4 to v5 = index of georeferences with one PNG file per image, instead of a serialized stream
      */
-    protected final int serializeFormatVersion = 4;
+    protected final int serializeFormatVersion = 5;
 
     public static int currentFormat;
 
@@ -147,6 +158,7 @@ public class WMSLayer extends Layer implements ImageObserver {
         if (grabThread != null)
                 grabThread.cancel();
         grabThread = null;
+        imageLoader.shutdownNow();
         super.destroy();
         images = null;
         dividedBbox = null;
@@ -296,11 +308,22 @@ public class WMSLayer extends Layer implements ImageObserver {
             else
                 g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
             imagesLock.lock();
-            for (GeorefImage img : images) {
-                img.paint(g, mv, CadastrePlugin.backgroundTransparent,
-                        CadastrePlugin.transparency, CadastrePlugin.drawBoundaries);
+            try {
+                // images read from a cache index are loaded in background when they become visible
+                EastNorth viewMin = mv.getEastNorth(0, mv.getHeight());
+                EastNorth viewMax = mv.getEastNorth(mv.getWidth(), 0);
+                viewMin = viewMin.add(-deltaEast, -deltaNorth);
+                viewMax = viewMax.add(-deltaEast, -deltaNorth);
+                for (int i = 0; i < images.size(); i++) {
+                    GeorefImage img = images.get(i);
+                    if (!img.isLoaded() && img.cacheFile != null && img.intersects(viewMin, viewMax))
+                        requestImage(img);
+                    img.paint(g, mv, CadastrePlugin.backgroundTransparent,
+                            CadastrePlugin.transparency, CadastrePlugin.drawBoundaries);
+                }
+            } finally {
+                imagesLock.unlock();
             }
-            imagesLock.unlock();
             g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, savedInterpolation);
         }
         if (this.isRaster) {
@@ -450,34 +473,151 @@ public class WMSLayer extends Layer implements ImageObserver {
     }
 
     /**
-     * Called by CacheControl when a new cache file is created on disk.
+     * Called by CacheControl when a new cache index is created on disk.
      * Save only primitives to keep cache independent of software changes.
      */
-    public void write(File associatedFile, ObjectOutputStream oos) throws IOException {
+    public void writeHeader(File associatedFile, DataOutput out) throws IOException {
         currentFormat = this.serializeFormatVersion;
         setAssociatedFile(associatedFile);
-        oos.writeInt(this.serializeFormatVersion);
-        oos.writeObject(this.location);    // String
-        oos.writeObject(this.codeCommune); // String
-        oos.writeInt(this.lambertZone);
-        oos.writeBoolean(this.isRaster);
-        oos.writeBoolean(false); // previously buildingsOnly
+        out.writeInt(this.serializeFormatVersion);
+        out.writeUTF(this.location);
+        out.writeUTF(this.codeCommune);
+        out.writeInt(this.lambertZone);
+        out.writeBoolean(this.isRaster);
         if (this.isRaster) {
-            oos.writeDouble(this.rasterMin.getX());
-            oos.writeDouble(this.rasterMin.getY());
-            oos.writeDouble(this.rasterMax.getX());
-            oos.writeDouble(this.rasterMax.getY());
-            oos.writeDouble(this.rasterRatio);
+            out.writeDouble(this.rasterMin.getX());
+            out.writeDouble(this.rasterMin.getY());
+            out.writeDouble(this.rasterMax.getX());
+            out.writeDouble(this.rasterMax.getY());
+            out.writeDouble(this.rasterRatio);
+        }
+        out.writeDouble(this.communeBBox.min.getX());
+        out.writeDouble(this.communeBBox.min.getY());
+        out.writeDouble(this.communeBBox.max.getX());
+        out.writeDouble(this.communeBBox.max.getY());
+    }
+
+    /**
+     * Called by CacheControl when a cache index is read from disk. The images entries are read by CacheControl.
+     */
+    public boolean readHeader(File associatedFile, DataInput in, int currentLambertZone) throws IOException {
+        currentFormat = in.readInt();
+        if (currentFormat != this.serializeFormatVersion) {
+            JOptionPane.showMessageDialog(Main.parent, tr("Unsupported cache file version; found {0}, expected {1}\nCreate a new one.",
+                    currentFormat, this.serializeFormatVersion), tr("Cache Format Error"), JOptionPane.ERROR_MESSAGE);
+            return false;
+        }
+        this.setLocation(in.readUTF());
+        this.setCodeCommune(in.readUTF());
+        this.lambertZone = in.readInt();
+        this.setRaster(in.readBoolean());
+        setAssociatedFile(associatedFile);
+        if (this.isRaster) {
+            this.rasterMin = new EastNorth(in.readDouble(), in.readDouble());
+            this.rasterMax = new EastNorth(in.readDouble(), in.readDouble());
+            this.rasterRatio = in.readDouble();
+        }
+        double minX = in.readDouble();
+        double minY = in.readDouble();
+        double maxX = in.readDouble();
+        double maxY = in.readDouble();
+        this.communeBBox = new EastNorthBound(new EastNorth(minX, minY), new EastNorth(maxX, maxY));
+        if (this.lambertZone != currentLambertZone && currentLambertZone != -1) {
+            JOptionPane.showMessageDialog(Main.parent, tr("Lambert zone {0} in cache "+
+                    "incompatible with current Lambert zone {1}",
+                    this.lambertZone+1, currentLambertZone), tr("Cache Lambert Zone Error"), JOptionPane.ERROR_MESSAGE);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Queue the loading of the pixels of an image read from a cache index. The layer is repainted
+     * when they are loaded. Must be called with imagesLock held.
+     */
+    private void requestImage(final GeorefImage image) {
+        final GrabThread grab = grabThread;
+        if (grab == null || !loadingImages.add(image))
+            return;
+        imageLoader.execute(() -> {
+            BufferedImage pixels = grab.getCacheControl().readImage(image);
+            imagesLock.lock();
+            try {
+                loadingImages.remove(image);
+                int index = images != null ? images.indexOf(image) : -1;
+                if (pixels == null || index < 0 || image.isLoaded())
+                    return;
+                image.setLoadedImage(pixels);
+                maskImage(index);
+            } finally {
+                imagesLock.unlock();
+            }
+            invalidate();
+        });
+    }
+
+    /**
+     * Load the pixels of an image read from a cache index, then mask the zones overlapping other images.
+     * Must be called with imagesLock held.
+     */
+    private void loadImage(int index) {
+        if (grabThread.getCacheControl().loadImage(images.get(index)))
+            maskImage(index);
+    }
+
+    /**
+     * Mask the zones of an image overlapping other images, as if the images had been added to the layer
+     * in their order, each one masking the zone it covers in the previous ones.
+     * Must be called with imagesLock held.
+     */
+    private void maskImage(int index) {
+        GeorefImage newImage = images.get(index);
+        if (CadastrePlugin.backgroundTransparent) {
+            for (int i = 0; i < images.size(); i++) {
+                GeorefImage img = images.get(i);
+                if (i < index && !img.overlap(newImage))
+                    newImage.withdraw(img);
+                else if (i > index && newImage.overlap(img))
+                    newImage.withdraw(img);
+            }
+        }
+    }
+
+    /**
+     * Mask the zones overlapping other images in all loaded images, see {@link #maskImage}.
+     * Called once the images of an older cache file are read, as they are kept unmasked until then.
+     */
+    public void maskImages() {
+        imagesLock.lock();
+        try {
+            for (int i = 0; i < images.size(); i++) {
+                if (images.get(i).isLoaded())
+                    maskImage(i);
+            }
+        } finally {
+            imagesLock.unlock();
+        }
+    }
+
+    /**
+     * Load the pixels of all images not loaded yet from the cache.
+     */
+    public void loadAllImages() {
+        imagesLock.lock();
+        try {
+            for (int i = 0; i < images.size(); i++) {
+                if (!images.get(i).isLoaded() && images.get(i).cacheFile != null)
+                    loadImage(i);
+            }
+        } finally {
+            imagesLock.unlock();
         }
-        oos.writeDouble(this.communeBBox.min.getX());
-        oos.writeDouble(this.communeBBox.min.getY());
-        oos.writeDouble(this.communeBBox.max.getX());
-        oos.writeDouble(this.communeBBox.max.getY());
     }
 
     /**
      * Called by CacheControl when a cache file is read from disk.
      * Cache uses only primitives to stay independent of software changes.
+     * The overlapping zones are not masked here, see {@link #maskImages()}.
      */
     public boolean read(File associatedFile, ObjectInputStream ois, int currentLambertZone) throws IOException, ClassNotFoundException {
         currentFormat = ois.readInt();;
@@ -518,17 +658,6 @@ public class WMSLayer extends Layer implements ImageObserver {
             try {
                 while (!EOF) {
                     GeorefImage newImage = (GeorefImage) ois.readObject();
-                    for (GeorefImage img : this.images) {
-                        if (CadastrePlugin.backgroundTransparent) {
-                            if (img.overlap(newImage))
-                                // mask overlapping zone in already grabbed image
-                                img.withdraw(newImage);
-                            else
-                                // mask overlapping zone in new image only when
-                                // new image covers completely the existing image
-                                newImage.withdraw(img);
-                        }
-                    }
                     newImage.wmsLayer = this;
                     this.images.add(newImage);
                 }
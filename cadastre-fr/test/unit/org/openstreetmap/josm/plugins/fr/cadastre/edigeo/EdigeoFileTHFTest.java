@@ -0,0 +1,266 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.fr.cadastre.edigeo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+/**
+ * Unit test of {@link EdigeoFileTHF}.
+ */
+public class EdigeoFileTHFTest {
+
+    @Rule
+    public JOSMTestRules rules = new JOSMTestRules().preferences().projection();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final int LOTS = 6;
+
+    private static String record(String name, char format, String... values) {
+        String value = String.join(";", values);
+        return String.format("%s%c%c%02d:%s", name, values.length > 1 ? 'C' : 'S', format, value.length(), value);
+    }
+
+    private static void write(Path path, List<String> records) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("BOMT 12:" + path.getFileName());
+        lines.add("CSET 03:IRV");
+        lines.addAll(records);
+        lines.add("EOMT 00:");
+        Files.write(path, lines, StandardCharsets.ISO_8859_1);
+    }
+
+    private static void block(List<String> records, String type, String id) {
+        records.add(record("RTY", 'A', type));
+        records.add(record("RID", 'A', id));
+    }
+
+    private static String[] coor(double x, double y) {
+        return new String[] {"+" + x, "+" + y};
+    }
+
+    /**
+     * Writes a THF file of sheets side by side. Each sheet has two tagged points, the second one being
+     * at the same place as the first one of the next sheet, and a line made of two arcs, listed in reverse order.
+     * The line of a closed sheet goes back to its start with a third arc, listed between the two others.
+     */
+    private Path writeLots(int lots, boolean closed) throws IOException {
+        Path dir = folder.getRoot().toPath();
+        List<String> thf = new ArrayList<>();
+        block(thf, "GTS", "SUPPORT");
+        for (int k = 0; k < lots; k++) {
+            String l = "L" + k;
+            block(thf, "GTL", l);
+            for (String[] r : new String[][] {{"LON", l}, {"GNN", "GEN"}, {"GNI", "SeGEN"}, {"GON", "GEO"}, {"GOI", "SeGEO"},
+                {"QAN", "QAL"}, {"QAI", "SeQAL"}, {"DIN", "DIC"}, {"DII", "SeDIC"}, {"SCN", "SCD"}, {"SCI", "SeSCD"},
+                {"GDC", "1"}, {"GDN", "T1"}, {"GDI", "SeT1"}}) {
+                thf.add(record(r[0], 'A', r[1]));
+            }
+
+            write(dir.resolve(l + "GEN.GEN"), new ArrayList<>());
+            write(dir.resolve(l + "QAL.QAL"), new ArrayList<>());
+
+            List<String> geo = new ArrayList<>();
+            block(geo, "GEO", "LAMB93");
+            geo.add(record("RET", 'A', "MAP"));
+            geo.add(record("REL", 'A', "LAMB93"));
+            geo.add(record("DIM", 'N', "2"));
+            geo.add(record("ALS", 'N', "2"));
+            geo.add(record("UNH", 'A', "M"));
+            write(dir.resolve(l + "GEO.GEO"), geo);
+
+            List<String> dic = new ArrayList<>();
+            block(dic, "DID", "PT");
+            dic.add(record("LAB", 'A', "PT"));
+            block(dic, "DID", "LN");
+            dic.add(record("LAB", 'A', "LN"));
+            block(dic, "DIA", "TEX");
+            dic.add(record("LAB", 'A', "TEX"));
+            dic.add(record("CAT", 'A', "P"));
+            write(dir.resolve(l + "DIC.DIC"), dic);
+
+            List<String> scd = new ArrayList<>();
+            block(scd, "ATT", "TEX_id");
+            scd.add(record("DIP", 'P', l, "SeDIC", "DIA", "TEX"));
+            block(scd, "OBJ", "PT_id");
+            scd.add(record("DIP", 'P', l, "SeDIC", "DID", "PT"));
+            scd.add(record("KND", 'A', "PCT"));
+            block(scd, "OBJ", "LN_id");
+            scd.add(record("DIP", 'P', l, "SeDIC", "DID", "LN"));
+            scd.add(record("KND", 'A', "LIN"));
+            block(scd, "PGE", "NOD_id");
+            scd.add(record("KND", 'A', "NOD"));
+            block(scd, "PGE", "ARC_id");
+            scd.add(record("KND", 'A', "ARC"));
+            block(scd, "REL", "IDB_id");
+            scd.add(record("KND", 'A', "IDB"));
+            block(scd, "REL", "IDR_id");
+            scd.add(record("KND", 'A', "IDR"));
+            write(dir.resolve(l + "SCD.SCD"), scd);
+
+            double x = 650000 + 100 * k;
+            double y = 6860000;
+            List<String> vec = new ArrayList<>();
+            block(vec, "PNO", "N1");
+            vec.add(record("SCP", 'P', l, "SeSCD", "PGE", "NOD_id"));
+            vec.add(record("TYP", 'N', "2"));
+            vec.add(record("COR", 'C', coor(x, y)));
+            block(vec, "PNO", "N2");
+            vec.add(record("SCP", 'P', l, "SeSCD", "PGE", "NOD_id"));
+            vec.add(record("TYP", 'N', "2"));
+            vec.add(record("COR", 'C', coor(x + 100, y)));
+            block(vec, "PAR", "A1");
+            vec.add(record("SCP", 'P', l, "SeSCD", "PGE", "ARC_id"));
+            vec.add(record("TYP", 'N', "1"));
+            vec.add(record("PTC", 'N', "2"));
+            vec.add(record("COR", 'C', coor(x, y)));
+            vec.add(record("COR", 'C', coor(x + 50, y + 20)));
+            block(vec, "PAR", "A2");
+            vec.add(record("SCP", 'P', l, "SeSCD", "PGE", "ARC_id"));
+            vec.add(record("TYP", 'N', "1"));
+            vec.add(record("PTC", 'N', "2"));
+            vec.add(record("COR", 'C', coor(x + 50, y + 20)));
+            vec.add(record("COR", 'C', coor(x + 100, y)));
+            if (closed) {
+                block(vec, "PAR", "A3");
+                vec.add(record("SCP", 'P', l, "SeSCD", "PGE", "ARC_id"));
+                vec.add(record("TYP", 'N', "1"));
+                vec.add(record("PTC", 'N', "2"));
+                vec.add(record("COR", 'C', coor(x + 100, y)));
+                vec.add(record("COR", 'C', coor(x, y)));
+            }
+            for (String p : new String[] {"P1", "P2"}) {
+                block(vec, "FEA", p);
+                vec.add(record("SCP", 'P', l, "SeSCD", "OBJ", "PT_id"));
+                vec.add(record("ATC", 'N', "1"));
+                vec.add(record("ATP", 'P', l, "SeSCD", "ATT", "TEX_id"));
+                vec.add(record("ATV", 'A', l + p));
+            }
+            block(vec, "FEA", "W1");
+            vec.add(record("SCP", 'P', l, "SeSCD", "OBJ", "LN_id"));
+            vec.add(record("ATC", 'N', "0"));
+            block(vec, "LNK", "R1");
+            vec.add(record("SCP", 'P', l, "SeSCD", "REL", "IDB_id"));
+            vec.add(record("FTC", 'N', "2"));
+            vec.add(record("FTP", 'P', l, "SeT1", "FEA", "P1"));
+            vec.add(record("FTP", 'P', l, "SeT1", "PNO", "N1"));
+            block(vec, "LNK", "R2");
+            vec.add(record("SCP", 'P', l, "SeSCD", "REL", "IDB_id"));
+            vec.add(record("FTC", 'N', "2"));
+            vec.add(record("FTP", 'P', l, "SeT1", "FEA", "P2"));
+            vec.add(record("FTP", 'P', l, "SeT1", "PNO", "N2"));
+            block(vec, "LNK", "R3");
+            vec.add(record("SCP", 'P', l, "SeSCD", "REL", "IDR_id"));
+            vec.add(record("FTC", 'N', closed ? "4" : "3"));
+            vec.add(record("FTP", 'P', l, "SeT1", "FEA", "W1"));
+            vec.add(record("FTP", 'P', l, "SeT1", "PAR", "A2"));
+            if (closed) {
+                vec.add(record("FTP", 'P', l, "SeT1", "PAR", "A3"));
+            }
+            vec.add(record("FTP", 'P', l, "SeT1", "PAR", "A1"));
+            write(dir.resolve(l + "T1.VEC"), vec);
+        }
+        Path path = dir.resolve("SUPPORT.THF");
+        write(path, thf);
+        return path;
+    }
+
+    private static String describe(OsmPrimitive p) {
+        String s = p.getType() + " " + p.getKeys();
+        if (p instanceof Node) {
+            return s + ((Node) p).getCoor();
+        }
+        return s + ((Way) p).getNodes().stream().map(Node::getCoor).collect(Collectors.toList());
+    }
+
+    private static List<String> describe(DataSet ds) {
+        return ds.allPrimitives().stream().map(EdigeoFileTHFTest::describe).sorted().collect(Collectors.toList());
+    }
+
+    /**
+     * Unit test of {@link EdigeoFileTHF#readAndFill}: the data set is the same as when the lots are read sequentially,
+     * including for a single lot, whose files are read in parallel.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testReadAndFill() throws Exception {
+        for (int lots : new int[] {1, LOTS}) {
+            Path path = writeLots(lots, false);
+            DataSet sequential = new DataSet();
+            new EdigeoFileTHF(path).read().fill(sequential);
+            // Points on sheet borders are shared, each sheet has its line
+            assertEquals(lots + 1, sequential.getNodes().stream().filter(OsmPrimitive::isTagged).count());
+            assertEquals(lots, sequential.getWays().size());
+            List<String> expected = describe(sequential);
+            for (int threads : new int[] {1, 2, 4, LOTS + 2}) {
+                DataSet parallel = new DataSet();
+                EdigeoFileTHF thf = new EdigeoFileTHF(path).readAndFill(parallel, threads);
+                assertEquals("SUPPORT", thf.getSupport().getBlockIdentifier());
+                assertEquals(expected, describe(parallel));
+                // the files of each lot have been released
+                assertEquals(lots, thf.getLots().size());
+                thf.getLots().forEach(lot -> assertEquals(Arrays.asList(), lot.allFiles));
+            }
+        }
+    }
+
+    /**
+     * Unit test of line arcs chaining: the arcs are chained from the start of an open line, whatever their order,
+     * and a closed line made of several arcs is read.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testLineArcs() throws Exception {
+        for (boolean closed : new boolean[] {false, true}) {
+            DataSet ds = new DataSet();
+            new EdigeoFileTHF(writeLots(1, closed)).read().fill(ds);
+            assertEquals(1, ds.getWays().size());
+            List<Node> nodes = ds.getWays().iterator().next().getNodes();
+            if (closed) {
+                // from the start of the first arc listed, round the ring
+                assertEquals(4, nodes.size());
+                assertSame(nodes.get(0), nodes.get(3));
+                assertTrue(nodes.get(0).lat() > nodes.get(1).lat());
+                assertTrue(nodes.get(1).lon() > nodes.get(2).lon());
+            } else {
+                // from west to east, through the northern point
+                assertEquals(3, nodes.size());
+                assertTrue(nodes.get(0).lon() < nodes.get(1).lon());
+                assertTrue(nodes.get(1).lon() < nodes.get(2).lon());
+                assertTrue(nodes.get(1).lat() > nodes.get(0).lat());
+            }
+        }
+    }
+
+    /**
+     * Unit test of {@link EdigeoFileTHF#readAndFill}: an error reading a lot is thrown as when the lots are read sequentially.
+     * @throws Exception if an error occurs
+     */
+    @Test(expected = NoSuchFileException.class)
+    public void testReadAndFillMissingFile() throws Exception {
+        Path path = writeLots(LOTS, false);
+        Files.delete(path.resolveSibling("L3T1.VEC"));
+        new EdigeoFileTHF(path).readAndFill(new DataSet(), 4);
+    }
+}
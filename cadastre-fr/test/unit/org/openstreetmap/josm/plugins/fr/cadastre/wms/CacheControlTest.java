@@ -0,0 +1,211 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.fr.cadastre.wms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.plugins.fr.cadastre.CadastrePlugin;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+/**
+ * Unit test of {@link CacheControl}.
+ */
+public class CacheControlTest {
+
+    @Rule
+    public JOSMTestRules rules = new JOSMTestRules().preferences().projection().timeout(60000);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final int RED = 0xffff0000;
+    private static final int BLUE = 0xff0000ff;
+
+    private String cacheDir;
+    private boolean backgroundTransparent;
+
+    /**
+     * Points the cache to a temporary directory.
+     */
+    @Before
+    public void setUp() {
+        cacheDir = CadastrePlugin.cacheDir;
+        backgroundTransparent = CadastrePlugin.backgroundTransparent;
+        CadastrePlugin.cacheDir = folder.getRoot().getPath() + File.separator;
+        CacheControl.cacheEnabled = true;
+    }
+
+    /**
+     * Restores the plugin settings.
+     */
+    @After
+    public void tearDown() {
+        CadastrePlugin.cacheDir = cacheDir;
+        CadastrePlugin.backgroundTransparent = backgroundTransparent;
+    }
+
+    private static BufferedImage image(int rgb) {
+        BufferedImage img = new BufferedImage(20, 20, BufferedImage.TYPE_INT_ARGB);
+        for (int x = 0; x < img.getWidth(); x++) {
+            for (int y = 0; y < img.getHeight(); y++) {
+                img.setRGB(x, y, rgb);
+            }
+        }
+        return img;
+    }
+
+    private static void assertFilled(int rgb, BufferedImage img) {
+        for (int x = 0; x < img.getWidth(); x++) {
+            for (int y = 0; y < img.getHeight(); y++) {
+                assertEquals(rgb, img.getRGB(x, y));
+            }
+        }
+    }
+
+    private static void assertSameGeoref(GeorefImage expected, GeorefImage actual) {
+        assertEquals(expected.min, actual.min);
+        assertEquals(expected.max, actual.max);
+        assertEquals(expected.angle, actual.angle, 0);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(expected.orgRaster[i], actual.orgRaster[i]);
+            assertEquals(expected.orgCroppedRaster[i], actual.orgCroppedRaster[i]);
+        }
+        assertEquals(expected.imageOriginalHeight, actual.imageOriginalHeight);
+        assertEquals(expected.imageOriginalWidth, actual.imageOriginalWidth);
+    }
+
+    private static File cacheFile(WMSLayer layer) {
+        return new File(CadastrePlugin.cacheDir + layer.getName() + ".1");
+    }
+
+    /**
+     * Unit test of {@link GeorefImage#writeGeoref} and {@link GeorefImage#readGeoref}.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testGeorefRoundTrip() throws Exception {
+        GeorefImage img = new GeorefImage(image(RED), new EastNorth(10.5, 20.25), new EastNorth(110.5, 220.25), null);
+        img.angle = 0.125;
+        img.orgRaster[1] = new EastNorth(5, 230);
+        img.orgCroppedRaster[3] = new EastNorth(115, 15);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            img.writeGeoref(out);
+            out.writeInt(42);
+        }
+        File tile = new File("7.png");
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            GeorefImage read = GeorefImage.readGeoref(in, null, tile);
+            assertSameGeoref(img, read);
+            assertFalse(read.isLoaded());
+            assertEquals(tile, read.cacheFile);
+            // nothing more is read than written
+            assertEquals(42, in.readInt());
+        }
+    }
+
+    /**
+     * Images saved to the cache are written as an index and one tile per image, and read back lazily.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testIndexRoundTrip() throws Exception {
+        WMSLayer layer = new WMSLayer("TEST", "", 0);
+        CacheControl cache = layer.grabThread.getCacheControl();
+        GeorefImage a = new GeorefImage(image(RED), new EastNorth(0, 0), new EastNorth(100, 100), layer);
+        GeorefImage b = new GeorefImage(image(BLUE), new EastNorth(100, 0), new EastNorth(200, 100), layer);
+        cache.saveCache(a);
+        cache.saveCache(b);
+        long end = System.currentTimeMillis() + 30000;
+        while (!cache.isCachePipeEmpty() && System.currentTimeMillis() < end) {
+            Thread.sleep(20);
+        }
+        assertTrue(cache.isCachePipeEmpty());
+        File file = cacheFile(layer);
+        File tiles = new File(file.getPath() + ".tiles");
+        assertTrue(file.isFile());
+        assertFilled(RED, ImageIO.read(new File(tiles, "0.png")));
+        assertFilled(BLUE, ImageIO.read(new File(tiles, "1.png")));
+
+        WMSLayer loaded = new WMSLayer();
+        CacheControl loadedCache = loaded.grabThread.getCacheControl();
+        assertTrue(loadedCache.loadCache(file, -1));
+        assertEquals("TEST", loaded.getLocation());
+        List<GeorefImage> images = loaded.getImages();
+        assertEquals(2, images.size());
+        assertSameGeoref(a, images.get(0));
+        assertSameGeoref(b, images.get(1));
+        assertFalse(images.get(0).isLoaded());
+        assertTrue(loadedCache.loadImage(images.get(1)));
+        assertFilled(BLUE, images.get(1).image);
+        assertNull(images.get(1).cacheFile);
+
+        // a missing tile is not read again
+        assertTrue(new File(tiles, "0.png").delete());
+        assertNull(loadedCache.readImage(images.get(0)));
+        assertNull(images.get(0).cacheFile);
+    }
+
+    /**
+     * A cache file of an older version is converted with the images as grabbed, and masked once loaded.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testLegacyConversion() throws Exception {
+        CadastrePlugin.backgroundTransparent = true;
+        WMSLayer layer = new WMSLayer("TEST", "", 0);
+        File file = cacheFile(layer);
+        // the second image overlaps the top right corner of the first one
+        GeorefImage a = new GeorefImage(image(RED), new EastNorth(0, 0), new EastNorth(100, 100), null);
+        GeorefImage b = new GeorefImage(image(BLUE), new EastNorth(50, 50), new EastNorth(150, 150), null);
+        WMSLayer.currentFormat = 4;
+        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))) {
+            oos.writeInt(4);
+            oos.writeObject("TEST");
+            oos.writeObject("");
+            oos.writeInt(0);
+            oos.writeBoolean(false);
+            oos.writeBoolean(false);
+            oos.writeDouble(0);
+            oos.writeDouble(0);
+            oos.writeDouble(150);
+            oos.writeDouble(150);
+            oos.writeObject(a);
+            oos.writeObject(b);
+        }
+
+        assertTrue(layer.grabThread.getCacheControl().loadCache(file, -1));
+        List<GeorefImage> images = layer.getImages();
+        assertEquals(2, images.size());
+        // masked in memory
+        BufferedImage first = images.get(0).image;
+        assertNotNull(first);
+        assertEquals(RED, first.getRGB(0, 19));
+        assertEquals(VectorImageModifier.cadastreBackgroundTransp, first.getRGB(19, 0));
+        // as grabbed on disk
+        File tiles = new File(file.getPath() + ".tiles");
+        assertFilled(RED, ImageIO.read(new File(tiles, "0.png")));
+        assertFilled(BLUE, ImageIO.read(new File(tiles, "1.png")));
+    }
+}
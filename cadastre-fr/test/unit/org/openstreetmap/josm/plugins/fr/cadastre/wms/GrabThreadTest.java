@@ -0,0 +1,234 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.fr.cadastre.wms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.io.OsmTransferException;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Unit test of {@link GrabThread}, against a local stand-in of the cadastre WMS server.
+ */
+public class GrabThreadTest {
+
+    @Rule
+    public JOSMTestRules rules = new JOSMTestRules().preferences().timeout(60000);
+
+    private static final int IMAGES = 8;
+    private static final int THREADS = 3;
+
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    // for each image: its request reached the server, the server may answer, the server has answered
+    private final CountDownLatch[] arrived = new CountDownLatch[IMAGES];
+    private final CountDownLatch[] release = new CountDownLatch[IMAGES];
+    private final CountDownLatch[] answered = new CountDownLatch[IMAGES];
+
+    /**
+     * Starts the stand-in WMS server. Each request is answered once released by the test.
+     * @throws IOException if the server cannot be started
+     */
+    @Before
+    public void setUp() throws IOException {
+        for (int i = 0; i < IMAGES; i++) {
+            arrived[i] = new CountDownLatch(1);
+            release[i] = new CountDownLatch(1);
+            answered[i] = new CountDownLatch(1);
+        }
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(20, 16, BufferedImage.TYPE_INT_RGB), "png", png);
+        final byte[] body = png.toByteArray();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/scpc/wms", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                // the image index is given by the west side of the bbox
+                Matcher m = Pattern.compile("bbox=([0-9.]+),").matcher(exchange.getRequestURI().getQuery());
+                if (!m.find()) {
+                    throw new IOException(exchange.getRequestURI().toString());
+                }
+                int i = (int) Double.parseDouble(m.group(1)) / 100;
+                arrived[i].countDown();
+                try {
+                    release[i].await();
+                    exchange.getResponseHeaders().add("Content-Type", "image/png");
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (OutputStream os = exchange.getResponseBody()) {
+                        os.write(body);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    exchange.close();
+                    answered[i].countDown();
+                }
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        CacheControl.cacheEnabled = false;
+    }
+
+    /**
+     * Stops the stand-in WMS server.
+     */
+    @After
+    public void tearDown() {
+        for (CountDownLatch l : release) {
+            l.countDown();
+        }
+        server.stop(0);
+    }
+
+    private String serverUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private static EastNorthBound bbox(int i) {
+        return new EastNorthBound(new EastNorth(i * 100, 0), new EastNorth(i * 100 + 100, 80));
+    }
+
+    /**
+     * Images are downloaded concurrently and added to the layer in the order they were queued.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testParallelGrabInOrder() throws Exception {
+        Main.pref.put("cadastrewms.grabThreads", Integer.toString(THREADS));
+        final CountDownLatch added = new CountDownLatch(IMAGES);
+        WMSLayer layer = new WMSLayer("TEST", "", 0) {
+            @Override
+            public void addImage(GeorefImage img) {
+                super.addImage(img);
+                added.countDown();
+            }
+        };
+        CadastreGrabber grabber = new CadastreGrabber();
+        grabber.setBaseUrl(serverUrl());
+        layer.grabThread.setGrabber(grabber);
+
+        ArrayList<EastNorthBound> bboxes = new ArrayList<>();
+        for (int i = 0; i < IMAGES; i++) {
+            bboxes.add(bbox(i));
+        }
+        layer.grabThread.addImages(bboxes);
+
+        // the first images are requested at the same time, and no more while none is answered
+        for (int i = 0; i < THREADS; i++) {
+            assertTrue(arrived[i].await(30, TimeUnit.SECONDS));
+        }
+        assertEquals(THREADS, requests.get());
+        assertEquals(0, layer.getImages().size());
+
+        // the server answers them in reverse order, then the other ones as they come
+        for (int i = THREADS - 1; i >= 0; i--) {
+            release[i].countDown();
+            assertTrue(answered[i].await(30, TimeUnit.SECONDS));
+        }
+        for (int i = THREADS; i < IMAGES; i++) {
+            release[i].countDown();
+        }
+        assertTrue(added.await(30, TimeUnit.SECONDS));
+
+        List<GeorefImage> images = layer.getImages();
+        assertEquals(IMAGES, images.size());
+        for (int i = 0; i < IMAGES; i++) {
+            assertEquals(bboxes.get(i).min, images.get(i).min);
+        }
+        assertEquals(IMAGES, requests.get());
+    }
+
+    /**
+     * Unit test of {@link CadastreInterface#cancel}: all the requests in progress are aborted.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testCancelAbortsAllRequests() throws Exception {
+        final CadastreInterface wmsInterface = new CadastreInterface();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> reads = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                final URL url = new URL(serverUrl() + "/scpc/wms?bbox=" + (i * 100) + ",0,0,0");
+                reads.add(pool.submit(() -> {
+                    try (InputStream is = wmsInterface.getContent(url)) {
+                        return is.read();
+                    }
+                }));
+            }
+            for (int i = 0; i < THREADS; i++) {
+                assertTrue(arrived[i].await(30, TimeUnit.SECONDS));
+            }
+            assertEquals(THREADS, wmsInterface.getContentConnectionCount());
+
+            wmsInterface.cancel();
+            for (Future<?> read : reads) {
+                try {
+                    read.get(30, TimeUnit.SECONDS);
+                    fail("request not aborted");
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause().toString(),
+                            e.getCause() instanceof IOException || e.getCause() instanceof OsmTransferException);
+                }
+            }
+            assertEquals(0, wmsInterface.getContentConnectionCount());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Unit test of {@link GeorefImageIndex#search}.
+     */
+    @Test
+    public void testImageIndex() {
+        GeorefImageIndex index = new GeorefImageIndex();
+        BufferedImage img = new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB);
+        GeorefImage a = new GeorefImage(img, new EastNorth(0, 0), new EastNorth(100, 100), null);
+        GeorefImage b = new GeorefImage(img, new EastNorth(150, 0), new EastNorth(250, 100), null);
+        GeorefImage large = new GeorefImage(img, new EastNorth(-5000, -5000), new EastNorth(5000, 5000), null);
+        index.add(a);
+        index.add(b);
+        index.add(large);
+        assertEquals(3, index.size());
+        List<GeorefImage> found = index.search(new EastNorth(50, 50), new EastNorth(120, 60));
+        assertEquals(2, found.size());
+        assertTrue(found.contains(a) && found.contains(large));
+        found = index.search(new EastNorth(100, 0), new EastNorth(150, 10));
+        assertEquals(3, found.size());
+    }
+}
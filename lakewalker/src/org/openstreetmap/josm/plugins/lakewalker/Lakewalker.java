@@ -75,9 +75,9 @@ public class Lakewalker {
 
         progressMonitor.beginTask(null);
 
+        LakewalkerWMS wms = new LakewalkerWMS(this.resolution, this.tilesize, this.wmslayer);
         try {
 
-            LakewalkerWMS wms = new LakewalkerWMS(this.resolution, this.tilesize, this.wmslayer);
             LakewalkerBBox bbox = new LakewalkerBBox(tl_lat, tl_lon, br_lat, br_lon);
 
             Boolean detect_loop = false;
@@ -94,20 +94,19 @@ public class Lakewalker {
 
             progressMonitor.indeterminateSubTask(tr("Looking for shoreline..."));
 
+            int delta_lat = this.dirslat[getDirectionIndex(this.startdir)];
+            int delta_lon = this.dirslon[getDirectionIndex(this.startdir)];
+
             while (true) {
-                double[] geo = xy_to_geo(xy[0], xy[1], this.resolution);
-                if (bbox.contains(geo[0], geo[1]) == false) {
+                if (!bbox.contains(xy[1] / (double) this.resolution, xy[0] / (double) this.resolution)) {
                     break;
                 }
 
-                v = wms.getPixel(xy[0], xy[1], progressMonitor.createSubTaskMonitor(0, false));
+                v = wms.getPixel(xy[0], xy[1], progressMonitor);
                 if (v > this.threshold) {
                     break;
                 }
 
-                int delta_lat = this.dirslat[getDirectionIndex(this.startdir)];
-                int delta_lon = this.dirslon[getDirectionIndex(this.startdir)];
-
                 xy[0] = xy[0]+delta_lon;
                 xy[1] = xy[1]+delta_lat;
             }
@@ -142,14 +141,12 @@ public class Lakewalker {
                     test_x = xy[0] + this.dirslon[new_dir];
                     test_y = xy[1] + this.dirslat[new_dir];
 
-                    double[] geo = xy_to_geo(test_x, test_y, this.resolution);
-
-                    if (!bbox.contains(geo[0], geo[1])) {
+                    if (!bbox.contains(test_y / (double) this.resolution, test_x / (double) this.resolution)) {
                         System.out.println("Outside bbox");
                         break;
                     }
 
-                    v = wms.getPixel(test_x, test_y, progressMonitor.createSubTaskMonitor(0, false));
+                    v = wms.getPixel(test_x, test_y, progressMonitor);
                     if (v > this.threshold) {
                         break;
                     }
@@ -194,6 +191,7 @@ public class Lakewalker {
 
             return nodelist;
         } finally {
+            wms.shutdown();
             progressMonitor.finishTask();
         }
     }
@@ -426,7 +424,7 @@ public class Lakewalker {
           this.bottom = bottom;
         }
 
-        protected Boolean contains(double lat, double lon) {
+        protected boolean contains(double lat, double lon) {
           if (lat >= this.top || lat <= this.bottom) {
             return false;
           }
@@ -11,4 +11,8 @@ class LakewalkerException extends Exception {
     LakewalkerException(String err) {
         super(err);
     }
+
+    LakewalkerException(String err, Throwable cause) {
+        super(err, cause);
+    }
 }
@@ -38,6 +38,7 @@ public class LakewalkerPreferences extends DefaultTabPreferenceSetting {
     public static final String PREF_SOURCE = "lakewalker.source";
     public static final String PREF_MAXCACHESIZE = "lakewalker.maxcachesize";
     public static final String PREF_MAXCACHEAGE = "lakewalker.maxcacheage";
+    public static final String PREF_TILE_CACHE_SIZE = "lakewalker.tilecachesize";
 
     protected IntConfigurer maxSegsConfig = new IntConfigurer();
     protected JLabel maxSegsLabel = new JLabel(tr("Maximum number of segments per way"));
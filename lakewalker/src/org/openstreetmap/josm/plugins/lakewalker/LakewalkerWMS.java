@@ -7,31 +7,48 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.math.BigDecimal;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
-import java.util.HashMap;
-import java.util.List;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.imageio.ImageIO;
 
+import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+import org.openstreetmap.josm.tools.Utils;
 
+/**
+ * Gives access to the gray values of the Landsat tiles.
+ * Tiles are decoded once into arrays of gray values, kept in a bounded LRU cache.
+ * The tiles next to the probed pixels are loaded in background, in the direction of travel.
+ */
 public class LakewalkerWMS {
 
-    private BufferedImage image;
-    private int imagex;
-    private int imagey;
+    // distance to a tile border, in pixels, from which the next tile is loaded
+    private static final int PREFETCH_MARGIN = 64;
 
-    // Vector to cache images in memory
-    private List<BufferedImage> images = new Vector<>();
-    // Hashmap to hold the mapping of cached images
-    private Map<String, Integer> imageindex = new HashMap<>();
+    // gray values of the last used tile, row by row from the top
+    private byte[] tile;
+    private int tilex = Integer.MIN_VALUE;
+    private int tiley = Integer.MIN_VALUE;
+
+    private int lastx;
+    private int lasty;
+
+    private final Map<Long, byte[]> tiles;
+    private final Map<Long, Future<byte[]>> loading = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newFixedThreadPool(2,
+            Utils.newThreadFactory("lakewalker-tile-%d", Thread.NORM_PRIORITY));
 
     private int resolution;
     private int tilesize;
@@ -42,27 +59,141 @@ public class LakewalkerWMS {
         this.resolution = resolution;
         this.tilesize = tilesize;
         this.wmslayer = wmslayer;
+        final int cacheSize = Math.max(2, Main.pref.getInt(LakewalkerPreferences.PREF_TILE_CACHE_SIZE, 16));
+        this.tiles = Collections.synchronizedMap(new LinkedHashMap<Long, byte[]>(cacheSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    private static long key(int x, int y) {
+        return ((long) x << 32) ^ (y & 0xffffffffL);
     }
 
-    public BufferedImage getTile(int x, int y, ProgressMonitor progressMonitor) throws LakewalkerException {
+    /**
+     * Stops loading tiles in background. Must be called once the trace is done.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Gets the gray values of a tile, from the memory cache, the disk cache or the WMS server.
+     * @param x x coordinate of the bottom left corner of the tile
+     * @param y y coordinate of the bottom left corner of the tile
+     * @param progressMonitor the progress monitor
+     * @return the gray values, row by row from the top
+     * @throws LakewalkerException if the tile cannot be acquired
+     */
+    public byte[] getTile(int x, int y, ProgressMonitor progressMonitor) throws LakewalkerException {
+        byte[] data = this.tiles.get(key(x, y));
+        if (data != null) {
+            return data;
+        }
         progressMonitor.beginTask(tr("Downloading image tile..."));
         try {
-            String layer = "global_mosaic_base";
+            data = loadTile(x, y).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LakewalkerException(tr("Could not acquire image"));
+        } catch (ExecutionException e) {
+            throw new LakewalkerException(tr("Could not acquire image"), e.getCause());
+        } finally {
+            progressMonitor.finishTask();
+        }
+        if (data == null) {
+            throw new LakewalkerException(tr("Could not acquire image"));
+        }
+        return data;
+    }
+
+    private Future<byte[]> loadTile(final int x, final int y) {
+        final long key = key(x, y);
+        return this.loading.computeIfAbsent(key, k -> this.executor.submit(() -> {
+            try {
+                byte[] data = toGray(readTile(x, y));
+                if (data != null) {
+                    this.tiles.put(key, data);
+                }
+                return data;
+            } finally {
+                this.loading.remove(key);
+            }
+        }));
+    }
+
+    /**
+     * Determines if the gray values of a tile are in the memory cache.
+     * @param x x coordinate of the bottom left corner of the tile
+     * @param y y coordinate of the bottom left corner of the tile
+     * @return {@code true} if the tile is cached
+     */
+    boolean isCached(int x, int y) {
+        return this.tiles.containsKey(key(x, y));
+    }
+
+    /**
+     * Starts to load the given tile in background, unless it is already known.
+     */
+    private void prefetchTile(int x, int y) {
+        if (!this.tiles.containsKey(key(x, y)) && !this.executor.isShutdown()) {
+            loadTile(x, y);
+        }
+    }
+
+    private byte[] toGray(BufferedImage image) {
+        if (image == null) {
+            return null;
+        }
+        byte[] data = new byte[this.tilesize * this.tilesize];
+        int width = Math.min(image.getWidth(), this.tilesize);
+        int height = Math.min(image.getHeight(), this.tilesize);
+        int[] row = new int[width];
+        for (int j = 0; j < height; j++) {
+            image.getRGB(0, j, width, 1, row, 0, width);
+            for (int i = 0; i < width; i++) {
+                int rgb = row[i];
+                int r = (rgb >> 16) & 0xff;
+                int g = (rgb >> 8) & 0xff;
+                int b = (rgb >> 0) & 0xff;
+                data[j * this.tilesize + i] = (byte) (int) ((0.30 * r) + (0.59 * b) + (0.11 * g));
+            }
+        }
+        return data;
+    }
+
+    private BufferedImage readTile(int x, int y) {
+        String layer = "global_mosaic_base";
 
-            int[] bottom_left_xy = new int[2];
-            bottom_left_xy[0] = floor(x, this.tilesize);
-            bottom_left_xy[1] = floor(y, this.tilesize);
+        int[] bottom_left_xy = new int[] {x, y};
+        int[] top_right_xy = new int[] {x + this.tilesize, y + this.tilesize};
 
-            int[] top_right_xy = new int[2];
-            top_right_xy[0] = bottom_left_xy[0] + this.tilesize;
-            top_right_xy[1] = bottom_left_xy[1] + this.tilesize;
+        double[] topright_geo = xy_to_geo(top_right_xy[0], top_right_xy[1], this.resolution);
+        double[] bottomleft_geo = xy_to_geo(bottom_left_xy[0], bottom_left_xy[1], this.resolution);
 
-            double[] topright_geo = xy_to_geo(top_right_xy[0], top_right_xy[1], this.resolution);
-            double[] bottomleft_geo = xy_to_geo(bottom_left_xy[0], bottom_left_xy[1], this.resolution);
+        String filename = this.wmslayer+"/landsat_"+this.resolution+"_"+this.tilesize+
+        "_xy_"+bottom_left_xy[0]+"_"+bottom_left_xy[1]+".png";
 
-            String filename = this.wmslayer+"/landsat_"+this.resolution+"_"+this.tilesize+
-            "_xy_"+bottom_left_xy[0]+"_"+bottom_left_xy[1]+".png";
+        File file = new File(LakewalkerPlugin.getLakewalkerCacheDir(), filename);
+
+        BufferedImage image = null;
+
+        try {
+            System.out.println("Looking for image in disk cache: "+filename);
+
+            // Read from a file
+            image = ImageIO.read(file);
+        } catch (FileNotFoundException e) {
+            System.out.println("Could not find cached image, downloading.");
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
+        }
 
+        if (image == null) {
             // The WMS server only understands decimal points using periods, so we need
             // to convert to a locale that uses that to build the proper URL
             NumberFormat nf = NumberFormat.getInstance(Locale.ENGLISH);
@@ -75,86 +206,29 @@ public class LakewalkerWMS {
             ","+df.format(topright_geo[1])+","+df.format(topright_geo[0])+
             "&width="+this.tilesize+"&height="+this.tilesize;
 
-            File file = new File(LakewalkerPlugin.getLakewalkerCacheDir(), filename);
-
-            // Calculate the hashmap key
-            String hashkey = Integer.toString(bottom_left_xy[0])+":"+Integer.toString(bottom_left_xy[1]);
-
-            // See if this image is already loaded
-            if (this.image != null) {
-                if (this.imagex != bottom_left_xy[0] || this.imagey != bottom_left_xy[1]) {
-
-                    // Check if this image exists in the hashmap
-                    if (this.imageindex.containsKey(hashkey)) {
-                        // Store which image we have
-                        this.imagex = bottom_left_xy[0];
-                        this.imagey = bottom_left_xy[1];
-
-                        // Retrieve from cache
-                        this.image = this.images.get(this.imageindex.get(hashkey));
-                        return this.image;
-                    } else {
-                        this.image = null;
-                    }
-                } else {
-                    return this.image;
-                }
-            }
-
+            /**
+             * Try downloading the image
+             */
             try {
-                System.out.println("Looking for image in disk cache: "+filename);
-
-                // Read from a file
-                this.image = ImageIO.read(file);
-
-                this.images.add(this.image);
-                this.imageindex.put(hashkey, this.images.size()-1);
+                System.out.println("Downloading from "+urlloc);
 
-            } catch (FileNotFoundException e) {
-                System.out.println("Could not find cached image, downloading.");
+                // Read from a URL
+                URL url = new URL(urlloc);
+                image = ImageIO.read(url); // this can return null!
+            } catch (MalformedURLException e) {
+                System.out.println(e.getMessage());
             } catch (IOException e) {
                 System.out.println(e.getMessage());
             } catch (Exception e) {
                 System.out.println(e.getMessage());
             }
 
-            if (this.image == null) {
-                /**
-                 * Try downloading the image
-                 */
-                try {
-                    System.out.println("Downloading from "+urlloc);
-
-                    // Read from a URL
-                    URL url = new URL(urlloc);
-                    this.image = ImageIO.read(url); // this can return null!
-                } catch (MalformedURLException e) {
-                    System.out.println(e.getMessage());
-                } catch (IOException e) {
-                    System.out.println(e.getMessage());
-                } catch (Exception e) {
-                    System.out.println(e.getMessage());
-                }
-
-                if (this.image != null) {
-                    this.images.add(this.image);
-                    this.imageindex.put(hashkey, this.images.size()-1);
-
-                    this.saveimage(file, this.image);
-                }
+            if (image != null) {
+                this.saveimage(file, image);
             }
-
-            this.imagex = bottom_left_xy[0];
-            this.imagey = bottom_left_xy[1];
-
-            if (this.image == null) {
-                throw new LakewalkerException(tr("Could not acquire image"));
-            }
-
-            return this.image;
-        } finally {
-            progressMonitor.finishTask();
         }
+
+        return image;
     }
 
     public void saveimage(File file, BufferedImage image) {
@@ -170,50 +244,65 @@ public class LakewalkerWMS {
     }
 
     public int getPixel(int x, int y, ProgressMonitor progressMonitor) throws LakewalkerException {
-        // Get the previously shown text
-
-
-        BufferedImage image = null;
-
-        try {
-            image = this.getTile(x, y, progressMonitor);
-        } catch (LakewalkerException e) {
-            System.out.println(e.getMessage());
-            throw e;
-        }
-
         int tx = floor(x, this.tilesize);
         int ty = floor(y, this.tilesize);
 
+        if (tx != this.tilex || ty != this.tiley) {
+            try {
+                this.tile = this.getTile(tx, ty, progressMonitor.createSubTaskMonitor(0, false));
+            } catch (LakewalkerException e) {
+                System.out.println(e.getMessage());
+                throw e;
+            }
+            this.tilex = tx;
+            this.tiley = ty;
+        }
+
         int pixel_x = (x-tx);
         int pixel_y = (this.tilesize-1)-(y-ty);
 
         //System.out.println("("+x+","+y+") maps to ("+pixel_x+","+pixel_y+") by ("+tx+", "+ty+")");
 
-        int rgb = image.getRGB(pixel_x, pixel_y);
-
-        int pixel;
-
-        int r = (rgb >> 16) & 0xff;
-        int g = (rgb >> 8) & 0xff;
-        int b = (rgb >> 0) & 0xff;
+        prefetch(x, y, pixel_x, y-ty);
 
-        pixel = (int) ((0.30 * r) + (0.59 * b) + (0.11 * g));
+        return this.tile[pixel_y * this.tilesize + pixel_x] & 0xff;
+    }
 
-        return pixel;
+    /**
+     * Loads the next tiles when the trace goes towards a border of the current tile.
+     */
+    private void prefetch(int x, int y, int tilePixelX, int tilePixelY) {
+        int dx = 0;
+        int dy = 0;
+        if (x > this.lastx && tilePixelX >= this.tilesize - PREFETCH_MARGIN) {
+            dx = 1;
+        } else if (x < this.lastx && tilePixelX < PREFETCH_MARGIN) {
+            dx = -1;
+        }
+        if (y > this.lasty && tilePixelY >= this.tilesize - PREFETCH_MARGIN) {
+            dy = 1;
+        } else if (y < this.lasty && tilePixelY < PREFETCH_MARGIN) {
+            dy = -1;
+        }
+        this.lastx = x;
+        this.lasty = y;
+        if (dx != 0) {
+            prefetchTile(this.tilex + dx * this.tilesize, this.tiley);
+        }
+        if (dy != 0) {
+            prefetchTile(this.tilex, this.tiley + dy * this.tilesize);
+        }
+        if (dx != 0 && dy != 0) {
+            prefetchTile(this.tilex + dx * this.tilesize, this.tiley + dy * this.tilesize);
+        }
     }
 
     public int floor(int num, int precision) {
-        double dnum = num/(double) precision;
-        BigDecimal val = new BigDecimal(dnum);
-        val = val.setScale(0, BigDecimal.ROUND_FLOOR);
-        return val.intValue()*precision;
+        return Math.floorDiv(num, precision) * precision;
     }
 
     public double floor(double num) {
-        BigDecimal val = new BigDecimal(num);
-        val = val.setScale(0, BigDecimal.ROUND_FLOOR);
-        return val.doubleValue();
+        return Math.floor(num);
     }
 
     public double[] xy_to_geo(int x, int y, double resolution) {
@@ -0,0 +1,139 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.lakewalker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+/**
+ * Unit test of {@link LakewalkerWMS}.
+ */
+public class LakewalkerWMSTest {
+
+    @Rule
+    public JOSMTestRules rules = new JOSMTestRules().preferences();
+
+    private static final int RESOLUTION = 4000;
+    // large enough for the probes in the middle of a tile not to prefetch the tiles around
+    private static final int SIZE = 200;
+    private static final String LAYER = "IR1";
+
+    private LakewalkerWMS wms;
+
+    /**
+     * Creates the tile reader, with room for two tiles in memory.
+     */
+    @Before
+    public void setUp() {
+        Main.pref.putInteger(LakewalkerPreferences.PREF_TILE_CACHE_SIZE, 2);
+        wms = new LakewalkerWMS(RESOLUTION, SIZE, LAYER);
+    }
+
+    /**
+     * Stops the tile reader.
+     */
+    @After
+    public void tearDown() {
+        wms.shutdown();
+    }
+
+    private static File tileFile(int x, int y) {
+        return new File(LakewalkerPlugin.getLakewalkerCacheDir(),
+                LAYER + "/landsat_" + RESOLUTION + "_" + SIZE + "_xy_" + x + "_" + y + ".png");
+    }
+
+    /**
+     * Writes a tile of the given gray level to the disk cache.
+     * @return the image, to be modified and written again
+     */
+    private static BufferedImage writeTile(int x, int y, int gray) throws Exception {
+        BufferedImage image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+        for (int i = 0; i < SIZE; i++) {
+            for (int j = 0; j < SIZE; j++) {
+                image.setRGB(i, j, gray << 16 | gray << 8 | gray);
+            }
+        }
+        writeTile(x, y, image);
+        return image;
+    }
+
+    private static void writeTile(int x, int y, BufferedImage image) throws Exception {
+        File file = tileFile(x, y);
+        file.getParentFile().mkdirs();
+        assertTrue(ImageIO.write(image, "png", file));
+    }
+
+    /**
+     * Unit test of {@link LakewalkerWMS#getPixel}: pixels are decoded to gray values, the rows from the top of the tile.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testGetPixel() throws Exception {
+        BufferedImage image = writeTile(0, 0, 200);
+        // upper half, in red
+        image.setRGB(100, 70, 0xff0000);
+        // lower half
+        image.setRGB(120, 130, 0x646464);
+        writeTile(0, 0, image);
+
+        assertEquals(200, wms.getPixel(90, 90, NullProgressMonitor.INSTANCE));
+        assertEquals(76, wms.getPixel(100, SIZE - 1 - 70, NullProgressMonitor.INSTANCE));
+        assertEquals(100, wms.getPixel(120, SIZE - 1 - 130, NullProgressMonitor.INSTANCE));
+    }
+
+    /**
+     * Unit test of {@link LakewalkerWMS#getPixel} west and south of the origin: the tile is the one below the coordinates.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testGetPixelNegative() throws Exception {
+        assertEquals(-SIZE, wms.floor(-1, SIZE));
+        assertEquals(-SIZE, wms.floor(-SIZE, SIZE));
+        assertEquals(-2 * SIZE, wms.floor(-SIZE - 1, SIZE));
+        assertEquals(0, wms.floor(SIZE - 1, SIZE));
+
+        writeTile(0, 0, 30);
+        writeTile(-SIZE, 0, 50);
+        writeTile(-SIZE, -SIZE, 70);
+        writeTile(0, -SIZE, 90);
+        assertEquals(30, wms.getPixel(100, 100, NullProgressMonitor.INSTANCE));
+        assertEquals(50, wms.getPixel(-100, 100, NullProgressMonitor.INSTANCE));
+        assertEquals(70, wms.getPixel(-100, -100, NullProgressMonitor.INSTANCE));
+        assertEquals(90, wms.getPixel(100, -100, NullProgressMonitor.INSTANCE));
+    }
+
+    /**
+     * Unit test of {@link LakewalkerWMS#getTile}: the least recently used tile leaves the memory cache.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testTileCache() throws Exception {
+        for (int k = 0; k < 3; k++) {
+            writeTile(k * SIZE, 0, 50 * k);
+        }
+        byte[] first = wms.getTile(0, 0, NullProgressMonitor.INSTANCE);
+        wms.getTile(SIZE, 0, NullProgressMonitor.INSTANCE);
+        // the first tile is used again, then a third one is loaded
+        assertTrue(tileFile(0, 0).delete());
+        assertSame(first, wms.getTile(0, 0, NullProgressMonitor.INSTANCE));
+        assertEquals(100, wms.getTile(2 * SIZE, 0, NullProgressMonitor.INSTANCE)[0]);
+
+        assertTrue(wms.isCached(0, 0));
+        assertFalse(wms.isCached(SIZE, 0));
+        assertTrue(wms.isCached(2 * SIZE, 0));
+    }
+}
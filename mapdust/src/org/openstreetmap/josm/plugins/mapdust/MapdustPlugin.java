@@ -59,6 +59,7 @@ import org.openstreetmap.josm.plugins.mapdust.gui.component.dialog.CreateBugDial
 import org.openstreetmap.josm.plugins.mapdust.gui.observer.MapdustBugObserver;
 import org.openstreetmap.josm.plugins.mapdust.gui.observer.MapdustUpdateObserver;
 import org.openstreetmap.josm.plugins.mapdust.gui.value.MapdustPluginState;
+import org.openstreetmap.josm.plugins.mapdust.service.MapdustBugCache;
 import org.openstreetmap.josm.plugins.mapdust.service.MapdustServiceHandler;
 import org.openstreetmap.josm.plugins.mapdust.service.MapdustServiceHandlerException;
 import org.openstreetmap.josm.plugins.mapdust.service.value.BoundingBox;
@@ -91,6 +92,9 @@ public class MapdustPlugin extends Plugin implements LayerChangeListener,
 
     /** The bounding box from where the MapDust bugs are down-loaded */
     private BoundingBox bBox;
+
+    /** The MapDust bugs already down-loaded, by tiles */
+    private final MapdustBugCache bugCache;
     
     /** The shortcut to access MapDust GUI */
     private Shortcut shortcut;
@@ -114,6 +118,7 @@ public class MapdustPlugin extends Plugin implements LayerChangeListener,
         super(info);
         this.filter = null;
         this.bBox = null;
+        this.bugCache = new MapdustBugCache(MapdustServiceHandler::new);
         initializePlugin();
     }
 
@@ -220,6 +225,8 @@ public class MapdustPlugin extends Plugin implements LayerChangeListener,
         if (mapdustBugList == null) {
             mapdustBugList = new ArrayList<>();
         }
+        /* the cached tiles of the bug are out of date */
+        bugCache.invalidate(mapdustBug.getLatLon());
         if (getMapdustGUI().isDialogShowing()) {
             if (Main.map != null && Main.map.mapView != null) {
                 MapdustBug oldBug = null;
@@ -459,6 +466,7 @@ public class MapdustPlugin extends Plugin implements LayerChangeListener,
             mapdustLayer = null;
             filter = null;
             mapdustBugList = null;
+            bugCache.clear();
         }
     }
 
@@ -498,6 +506,10 @@ public class MapdustPlugin extends Plugin implements LayerChangeListener,
     @Override
     public void update(MapdustBugFilter filter, boolean initialUpdate) {
         bBox = getBBox();
+        if (filter == null) {
+            /* refresh: the bugs may have changed on the server */
+            bugCache.clear();
+        }
         if (initialUpdate) {
             updatePluginData();
         } else {
@@ -542,14 +554,14 @@ public class MapdustPlugin extends Plugin implements LayerChangeListener,
     /**
      * Updates the MapDust plug-in data. Down-loads the list of
      * <code>MapdustBug</code> objects for the given area, and updates the map
-     * and the MapDust layer with the new data.
+     * and the MapDust layer with the new data. Only the parts of the area
+     * which were not down-loaded before with the same filter are requested.
      */
     protected synchronized void updateMapdustData() {
         if (Main.map != null && Main.map.mapView != null) {
             /* Down-loads the MapDust data */
             try {
-                MapdustServiceHandler handler = new MapdustServiceHandler();
-                mapdustBugList = handler.getBugs(bBox, filter);
+                mapdustBugList = bugCache.getBugs(bBox, filter);
                 wasError = false;
             } catch (MapdustServiceHandlerException e) {
                 wasError = true;
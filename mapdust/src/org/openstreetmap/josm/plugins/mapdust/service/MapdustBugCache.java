@@ -0,0 +1,451 @@
+/* Copyright (c) 2010, skobbler GmbH
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the project nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openstreetmap.josm.plugins.mapdust.service;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.plugins.mapdust.service.value.BoundingBox;
+import org.openstreetmap.josm.plugins.mapdust.service.value.MapdustBug;
+import org.openstreetmap.josm.plugins.mapdust.service.value.MapdustBugFilter;
+import org.openstreetmap.josm.tools.Utils;
+
+
+/**
+ * Caches the MapDust bugs by tiles. The world is divided in square tiles at
+ * zoom levels, a tile of level z being 360 / 2^z degrees wide. A bounding box
+ * is covered by at most 3x3 tiles of the level chosen for its size, and only
+ * the tiles which were not already down-loaded with the same filter are
+ * requested from the MapDust service. A tile is also covered by any larger
+ * tile containing it, so zooming in does not down-load anything.
+ * <p>
+ * Adjacent missing tiles are requested together, as one rectangle. The
+ * requests are executed in parallel, and a tile which is already being
+ * down-loaded is waited for instead of being requested again.
+ */
+public class MapdustBugCache {
+
+    /** The maximum zoom level of the tiles */
+    static final int MAX_LEVEL = 20;
+
+    /** The maximum number of cached tiles */
+    private static final int MAX_TILES = 512;
+
+    /** The number of parallel down-loads */
+    private static final int DOWNLOADS = 4;
+
+    /** Creates the handlers, one per down-load */
+    private final Supplier<MapdustServiceHandler> handlers;
+
+    /** The down-loaded and down-loading tiles, the least recently used first */
+    private final Map<Tile, Future<List<MapdustBug>>> tiles =
+            new LinkedHashMap<Tile, Future<List<MapdustBug>>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<Tile, Future<List<MapdustBug>>> eldest) {
+                    return size() > MAX_TILES;
+                }
+            };
+
+    /** The down-loading threads */
+    private final ExecutorService executor = Executors.newFixedThreadPool(
+            DOWNLOADS, Utils.newThreadFactory("mapdust-download-%d",
+                    Thread.NORM_PRIORITY));
+
+    /**
+     * Builds a <code>MapdustBugCache</code> object based on the given
+     * argument.
+     *
+     * @param handlers Creates the <code>MapdustServiceHandler</code> objects
+     * used for the down-loads. A handler is not shared between down-loads,
+     * since its connection is not thread safe.
+     */
+    public MapdustBugCache(Supplier<MapdustServiceHandler> handlers) {
+        this.handlers = handlers;
+    }
+
+    /**
+     * Returns the <code>MapdustBug</code> objects in the given bounding box,
+     * as <code>MapdustServiceHandler#getBugs</code> would. The missing tiles
+     * are down-loaded first.
+     *
+     * @param bBox The bounding box where the bugs are searched.
+     * @param filter The MapDust bug filter. This parameter is not required.
+     * @return A new list of <code>MapdustBug</code> objects.
+     * @throws MapdustServiceHandlerException In the case of an error
+     */
+    public List<MapdustBug> getBugs(BoundingBox bBox, MapdustBugFilter filter)
+            throws MapdustServiceHandlerException {
+        if (bBox.getMinLon() == null || bBox.getMinLat() == null
+                || bBox.getMaxLon() == null || bBox.getMaxLat() == null) {
+            throw new MapdustServiceHandlerException("Invalid coordinates!");
+        }
+        MapdustBugFilter key = copy(filter);
+        int level = chooseLevel(bBox);
+        double size = tileSize(level);
+        int minX = tileIndex(bBox.getMinLon() + 180, 360, size);
+        int maxX = tileIndex(bBox.getMaxLon() + 180, 360, size);
+        int minY = tileIndex(bBox.getMinLat() + 90, 180, size);
+        int maxY = tileIndex(bBox.getMaxLat() + 90, 180, size);
+
+        /* the same larger tile may cover several tiles */
+        Set<Future<List<MapdustBug>>> futures = new LinkedHashSet<>();
+        synchronized (tiles) {
+            boolean[][] missing = new boolean[maxX - minX + 1][maxY - minY + 1];
+            for (int x = minX; x <= maxX; x++) {
+                for (int y = minY; y <= maxY; y++) {
+                    Tile tile = new Tile(key, level, x, y);
+                    Future<List<MapdustBug>> future = findTile(tile);
+                    if (future == null) {
+                        missing[x - minX][y - minY] = true;
+                    } else {
+                        futures.add(future);
+                    }
+                }
+            }
+            for (int[] rectangle : mergeTiles(missing)) {
+                Tile first = new Tile(key, level, minX + rectangle[0],
+                        minY + rectangle[1]);
+                Tile last = new Tile(key, level, minX + rectangle[2],
+                        minY + rectangle[3]);
+                /* the down-load starts once all its tiles are registered */
+                CompletableFuture<Void> start = new CompletableFuture<>();
+                Map<Tile, Future<List<MapdustBug>>> rectangleTiles =
+                        new HashMap<>();
+                CompletableFuture<Map<Tile, List<MapdustBug>>> download =
+                        start.thenApplyAsync(v -> download(first, last),
+                                executor).whenComplete((result, error) -> {
+                                    if (error != null) {
+                                        forget(rectangleTiles);
+                                    }
+                                });
+                for (int x = first.x; x <= last.x; x++) {
+                    for (int y = first.y; y <= last.y; y++) {
+                        Tile tile = new Tile(key, level, x, y);
+                        Future<List<MapdustBug>> future =
+                                download.thenApply(result -> result.get(tile));
+                        tiles.put(tile, future);
+                        rectangleTiles.put(tile, future);
+                        futures.add(future);
+                    }
+                }
+                start.complete(null);
+            }
+        }
+
+        Set<MapdustBug> bugs = new LinkedHashSet<>();
+        for (Future<List<MapdustBug>> future : futures) {
+            List<MapdustBug> tileBugs;
+            try {
+                tileBugs = future.get();
+            } catch (ExecutionException e) {
+                /* the tiles of the failed down-load are already forgotten */
+                Throwable cause = e.getCause();
+                if (cause instanceof MapdustServiceHandlerException) {
+                    throw (MapdustServiceHandlerException) cause;
+                }
+                throw new MapdustServiceHandlerException(cause.getMessage(),
+                        cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MapdustServiceHandlerException(e.getMessage(), e);
+            }
+            for (MapdustBug bug : tileBugs) {
+                if (contains(bBox, bug.getLatLon())) {
+                    bugs.add(bug);
+                }
+            }
+        }
+        return new ArrayList<>(bugs);
+    }
+
+    /**
+     * Returns the down-load of the given tile, or of a larger tile containing
+     * it.
+     *
+     * @param tile The tile
+     * @return A <code>Future</code> object, or null if the tile was not
+     * down-loaded
+     */
+    private Future<List<MapdustBug>> findTile(Tile tile) {
+        for (int level = tile.level; level >= 0; level--) {
+            int shift = tile.level - level;
+            Future<List<MapdustBug>> future = tiles.get(new Tile(tile.filter,
+                    level, tile.x >> shift, tile.y >> shift));
+            if (future != null) {
+                return future;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Forgets the tiles of a failed down-load, so that they are requested
+     * again. A tile is kept if it was down-loaded again in the meantime.
+     *
+     * @param rectangleTiles The tiles of the down-load, with their futures
+     */
+    private void forget(Map<Tile, Future<List<MapdustBug>>> rectangleTiles) {
+        synchronized (tiles) {
+            for (Map.Entry<Tile, Future<List<MapdustBug>>> entry
+                    : rectangleTiles.entrySet()) {
+                tiles.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Merges the missing tiles into rectangles: the runs of missing tiles of
+     * each row, and the same runs of the next rows.
+     *
+     * @param missing The missing tiles, by column and row
+     * @return The rectangles, as first column, first row, last column and
+     * last row
+     */
+    static List<int[]> mergeTiles(boolean[][] missing) {
+        List<int[]> rectangles = new ArrayList<>();
+        List<int[]> previousRow = new ArrayList<>();
+        for (int y = 0; y < (missing.length == 0 ? 0 : missing[0].length); y++) {
+            List<int[]> row = new ArrayList<>();
+            for (int x = 0; x < missing.length; x++) {
+                if (!missing[x][y]) {
+                    continue;
+                }
+                int end = x;
+                while (end + 1 < missing.length && missing[end + 1][y]) {
+                    end++;
+                }
+                int[] rectangle = null;
+                for (int[] previous : previousRow) {
+                    if (previous[0] == x && previous[2] == end) {
+                        rectangle = previous;
+                        rectangle[3] = y;
+                    }
+                }
+                if (rectangle == null) {
+                    rectangle = new int[] {x, y, end, y};
+                    rectangles.add(rectangle);
+                }
+                row.add(rectangle);
+                x = end;
+            }
+            previousRow = row;
+        }
+        return rectangles;
+    }
+
+    /**
+     * Down-loads the bugs of the given rectangle of tiles, and distributes
+     * them to the tiles.
+     *
+     * @param first The first tile of the rectangle
+     * @param last The last tile of the rectangle
+     * @return The lists of <code>MapdustBug</code> objects, by tile.
+     */
+    private Map<Tile, List<MapdustBug>> download(Tile first, Tile last) {
+        double size = tileSize(first.level);
+        BoundingBox bBox = new BoundingBox(first.x * size - 180,
+                first.y * size - 90, (last.x + 1) * size - 180,
+                (last.y + 1) * size - 90);
+        MapdustBugFilter filter = first.filter.equals(new MapdustBugFilter())
+                ? null : first.filter;
+        List<MapdustBug> bugList;
+        try {
+            bugList = handlers.get().getBugs(bBox, filter);
+        } catch (MapdustServiceHandlerException e) {
+            throw new CompletionException(e);
+        }
+
+        Map<Tile, List<MapdustBug>> result = new HashMap<>();
+        for (int x = first.x; x <= last.x; x++) {
+            for (int y = first.y; y <= last.y; y++) {
+                result.put(new Tile(first.filter, first.level, x, y),
+                        new ArrayList<MapdustBug>());
+            }
+        }
+        for (MapdustBug bug : bugList) {
+            LatLon latLon = bug.getLatLon();
+            if (latLon == null) {
+                for (List<MapdustBug> tileBugs : result.values()) {
+                    tileBugs.add(bug);
+                }
+                continue;
+            }
+            /* the bugs on the edges of the rectangle belong to its tiles */
+            int x = Math.max(first.x, Math.min(last.x,
+                    tileIndex(latLon.lon() + 180, 360, size)));
+            int y = Math.max(first.y, Math.min(last.y,
+                    tileIndex(latLon.lat() + 90, 180, size)));
+            result.get(new Tile(first.filter, first.level, x, y)).add(bug);
+        }
+        for (Map.Entry<Tile, List<MapdustBug>> entry : result.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+        return result;
+    }
+
+    /**
+     * Forgets the tiles containing the given position, for example after a
+     * bug was created or changed there. They will be down-loaded again when
+     * needed.
+     *
+     * @param latLon The position
+     */
+    public void invalidate(LatLon latLon) {
+        if (latLon == null) {
+            clear();
+            return;
+        }
+        synchronized (tiles) {
+            Iterator<Tile> iterator = tiles.keySet().iterator();
+            while (iterator.hasNext()) {
+                Tile tile = iterator.next();
+                double size = tileSize(tile.level);
+                if (tileIndex(latLon.lon() + 180, 360, size) == tile.x
+                        && tileIndex(latLon.lat() + 90, 180, size) == tile.y) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets all the tiles, for example when the user refreshes the data.
+     */
+    public void clear() {
+        synchronized (tiles) {
+            tiles.clear();
+        }
+    }
+
+    /**
+     * Returns the level of the tiles used for the given bounding box: the
+     * smallest tiles which are at least half as large as the bounding box.
+     *
+     * @param bBox The bounding box
+     * @return The zoom level
+     */
+    static int chooseLevel(BoundingBox bBox) {
+        double span = Math.max(bBox.getMaxLon() - bBox.getMinLon(),
+                bBox.getMaxLat() - bBox.getMinLat());
+        int level = 0;
+        while (level < MAX_LEVEL && tileSize(level + 1) >= span / 2) {
+            level++;
+        }
+        return level;
+    }
+
+    private static double tileSize(int level) {
+        return 360.0 / (1 << level);
+    }
+
+    private static int tileIndex(double offset, double extent, double size) {
+        /* the last tiles also contain the maximum longitude and latitude */
+        int last = (int) Math.ceil(extent / size) - 1;
+        return Math.max(0, Math.min(last, (int) Math.floor(offset / size)));
+    }
+
+    private static boolean contains(BoundingBox bBox, LatLon latLon) {
+        return latLon == null || (latLon.lon() >= bBox.getMinLon()
+                && latLon.lon() <= bBox.getMaxLon()
+                && latLon.lat() >= bBox.getMinLat()
+                && latLon.lat() <= bBox.getMaxLat());
+    }
+
+    /**
+     * Copies the given filter, since the cache keys must not change.
+     *
+     * @param filter The filter, or null
+     * @return A new <code>MapdustBugFilter</code> object
+     */
+    private static MapdustBugFilter copy(MapdustBugFilter filter) {
+        if (filter == null) {
+            return new MapdustBugFilter();
+        }
+        return new MapdustBugFilter(
+                filter.getStatuses() == null ? null
+                        : new ArrayList<>(filter.getStatuses()),
+                filter.getTypes() == null ? null
+                        : new ArrayList<>(filter.getTypes()),
+                filter.getDescr(), filter.getMinRelevance(),
+                filter.getMaxRelevance());
+    }
+
+    /**
+     * A tile of the cache, for a given filter.
+     */
+    private static final class Tile {
+
+        private final MapdustBugFilter filter;
+        private final int level;
+        private final int x;
+        private final int y;
+
+        Tile(MapdustBugFilter filter, int level, int x, int y) {
+            this.filter = filter;
+            this.level = level;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public int hashCode() {
+            final int prime = 31;
+            int result = filter.hashCode();
+            result = prime * result + level;
+            result = prime * result + x;
+            result = prime * result + y;
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof Tile) {
+                Tile tile = (Tile) obj;
+                return level == tile.level && x == tile.x && y == tile.y
+                        && filter.equals(tile.filter);
+            }
+            return false;
+        }
+    }
+}
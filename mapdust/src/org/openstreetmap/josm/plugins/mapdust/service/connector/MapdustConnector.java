@@ -29,6 +29,7 @@ package org.openstreetmap.josm.plugins.mapdust.service.connector;
 
 
 import java.io.IOException;
+import java.io.Reader;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.HashMap;
@@ -50,6 +51,7 @@ import org.openstreetmap.josm.plugins.mapdust.util.retry.RetrySetup;
 import com.google.gson.FieldNamingPolicy;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonSyntaxException;
 
 
@@ -67,12 +69,32 @@ public class MapdustConnector {
     
     private Gson gson;
     
+    /** The MapDust service URL */
+    private final String mapdustUrl;
+    
+    /** The MapDust api key */
+    private final String mapdustKey;
+    
     /**
      * Builds a <code>MapdustConnector</code> object with the default settings.
      */
     public MapdustConnector() {
+        this(Configuration.getInstance().getMapdustUrl(),
+                Configuration.getInstance().getMapdustKey());
+    }
+    
+    /**
+     * Builds a <code>MapdustConnector</code> object connecting to the given
+     * MapDust service.
+     * 
+     * @param mapdustUrl The MapDust service URL
+     * @param mapdustKey The MapDust api key
+     */
+    public MapdustConnector(String mapdustUrl, String mapdustKey) {
         httpConnector = new HttpConnector(RetrySetup.DEFAULT);
         gson = buildGson();
+        this.mapdustUrl = mapdustUrl;
+        this.mapdustKey = mapdustKey;
     }
     
     private Gson buildGson() {
@@ -88,7 +110,8 @@ public class MapdustConnector {
      * response object and return a <code>MapdustGetBugsResponse</code> object
      * containing the pagination information and the array of bugs. In the case
      * if the response code is not 200,201 or 204, a corresponding exception
-     * will be thrown.
+     * will be thrown. The response is parsed while it is read, without
+     * holding the whole JSON text in memory.
      * 
      * @param bBox The bounding box where the bugs are searched.
      * @param filter The MapDust bug filter. The bugs can be filtered based on
@@ -109,12 +132,11 @@ public class MapdustConnector {
         }
         /* parse HttpResponse */
         MapdustGetBugsResponse result = null;
-        try {
+        try (Reader content = httpResponse.getContentReader()) {
             /* verify status codes */
             handleStatusCode(httpResponse);
-            result = parseResponse(httpResponse.getContent(), 
-                    MapdustGetBugsResponse.class);
-        } catch (MapdustConnectorException e) {
+            result = parseResponse(content, MapdustGetBugsResponse.class);
+        } catch (MapdustConnectorException | IOException e) {
             throw new MapdustConnectorException(e.getMessage(), e);
         }
         return result;
@@ -269,8 +291,8 @@ public class MapdustConnector {
     private HttpResponse executeGetBugs(BoundingBox bBox,
             MapdustBugFilter filter) throws MalformedURLException, IOException {
         HttpResponse httpResponse = null;
-        String mapdustUri = Configuration.getInstance().getMapdustUrl();
-        String mapdustApiKey = Configuration.getInstance().getMapdustKey();
+        String mapdustUri = this.mapdustUrl;
+        String mapdustApiKey = this.mapdustKey;
         String urlString = null;
         if (mapdustUri != null && mapdustApiKey != null) {
             urlString = mapdustUri;
@@ -310,7 +332,7 @@ public class MapdustConnector {
         URL url = null;
         if (urlString != null) {
             url = new URL(urlString);
-            httpResponse = httpConnector.executeGET(url);
+            httpResponse = httpConnector.executeStreamingGET(url);
         }
         return httpResponse;
     }
@@ -330,8 +352,8 @@ public class MapdustConnector {
     private HttpResponse executeGetBug(Long id, Paging paging)
             throws MalformedURLException, IOException {
         HttpResponse httpResponse = null;
-        String mapdustUri = Configuration.getInstance().getMapdustUrl();
-        String mapdustApiKey = Configuration.getInstance().getMapdustKey();
+        String mapdustUri = this.mapdustUrl;
+        String mapdustApiKey = this.mapdustKey;
         String urlString = null;
         if (mapdustUri != null && mapdustApiKey != null) {
             urlString = mapdustUri;
@@ -368,8 +390,8 @@ public class MapdustConnector {
     private HttpResponse executeAddBug(MapdustBug bug)
             throws MalformedURLException, IOException {
         HttpResponse httpResponse = null;
-        String mapdustUri = Configuration.getInstance().getMapdustUrl();
-        String mapdustApiKey = Configuration.getInstance().getMapdustKey();
+        String mapdustUri = this.mapdustUrl;
+        String mapdustApiKey = this.mapdustKey;
         String urlString = null;
         Map<String, String> requestParameters = new HashMap<>();
         if (mapdustUri != null && mapdustApiKey != null) {
@@ -405,8 +427,8 @@ public class MapdustConnector {
     private HttpResponse executeCommentBug(MapdustComment comment)
             throws MalformedURLException, IOException {
         HttpResponse httpResponse = null;
-        String mapdustUri = Configuration.getInstance().getMapdustUrl();
-        String mapdustApiKey = Configuration.getInstance().getMapdustKey();
+        String mapdustUri = this.mapdustUrl;
+        String mapdustApiKey = this.mapdustKey;
         String urlString = null;
         Map<String, String> requestParameters = new HashMap<>();
         if (mapdustUri != null && mapdustApiKey != null) {
@@ -441,8 +463,8 @@ public class MapdustConnector {
     private HttpResponse executeChangeBugStatus(Integer statusId,
             MapdustComment comment) throws MalformedURLException, IOException {
         HttpResponse httpResponse = null;
-        String mapdustUri = Configuration.getInstance().getMapdustUrl();
-        String mapdustApiKey = Configuration.getInstance().getMapdustKey();
+        String mapdustUri = this.mapdustUrl;
+        String mapdustApiKey = this.mapdustKey;
         String urlString = null;
         Map<String, String> requestParameters = new HashMap<>();
         if (mapdustUri != null && mapdustApiKey != null) {
@@ -554,4 +576,15 @@ public class MapdustConnector {
         }
         return result;
     }
+    
+    private <T> T parseResponse(Reader httpResponse, Class<T> responseType)
+            throws MapdustConnectorException {
+        T result;
+        try {
+            result = gson.fromJson(httpResponse, responseType);
+        } catch (JsonParseException e) {
+            throw new MapdustConnectorException(e.getMessage(), e);
+        }
+        return result;
+    }
 }
@@ -33,6 +33,7 @@ package org.openstreetmap.josm.plugins.mapdust.service.value;
 
 
 import java.util.List;
+import java.util.Objects;
 
 
 /**
@@ -173,4 +174,31 @@ public class MapdustBugFilter {
         this.maxRelevance = maxRelevance;
     }
 
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + ((statuses == null) ? 0 : statuses.hashCode());
+        result = prime * result + ((types == null) ? 0 : types.hashCode());
+        result = prime * result + ((descr == null) ? 0 : descr.hashCode());
+        result = prime * result
+                + ((minRelevance == null) ? 0 : minRelevance.hashCode());
+        result = prime * result
+                + ((maxRelevance == null) ? 0 : maxRelevance.hashCode());
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof MapdustBugFilter) {
+            MapdustBugFilter filter = (MapdustBugFilter) obj;
+            return Objects.equals(statuses, filter.getStatuses())
+                    && Objects.equals(types, filter.getTypes())
+                    && Objects.equals(descr, filter.getDescr())
+                    && Objects.equals(minRelevance, filter.getMinRelevance())
+                    && Objects.equals(maxRelevance, filter.getMaxRelevance());
+        }
+        return false;
+    }
+
 }
@@ -84,6 +84,49 @@ public class HttpConnector {
      */
     public HttpResponse executeGET(final URL url) throws IOException {
         HttpResponse response;
+        connect(url);
+        /* 3: build the response */
+        int responseCode = connection.getResponseCode();
+        String responseMessage = connection.getResponseMessage();
+        String responseContent = null;
+        if (responseCode == 200 || responseCode == 201 || responseCode == 204) {
+            responseContent = readContent(connection.getContent());
+        }
+        response = new HttpResponse(responseCode, responseMessage, responseContent);
+        return response;
+
+    }
+
+    /**
+     * Executes a HTTP GET method, based on the given URL. Returns a
+     * <code>HttpResponse</code> object containing the response code and
+     * response message. The response content is not read, it can be streamed
+     * from the reader of the response, which has to be closed by the caller.
+     *
+     * @param url The URL
+     * @return a <code>HttpResponse</code> object.
+     *
+     * @throws IOException In the case of an error
+     */
+    public HttpResponse executeStreamingGET(final URL url) throws IOException {
+        connect(url);
+        int responseCode = connection.getResponseCode();
+        String responseMessage = connection.getResponseMessage();
+        HttpResponse response = new HttpResponse(responseCode, responseMessage, null);
+        if (responseCode == 200 || responseCode == 201 || responseCode == 204) {
+            response.setContentReader(new BufferedReader(new InputStreamReader(
+                    connection.getInputStream(), StandardCharsets.UTF_8)));
+        }
+        return response;
+    }
+
+    /**
+     * Opens the connection to the given URL for a GET method.
+     *
+     * @param url The URL
+     * @throws IOException In the case of an error
+     */
+    private void connect(final URL url) throws IOException {
         RetryAgent<Boolean> agent = new RetryAgent<Boolean>(retrySetup) {
 
             @Override
@@ -111,16 +154,6 @@ public class HttpConnector {
                 throw new IOException(e);
 
         }
-        /* 3: build the response */
-        int responseCode = connection.getResponseCode();
-        String responseMessage = connection.getResponseMessage();
-        String responseContent = null;
-        if (responseCode == 200 || responseCode == 201 || responseCode == 204) {
-            responseContent = readContent(connection.getContent());
-        }
-        response = new HttpResponse(responseCode, responseMessage, responseContent);
-        return response;
-
     }
 
     /**
@@ -206,14 +239,14 @@ public class HttpConnector {
      * @throws IOException In the case of an error
      */
     protected String readContent(Object obj) throws IOException {
-        String result = "";
+        StringBuilder result = new StringBuilder();
         InputStreamReader in = new InputStreamReader((InputStream) obj, StandardCharsets.UTF_8);
         BufferedReader buff = new BufferedReader(in);
         String line = "";
         while ((line = buff.readLine()) != null) {
-            result += line;
+            result.append(line);
         }
-        return result;
+        return result.toString();
     }
 
     /**
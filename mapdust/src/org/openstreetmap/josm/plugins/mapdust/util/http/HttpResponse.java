@@ -28,6 +28,9 @@
 package org.openstreetmap.josm.plugins.mapdust.util.http;
 
 
+import java.io.Reader;
+
+
 /**
  * Defines the attributes of a HTTP response.
  *
@@ -44,6 +47,9 @@ public class HttpResponse {
     /** The content of the response */
     private String content;
 
+    /** The reader of the content, if the content is streamed */
+    private Reader contentReader;
+
     /**
      * Builds an empty <code>HttpResponse</code> object
      */
@@ -116,4 +122,23 @@ public class HttpResponse {
     public void setContent(String content) {
         this.content = content;
     }
+
+    /**
+     * Returns the reader of the content, if the content is streamed instead
+     * of being read into a string. The reader has to be closed by the caller.
+     *
+     * @return the contentReader, or null if there is no streamed content
+     */
+    public Reader getContentReader() {
+        return contentReader;
+    }
+
+    /**
+     * Sets the reader of the content
+     *
+     * @param contentReader the contentReader to set
+     */
+    public void setContentReader(Reader contentReader) {
+        this.contentReader = contentReader;
+    }
 }
@@ -0,0 +1,273 @@
+package org.openstreetmap.josm.plugins.mapdust.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.plugins.mapdust.service.connector.MapdustConnector;
+import org.openstreetmap.josm.plugins.mapdust.service.value.BoundingBox;
+import org.openstreetmap.josm.plugins.mapdust.service.value.MapdustBug;
+import org.openstreetmap.josm.plugins.mapdust.service.value.MapdustBugFilter;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Unit test of {@link MapdustBugCache}, against a stub MapDust service.
+ */
+public class MapdustBugCacheTest {
+
+    private static final int BUG_COUNT = 5000;
+
+    private HttpServer server;
+    private double[][] bugs;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile long delay;
+
+    /**
+     * Starts the stub service, with random bugs around Berlin.
+     * @throws IOException if the server cannot be started
+     */
+    @Before
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        bugs = new double[BUG_COUNT][];
+        for (int i = 0; i < BUG_COUNT; i++) {
+            bugs[i] = new double[] {13 + random.nextDouble(), 52 + random.nextDouble()};
+        }
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/getBugs", exchange -> {
+            if (failures.getAndDecrement() > 0) {
+                exchange.sendResponseHeaders(500, -1);
+                exchange.close();
+                return;
+            }
+            String bbox = null;
+            for (String parameter : exchange.getRequestURI().getRawQuery().split("&")) {
+                if (parameter.startsWith("bbox=")) {
+                    bbox = URLDecoder.decode(parameter.substring(5), "UTF-8");
+                }
+            }
+            double[] box = Arrays.stream(bbox.split(",")).mapToDouble(Double::parseDouble).toArray();
+            byte[] body = getBugsJson(box).getBytes(StandardCharsets.UTF_8);
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            requests.incrementAndGet();
+            bytes.addAndGet(body.length);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    /**
+     * Stops the stub service.
+     */
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private String getBugsJson(double[] box) {
+        StringBuilder json = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+        boolean first = true;
+        for (int i = 0; i < bugs.length; i++) {
+            double lon = bugs[i][0];
+            double lat = bugs[i][1];
+            if (lon >= box[0] && lat >= box[1] && lon <= box[2] && lat <= box[3]) {
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                json.append("{\"id\":").append(i)
+                    .append(",\"geometry\":{\"type\":\"Point\",\"coordinates\":[").append(lon).append(',').append(lat)
+                    .append("]},\"properties\":{\"date_created\":\"2011-03-01T10:00:00Z\",")
+                    .append("\"date_updated\":\"2011-03-02T10:00:00Z\",\"status\":1,\"type\":\"wrong_turn\",")
+                    .append("\"relevance\":2,\"description\":\"Bug ").append(i)
+                    .append("\",\"is_default_description\":0,\"nickname\":\"tester\",\"number_of_comments\":0}}");
+            }
+        }
+        return json.append("]}").toString();
+    }
+
+    private MapdustServiceHandler newHandler() {
+        return new MapdustServiceHandler(new MapdustConnector(
+                "http://localhost:" + server.getAddress().getPort(), "key"));
+    }
+
+    private static Set<Long> ids(List<MapdustBug> bugList) {
+        Set<Long> ids = new HashSet<>();
+        for (MapdustBug bug : bugList) {
+            ids.add(bug.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Returns the views of a typical session: panning by a quarter of the view,
+     * zooming in and out.
+     */
+    private static List<BoundingBox> panSession() {
+        List<BoundingBox> views = new ArrayList<>();
+        double lon = 13.30;
+        double lat = 52.40;
+        double width = 0.08;
+        double height = 0.05;
+        for (int i = 0; i < 12; i++) {
+            views.add(new BoundingBox(lon, lat, lon + width, lat + height));
+            lon += width / 4;
+        }
+        for (int i = 0; i < 8; i++) {
+            views.add(new BoundingBox(lon, lat, lon + width, lat + height));
+            lat += height / 4;
+        }
+        /* zoom in twice, then out again */
+        for (double zoom : new double[] {2, 4, 2, 1}) {
+            double centerLon = lon + width / 2;
+            double centerLat = lat + height / 2;
+            views.add(new BoundingBox(centerLon - width / zoom / 2, centerLat - height / zoom / 2,
+                    centerLon + width / zoom / 2, centerLat + height / zoom / 2));
+        }
+        for (int i = 0; i < 12; i++) {
+            lon -= width / 4;
+            views.add(new BoundingBox(lon, lat, lon + width, lat + height));
+        }
+        return views;
+    }
+
+    /**
+     * Checks that the cache returns the bugs of the view, as a direct request does,
+     * with fewer requests and bytes over a pan session.
+     * @throws MapdustServiceHandlerException in the case of an error
+     */
+    @Test
+    public void testPanSession() throws MapdustServiceHandlerException {
+        List<BoundingBox> views = panSession();
+        MapdustServiceHandler handler = newHandler();
+        List<Set<Long>> expected = new ArrayList<>();
+        for (BoundingBox view : views) {
+            expected.add(ids(handler.getBugs(view, null)));
+        }
+        int directRequests = requests.getAndSet(0);
+        long directBytes = bytes.getAndSet(0);
+
+        MapdustBugCache cache = new MapdustBugCache(this::newHandler);
+        for (int i = 0; i < views.size(); i++) {
+            assertEquals(expected.get(i), ids(cache.getBugs(views.get(i), null)));
+        }
+        int cachedRequests = requests.get();
+        long cachedBytes = bytes.get();
+        System.out.println(String.format("MapDust pan session of %d views: %d requests, %d KiB direct; "
+                + "%d requests, %d KiB with the tile cache", views.size(), directRequests, directBytes / 1024,
+                cachedRequests, cachedBytes / 1024));
+        assertTrue(cachedRequests < directRequests);
+    }
+
+    /**
+     * Checks that the tiles are cached by filter, and down-loaded again once invalidated.
+     * @throws MapdustServiceHandlerException in the case of an error
+     */
+    @Test
+    public void testFilterAndInvalidate() throws MapdustServiceHandlerException {
+        MapdustBugCache cache = new MapdustBugCache(this::newHandler);
+        BoundingBox view = new BoundingBox(13.3, 52.4, 13.38, 52.45);
+        cache.getBugs(view, null);
+        int downloads = requests.getAndSet(0);
+        assertTrue(downloads > 0);
+
+        /* same view and same filter: nothing to down-load */
+        cache.getBugs(view, null);
+        cache.getBugs(view, new MapdustBugFilter());
+        assertEquals(0, requests.get());
+
+        MapdustBugFilter filter = new MapdustBugFilter(Arrays.asList(1), null, null, null, null);
+        cache.getBugs(view, filter);
+        assertEquals(downloads, requests.getAndSet(0));
+        cache.getBugs(view, new MapdustBugFilter(Arrays.asList(1), null, null, null, null));
+        assertEquals(0, requests.get());
+
+        /* the tile of the changed bug is down-loaded again, for both filters */
+        cache.invalidate(new LatLon(52.42, 13.31));
+        cache.getBugs(view, null);
+        cache.getBugs(view, filter);
+        assertEquals(2, requests.getAndSet(0));
+
+        cache.clear();
+        cache.getBugs(view, null);
+        assertEquals(downloads, requests.get());
+    }
+
+    /**
+     * Checks that all the tiles of a failed down-load are requested again.
+     * @throws MapdustServiceHandlerException in the case of an error
+     */
+    @Test
+    public void testFailedDownload() throws MapdustServiceHandlerException {
+        BoundingBox view = new BoundingBox(13.3, 52.4, 13.38, 52.45);
+        Set<Long> expected = ids(newHandler().getBugs(view, null));
+        requests.set(0);
+
+        /* the missing tiles of the view are down-loaded as one rectangle, which fails */
+        MapdustBugCache cache = new MapdustBugCache(this::newHandler);
+        failures.set(1);
+        try {
+            cache.getBugs(view, null);
+            fail("the down-load should fail");
+        } catch (MapdustServiceHandlerException e) {
+            assertEquals(0, requests.get());
+        }
+        assertEquals(expected, ids(cache.getBugs(view, null)));
+        assertEquals(1, requests.get());
+    }
+
+    /**
+     * Checks that concurrent requests of the same tiles are down-loaded once.
+     * @throws Exception in the case of an error
+     */
+    @Test
+    public void testConcurrentRequests() throws Exception {
+        BoundingBox view = new BoundingBox(13.3, 52.4, 13.38, 52.45);
+        new MapdustBugCache(this::newHandler).getBugs(view, null);
+        int downloads = requests.getAndSet(0);
+
+        delay = 200;
+        MapdustBugCache cache = new MapdustBugCache(this::newHandler);
+        Callable<Set<Long>> task = () -> ids(cache.getBugs(view, null));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Set<Long>>> results = executor.invokeAll(Arrays.asList(task, task, task, task));
+        executor.shutdown();
+        for (Future<Set<Long>> result : results) {
+            assertEquals(results.get(0).get(), result.get());
+        }
+        assertEquals(downloads, requests.get());
+    }
+}
@@ -9,7 +9,6 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 
 public final class DuplicateNodesFinder {
 
@@ -19,7 +18,7 @@ public final class DuplicateNodesFinder {
 
     /***
      * This method finds very close nodes and constructs a mapping from node to suggested representative node.
-     * Works by performing a sweep and noting down similar nodes.
+     * Works by performing a sweep and looking up similar nodes in a grid of the tolerance size.
      * @param nodes the nodes to process
      * @return map from nodes that need replacement to a representative node.
      */
@@ -34,51 +33,34 @@ public final class DuplicateNodesFinder {
         });
 
         Map<Point2D, Point2D> result = new HashMap<>();
-        TreeMap<Point2D, Point2D> sweepLine = new TreeMap<>(new Comparator<Point2D>() {
-            @Override
-            public int compare(Point2D o1, Point2D o2) {
-                double diff = o1.getX() - o2.getX();
 
-                if (Math.abs(diff) <= tolerance) {
-                    return 0;
+        if (tolerance <= 0) {
+            //only equal nodes
+            Map<Point2D, Point2D> representatives = new HashMap<>();
+            for (Point2D point: points) {
+                Point2D rep = representatives.get(point);
+                if (rep == null) {
+                    representatives.put(point, point);
+                } else if (rep != point) {
+                    result.put(point, rep);
                 }
-
-                return diff > 0 ? 1 : (diff < 0 ? -1 : 0);
             }
-        });
+            return result;
+        }
 
-        //sweep from top to bottom.
-        double prevY = Double.NEGATIVE_INFINITY;
+        //sweep from top to bottom, representative nodes are kept in the grid.
+        GridIndex<Point2D> grid = new GridIndex<>(tolerance);
 
         for (Point2D point: points) {
-            boolean mappedToOtherPoint = false;
+            Point2D closePoint = grid.findNear(point.getX(), point.getY(),
+                    p -> Math.abs(point.getX() - p.getX()) <= tolerance && Math.abs(point.getY() - p.getY()) <= tolerance);
 
-            if (point.getY() - prevY > tolerance) {
-                sweepLine.clear();
-                //big offset, clear old points
+            if (closePoint != null) {
+                //mark them as close
+                result.put(point, closePoint);
             } else {
-                //small offset, test against existing points (there may be more than one)
-
-                while (!mappedToOtherPoint && sweepLine.containsKey(point)) {
-                    //a close point found
-                    Point2D closePoint = sweepLine.get(point);
-                    double dy = point.getY() - closePoint.getY();
-                    if (dy <= tolerance) {
-                        //mark them as close
-                        result.put(point, closePoint);
-                        mappedToOtherPoint = true;
-                    } else {
-                        sweepLine.remove(point);
-
-                    }
-                }
+                grid.add(point.getX(), point.getY(), point);
             }
-
-            if (!mappedToOtherPoint) {
-                sweepLine.put(point, point);
-            }
-
-            prevY = point.getY();
         }
 
         return result;
@@ -0,0 +1,86 @@
+// License: GPL. For details, see LICENSE file.
+package pdfimport;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Regular grid of square cells, used to find the objects close to a position
+ * without comparing all objects pairwise.
+ * @param <T> the type of indexed objects
+ */
+class GridIndex<T> {
+
+    private final double cellSize;
+    private final Map<Long, List<T>> cells = new HashMap<>();
+
+    /**
+     * Constructs a new {@code GridIndex}.
+     * @param cellSize the size of a cell, should be the search distance
+     */
+    GridIndex(double cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    private long cell(double coord) {
+        return (long) Math.floor(coord / cellSize);
+    }
+
+    private static long key(long x, long y) {
+        return (x << 32) ^ (y & 0xffffffffL);
+    }
+
+    void add(double x, double y, T item) {
+        Long key = key(cell(x), cell(y));
+        List<T> list = cells.get(key);
+        if (list == null) {
+            list = new ArrayList<>(2);
+            cells.put(key, list);
+        }
+        list.add(item);
+    }
+
+    /**
+     * Gets the objects of the cells overlapping the square of the cell size around the given position.
+     * All objects closer than the cell size (in both directions) are returned, and some more.
+     */
+    List<T> getNear(double x, double y) {
+        List<T> result = new ArrayList<>();
+        long maxX = cell(x + cellSize);
+        long maxY = cell(y + cellSize);
+        for (long i = cell(x - cellSize); i <= maxX; i++) {
+            for (long j = cell(y - cellSize); j <= maxY; j++) {
+                List<T> list = cells.get(key(i, j));
+                if (list != null) {
+                    result.addAll(list);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds an object accepted by the given test in the cells overlapping the square of the cell size around the given position.
+     * @return the first accepted object, or {@code null}
+     */
+    T findNear(double x, double y, Predicate<T> test) {
+        long maxX = cell(x + cellSize);
+        long maxY = cell(y + cellSize);
+        for (long i = cell(x - cellSize); i <= maxX; i++) {
+            for (long j = cell(y - cellSize); j <= maxY; j++) {
+                List<T> list = cells.get(key(i, j));
+                if (list != null) {
+                    for (T item: list) {
+                        if (test.test(item)) {
+                            return item;
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -155,6 +155,7 @@ public class LoadPdfDialog extends JFrame {
     private LoadProgressRenderer progressRenderer;
     private JCheckBox limitPathCountCheck;
     private JTextField limitPathCount;
+    private JTextField pageRange;
     private JCheckBox splitOnColorChangeCheck;
     private JCheckBox splitOnShapeClosedCheck;
     private JCheckBox splitOnSingleSegmentCheck;
@@ -290,9 +291,12 @@ public class LoadPdfDialog extends JFrame {
         this.removeParallelSegmentsCheck = new JCheckBox(tr("Remove parallel lines"));
         this.removeParallelSegmentsTolerance = new JTextField("3");
 
-        this.limitPathCountCheck = new JCheckBox(tr("Take only first X paths"));
+        this.limitPathCountCheck = new JCheckBox(tr("Take only first X paths per page"));
         this.limitPathCount = new JTextField("10000");
 
+        this.pageRange = new JTextField("");
+        this.pageRange.setToolTipText(tr("Page number or range (e.g. 2-5), all pages if empty"));
+
         this.splitOnColorChangeCheck = new JCheckBox(tr("Color/width change"));
         this.splitOnShapeClosedCheck = new JCheckBox(tr("Shape closed"));
         this.splitOnSingleSegmentCheck = new JCheckBox(tr("Single segments"));
@@ -334,24 +338,29 @@ public class LoadPdfDialog extends JFrame {
         c.gridx = 2; c.gridy = 4; c.gridwidth = 1;
         configPanel.add(this.limitPathCount, c);
 
-        c.gridx = 0; c.gridy = 5; c.gridwidth = 1;
-        configPanel.add(this.colorFilterCheck, c);
+        c.gridx = 0; c.gridy = 5; c.gridwidth = 2;
+        configPanel.add(new JLabel(tr("Pages:")), c);
         c.gridx = 2; c.gridy = 5; c.gridwidth = 1;
+        configPanel.add(this.pageRange, c);
+
+        c.gridx = 0; c.gridy = 6; c.gridwidth = 1;
+        configPanel.add(this.colorFilterCheck, c);
+        c.gridx = 2; c.gridy = 6; c.gridwidth = 1;
         configPanel.add(this.colorFilterColor, c);
 
-        c.gridx = 0; c.gridy = 6; c.gridwidth = 2;
+        c.gridx = 0; c.gridy = 7; c.gridwidth = 2;
         configPanel.add(this.debugModeCheck, c);
 
 
-        c.gridx = 0; c.gridy = 7; c.gridwidth = 1;
+        c.gridx = 0; c.gridy = 8; c.gridwidth = 1;
         configPanel.add(new JLabel(tr("Introduce separate layers for:")), c);
-        c.gridx = 1; c.gridy = 7; c.gridwidth = 1;
+        c.gridx = 1; c.gridy = 8; c.gridwidth = 1;
         configPanel.add(this.splitOnShapeClosedCheck, c);
-        c.gridx = 2; c.gridy = 7; c.gridwidth = 1;
+        c.gridx = 2; c.gridy = 8; c.gridwidth = 1;
         configPanel.add(this.splitOnSingleSegmentCheck, c);
-        c.gridx = 1; c.gridy = 8; c.gridwidth = 1;
+        c.gridx = 1; c.gridy = 9; c.gridwidth = 1;
         configPanel.add(this.splitOnColorChangeCheck, c);
-        c.gridx = 2; c.gridy = 8; c.gridwidth = 1;
+        c.gridx = 2; c.gridy = 9; c.gridwidth = 1;
         configPanel.add(this.splitOnOrthogonalCheck, c);
 
 
@@ -839,6 +848,28 @@ public class LoadPdfDialog extends JFrame {
         }
 
 
+        int firstPage = 1;
+        int lastPage = Integer.MAX_VALUE;
+        String pages = this.pageRange.getText().trim();
+
+        if (!pages.isEmpty()) {
+            try {
+                int dash = pages.indexOf('-');
+                if (dash < 0) {
+                    firstPage = lastPage = Integer.parseInt(pages);
+                } else {
+                    firstPage = Integer.parseInt(pages.substring(0, dash).trim());
+                    lastPage = Integer.parseInt(pages.substring(dash + 1).trim());
+                }
+            } catch (Exception e) {
+                JOptionPane
+                .showMessageDialog(
+                        Main.parent,
+                        tr("Could not parse page range"));
+                return null;
+            }
+        }
+
         monitor.setTicks(10);
         monitor.setCustomText(tr("Parsing file"));
 
@@ -846,7 +877,7 @@ public class LoadPdfDialog extends JFrame {
 
         try {
             PdfBoxParser parser = new PdfBoxParser(data);
-            parser.parse(fileName, maxPaths, monitor.createSubTaskMonitor(80, false));
+            parser.parse(fileName, firstPage, lastPage, maxPaths, monitor.createSubTaskMonitor(80, false));
 
         } catch (FileNotFoundException e1) {
             JOptionPane
@@ -4,18 +4,15 @@ package pdfimport;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 public class ParallelSegmentsFinder {
     public double angle;
     public double angleSum;
-    public int refCount;
     public List<PdfPath> paths = new ArrayList<>();
 
     public void addPath(PdfPath path, double angle2) {
@@ -24,111 +21,106 @@ public class ParallelSegmentsFinder {
         angle = angleSum /paths.size();
     }
 
+    /**
+     * Splits the paths into groups of paths closer than the given distance to another path of the group.
+     * The paths are sorted perpendicular to the angle, so that only the paths within the distance
+     * in this direction are compared.
+     */
     public List<ParallelSegmentsFinder> splitByDistance(double maxDistance) {
         //sort perpendicular to angle
         AffineTransform tr = new AffineTransform();
         tr.rotate(-angle);
 
-        final Map<PdfPath, Point2D> positions = new HashMap<>();
+        int n = paths.size();
+        final double[] posX = new double[n];
+        final double[] posY = new double[n];
+        final double[] minX = new double[n];
+        final double[] maxX = new double[n];
         Point2D src = new Point2D.Double();
+        Point2D dest = new Point2D.Double();
+        Point2D destA = new Point2D.Double();
+        Point2D destB = new Point2D.Double();
 
-        for (PdfPath path: paths) {
+        for (int i = 0; i < n; i++) {
+            PdfPath path = paths.get(i);
             src.setLocation((path.firstPoint().getX() + path.lastPoint().getX()) / 2, (path.firstPoint().getY() + path.lastPoint().getY()) / 2);
-            Point2D dest = new Point2D.Double();
-            Point2D destA = new Point2D.Double();
-            Point2D destB = new Point2D.Double();
             tr.transform(src, dest);
             tr.transform(path.firstPoint(), destA);
             tr.transform(path.lastPoint(), destB);
-            positions.put(path, dest);
+            posX[i] = dest.getX();
+            posY[i] = dest.getY();
+            minX[i] = Math.min(destA.getX(), destB.getX());
+            maxX[i] = Math.max(destA.getX(), destB.getX());
         }
         //point.y = Perpendicular lines, point.x = parallel lines
 
-        Collections.sort(paths, new Comparator<PdfPath>() {
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
             @Override
-            public int compare(PdfPath o1, PdfPath o2) {
-                double y1 = positions.get(o1).getY();
-                double y2 = positions.get(o2).getY();
-                return y1 > y2 ? 1 : y1 < y2 ? -1 : 0;
+            public int compare(Integer o1, Integer o2) {
+                return Double.compare(posY[o1], posY[o2]);
             }
         });
 
-        //process sweep
-        List<ParallelSegmentsFinder> result = new ArrayList<>();
-
-        Map<PdfPath, ParallelSegmentsFinder> sweepLine = new HashMap<>();
-
-        Set<ParallelSegmentsFinder> adjacentClustersSet = new HashSet<>();
-        List<ParallelSegmentsFinder> adjacentClusters = new ArrayList<>();
-        List<PdfPath> pathsToRemove = new ArrayList<>();
-
-        for (PdfPath path: paths) {
-            adjacentClusters.clear();
-            adjacentClustersSet.clear();
-            pathsToRemove.clear();
-
-            for (PdfPath p: sweepLine.keySet()) {
-                Point2D pathPos = positions.get(path);
-                Point2D pPos = positions.get(p);
-
-                if (pathPos.getY() - pPos.getY() > maxDistance) {
-                    //path too far from sweep line
-                    pathsToRemove.add(p);
-                } else {
+        //process sweep: paths of the window are within maxDistance of the current path, perpendicular to the angle
+        int[] parent = new int[n];
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+        }
 
-                    double distance = distanceLineLine(path, p);
+        int windowStart = 0;
+        for (int k = 0; k < n; k++) {
+            int i = order[k];
 
-                    if (distance <= maxDistance) {
-                        if (adjacentClustersSet.add(sweepLine.get(p))) {
-                            adjacentClusters.add(sweepLine.get(p));
-                        }
-                    }
-                }
+            while (posY[i] - posY[order[windowStart]] > maxDistance) {
+                //path too far from sweep line
+                windowStart++;
             }
 
-            //remove segments too far apart
-            for (PdfPath p: pathsToRemove) {
-                ParallelSegmentsFinder finder = sweepLine.remove(p);
-                finder.refCount--;
-                if (finder.refCount == 0) {
-                    result.add(finder);
+            for (int l = windowStart; l < k; l++) {
+                int j = order[l];
+
+                //quick rejection along the angle, the paths are almost parallel
+                if (minX[i] - maxX[j] > maxDistance || minX[j] - maxX[i] > maxDistance) {
+                    continue;
                 }
-            }
 
-            //join together joinable parts
-            if (adjacentClusters.size() > 0) {
-                ParallelSegmentsFinder finder = adjacentClusters.remove(0);
-                finder.paths.add(path);
-                sweepLine.put(path, finder);
-                finder.refCount++;
-
-                for (ParallelSegmentsFinder finder1: adjacentClusters) {
-                    for (PdfPath path1: finder1.paths) {
-                        finder.paths.add(path1);
-                        sweepLine.put(path1, finder);
-                        finder.refCount++;
-                    }
+                if (find(parent, i) != find(parent, j) && distanceLineLine(paths.get(i), paths.get(j)) <= maxDistance) {
+                    //join together joinable parts
+                    parent[find(parent, i)] = find(parent, j);
                 }
-            } else {
-                ParallelSegmentsFinder finder = new ParallelSegmentsFinder();
-                finder.addPath(path, angle);
-                sweepLine.put(path, finder);
-                finder.refCount = 1;
             }
         }
 
-        //process remaining paths in sweep line
-        for (PdfPath p: sweepLine.keySet()) {
-            ParallelSegmentsFinder finder = sweepLine.get(p);
-            finder.refCount--;
-            if (finder.refCount == 0) {
+        Map<Integer, ParallelSegmentsFinder> groups = new HashMap<>();
+        List<ParallelSegmentsFinder> result = new ArrayList<>();
+
+        for (int k = 0; k < n; k++) {
+            int i = order[k];
+            Integer root = find(parent, i);
+            ParallelSegmentsFinder finder = groups.get(root);
+            if (finder == null) {
+                finder = new ParallelSegmentsFinder();
+                groups.put(root, finder);
                 result.add(finder);
             }
+            finder.addPath(paths.get(i), angle);
         }
 
         return result;
     }
 
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
     private double distanceLineLine(PdfPath p1, PdfPath p2) {
         return distanceLineLine(p1.firstPoint(), p1.lastPoint(), p2.firstPoint(), p2.lastPoint());
     }
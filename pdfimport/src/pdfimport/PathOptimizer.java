@@ -5,7 +5,9 @@ import java.awt.Color;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -14,6 +16,8 @@ import java.util.Set;
 
 public class PathOptimizer {
 
+    private static final double SIMILAR_PATHS_TOLERANCE = 1e-4;
+
     public List<Point2D> uniquePoints;
     public Map<Point2D, Point2D> uniquePointMap;
     private final Map<LayerInfo, LayerContents> layerMap;
@@ -35,6 +39,58 @@ public class PathOptimizer {
         splitOnColorChange = _splitOnColorChange;
     }
 
+    /**
+     * Creates an empty optimizer with the same settings, to be filled from a single page and then
+     * merged into this one, see {@link #merge(PathOptimizer)}.
+     * @return a new empty optimizer
+     */
+    public PathOptimizer createPageOptimizer() {
+        return new PathOptimizer(pointsTolerance, color, splitOnColorChange);
+    }
+
+    /**
+     * Adds the paths of another optimizer, filled from another page of the document.
+     * Equal points are shared, and layers with the same properties are joined unless layers are split on color change.
+     * @param other the optimizer to merge, which must not be used anymore
+     */
+    public void merge(PathOptimizer other) {
+        Map<Point2D, Point2D> pointMap = new HashMap<>();
+        for (Point2D point: other.uniquePoints) {
+            Point2D unique = this.getUniquePoint(point);
+            if (unique != point) {
+                pointMap.put(point, unique);
+            }
+        }
+
+        for (LayerContents layer: other.layers) {
+            if (!pointMap.isEmpty()) {
+                this.fixPoints(layer, pointMap);
+            }
+
+            LayerContents existing = this.splitOnColorChange ? null : this.layerMap.get(layer.info);
+
+            if (existing == null) {
+                layer.info.nr = this.layers.size();
+                this.layerMap.put(layer.info, layer);
+                this.layers.add(layer);
+            } else {
+                existing.paths.addAll(layer.paths);
+                existing.multiPaths.addAll(layer.multiPaths);
+            }
+        }
+
+        if (other.bounds != null) {
+            if (this.bounds == null) {
+                this.bounds = new Rectangle2D.Double();
+                this.bounds.setRect(other.bounds);
+            } else {
+                this.bounds.add(other.bounds);
+            }
+        }
+
+        this.prevLayer = null;
+    }
+
     public Point2D getUniquePoint(Point2D point) {
 
         if (uniquePointMap.containsKey(point)) {
@@ -324,7 +380,8 @@ public class PathOptimizer {
         int minSegments = 10;
 
         //filter paths by direction
-        List<ParallelSegmentsFinder> angles = new ArrayList<>();
+        List<PdfPath> segments = new ArrayList<>();
+        List<Double> segmentAngles = new ArrayList<>();
 
         for (PdfPath path: layer.paths) {
             if (path.points.size() != 2) {
@@ -337,21 +394,33 @@ public class PathOptimizer {
             //normalize between 0 and 180 degrees
             while (angle < 0) angle += Math.PI;
             while (angle > Math.PI) angle -= Math.PI;
-            boolean added = false;
+            segments.add(path);
+            segmentAngles.add(angle);
+        }
 
-            for (ParallelSegmentsFinder pa: angles) {
-                if (Math.abs(pa.angle - angle) < angleTolerance) {
-                    pa.addPath(path, angle);
-                    added = true;
-                    break;
-                }
+        //sort by angle and cut into bins of similar direction
+        final double[] sortAngles = new double[segments.size()];
+        Integer[] order = new Integer[segments.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+            sortAngles[i] = segmentAngles.get(i);
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Double.compare(sortAngles[o1], sortAngles[o2]);
             }
+        });
+
+        List<ParallelSegmentsFinder> angles = new ArrayList<>();
+        ParallelSegmentsFinder bin = null;
 
-            if (!added) {
-                ParallelSegmentsFinder pa = new ParallelSegmentsFinder();
-                pa.addPath(path, angle);
-                angles.add(pa);
+        for (int i: order) {
+            if (bin == null || Math.abs(bin.angle - sortAngles[i]) >= angleTolerance) {
+                bin = new ParallelSegmentsFinder();
+                angles.add(bin);
             }
+            bin.addPath(segments.get(i), sortAngles[i]);
         }
 
         Set<PdfPath> pathsToRemove = new HashSet<>();
@@ -630,20 +699,45 @@ public class PathOptimizer {
 
     private List<LayerContents> splitBySimilarGroups(LayerContents layer) {
         List<List<PdfPath>> subparts = new ArrayList<>();
+        //index of the parts by number of points and offset of the second point,
+        //similar paths have both the same within the similarity tolerance
+        Map<Integer, GridIndex<Integer>> partsIndex = new HashMap<>();
 
         //split into similar parts
         for (PdfPath path: layer.paths) {
             List<PdfPath> sublayer = null;
+            GridIndex<Integer> grid = null;
+            double dx = 0;
+            double dy = 0;
+
+            if (path.points.size() >= 3) {
+                dx = path.points.get(1).getX() - path.points.get(0).getX();
+                dy = path.points.get(1).getY() - path.points.get(0).getY();
+                grid = partsIndex.get(path.points.size());
+
+                if (grid == null) {
+                    grid = new GridIndex<>(SIMILAR_PATHS_TOLERANCE);
+                    partsIndex.put(path.points.size(), grid);
+                }
 
-            for (List<PdfPath> ll: subparts) {
-                if (this.pathsSimilar(ll.get(0).points, path.points)) {
-                    sublayer = ll;
-                    break;
+                //take the first created part, as when comparing with all parts
+                int first = Integer.MAX_VALUE;
+                for (int part: grid.getNear(dx, dy)) {
+                    if (part < first && this.pathsSimilar(subparts.get(part).get(0).points, path.points)) {
+                        first = part;
+                    }
+                }
+
+                if (first != Integer.MAX_VALUE) {
+                    sublayer = subparts.get(first);
                 }
             }
 
             if (sublayer == null) {
                 sublayer = new ArrayList<>();
+                if (grid != null) {
+                    grid.add(dx, dy, subparts.size());
+                }
                 subparts.add(sublayer);
             }
 
@@ -739,7 +833,7 @@ public class PathOptimizer {
 
         double offsetX = p1.getX() - p2.getX();
         double offsetY = p1.getY() - p2.getY();
-        double tolerance = 1e-4;
+        double tolerance = SIMILAR_PATHS_TOLERANCE;
 
         for (int pos = 0; pos < path1.size(); pos++) {
             p1 = path1.get(pos);
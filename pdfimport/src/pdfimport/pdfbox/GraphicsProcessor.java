@@ -13,6 +13,9 @@ import java.awt.geom.Point2D;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
 
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
 
@@ -22,7 +25,24 @@ import pdfimport.PdfPath;
 
 public class GraphicsProcessor {
 
+    /**
+     * Paths parsed from a single shape, waiting in the buffer to be added to the target.
+     */
+    private static final class ParsedShape {
+        final LayerInfo info;
+        final List<PdfPath> paths;
+
+        ParsedShape(LayerInfo info, List<PdfPath> paths) {
+            this.info = info;
+            this.paths = paths;
+        }
+    }
+
+    private static final ParsedShape END = new ParsedShape(null, null);
+
     public PathOptimizer target;
+    // bounded buffer between the page drawer and the target, null if paths are added directly
+    private final BlockingQueue<ParsedShape> buffer;
     private Shape clipShape;
     private List<PdfPath> clipPath;
     private final LayerInfo info = new LayerInfo();
@@ -35,6 +55,21 @@ public class GraphicsProcessor {
     private final int maxPaths;
 
     public GraphicsProcessor(PathOptimizer target, int rotation, int maxPaths, ProgressMonitor monitor) {
+        this(target, rotation, maxPaths, monitor, 0);
+    }
+
+    /**
+     * Constructs a new {@code GraphicsProcessor}.
+     * @param target the path optimizer receiving the paths
+     * @param rotation the page rotation in degrees
+     * @param maxPaths the maximum number of paths to take from the page
+     * @param monitor the progress monitor
+     * @param bufferSize if positive, the parsed paths are streamed through a buffer of this size and
+     * must be added to the target by another thread, see {@link #addBufferedPaths()}.
+     * Only {@link PathOptimizer#getUniquePoint} is then called by the drawing thread.
+     */
+    public GraphicsProcessor(PathOptimizer target, int rotation, int maxPaths, ProgressMonitor monitor, int bufferSize) {
+        this.buffer = bufferSize > 0 ? new ArrayBlockingQueue<>(bufferSize) : null;
         this.maxPaths = maxPaths;
         this.target = target;
         this.transform = new AffineTransform();
@@ -62,11 +97,62 @@ public class GraphicsProcessor {
         }
 
 
+        if (paths.isEmpty()) {
+            return;
+        }
+
+        if (this.buffer != null) {
+            put(new ParsedShape(this.info.copy(), paths));
+        } else {
+            addToTarget(this.info, paths);
+        }
+    }
+
+    private void addToTarget(LayerInfo layerInfo, List<PdfPath> paths) {
         if (paths.size() > 1) {
-            this.target.addMultiPath(this.info, paths);
-            this.parsePath(s, closed);
+            this.target.addMultiPath(layerInfo, paths);
         } else if (paths.size() == 1) {
-            this.target.addPath(this.info, paths.get(0));
+            this.target.addPath(layerInfo, paths.get(0));
+        }
+    }
+
+    private void put(ParsedShape shape) {
+        try {
+            this.buffer.put(shape);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException(tr("PDF parsing interrupted"));
+        }
+    }
+
+    /**
+     * Marks the end of the page: {@link #addBufferedPaths()} returns once the buffered paths are added.
+     * Must be called by the drawing thread, even if drawing failed.
+     */
+    public void finish() {
+        if (this.buffer != null) {
+            put(END);
+        }
+    }
+
+    /**
+     * Adds the buffered paths to the target until the end of the page is reached.
+     * @throws InterruptedException if interrupted while waiting for paths
+     */
+    public void addBufferedPaths() throws InterruptedException {
+        RuntimeException error = null;
+        for (ParsedShape shape = this.buffer.take(); shape != END; shape = this.buffer.take()) {
+            // after an error, keep draining the buffer so that the drawing thread does not block
+            if (error == null) {
+                try {
+                    addToTarget(shape.info, shape.paths);
+                } catch (RuntimeException e) {
+                    error = e;
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
         }
     }
 
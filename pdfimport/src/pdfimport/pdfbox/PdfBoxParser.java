@@ -6,54 +6,215 @@ import static org.openstreetmap.josm.tools.I18n.tr;
 import java.awt.geom.Rectangle2D;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.util.PDFStreamEngine;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
 
 import pdfimport.PathOptimizer;
 
+/**
+ * Parses the pages of a PDF file into a {@link PathOptimizer}.
+ * Pages are parsed in parallel, each one into its own optimizer, by workers having their own copy of the
+ * document; the paths of each page are streamed from the page drawer to the page optimizer through a
+ * bounded buffer. The pages are then merged into the target in page order, and the progress is reported by
+ * the calling thread as the pages are parsed.
+ */
 public class PdfBoxParser extends PDFStreamEngine {
+    // number of parsed shapes buffered between a page drawer and its optimizer
+    private static final int BUFFER_SIZE = 1024;
+    // marks the end of a worker in the queue of parsed pages
+    private static final int END = 0;
+
     private final PathOptimizer target;
 
     public PdfBoxParser(PathOptimizer target) {
         this.target = target;
     }
 
+    /**
+     * Parses all pages of the given file.
+     * @param file the PDF file
+     * @param maxPaths the maximum number of paths taken from each page
+     * @param monitor the progress monitor
+     * @throws IOException if the file cannot be read
+     */
     public void parse(File file, int maxPaths, ProgressMonitor monitor) throws IOException {
-        monitor.beginTask(tr("Parsing PDF", 1));
+        parse(file, 1, Integer.MAX_VALUE, maxPaths, monitor);
+    }
 
-        try (PDDocument document = PDDocument.load(file)) {
+    /**
+     * Parses the given page range of the file.
+     * @param file the PDF file
+     * @param firstPage the first page to parse, starting at 1
+     * @param lastPage the last page to parse (included), or any larger number for the last page of the file
+     * @param maxPaths the maximum number of paths taken from each page
+     * @param monitor the progress monitor
+     * @throws IOException if the file cannot be read
+     */
+    public void parse(final File file, int firstPage, int lastPage, final int maxPaths, final ProgressMonitor monitor)
+            throws IOException {
+        monitor.beginTask(tr("Parsing PDF"), 1);
 
-            if (document.isEncrypted()) {
+        // the document is read on demand, so opening it to count the pages is cheap: it is then parsed by a worker
+        final AtomicReference<PDDocument> openDocument = new AtomicReference<>(loadDocument(file));
+        ExecutorService workers = null;
+        ExecutorService consumers = null;
+        try {
+            if (openDocument.get().isEncrypted()) {
                 throw new IllegalArgumentException(tr("Encrypted documents not supported."));
             }
+            int pageCount = openDocument.get().getNumberOfPages();
 
-            List<?> allPages = document.getDocumentCatalog().getAllPages();
+            final int first = Math.max(1, firstPage);
+            final int last = Math.min(pageCount, lastPage);
+            if (first > last) {
+                throw new IllegalArgumentException(tr("The PDF file has no page in range {0}-{1}.", firstPage, lastPage));
+            }
 
-            if (allPages.size() != 1) {
-                throw new IllegalArgumentException(tr("The PDF file must have exactly one page."));
+            final PathOptimizer[] pages = new PathOptimizer[last - first + 1];
+            monitor.setTicksCount(pages.length);
+            final AtomicInteger nextPage = new AtomicInteger(first);
+            final AtomicInteger parsedPaths = new AtomicInteger();
+            // pages parsed by the workers, and END when a worker stops
+            final BlockingQueue<Integer> parsedPages = new LinkedBlockingQueue<>();
+            // each worker loads the document, so there are no more workers than pages
+            int threads = Math.min(pages.length, Runtime.getRuntime().availableProcessors());
+            workers = Executors.newFixedThreadPool(threads, Utils.newThreadFactory("pdfimport-page-%d", Thread.NORM_PRIORITY));
+            consumers = Executors.newFixedThreadPool(threads, Utils.newThreadFactory("pdfimport-paths-%d", Thread.NORM_PRIORITY));
+            final ExecutorService pathConsumers = consumers;
+            List<Future<Void>> results = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                results.add(workers.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        // PDFBox documents are not thread safe: each worker reads its own copy,
+                        // the first one to start takes the document already open
+                        PDDocument own = openDocument.getAndSet(null);
+                        try (PDDocument document = own != null ? own : loadDocument(file)) {
+                            List<?> allPages = document.getDocumentCatalog().getAllPages();
+                            for (int p = nextPage.getAndIncrement(); p <= last && !Thread.currentThread().isInterrupted();
+                                    p = nextPage.getAndIncrement()) {
+                                pages[p - first] = parsePage((PDPage) allPages.get(p - 1), maxPaths, pathConsumers, parsedPaths);
+                                parsedPages.add(p);
+                            }
+                        } finally {
+                            parsedPages.add(END);
+                        }
+                        return null;
+                    }
+                }));
             }
 
-            PDPage page = (PDPage) allPages.get(0);
-            PDRectangle pageSize = page.findMediaBox();
-            Integer rotationVal = page.getRotation();
-            int rotation = 0;
-            if (rotationVal != null) {
-                rotation = rotationVal.intValue();
+            // the monitor is only used by the calling thread
+            for (int running = threads; running > 0;) {
+                if (parsedPages.take() == END) {
+                    running--;
+                } else {
+                    monitor.worked(1);
+                    monitor.setCustomText(tr(" {0} objects so far", parsedPaths.get()));
+                }
+            }
+            for (Future<Void> result : results) {
+                result.get();
             }
 
-            new PageDrawer().drawPage(new GraphicsProcessor(target, rotation, maxPaths, monitor), page);
-            this.target.bounds = new Rectangle2D.Double(
-                    pageSize.getLowerLeftX(),
-                    pageSize.getLowerLeftY(),
-                    pageSize.getWidth(),
-                    pageSize.getHeight());
+            for (int i = 0; i < pages.length; i++) {
+                this.target.merge(pages[i]);
+                pages[i] = null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            if (workers != null) {
+                workers.shutdownNow();
+                consumers.shutdownNow();
+            }
+            // not taken by a worker
+            PDDocument document = openDocument.getAndSet(null);
+            if (document != null) {
+                document.close();
+            }
         }
 
         monitor.finishTask();
     }
+
+    /**
+     * Opens the document, reading objects on demand rather than parsing the whole file at once.
+     */
+    private static PDDocument loadDocument(File file) throws IOException {
+        try {
+            return PDDocument.loadNonSeq(file, null);
+        } catch (IOException e) {
+            // the non sequential parser is less lenient with broken files
+            Logging.debug(e);
+            return PDDocument.load(file);
+        }
+    }
+
+    private PathOptimizer parsePage(PDPage page, int maxPaths, ExecutorService consumers, AtomicInteger parsedPaths)
+            throws IOException, InterruptedException, ExecutionException {
+        PathOptimizer pageTarget = this.target.createPageOptimizer();
+        PDRectangle pageSize = page.findMediaBox();
+        Integer rotationVal = page.getRotation();
+        int rotation = 0;
+        if (rotationVal != null) {
+            rotation = rotationVal.intValue();
+        }
+
+        final GraphicsProcessor processor = new GraphicsProcessor(pageTarget, rotation, maxPaths, NullProgressMonitor.INSTANCE,
+                BUFFER_SIZE);
+        Future<Void> consumer = consumers.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws InterruptedException {
+                processor.addBufferedPaths();
+                return null;
+            }
+        });
+        try {
+            new PageDrawer().drawPage(processor, page);
+        } finally {
+            try {
+                processor.finish();
+            } finally {
+                if (Thread.currentThread().isInterrupted()) {
+                    consumer.cancel(true);
+                }
+            }
+        }
+        consumer.get();
+        parsedPaths.addAndGet(processor.pathNo);
+
+        pageTarget.bounds = new Rectangle2D.Double(
+                pageSize.getLowerLeftX(),
+                pageSize.getLowerLeftY(),
+                pageSize.getWidth(),
+                pageSize.getHeight());
+        return pageTarget;
+    }
 }
@@ -0,0 +1,61 @@
+// License: GPL. For details, see LICENSE file.
+package pdfimport;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class PathOptimizerTest {
+
+    private static PdfPath path(PathOptimizer data, double... coords) {
+        List<Point2D> points = new ArrayList<>();
+        for (int i = 0; i < coords.length; i += 2) {
+            points.add(data.getUniquePoint(new Point2D.Double(coords[i], coords[i + 1])));
+        }
+        return new PdfPath(points);
+    }
+
+    @Test
+    public void testFindDuplicateNodes() {
+        Point2D a = new Point2D.Double(0, 0);
+        Point2D b = new Point2D.Double(0.0005, -0.0005);
+        Point2D c = new Point2D.Double(0.01, 0);
+        Map<Point2D, Point2D> map = DuplicateNodesFinder.findDuplicateNodes(Arrays.asList(a, b, c), 1e-3);
+        assertEquals(1, map.size());
+        assertEquals(b, map.get(a));
+    }
+
+    @Test
+    public void testRemoveParallelLines() {
+        PathOptimizer data = new PathOptimizer(0.0, null, false);
+        LayerInfo info = new LayerInfo();
+        // hatching: 10 parallel segments 1 unit apart, and a lone segment far away
+        for (int i = 0; i < 10; i++) {
+            data.addPath(info, path(data, 0, i, 10, i));
+        }
+        data.addPath(info, path(data, 0, 100, 10, 100));
+        data.removeParallelLines(2);
+        assertEquals(1, data.getLayers().get(0).paths.size());
+    }
+
+    @Test
+    public void testSplitLayersBySimilarShapes() {
+        PathOptimizer data = new PathOptimizer(0.0, null, false);
+        LayerInfo info = new LayerInfo();
+        // 10 translated triangles and a different one
+        for (int i = 0; i < 10; i++) {
+            data.addPath(info, path(data, i * 5, 0, i * 5 + 1, 0, i * 5, 1, i * 5, 0));
+        }
+        data.addPath(info, path(data, 100, 0, 102, 0, 100, 1, 100, 0));
+        data.splitLayersBySimilarShapes(0);
+        assertEquals(2, data.getLayers().size());
+        assertEquals(10, data.getLayers().get(0).paths.size());
+        assertEquals(1, data.getLayers().get(1).paths.size());
+    }
+}
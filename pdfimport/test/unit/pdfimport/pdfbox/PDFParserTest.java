@@ -3,10 +3,19 @@ package pdfimport.pdfbox;
 
 import static org.junit.Assert.assertEquals;
 
+import java.awt.Color;
 import java.awt.Rectangle;
+import java.awt.geom.Point2D;
 import java.io.File;
+import java.util.Arrays;
 
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.openstreetmap.josm.TestUtils;
 import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
 
@@ -14,6 +23,40 @@ import pdfimport.PathOptimizer;
 
 public class PDFParserTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Writes a document of three pages of 200x200 points. A red line of the first page ends where a red line
+     * of the second page starts, and a blue line of the second page ends where a blue line of the third page starts.
+     */
+    private File writeMultiPage() throws Exception {
+        float[][][] lines = {
+            {{10, 10, 100, 10}},
+            {{100, 10, 100, 100}, {10, 100, 50, 100}},
+            {{50, 100, 50, 150}}};
+        Color[][] colors = {{Color.RED}, {Color.RED, Color.BLUE}, {Color.BLUE}};
+        File file = folder.newFile("multipage.pdf");
+        try (PDDocument document = new PDDocument()) {
+            for (int p = 0; p < lines.length; p++) {
+                PDPage page = new PDPage(new PDRectangle(200, 200));
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    for (int l = 0; l < lines[p].length; l++) {
+                        content.setStrokingColor(colors[p][l]);
+                        content.drawLine(lines[p][l][0], lines[p][l][1], lines[p][l][2], lines[p][l][3]);
+                    }
+                }
+            }
+            document.save(file);
+        }
+        return file;
+    }
+
+    private static Point2D point(double x, double y) {
+        return new Point2D.Double(x, y);
+    }
+
     private PathOptimizer parse(String fileName) throws Exception {
         PathOptimizer data = new PathOptimizer(0.0, null, false);
         PdfBoxParser parser = new PdfBoxParser(data);
@@ -39,4 +82,48 @@ public class PDFParserTest {
         assertEquals(127300, data.uniquePoints.size());
         assertEquals(34, data.getLayers().size());
     }
+
+    @Test
+    public void testParsePageRange() throws Exception {
+        PathOptimizer data = new PathOptimizer(0.0, null, false);
+        new PdfBoxParser(data).parse(new File(TestUtils.getRegressionDataFile(9053, "testpdf.pdf")),
+                1, 1, Integer.MAX_VALUE, NullProgressMonitor.INSTANCE);
+        assertEquals(4, data.uniquePoints.size());
+        assertEquals(1, data.getLayers().size());
+    }
+
+    @Test
+    public void testParseMultiPage() throws Exception {
+        File file = writeMultiPage();
+
+        PathOptimizer data = new PathOptimizer(0.0, null, false);
+        new PdfBoxParser(data).parse(file, Integer.MAX_VALUE, NullProgressMonitor.INSTANCE);
+        // the corners of the pages, then the points of the lines in page order, the points at the same place
+        // on two pages being shared
+        assertEquals(Arrays.asList(point(0, 0), point(200, 0), point(200, 200), point(0, 200),
+                point(10, 10), point(100, 10), point(100, 100), point(10, 100), point(50, 100), point(50, 150)),
+                data.uniquePoints);
+        // a layer per color, joined across pages
+        assertEquals(2, data.getLayers().size());
+        assertEquals(new Rectangle(200, 200), data.bounds);
+
+        data = new PathOptimizer(0.0, null, false);
+        new PdfBoxParser(data).parse(file, 2, 3, Integer.MAX_VALUE, NullProgressMonitor.INSTANCE);
+        assertEquals(Arrays.asList(point(0, 0), point(200, 0), point(200, 200), point(0, 200),
+                point(100, 10), point(100, 100), point(10, 100), point(50, 100), point(50, 150)), data.uniquePoints);
+        assertEquals(2, data.getLayers().size());
+
+        data = new PathOptimizer(0.0, null, false);
+        new PdfBoxParser(data).parse(file, 3, 3, Integer.MAX_VALUE, NullProgressMonitor.INSTANCE);
+        assertEquals(Arrays.asList(point(0, 0), point(200, 0), point(200, 200), point(0, 200),
+                point(50, 100), point(50, 150)), data.uniquePoints);
+        assertEquals(1, data.getLayers().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseMissingPage() throws Exception {
+        PathOptimizer data = new PathOptimizer(0.0, null, false);
+        new PdfBoxParser(data).parse(new File(TestUtils.getRegressionDataFile(9053, "testpdf.pdf")),
+                2, 3, Integer.MAX_VALUE, NullProgressMonitor.INSTANCE);
+    }
 }
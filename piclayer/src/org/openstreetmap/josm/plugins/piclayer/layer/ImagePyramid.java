@@ -0,0 +1,448 @@
+package org.openstreetmap.josm.plugins.piclayer.layer;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * Mipmap pyramid of a picture: level 0 is the picture itself, and each
+ * next level is half the size of the previous one.
+ *
+ * Pictures up to a number of pixels are kept in memory at all levels, the
+ * smaller levels being built in the background. Larger pictures read from a
+ * file keep in memory only the levels below that size, read once with
+ * subsampling; the larger levels are read as tiles when drawn, and kept in a
+ * cache of the same size. So a huge scan never needs a full resolution buffer.
+ *
+ * Tiles are read in the background with a single image reader kept open, the
+ * missing tiles of a row at once, from the top row. Readers of compressed
+ * formats decode the file from its start at each read, which is thus done
+ * once per row rather than once per tile.
+ */
+public class ImagePyramid {
+
+    // Size of the tiles of the levels read on demand
+    static final int TILE_SIZE = 512;
+
+    private static final ExecutorService LOADER = Executors.newSingleThreadExecutor(
+            Utils.newThreadFactory("piclayer-loader-%d", Thread.NORM_PRIORITY));
+
+    private final int width;
+    private final int height;
+    private final BufferedImage[] levels;
+    // levels from this one are kept in memory, the larger ones are tiled
+    private final int firstMemoryLevel;
+    private final File file;
+    private final Runnable onUpdate;
+
+    // least recently used tiles, by level and position
+    private final Map<Long, BufferedImage> tiles;
+    private final Set<Long> loading = new HashSet<>();
+    // tiles needed by the last drawing, others are not loaded anymore
+    private volatile Set<Long> wanted = Collections.emptySet();
+    // incremented when a level or a tile becomes available
+    private volatile int generation;
+    // reader of the tiles, only used from the loader thread
+    private Reader tileReader;
+
+    private ImagePyramid(int width, int height, long maxLevelPixels, File file, Runnable onUpdate) {
+        this.width = width;
+        this.height = height;
+        this.file = file;
+        this.onUpdate = onUpdate;
+        int count = 1;
+        while (Math.max(levelSize(width, count - 1), levelSize(height, count - 1)) > TILE_SIZE) {
+            count++;
+        }
+        levels = new BufferedImage[count];
+        int first = 0;
+        while (first < count - 1 && (long) levelSize(width, first) * levelSize(height, first) > maxLevelPixels) {
+            first++;
+        }
+        firstMemoryLevel = file == null ? 0 : first;
+        final int maxTiles = (int) Math.max(16, maxLevelPixels / TILE_SIZE / TILE_SIZE);
+        tiles = new LinkedHashMap<Long, BufferedImage>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest) {
+                return size() > maxTiles;
+            }
+        };
+    }
+
+    /**
+     * Creates the pyramid of a picture in memory. The smaller levels are built in the background.
+     * @param image the picture, fully loaded
+     * @param onUpdate called from the background thread when a level is built
+     * @return the pyramid
+     */
+    public static ImagePyramid fromImage(Image image, Runnable onUpdate) {
+        BufferedImage level0;
+        if (image instanceof BufferedImage) {
+            level0 = (BufferedImage) image;
+        } else {
+            level0 = new BufferedImage(image.getWidth(null), image.getHeight(null), BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = level0.createGraphics();
+            g.drawImage(image, 0, 0, null);
+            g.dispose();
+        }
+        ImagePyramid pyramid = new ImagePyramid(level0.getWidth(), level0.getHeight(), Long.MAX_VALUE, null, onUpdate);
+        pyramid.levels[0] = level0;
+        LOADER.execute(() -> pyramid.buildLevels(0));
+        return pyramid;
+    }
+
+    /**
+     * Creates the pyramid of a picture file. Pictures up to {@code maxLevelPixels} pixels are read at once,
+     * larger ones are read by subsampling and by tiles, in the background.
+     * @param file the picture file
+     * @param maxLevelPixels the maximum number of pixels of a level kept in memory
+     * @param onUpdate called from the background thread when a level or a tile is read
+     * @return the pyramid
+     * @throws IOException if the picture cannot be read
+     */
+    public static ImagePyramid fromFile(File file, long maxLevelPixels, Runnable onUpdate) throws IOException {
+        int width;
+        int height;
+        try (Reader reader = new Reader(file)) {
+            width = reader.reader.getWidth(0);
+            height = reader.reader.getHeight(0);
+            if ((long) width * height <= maxLevelPixels) {
+                return fromImage(reader.reader.read(0), onUpdate);
+            }
+        }
+        ImagePyramid pyramid = new ImagePyramid(width, height, maxLevelPixels, file, onUpdate);
+        LOADER.execute(() -> {
+            try (Reader reader = new Reader(file)) {
+                pyramid.setLevel(pyramid.firstMemoryLevel, reader.read(null, pyramid.firstMemoryLevel));
+                pyramid.buildLevels(pyramid.firstMemoryLevel);
+            } catch (IOException e) {
+                Main.warn(e);
+            }
+        });
+        return pyramid;
+    }
+
+    private static int levelSize(int size, int level) {
+        return (size + (1 << level) - 1) >> level;
+    }
+
+    private void buildLevels(int from) {
+        for (int level = from + 1; level < levels.length; level++) {
+            BufferedImage previous = getLevel(level - 1);
+            BufferedImage image = new BufferedImage(levelSize(width, level), levelSize(height, level),
+                    BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = image.createGraphics();
+            // halving with bilinear interpolation averages 2x2 pixels
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(previous, 0, 0, image.getWidth(), image.getHeight(), null);
+            g.dispose();
+            setLevel(level, image);
+        }
+    }
+
+    private synchronized BufferedImage getLevel(int level) {
+        return levels[level];
+    }
+
+    private void setLevel(int level, BufferedImage image) {
+        synchronized (this) {
+            levels[level] = image;
+        }
+        generation++;
+        onUpdate.run();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    /**
+     * Returns a number which changes whenever more of the picture becomes available,
+     * so that drawings of the picture can be cached until it changes.
+     * @return the generation of the pyramid
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Chooses the smallest level which is not enlarged by a transform.
+     * @param transform the transform from picture pixels to screen pixels
+     * @return the level to draw
+     */
+    public int chooseLevel(AffineTransform transform) {
+        double scale = Math.sqrt(Math.abs(transform.getDeterminant()));
+        int level = 0;
+        while (level < levels.length - 1 && scale * (1 << (level + 1)) <= 1) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Draws the picture. Missing tiles are requested from the background thread, and their area
+     * is drawn from the first level in memory meanwhile.
+     * @param g the graphics, in screen pixels
+     * @param transform the transform from picture pixels to screen pixels
+     * @param clip the screen area to draw
+     * @param level the level to draw
+     */
+    public void draw(Graphics2D g, AffineTransform transform, Rectangle clip, int level) {
+        if (level >= firstMemoryLevel) {
+            // if still being built, draw a larger level in memory if any
+            for (int l = level; l >= firstMemoryLevel; l--) {
+                BufferedImage image = getLevel(l);
+                if (image != null) {
+                    drawLevel(g, transform, image, l, 0, 0);
+                    return;
+                }
+            }
+            return;
+        }
+
+        Rectangle visible;
+        try {
+            visible = transform.createInverse().createTransformedShape(clip).getBounds().intersection(
+                    new Rectangle(width, height));
+        } catch (NoninvertibleTransformException e) {
+            return;
+        }
+        if (visible.isEmpty()) {
+            return;
+        }
+        int span = TILE_SIZE << level;
+        // in rows from the top, the order the tiles are read
+        Set<Long> needed = new LinkedHashSet<>();
+        boolean complete = true;
+        for (int ty = visible.y / span; ty <= (visible.y + visible.height - 1) / span; ty++) {
+            for (int tx = visible.x / span; tx <= (visible.x + visible.width - 1) / span; tx++) {
+                long key = tileKey(level, tx, ty);
+                needed.add(key);
+                synchronized (tiles) {
+                    complete &= tiles.containsKey(key);
+                }
+            }
+        }
+        wanted = needed;
+
+        if (!complete) {
+            BufferedImage fallback = getLevel(firstMemoryLevel);
+            if (fallback != null) {
+                drawLevel(g, transform, fallback, firstMemoryLevel, 0, 0);
+            }
+        }
+        for (long key : needed) {
+            BufferedImage tile;
+            synchronized (tiles) {
+                tile = tiles.get(key);
+            }
+            if (tile != null) {
+                drawLevel(g, transform, tile, level, tileX(key) * TILE_SIZE, tileY(key) * TILE_SIZE);
+            } else {
+                requestTile(key);
+            }
+        }
+    }
+
+    private void drawLevel(Graphics2D g, AffineTransform transform, BufferedImage image, int level, int x, int y) {
+        AffineTransform tr = new AffineTransform(transform);
+        // exact ratio rather than the power of two, as level sizes are rounded up
+        tr.scale((double) width / levelSize(width, level), (double) height / levelSize(height, level));
+        tr.translate(x, y);
+        g.drawImage(image, tr, null);
+    }
+
+    static long tileKey(int level, int tx, int ty) {
+        return ((long) level << 56) | ((long) tx << 28) | ty;
+    }
+
+    static int tileLevel(long key) {
+        return (int) (key >>> 56);
+    }
+
+    static int tileX(long key) {
+        return (int) ((key >>> 28) & 0xfffffff);
+    }
+
+    static int tileY(long key) {
+        return (int) (key & 0xfffffff);
+    }
+
+    boolean hasTile(long key) {
+        synchronized (tiles) {
+            return tiles.containsKey(key);
+        }
+    }
+
+    private void requestTile(long key) {
+        synchronized (loading) {
+            if (!loading.add(key)) {
+                return;
+            }
+        }
+        LOADER.execute(() -> {
+            try {
+                readRow(key);
+            } catch (IOException e) {
+                Main.warn(e);
+                closeReader();
+            } finally {
+                synchronized (loading) {
+                    loading.remove(key);
+                }
+            }
+        });
+    }
+
+    /**
+     * Reads a tile, along with the wanted tiles missing next to it in its row, in a single read.
+     */
+    private void readRow(long key) throws IOException {
+        Set<Long> wantedNow = wanted;
+        // skip the tiles scrolled out of view in the meantime, or read with a previous tile
+        if (!wantedNow.contains(key) || hasTile(key)) {
+            return;
+        }
+        int level = tileLevel(key);
+        int ty = tileY(key);
+        int first = tileX(key);
+        int last = first;
+        while (first > 0 && isMissing(wantedNow, tileKey(level, first - 1, ty))) {
+            first--;
+        }
+        while (isMissing(wantedNow, tileKey(level, last + 1, ty))) {
+            last++;
+        }
+        int span = TILE_SIZE << level;
+        Rectangle region = new Rectangle(first * span, ty * span, (last - first + 1) * span, span).intersection(
+                new Rectangle(width, height));
+        if (tileReader == null) {
+            tileReader = new Reader(file);
+        }
+        BufferedImage row = tileReader.read(region, level);
+        synchronized (tiles) {
+            for (int tx = first; tx <= last; tx++) {
+                tiles.put(tileKey(level, tx, ty), first == last ? row : copy(row, (tx - first) * TILE_SIZE));
+            }
+        }
+        generation++;
+        onUpdate.run();
+    }
+
+    private boolean isMissing(Set<Long> wantedNow, long key) {
+        return wantedNow.contains(key) && !hasTile(key);
+    }
+
+    /**
+     * Copies a tile out of a row, so that the tiles of the row are dropped from the cache one by one.
+     */
+    private static BufferedImage copy(BufferedImage row, int x) {
+        int w = Math.min(TILE_SIZE, row.getWidth() - x);
+        // same layout as the row, for the copy to keep its type, custom images being drawn very slowly
+        WritableRaster raster = row.getRaster().createCompatibleWritableRaster(w, row.getHeight());
+        raster.setRect(row.getRaster().createChild(x, 0, w, row.getHeight(), 0, 0, null));
+        return new BufferedImage(row.getColorModel(), raster, row.isAlphaPremultiplied(), null);
+    }
+
+    private void closeReader() {
+        if (tileReader != null) {
+            try {
+                tileReader.close();
+            } catch (IOException e) {
+                Main.warn(e);
+            }
+            tileReader = null;
+        }
+    }
+
+    /**
+     * Drops the tiles and closes the file, for instance when the layer is removed.
+     */
+    public void clearTiles() {
+        wanted = Collections.emptySet();
+        synchronized (tiles) {
+            tiles.clear();
+        }
+        LOADER.execute(this::closeReader);
+    }
+
+    /**
+     * Image reader of a picture file, reading parts of it with subsampling.
+     */
+    private static final class Reader implements AutoCloseable {
+        private final ImageInputStream in;
+        private final ImageReader reader;
+
+        Reader(File file) throws IOException {
+            in = ImageIO.createImageInputStream(file);
+            if (in == null) {
+                throw new IOException("Cannot read " + file);
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                in.close();
+                throw new IOException("No image reader for " + file);
+            }
+            reader = readers.next();
+            reader.setInput(in, true, true);
+        }
+
+        BufferedImage read(Rectangle region, int level) throws IOException {
+            ImageReadParam param = reader.getDefaultReadParam();
+            if (region != null) {
+                param.setSourceRegion(region);
+            }
+            param.setSourceSubsampling(1 << level, 1 << level, 0, 0);
+            BufferedImage image = reader.read(0, param);
+            if (image.getType() == BufferedImage.TYPE_CUSTOM) {
+                // custom images are drawn very slowly
+                BufferedImage converted = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+                Graphics2D g = converted.createGraphics();
+                g.setComposite(AlphaComposite.Src);
+                g.drawImage(image, 0, 0, null);
+                g.dispose();
+                return converted;
+            }
+            return image;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.dispose();
+            in.close();
+        }
+    }
+}
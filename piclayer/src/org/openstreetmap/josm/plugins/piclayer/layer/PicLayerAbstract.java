@@ -26,7 +26,6 @@ import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.Point;
-import java.awt.RenderingHints;
 import java.awt.Toolkit;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.NoninvertibleTransformException;
@@ -51,6 +50,7 @@ import org.openstreetmap.josm.data.osm.visitor.BoundingXYVisitor;
 import org.openstreetmap.josm.data.projection.Projection;
 import org.openstreetmap.josm.gui.MapView;
 import org.openstreetmap.josm.gui.layer.Layer;
+import org.openstreetmap.josm.gui.util.GuiHelper;
 import org.openstreetmap.josm.plugins.piclayer.actions.LoadPictureCalibrationAction;
 import org.openstreetmap.josm.plugins.piclayer.actions.LoadPictureCalibrationFromWorldAction;
 import org.openstreetmap.josm.plugins.piclayer.actions.ResetCalibrationAction;
@@ -68,8 +68,11 @@ public abstract class PicLayerAbstract extends Layer {
     // Counter - just for naming of layers
     private static int imageCounter = 0;
 
-    // This is the main image to be displayed
-    protected Image image = null;
+    // This is the main image to be displayed, at several scales
+    protected ImagePyramid pyramid = null;
+
+    // The picture drawn by the last paint, in screen pixels
+    private final ViewCache viewCache = new ViewCache();
     // Tiles of pin images
     private static Image pinTiledImage;
 
@@ -169,14 +172,33 @@ public abstract class PicLayerAbstract extends Layer {
         }
 
         // Create image
-        image = createImage();
-        if (image == null) {
+        pyramid = createPyramid();
+        if (pyramid == null) {
             throw new IOException(tr("PicLayer failed to load or import the image."));
         }
+
+        lookForCalibration();
+    }
+
+    /**
+     * Creates the pyramid of the image. By default, the image is loaded completely
+     * with {@link #createImage()}; subclasses may read large images by tiles instead.
+     */
+    protected ImagePyramid createPyramid() throws IOException {
+        Image image = createImage();
+        if (image == null) {
+            return null;
+        }
         // Load image completely
         (new ImageIcon(image)).getImage();
+        return ImagePyramid.fromImage(image, this::pyramidUpdated);
+    }
 
-        lookForCalibration();
+    /**
+     * Called from the loading thread when more of the image is available.
+     */
+    protected void pyramidUpdated() {
+        GuiHelper.runInEDT(this::invalidate);
     }
 
     /**
@@ -233,10 +255,19 @@ public abstract class PicLayerAbstract extends Layer {
     @Override
     public void mergeFrom(Layer arg0) {}
 
+    @Override
+    public void destroy() {
+        super.destroy();
+        if (pyramid != null) {
+            pyramid.clearTiles();
+        }
+        viewCache.clear();
+    }
+
     @Override
     public void paint(Graphics2D g2, MapView mv, Bounds bounds) {
 
-        if (image != null) {
+        if (pyramid != null) {
 
             // Position image at the right graphical place
             EastNorth center = mv.getCenter();
@@ -261,19 +292,21 @@ public abstract class PicLayerAbstract extends Layer {
 
             g.transform(transformer.getTransform());
 
-            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-
             // Draw picture
-            g.drawImage(image, -image.getWidth(null) / 2, -image.getHeight(null) / 2, null);
+            AffineTransform toScreen = AffineTransform.getTranslateInstance(pic_offset_x, pic_offset_y);
+            toScreen.scale(scalex, scaley);
+            toScreen.concatenate(transformer.getTransform());
+            toScreen.translate(-pyramid.getWidth() / 2, -pyramid.getHeight() / 2);
+            g2.drawImage(viewCache.get(pyramid, toScreen, mv.getWidth(), mv.getHeight()), 0, 0, null);
 
             // Draw additional rectangle for the active pic layer
             if (mv.getLayerManager().getActiveLayer() == this) {
                 g.setColor(new Color(0xFF0000));
                 g.drawRect(
-                    -image.getWidth(null) / 2,
-                    -image.getHeight(null) / 2,
-                    image.getWidth(null),
-                    image.getHeight(null)
+                    -pyramid.getWidth() / 2,
+                    -pyramid.getHeight() / 2,
+                    pyramid.getWidth(),
+                    pyramid.getHeight()
                 );
             }
             if (drawMarkers) {
@@ -352,7 +385,7 @@ public abstract class PicLayerAbstract extends Layer {
      * rotation.
      */
     public void visitBoundingBox(BoundingXYVisitor arg0) {
-        if (image == null)
+        if (pyramid == null)
             return;
         String projcode = projection.toCode();
 
@@ -366,8 +399,8 @@ public abstract class PicLayerAbstract extends Layer {
             return;
 
         EastNorth center = transformer.getImagePosition();
-        double w = image.getWidth(null);
-        double h = image.getHeight(null);
+        double w = pyramid.getWidth();
+        double h = pyramid.getHeight();
         double diag_pix = Math.sqrt(w*w+h*h);
 
         // initialImageScale is a the scale (unit: m/100pix) at creation time
@@ -476,8 +509,8 @@ public abstract class PicLayerAbstract extends Layer {
                 e[i] = Double.parseDouble(line);
             }
             double sx = e[0], ry = e[1], rx = e[2], sy = e[3], dx = e[4], dy = e[5];
-            int w = image.getWidth(null);
-            int h = image.getHeight(null);
+            int w = pyramid.getWidth();
+            int h = pyramid.getHeight();
             EastNorth imagePosition = new EastNorth(
                     dx + w/2*sx + h/2*rx,
                     dy + w/2*ry + h/2*sy
@@ -505,8 +538,8 @@ public abstract class PicLayerAbstract extends Layer {
         transformer.getTransform().getMatrix(matrix);
         double a00 = matrix[0], a01 = matrix[2], a02 = matrix[4];
         double a10 = matrix[1], a11 = matrix[3], a12 = matrix[5];
-        int w = image.getWidth(null);
-        int h = image.getHeight(null);
+        int w = pyramid.getWidth();
+        int h = pyramid.getHeight();
         EastNorth imagePosition = transformer.getImagePosition();
         // piclayer calibration stores 9 parameters
         // worldfile has 6 parameters
@@ -598,7 +631,7 @@ public abstract class PicLayerAbstract extends Layer {
 
     // get image coordinates by mouse coords
     public Point2D findSelectedPoint(Point point) {
-        if (image == null)
+        if (pyramid == null)
             return null;
 
         Point2D selected = null;
@@ -106,6 +106,16 @@ public class PicLayerFromFile extends PicLayerAbstract {
         }
     }
 
+    @Override
+    protected ImagePyramid createPyramid() throws IOException {
+        if (isZip) {
+            return super.createPyramid();
+        }
+        // Large images are read by tiles, the others at once
+        long maxPixels = Main.pref.getInteger("piclayer.max-image-pixels", 4096 * 4096);
+        return ImagePyramid.fromFile(m_file, maxPixels, this::pyramidUpdated);
+    }
+
     public enum CalibrationType { CAL, WORLDFILE }
 
     public static class CalData {
@@ -47,8 +47,8 @@ public class PicLayerFromKML extends PicLayerAbstract {
     }
 
     public void loadCalibration(KMLGroundOverlay cal) {
-        int w = image.getWidth(null);
-        int h = image.getHeight(null);
+        int w = pyramid.getWidth();
+        int h = pyramid.getHeight();
         LatLon coord1 = new LatLon(cal.getNorth(), cal.getEast());
         LatLon coord2 = new LatLon(cal.getSouth(), cal.getWest());
 
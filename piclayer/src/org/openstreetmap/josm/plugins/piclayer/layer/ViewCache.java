@@ -0,0 +1,84 @@
+package org.openstreetmap.josm.plugins.piclayer.layer;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * The picture drawn by the last paint of a layer, in screen pixels, and what it was drawn for.
+ * The drawing is kept until the view, the calibration or the loaded part of the picture change,
+ * so that repaints caused by other layers do not transform the picture again.
+ */
+final class ViewCache {
+
+    private BufferedImage image;
+    private double[] transform;
+    private int level;
+    private int generation;
+
+    /**
+     * Tells whether the last drawing can be reused.
+     * @param pyramid the picture
+     * @param toScreen the transform from picture pixels to screen pixels
+     * @param width the width of the view
+     * @param height the height of the view
+     * @return true if the picture would be drawn the same way again
+     */
+    boolean isValid(ImagePyramid pyramid, AffineTransform toScreen, int width, int height) {
+        double[] matrix = new double[6];
+        toScreen.getMatrix(matrix);
+        return isValid(matrix, pyramid.chooseLevel(toScreen), pyramid.getGeneration(), width, height);
+    }
+
+    private boolean isValid(double[] matrix, int level, int generation, int width, int height) {
+        return image != null && image.getWidth() == Math.max(1, width) && image.getHeight() == Math.max(1, height)
+                && level == this.level && generation == this.generation && Arrays.equals(matrix, transform);
+    }
+
+    /**
+     * Returns the picture drawn at the scale and position of the view, drawn again if needed.
+     * @param pyramid the picture
+     * @param toScreen the transform from picture pixels to screen pixels
+     * @param width the width of the view
+     * @param height the height of the view
+     * @return the picture, of the size of the view
+     */
+    BufferedImage get(ImagePyramid pyramid, AffineTransform toScreen, int width, int height) {
+        double[] matrix = new double[6];
+        toScreen.getMatrix(matrix);
+        int newLevel = pyramid.chooseLevel(toScreen);
+        // read before drawing, so that a part loaded meanwhile causes another drawing
+        int newGeneration = pyramid.getGeneration();
+        if (isValid(matrix, newLevel, newGeneration, width, height)) {
+            return image;
+        }
+
+        if (image == null || image.getWidth() != Math.max(1, width) || image.getHeight() != Math.max(1, height)) {
+            image = new BufferedImage(Math.max(1, width), Math.max(1, height), BufferedImage.TYPE_INT_ARGB);
+        }
+        Graphics2D g = image.createGraphics();
+        g.setComposite(AlphaComposite.Clear);
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g.setComposite(AlphaComposite.SrcOver);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        pyramid.draw(g, toScreen, new Rectangle(image.getWidth(), image.getHeight()), newLevel);
+        g.dispose();
+
+        transform = matrix;
+        level = newLevel;
+        generation = newGeneration;
+        return image;
+    }
+
+    /**
+     * Drops the drawing.
+     */
+    void clear() {
+        image = null;
+        transform = null;
+    }
+}
@@ -0,0 +1,182 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.piclayer.layer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+/**
+ * Unit test of {@link ImagePyramid}.
+ */
+public class ImagePyramidTest {
+
+    @Rule
+    public JOSMTestRules rules = new JOSMTestRules().preferences();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // released by each update of the pyramids
+    private final Semaphore updates = new Semaphore(0);
+
+    /**
+     * A picture whose pixels all have a different color.
+     */
+    private static BufferedImage picture(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                image.setRGB(x, y, (x & 0xff) << 16 | (y & 0xff) << 8 | (x >> 8) << 4 | y >> 8);
+            }
+        }
+        return image;
+    }
+
+    private void awaitUpdates(int count) throws InterruptedException {
+        assertTrue(updates.tryAcquire(count, 30, TimeUnit.SECONDS));
+    }
+
+    private static void draw(ImagePyramid pyramid, AffineTransform toScreen, BufferedImage view) {
+        Graphics2D g = view.createGraphics();
+        pyramid.draw(g, toScreen, new Rectangle(view.getWidth(), view.getHeight()), pyramid.chooseLevel(toScreen));
+        g.dispose();
+    }
+
+    /**
+     * Unit test of {@link ImagePyramid#tileKey}: the level and position are found back from the key.
+     */
+    @Test
+    public void testTileKey() {
+        int[][] tiles = {{0, 0, 0}, {3, 0xfffffff, 5}, {20, 12345, 0xfffffff}, {1, 2, 3}, {1, 3, 2}};
+        for (int[] tile : tiles) {
+            long key = ImagePyramid.tileKey(tile[0], tile[1], tile[2]);
+            assertEquals(tile[0], ImagePyramid.tileLevel(key));
+            assertEquals(tile[1], ImagePyramid.tileX(key));
+            assertEquals(tile[2], ImagePyramid.tileY(key));
+        }
+        assertFalse(ImagePyramid.tileKey(1, 2, 3) == ImagePyramid.tileKey(1, 3, 2));
+        assertFalse(ImagePyramid.tileKey(1, 2, 3) == ImagePyramid.tileKey(2, 2, 3));
+    }
+
+    /**
+     * Unit test of {@link ImagePyramid#chooseLevel}: the smallest level not enlarged on screen, if any.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testChooseLevel() throws Exception {
+        ImagePyramid pyramid = ImagePyramid.fromImage(picture(2048, 1024), updates::release);
+        assertEquals(3, pyramid.getLevelCount());
+        assertEquals(0, pyramid.chooseLevel(new AffineTransform()));
+        assertEquals(0, pyramid.chooseLevel(AffineTransform.getScaleInstance(2, 2)));
+        assertEquals(0, pyramid.chooseLevel(AffineTransform.getScaleInstance(0.6, 0.6)));
+        assertEquals(1, pyramid.chooseLevel(AffineTransform.getScaleInstance(0.5, 0.5)));
+        assertEquals(1, pyramid.chooseLevel(AffineTransform.getScaleInstance(0.3, 0.3)));
+        assertEquals(2, pyramid.chooseLevel(AffineTransform.getScaleInstance(0.25, 0.25)));
+        // no smaller level
+        assertEquals(2, pyramid.chooseLevel(AffineTransform.getScaleInstance(0.01, 0.01)));
+        // the area of the pixels on screen counts, not the orientation
+        AffineTransform rotated = AffineTransform.getRotateInstance(0.7);
+        rotated.scale(0.5, 0.5);
+        assertEquals(1, pyramid.chooseLevel(rotated));
+        assertEquals(1, pyramid.chooseLevel(AffineTransform.getScaleInstance(1, 0.25)));
+        awaitUpdates(2);
+    }
+
+    /**
+     * Unit test of {@link ViewCache}: the drawing is kept until the view or the pyramid change.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testViewCache() throws Exception {
+        CountDownLatch built = new CountDownLatch(1);
+        ImagePyramid pyramid = ImagePyramid.fromImage(picture(2048, 1024), () -> {
+            updates.release();
+            try {
+                built.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        // the first smaller level is built, the last one waits for the test
+        awaitUpdates(1);
+        ViewCache cache = new ViewCache();
+        AffineTransform toScreen = AffineTransform.getScaleInstance(0.2, 0.2);
+        assertFalse(cache.isValid(pyramid, toScreen, 400, 300));
+        BufferedImage image = cache.get(pyramid, toScreen, 400, 300);
+        assertEquals(400, image.getWidth());
+        assertEquals(300, image.getHeight());
+        assertTrue(cache.isValid(pyramid, toScreen, 400, 300));
+        assertSame(image, cache.get(pyramid, toScreen, 400, 300));
+
+        AffineTransform moved = new AffineTransform(toScreen);
+        moved.translate(1, 0);
+        assertFalse(cache.isValid(pyramid, moved, 400, 300));
+        assertFalse(cache.isValid(pyramid, AffineTransform.getScaleInstance(0.5, 0.5), 400, 300));
+        assertFalse(cache.isValid(pyramid, toScreen, 401, 300));
+
+        // the level drawn becomes available
+        built.countDown();
+        awaitUpdates(1);
+        assertFalse(cache.isValid(pyramid, toScreen, 400, 300));
+        cache.get(pyramid, toScreen, 400, 300);
+        assertTrue(cache.isValid(pyramid, toScreen, 400, 300));
+
+        cache.clear();
+        assertFalse(cache.isValid(pyramid, toScreen, 400, 300));
+    }
+
+    /**
+     * Unit test of {@link ImagePyramid#draw} for a file read by tiles: the missing tiles of each row
+     * are read at once, and give back the picture.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testTiles() throws Exception {
+        BufferedImage picture = picture(1200, 1000);
+        File file = folder.newFile("picture.png");
+        assertTrue(ImageIO.write(picture, "png", file));
+        // only the last level is kept in memory
+        ImagePyramid pyramid = ImagePyramid.fromFile(file, ImagePyramid.TILE_SIZE * ImagePyramid.TILE_SIZE,
+                updates::release);
+        assertEquals(3, pyramid.getLevelCount());
+        awaitUpdates(1);
+
+        AffineTransform toScreen = new AffineTransform();
+        BufferedImage view = new BufferedImage(1200, 1000, BufferedImage.TYPE_INT_ARGB);
+        draw(pyramid, toScreen, view);
+        // the two rows of three tiles
+        awaitUpdates(2);
+        for (int ty = 0; ty < 2; ty++) {
+            for (int tx = 0; tx < 3; tx++) {
+                assertTrue(pyramid.hasTile(ImagePyramid.tileKey(0, tx, ty)));
+            }
+        }
+
+        draw(pyramid, toScreen, view);
+        for (int x = 0; x < picture.getWidth(); x++) {
+            for (int y = 0; y < picture.getHeight(); y++) {
+                assertEquals(picture.getRGB(x, y), view.getRGB(x, y));
+            }
+        }
+
+        pyramid.clearTiles();
+        assertFalse(pyramid.hasTile(ImagePyramid.tileKey(0, 0, 0)));
+    }
+}
@@ -0,0 +1,84 @@
+package org.openstreetmap.josm.plugins.rasterfilters.model;
+
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openstreetmap.josm.plugins.rasterfilters.filters.Filter;
+
+/**
+ * This class applies the chain of filters to the tile images.
+ * <p>
+ * The result for each tile image is cached with the state of the chain
+ * it was computed with, so that the tile is filtered again only when
+ * the state actually changes, and not on every repaint. Only the results
+ * of the {@link #CACHE_SIZE} tiles painted last are kept.
+ */
+public class FilterPipeline {
+
+    /** Number of cached results, about two screens of 256 pixel tiles, or 32 MiB of ARGB pixels. */
+    static final int CACHE_SIZE = 128;
+
+    // tile images in access order, the least recently painted first
+    private final Map<BufferedImage, Result> cache = new LinkedHashMap<BufferedImage, Result>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<BufferedImage, Result> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private static final class Result {
+        private final Object state;
+        private final BufferedImage image;
+
+        Result(Object state, BufferedImage image) {
+            this.state = state;
+            this.image = image;
+        }
+    }
+
+    /**
+     * Applies the filters to a tile image, unless it was already filtered
+     * with the same state.
+     *
+     * @param image tile image, which is not modified
+     * @param filters enabled filters, in the order of the chain
+     * @param state state of the filters, compared with {@code equals}
+     * @return filtered image
+     */
+    public BufferedImage process(BufferedImage image, List<Filter> filters, Object state) {
+        synchronized (cache) {
+            Result cached = cache.get(image);
+            if (cached != null && cached.state.equals(state)) {
+                return cached.image;
+            }
+        }
+
+        BufferedImage result = apply(image, filters);
+
+        synchronized (cache) {
+            cache.put(image, new Result(state, result));
+        }
+        return result;
+    }
+
+    /**
+     * Applies the filters to an image one after the other, without caching.
+     *
+     * @param image image, which is not modified
+     * @param filters filters, in the order of the chain
+     * @return filtered image
+     */
+    public static BufferedImage apply(BufferedImage image, List<Filter> filters) {
+        for (Filter filter : filters) {
+            // if the filter returns null
+            // we should take the previous image
+            BufferedImage filtered = filter.applyFilter(image);
+            if (filtered != null) {
+                image = filtered;
+            }
+        }
+        return image;
+    }
+}
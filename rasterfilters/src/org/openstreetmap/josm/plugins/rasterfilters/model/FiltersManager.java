@@ -7,9 +7,11 @@ import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
 import java.awt.image.BufferedImage;
 import java.rmi.server.UID;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -46,6 +48,10 @@ public class FiltersManager implements StateChangeListener, ImageProcessor, Acti
     public Set<Filter> disabledFilters = new HashSet<>();
     public FiltersDialog dialog;
 
+    // last state of each filter, identifying the cached results
+    private final Map<UID, JsonObject> filterStates = new HashMap<>();
+    private final FilterPipeline pipeline = new FilterPipeline();
+
     public FiltersManager(FiltersDialog dialog) {
         this.dialog = dialog;
     }
@@ -128,7 +134,9 @@ public class FiltersManager implements StateChangeListener, ImageProcessor, Acti
         fp.setPreferredSize(new Dimension(300, fp.getNeededHeight()));
 
         if (filter != null) {
-            filter.changeFilterState(filterState.encodeJson());
+            JsonObject state = filterState.encodeJson();
+            filter.changeFilterState(state);
+            filterStates.put(filter.getId(), state);
         }
         MainApplication.getLayerManager().getActiveLayer().setFilterStateChanged();
 
@@ -151,7 +159,9 @@ public class FiltersManager implements StateChangeListener, ImageProcessor, Acti
     public void filterStateChanged(UID filterId, FilterStateModel filterState) {
 
         if (filtersMap.get(filterId) != null) {
-            filtersMap.get(filterId).changeFilterState(filterState.encodeJson());
+            JsonObject state = filterState.encodeJson();
+            filtersMap.get(filterId).changeFilterState(state);
+            filterStates.put(filterId, state);
         }
 
         if (MainApplication.getLayerManager().getActiveLayer() != null) {
@@ -175,28 +185,21 @@ public class FiltersManager implements StateChangeListener, ImageProcessor, Acti
     @Override
     public BufferedImage process(BufferedImage image) {
 
-        Iterator<Filter> it = filtersMap.values().iterator();
+        List<Filter> filters = new ArrayList<>();
+        List<Object> state = new ArrayList<>();
 
         // iterating through map of filters according to the order
-        while (it.hasNext()) {
-
-            Filter curFilter = it.next();
-
-            if (!disabledFilters.contains(curFilter)) {
-                // if next filter will return null
-                // we should take an old example of the image
-                BufferedImage oldImg = image;
+        for (Filter filter : filtersMap.values()) {
 
-                // applying filter to the current image
-                image = curFilter.applyFilter(image);
-
-                if (image == null) {
-                    image = oldImg;
-                }
+            if (!disabledFilters.contains(filter)) {
+                filters.add(filter);
+                state.add(filter.getId());
+                state.add(filterStates.get(filter.getId()));
             }
         }
 
-        return image;
+        // the tile is filtered again only if the chain or a filter state changed
+        return pipeline.process(image, filters, state);
     }
 
     @Override
@@ -209,6 +212,7 @@ public class FiltersManager implements StateChangeListener, ImageProcessor, Acti
 
         // removing filter from the filters chain
         filtersMap.remove(filterId);
+        filterStates.remove(filterId);
 
         dialog.getShowedFiltersTitles().remove(filterPanel.getName());
 
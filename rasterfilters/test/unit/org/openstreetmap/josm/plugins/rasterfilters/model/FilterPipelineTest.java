@@ -0,0 +1,179 @@
+package org.openstreetmap.josm.plugins.rasterfilters.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.awt.image.BufferedImage;
+import java.rmi.server.UID;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import javax.json.JsonObject;
+
+import org.junit.Test;
+import org.openstreetmap.josm.plugins.rasterfilters.filters.Filter;
+
+/**
+ * Unit test of {@link FilterPipeline}.
+ */
+public class FilterPipelineTest {
+
+    private abstract static class TestFilter implements Filter {
+        private UID id = new UID();
+        int calls;
+
+        @Override
+        public JsonObject changeFilterState(JsonObject filterState) {
+            return filterState;
+        }
+
+        @Override
+        public void setId(UID id) {
+            this.id = id;
+        }
+
+        @Override
+        public UID getId() {
+            return id;
+        }
+    }
+
+    /**
+     * Multiplies each color component and inverts the alpha.
+     */
+    private static class ScaleFilter extends TestFilter {
+        private final double factor;
+
+        ScaleFilter(double factor) {
+            this.factor = factor;
+        }
+
+        @Override
+        public BufferedImage applyFilter(BufferedImage img) {
+            calls++;
+            BufferedImage result = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_ARGB);
+            for (int y = 0; y < img.getHeight(); y++) {
+                for (int x = 0; x < img.getWidth(); x++) {
+                    int p = img.getRGB(x, y);
+                    int r = Math.min(255, (int) (((p >> 16) & 0xff) * factor));
+                    int g = Math.min(255, (int) (((p >> 8) & 0xff) * factor));
+                    int b = Math.min(255, (int) ((p & 0xff) * factor));
+                    result.setRGB(x, y, ((255 - (p >>> 24)) << 24) | (r << 16) | (g << 8) | b);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Mirrors the image horizontally, which cannot be done band by band.
+     */
+    private static class MirrorFilter extends TestFilter {
+        @Override
+        public BufferedImage applyFilter(BufferedImage img) {
+            calls++;
+            BufferedImage result = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_ARGB);
+            for (int y = 0; y < img.getHeight(); y++) {
+                for (int x = 0; x < img.getWidth(); x++) {
+                    result.setRGB(img.getWidth() - 1 - x, y, img.getRGB(x, y));
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Fails to process the image.
+     */
+    private static class NullFilter extends TestFilter {
+        @Override
+        public BufferedImage applyFilter(BufferedImage img) {
+            calls++;
+            return null;
+        }
+    }
+
+    private static BufferedImage createImage(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Random random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        return image;
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    /**
+     * Checks that the filters are applied in the order of the chain, skipping those returning null.
+     */
+    @Test
+    public void testApply() {
+        BufferedImage image = createImage(300, 200);
+        int[] original = pixels(image);
+        ScaleFilter scale = new ScaleFilter(1.5);
+        MirrorFilter mirror = new MirrorFilter();
+        int[] expected = pixels(mirror.applyFilter(scale.applyFilter(image)));
+        assertArrayEquals(expected, pixels(FilterPipeline.apply(image, Arrays.<Filter>asList(scale, new NullFilter(), mirror))));
+        assertArrayEquals(expected, pixels(FilterPipeline.apply(image, Arrays.<Filter>asList(new NullFilter(), scale, mirror, new NullFilter()))));
+        assertArrayEquals(original, pixels(image));
+        assertSame(image, FilterPipeline.apply(image, Collections.<Filter>emptyList()));
+        assertSame(image, FilterPipeline.apply(image, Arrays.<Filter>asList(new NullFilter())));
+    }
+
+    /**
+     * Checks that tiles are filtered again only when the state changes.
+     */
+    @Test
+    public void testCache() {
+        FilterPipeline pipeline = new FilterPipeline();
+        BufferedImage tile = createImage(256, 256);
+        MirrorFilter mirror = new MirrorFilter();
+        List<Filter> chain = Arrays.<Filter>asList(new ScaleFilter(1.5), mirror);
+
+        BufferedImage result = pipeline.process(tile, chain, Arrays.asList("a", 1));
+        assertSame(result, pipeline.process(tile, chain, Arrays.asList("a", 1)));
+        assertEquals(1, mirror.calls);
+
+        BufferedImage changed = pipeline.process(tile, chain, Arrays.asList("a", 2));
+        assertNotSame(result, changed);
+        assertEquals(2, mirror.calls);
+
+        // another tile with the same state
+        assertNotSame(changed, pipeline.process(createImage(256, 256), chain, Arrays.asList("a", 2)));
+        assertEquals(3, mirror.calls);
+    }
+
+    /**
+     * Checks that only the results of the tiles processed last are kept.
+     */
+    @Test
+    public void testCacheSize() {
+        FilterPipeline pipeline = new FilterPipeline();
+        MirrorFilter mirror = new MirrorFilter();
+        List<Filter> chain = Arrays.<Filter>asList(mirror);
+        List<BufferedImage> tiles = new ArrayList<>();
+        for (int i = 0; i <= FilterPipeline.CACHE_SIZE; i++) {
+            tiles.add(createImage(4, 4));
+            pipeline.process(tiles.get(i), chain, "a");
+        }
+        assertEquals(FilterPipeline.CACHE_SIZE + 1, mirror.calls);
+
+        // the first tile was dropped, the others are kept
+        for (int i = FilterPipeline.CACHE_SIZE; i > 0; i--) {
+            pipeline.process(tiles.get(i), chain, "a");
+        }
+        assertEquals(FilterPipeline.CACHE_SIZE + 1, mirror.calls);
+        pipeline.process(tiles.get(0), chain, "a");
+        assertEquals(FilterPipeline.CACHE_SIZE + 2, mirror.calls);
+    }
+}
@@ -143,11 +143,21 @@ public final class Jrender {
         }
     }
 
+    static void report(String stage, long start) {
+        Runtime rt = Runtime.getRuntime();
+        rt.gc();
+        System.err.format("%s: %d nodes, %d edges, %d features in %d ms, %d KB heap%n", stage,
+                map.nodes.size(), map.edges.size(), map.index.size(),
+                (System.nanoTime() - start) / 1000000, (rt.totalMemory() - rt.freeMemory()) / 1024);
+    }
+
     public static void main(String[] args) throws Exception {
         if (args.length < 5) {
-            System.err.println("Usage: java -jar jrender.jar <osm source directory> <tile directory> <zoom> <xtile> <ytile>");
+            System.err.println("Usage: java -jar jrender.jar <osm source directory> <tile directory> <zoom> <xtile> <ytile> [-t]");
             System.exit(-1);
         }
+        boolean timing = (args.length > 5) && args[5].equals("-t");
+        long start = System.nanoTime();
         srcdir = args[0];
         dstdir = args[1];
         zoom = Integer.parseInt(args[2]);
@@ -159,6 +169,9 @@ public final class Jrender {
         map = new S57map(true);
         S57osm.OSMmap(in, map, false);
         in.close();
+        if (timing) {
+            report("Loaded", start);
+        }
         context = new Context();
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
         ImageIO.write(new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB), "png", bos);
@@ -167,6 +180,9 @@ public final class Jrender {
             clean(12, 0, 0);
         }
         tile(zoom, 1, 0, 0);
+        if (timing) {
+            report("Rendered", start);
+        }
         if (send.size() > 0) {
             PrintWriter writer = new PrintWriter(srcdir + zoom + "-" + xtile + "-" + ytile + ".send", "UTF-8");
             for (String str : send) {
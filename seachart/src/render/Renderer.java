@@ -59,7 +59,8 @@ public final class Renderer {
     static Graphics2D g2;
     static int zoom;
 
-    public static void reRender(Graphics2D g, Rectangle rect, int z, double factor, S57map m, ChartContext c) {
+    // Synchronized, as the rendering state is static: the chart layer renders on a background thread, other callers on the EDT
+    public static synchronized void reRender(Graphics2D g, Rectangle rect, int z, double factor, S57map m, ChartContext c) {
         g2 = g;
         zoom = z;
         context = c;
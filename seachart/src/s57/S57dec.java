@@ -7,6 +7,7 @@ import java.io.IOException;
 import s57.S57dat.S57field;
 import s57.S57dat.S57subf;
 import s57.S57map.Nflag;
+import s57.S57map.Pflag;
 
 /**
  * @author Malcolm Herring
@@ -17,7 +18,20 @@ public final class S57dec { // S57 ENC file input & map conversion
     }
     // CHECKSTYLE.OFF: LineLength
 
-    public static void decodeChart(FileInputStream in, S57map map) throws IOException {
+    public interface Visitor {    // Receiver of records as they are decoded
+        void newFeature(long id, Pflag p, long objl);
+        void refObj(long id, int rind);
+        void newAtt(long attl, String atvl);
+        void newPrim(long id, long ornt, long usag);
+        void endFeature();
+        void newEdge(long id);
+        void addConn(long id, int topi);
+        void newNode(long id, double lat, double lon, Nflag flag);
+        void newNode(long id, double lat, double lon, double depth);
+        void endFile();
+    }
+
+    public static void decodeChart(FileInputStream in, Visitor map) throws IOException {
         S57dat.rnum = 0;
         byte[] leader = new byte[24];
         byte[] record = new byte[0];
@@ -33,8 +47,8 @@ public final class S57dec { // S57 ENC file input & map conversion
         double comf = 1;
         double somf = 1;
         long name = 0;
-        S57map.Nflag nflag = Nflag.ANON;
-        S57map.Pflag pflag = S57map.Pflag.NOSP;
+        Nflag nflag = Nflag.ANON;
+        Pflag pflag = Pflag.NOSP;
         long objl = 0;
 
         while (in.read(leader) == 24) {
@@ -79,16 +93,16 @@ public final class S57dec { // S57 ENC file input & map conversion
                         inFeature = true;
                         switch (((Long) S57dat.decSubf(record, fields + pos, S57field.FRID, S57subf.PRIM)).intValue()) {
                         case 1:
-                            pflag = S57map.Pflag.POINT;
+                            pflag = Pflag.POINT;
                             break;
                         case 2:
-                            pflag = S57map.Pflag.LINE;
+                            pflag = Pflag.LINE;
                             break;
                         case 3:
-                            pflag = S57map.Pflag.AREA;
+                            pflag = Pflag.AREA;
                             break;
                         default:
-                            pflag = S57map.Pflag.NOSP;
+                            pflag = Pflag.NOSP;
                         }
                         objl = (Long) S57dat.decSubf(S57subf.OBJL);
                         break;
@@ -163,16 +177,6 @@ public final class S57dec { // S57 ENC file input & map conversion
                             } else {
                                 map.newNode(name, lat, lon, nflag);
                             }
-                            lat = Math.toRadians(lat);
-                            lon = Math.toRadians(lon);
-                            if (lat < map.bounds.minlat)
-                                map.bounds.minlat = lat;
-                            if (lat > map.bounds.maxlat)
-                                map.bounds.maxlat = lat;
-                            if (lon < map.bounds.minlon)
-                                map.bounds.minlon = lon;
-                            if (lon > map.bounds.maxlon)
-                                map.bounds.maxlon = lon;
                         } while (S57dat.more());
                         break;
                     case "SG3D":
@@ -182,26 +186,16 @@ public final class S57dec { // S57 ENC file input & map conversion
                             double lon = (double) ((Long) S57dat.decSubf(S57subf.XCOO)) / comf;
                             double depth = (double) ((Long) S57dat.decSubf(S57subf.VE3D)) / somf;
                             map.newNode(name++, lat, lon, depth);
-                            lat = Math.toRadians(lat);
-                            lon = Math.toRadians(lon);
-                            if (lat < map.bounds.minlat)
-                                map.bounds.minlat = lat;
-                            if (lat > map.bounds.maxlat)
-                                map.bounds.maxlat = lat;
-                            if (lon < map.bounds.minlon)
-                                map.bounds.minlon = lon;
-                            if (lon > map.bounds.maxlon)
-                                map.bounds.maxlon = lon;
                         } while (S57dat.more());
                         break;
                     default:
                         break;
                     }
                 }
-                if (inFeature) {
-                    map.endFeature();
-                    inFeature = false;
-                }
+            }
+            if (inFeature) {
+                map.endFeature();
+                inFeature = false;
             }
         }
         map.endFile();
@@ -8,7 +8,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashMap;
-import java.util.Map;
 import java.util.Map.Entry;
 import java.util.zip.CRC32;
 
@@ -202,8 +201,8 @@ public final class S57enc { // S57 ENC file generation
 
         // Depths
         Object[] depths = new Object[0];
-        for (Map.Entry<Long, S57map.Snode> entry : map.nodes.entrySet()) {
-            S57map.Snode node = entry.getValue();
+        for (long id : map.nodes.keys()) {
+            S57map.Snode node = map.nodes.get(id);
             if (node.flg == Nflag.DPTH) {
                 Object[] dval = new Object[] {(Math.toDegrees(node.lat) * COMF), (Math.toDegrees(node.lon) * COMF), (node.val * SOMF) };
                 depths = Arrays.copyOf(depths, (depths.length + dval.length));
@@ -221,11 +220,11 @@ public final class S57enc { // S57 ENC file generation
         }
 
         // Isolated nodes
-        for (Map.Entry<Long, S57map.Snode> entry : map.nodes.entrySet()) {
-            S57map.Snode node = entry.getValue();
+        for (long id : map.nodes.keys()) {
+            S57map.Snode node = map.nodes.get(id);
             if (node.flg == Nflag.ISOL) {
                 fields = new ArrayList<>();
-                fields.add(new Fparams(S57field.VRID, new Object[] {110, hash(entry.getKey()), 1, 1 }));
+                fields.add(new Fparams(S57field.VRID, new Object[] {110, hash(id), 1, 1 }));
                 fields.add(new Fparams(S57field.SG2D, new Object[] {(Math.toDegrees(node.lat) * COMF), (Math.toDegrees(node.lon) * COMF) }));
                 record = S57dat.encRecord(recs++, fields);
                 System.arraycopy(record, 0, buf, idx, record.length);
@@ -235,11 +234,11 @@ public final class S57enc { // S57 ENC file generation
         }
 
         // Connected nodes
-        for (Map.Entry<Long, S57map.Snode> entry : map.nodes.entrySet()) {
-            S57map.Snode node = entry.getValue();
+        for (long id : map.nodes.keys()) {
+            S57map.Snode node = map.nodes.get(id);
             if (node.flg == Nflag.CONN) {
                 fields = new ArrayList<>();
-                fields.add(new Fparams(S57field.VRID, new Object[] {120, hash(entry.getKey()), 1, 1 }));
+                fields.add(new Fparams(S57field.VRID, new Object[] {120, hash(id), 1, 1 }));
                 fields.add(new Fparams(S57field.SG2D, new Object[] {(Math.toDegrees(node.lat) * COMF), (Math.toDegrees(node.lon) * COMF) }));
                 record = S57dat.encRecord(recs++, fields);
                 System.arraycopy(record, 0, buf, idx, record.length);
@@ -249,13 +248,14 @@ public final class S57enc { // S57 ENC file generation
         }
 
         // Edges
-        for (Map.Entry<Long, S57map.Edge> entry : map.edges.entrySet()) {
-            S57map.Edge edge = entry.getValue();
+        for (long id : map.edges.keys()) {
+            S57map.Edge edge = map.edges.get(id);
             fields = new ArrayList<>();
-            fields.add(new Fparams(S57field.VRID, new Object[] {130, hash(entry.getKey()), 1, 1}));
+            fields.add(new Fparams(S57field.VRID, new Object[] {130, hash(id), 1, 1}));
             fields.add(new Fparams(S57field.VRPT, new Object[] {(((hash(edge.first) & 0xffffffff) << 8) + 120L), 255, 255, 1, 255, (((hash(edge.last) & 0xffffffff) << 8) + 120L), 255, 255, 2, 255 }));
             Object[] nodes = new Object[0];
-            for (long ref : edge.nodes) {
+            for (int i = 0; i < edge.nodes.size(); i++) {
+                long ref = edge.nodes.get(i);
                 Object[] nval = new Object[] {(Math.toDegrees(map.nodes.get(ref).lat) * COMF), (Math.toDegrees(map.nodes.get(ref).lon) * COMF) };
                 nodes = Arrays.copyOf(nodes, (nodes.length + nval.length));
                 System.arraycopy(nval, 0, nodes, (nodes.length - nval.length), nval.length);
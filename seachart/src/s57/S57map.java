@@ -2,9 +2,12 @@
 package s57;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.ListIterator;
+import java.util.Map;
 
 import s57.S57att.Att;
 import s57.S57obj.Obj;
@@ -14,7 +17,7 @@ import s57.S57val.AttVal;
 /**
  * @author Malcolm Herring
  */
-public class S57map { // S57/OSM map generation methods
+public class S57map implements S57dec.Visitor { // S57/OSM map generation methods
     // CHECKSTYLE.OFF: LineLength
 
     public static class MapBounds {
@@ -73,15 +76,53 @@ public class S57map { // S57/OSM map generation methods
         }
     }
 
+    public static class RefList {    // Packed list of node references
+        private long[] refs;
+        private int size;
+
+        public RefList() {
+            refs = new long[4];
+            size = 0;
+        }
+
+        public void add(long ref) {
+            if (size == refs.length) {
+                refs = Arrays.copyOf(refs, size * 2);
+            }
+            refs[size++] = ref;
+        }
+
+        public long get(int i) {
+            if (i >= size) {
+                throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+            }
+            return refs[i];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        public void trim() {
+            if (size < refs.length) {
+                refs = Arrays.copyOf(refs, size);
+            }
+        }
+    }
+
     public static class Edge {        // A polyline segment
         public long first;    // First CONN node
         public long last;        // Last CONN node
-        public ArrayList<Long> nodes; // Inner ANON nodes
+        public RefList nodes; // Inner ANON nodes
 
         public Edge() {
             first = 0;
             last = 0;
-            nodes = new ArrayList<>();
+            nodes = new RefList();
         }
     }
 
@@ -122,13 +163,133 @@ public class S57map { // S57/OSM map generation methods
         }
     }
 
-    public static class NodeTab extends HashMap<Long, Snode> {
+    public static class LongTab<V> {    // Open-addressing hash table keyed on primitive longs
+        public interface EntryVisitor<V> {
+            void visit(long key, V val);
+        }
+
+        private static final int MINCAP = 16;
+        private long[] keys;
+        private Object[] vals;    // A null value marks an empty slot
+        private int size;
+        private int mask;
+
+        public LongTab() {
+            keys = new long[MINCAP];
+            vals = new Object[MINCAP];
+            mask = MINCAP - 1;
+            size = 0;
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+
+        private int slot(long key) {
+            int i = hash(key) & mask;
+            while ((vals[i] != null) && (keys[i] != key)) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        @SuppressWarnings("unchecked")
+        public V get(long key) {
+            return (V) vals[slot(key)];
+        }
+
+        public boolean containsKey(long key) {
+            return vals[slot(key)] != null;
+        }
+
+        @SuppressWarnings("unchecked")
+        public V put(long key, V val) {
+            if (val == null) {
+                return remove(key);
+            }
+            int i = slot(key);
+            V old = (V) vals[i];
+            keys[i] = key;
+            vals[i] = val;
+            if ((old == null) && (++size > (keys.length * 3 / 4))) {
+                rehash(keys.length * 2);
+            }
+            return old;
+        }
+
+        @SuppressWarnings("unchecked")
+        public V remove(long key) {
+            int i = slot(key);
+            V old = (V) vals[i];
+            if (old != null) {
+                vals[i] = null;
+                size--;
+                int j = (i + 1) & mask;
+                while (vals[j] != null) {    // Re-seat the rest of the probe chain
+                    long k = keys[j];
+                    Object v = vals[j];
+                    vals[j] = null;
+                    int s = slot(k);
+                    keys[s] = k;
+                    vals[s] = v;
+                    j = (j + 1) & mask;
+                }
+            }
+            return old;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        public long[] keys() {
+            long[] ks = new long[size];
+            int n = 0;
+            for (int i = 0; i < vals.length; i++) {
+                if (vals[i] != null) {
+                    ks[n++] = keys[i];
+                }
+            }
+            return ks;
+        }
+
+        @SuppressWarnings("unchecked")
+        public void forEach(EntryVisitor<? super V> visitor) {    // The table must not be changed by the visitor
+            for (int i = 0; i < vals.length; i++) {
+                if (vals[i] != null) {
+                    visitor.visit(keys[i], (V) vals[i]);
+                }
+            }
+        }
+
+        private void rehash(int cap) {
+            long[] oks = keys;
+            Object[] ovs = vals;
+            keys = new long[cap];
+            vals = new Object[cap];
+            mask = cap - 1;
+            for (int i = 0; i < ovs.length; i++) {
+                if (ovs[i] != null) {
+                    int s = slot(oks[i]);
+                    keys[s] = oks[i];
+                    vals[s] = ovs[i];
+                }
+            }
+        }
+    }
+
+    public static class NodeTab extends LongTab<Snode> {
         public NodeTab() {
             super();
         }
     }
 
-    public static class EdgeTab extends HashMap<Long, Edge> {
+    public static class EdgeTab extends LongTab<Edge> {
         public EdgeTab() {
             super();
         }
@@ -140,7 +301,7 @@ public class S57map { // S57/OSM map generation methods
         }
     }
 
-    public static class FtrTab extends HashMap<Long, Feature> {
+    public static class FtrTab extends LongTab<Feature> {
         public FtrTab() {
             super();
         }
@@ -233,7 +394,8 @@ public class S57map { // S57/OSM map generation methods
     public long xref;
 
     private long cref;
-    private Feature feature;
+    private IdentityHashMap<Feature, MapBounds> extents;    // Bounds of the features, for culling
+    Feature feature;
     private Edge edge;
     private ArrayList<KeyVal<?>> osm;
     private boolean sea;
@@ -252,17 +414,35 @@ public class S57map { // S57/OSM map generation methods
 
     // S57 map building methods
 
+    @Override
     public void newNode(long id, double lat, double lon, Nflag flag) {
-        nodes.put(id, new Snode(Math.toRadians(lat), Math.toRadians(lon), flag));
+        Snode node = new Snode(Math.toRadians(lat), Math.toRadians(lon), flag);
+        nodes.put(id, node);
+        extend(node);
         if (flag == Nflag.ANON) {
             edge.nodes.add(id);
         }
     }
 
+    @Override
     public void newNode(long id, double lat, double lon, double depth) {
-        nodes.put(id, new Snode(Math.toRadians(lat), Math.toRadians(lon), depth));
+        Snode node = new Snode(Math.toRadians(lat), Math.toRadians(lon), depth);
+        nodes.put(id, node);
+        extend(node);
+    }
+
+    void extend(Snode node) {
+        if (node.lat < bounds.minlat)
+            bounds.minlat = node.lat;
+        if (node.lat > bounds.maxlat)
+            bounds.maxlat = node.lat;
+        if (node.lon < bounds.minlon)
+            bounds.minlon = node.lon;
+        if (node.lon > bounds.maxlon)
+            bounds.maxlon = node.lon;
     }
 
+    @Override
     public void newFeature(long id, Pflag p, long objl) {
         feature = new Feature();
         Obj obj = S57obj.decodeType(objl);
@@ -274,6 +454,7 @@ public class S57map { // S57/OSM map generation methods
         }
     }
 
+    @Override
     public void refObj(long id, int rind) {
         Rflag r = Rflag.UNKN;
         switch (rind) {
@@ -290,20 +471,24 @@ public class S57map { // S57/OSM map generation methods
         feature.rels.add(new Reln(id, r));
     }
 
+    @Override
     public void endFeature() {
 
     }
 
+    @Override
     public void newAtt(long attl, String atvl) {
         Att att = S57att.decodeAttribute(attl);
         AttVal<?> val = S57val.decodeValue(atvl, att);
         feature.atts.put(att, val);
     }
 
+    @Override
     public void newPrim(long id, long ornt, long usag) {
         feature.geom.elems.add(new Prim(id, (ornt != 2), (usag != 2)));
     }
 
+    @Override
     public void addConn(long id, int topi) {
         if (topi == 1) {
             edge.first = id;
@@ -312,18 +497,26 @@ public class S57map { // S57/OSM map generation methods
         }
     }
 
+    @Override
     public void newEdge(long id) {
+        if (edge != null) {
+            edge.nodes.trim();
+        }
         edge = new Edge();
         edges.put(id, edge);
     }
 
+    @Override
     public void endFile() {
-        for (long id : index.keySet()) {
+        long[] ids = index.keys();
+        for (long id : ids) {
             Feature feature = index.get(id);
             sortGeom(feature);
             for (Reln reln : feature.rels) {
                 Feature rel = index.get(reln.id);
-                if (cmpGeoms(feature.geom, rel.geom)) {
+                if (rel == null) {
+                    reln.reln = Rflag.UNKN;
+                } else if (cmpGeoms(feature.geom, rel.geom)) {
                     switch (reln.reln) {
                     case SLAVE:
                         feature.reln = Rflag.MASTER;
@@ -338,7 +531,7 @@ public class S57map { // S57/OSM map generation methods
                 }
             }
         }
-        for (long id : index.keySet()) {
+        for (long id : ids) {
             Feature feature = index.get(id);
             if (feature.reln == Rflag.UNKN) {
                 feature.reln = Rflag.MASTER;
@@ -350,11 +543,11 @@ public class S57map { // S57/OSM map generation methods
                 features.get(feature.type).add(feature);
             }
         }
-        for (long id : index.keySet()) {
+        for (long id : ids) {
             Feature feature = index.get(id);
             for (Reln reln : feature.rels) {
                 Feature rel = index.get(reln.id);
-                if (rel.reln == Rflag.SLAVE) {
+                if ((rel != null) && (rel.reln == Rflag.SLAVE)) {
                     if (feature.objs.get(rel.type) == null) {
                         feature.objs.put(rel.type, new ObjTab());
                     }
@@ -499,6 +692,7 @@ public class S57map { // S57/OSM map generation methods
             }
             break;
         case LINE:
+            edge.nodes.trim();
             edges.put(id, edge);
             nodes.get(edge.first).flg = Nflag.CONN;
             nodes.get(edge.last).flg = Nflag.CONN;
@@ -581,6 +775,66 @@ public class S57map { // S57/OSM map generation methods
         }
     }
 
+    // Culling methods
+
+    public S57map cull(MapBounds area) {    // A view of this map with only the features whose bounds meet the area
+        S57map view = new S57map(sea);       // The map must not change once it has been culled
+        view.nodes = nodes;
+        view.edges = edges;
+        view.index = index;
+        view.bounds = bounds;
+        view.xref = xref;
+        for (Map.Entry<Obj, ArrayList<Feature>> entry : features.entrySet()) {
+            ArrayList<Feature> list = new ArrayList<>();
+            for (Feature feature : entry.getValue()) {
+                MapBounds extent = extent(feature);
+                if ((extent.maxlat >= area.minlat) && (extent.minlat <= area.maxlat)
+                        && (extent.maxlon >= area.minlon) && (extent.minlon <= area.maxlon)) {
+                    list.add(feature);
+                }
+            }
+            if (!list.isEmpty()) {
+                view.features.put(entry.getKey(), list);
+            }
+        }
+        return view;
+    }
+
+    public synchronized MapBounds extent(Feature feature) {    // Bounds of the nodes of a feature, computed once
+        if (extents == null) {
+            extents = new IdentityHashMap<>();
+        }
+        MapBounds extent = extents.get(feature);
+        if (extent == null) {
+            extent = new MapBounds();
+            if (feature.geom.prim == Pflag.POINT) {
+                extend(extent, feature.geom.centre);
+            } else {    // The centre of a line or area lies within the bounds of its nodes
+                GeomIterator git = new GeomIterator(feature.geom);
+                while (git.hasComp()) {
+                    git.nextComp();
+                    while (git.hasEdge()) {
+                        git.nextEdge();
+                        while (git.hasNode()) {
+                            extend(extent, git.next());
+                        }
+                    }
+                }
+            }
+            extents.put(feature, extent);
+        }
+        return extent;
+    }
+
+    private static void extend(MapBounds extent, Snode node) {
+        if (node != null) {
+            extent.minlat = Math.min(extent.minlat, node.lat);
+            extent.maxlat = Math.max(extent.maxlat, node.lat);
+            extent.minlon = Math.min(extent.minlon, node.lon);
+            extent.maxlon = Math.max(extent.maxlon, node.lon);
+        }
+    }
+
     // Utility methods
 
     public boolean sortGeom(Feature feature) {
@@ -718,12 +972,12 @@ public class S57map { // S57/OSM map generation methods
     public class EdgeIterator {
         Edge edge;
         boolean forward;
-        ListIterator<Long> it;
+        int it;    // Next inner node index, -1 before the end node has been returned
 
         public EdgeIterator(Edge e, boolean dir) {
             edge = e;
             forward = dir;
-            it = null;
+            it = -1;
         }
 
         public boolean hasNext() {
@@ -733,24 +987,24 @@ public class S57map { // S57/OSM map generation methods
         public long nextRef() {
             long ref = 0;
             if (forward) {
-                if (it == null) {
+                if (it < 0) {
                     ref = edge.first;
-                    it = edge.nodes.listIterator();
+                    it = 0;
                 } else {
-                    if (it.hasNext()) {
-                        ref = it.next();
+                    if (it < edge.nodes.size()) {
+                        ref = edge.nodes.get(it++);
                     } else {
                         ref = edge.last;
                         edge = null;
                     }
                 }
             } else {
-                if (it == null) {
+                if (it < 0) {
                     ref = edge.last;
-                    it = edge.nodes.listIterator(edge.nodes.size());
+                    it = edge.nodes.size();
                 } else {
-                    if (it.hasPrevious()) {
-                        ref = it.previous();
+                    if (it > 0) {
+                        ref = edge.nodes.get(--it);
                     } else {
                         ref = edge.first;
                         edge = null;
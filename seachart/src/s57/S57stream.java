@@ -0,0 +1,146 @@
+// License: GPL. For details, see LICENSE file.
+package s57;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import s57.S57obj.Obj;
+
+public class S57stream extends S57map { // S57 ENC streaming map generation
+    // CHECKSTYLE.OFF: LineLength
+
+    /*
+     * Each feature record is handed on as soon as it is complete, with its geometry resolved from the
+     * spatial records (nodes & edges) at that point, and is then released. Features that may take part
+     * in master/slave relationships (points, features with FFPT references, and features referred to by
+     * FFPT fields anywhere in the file) or whose geometry cannot yet be resolved are held back and handed
+     * on, merged as by S57map.endFile(), when the end of the file is reached.
+     * A slave may come before its master, so the referred features are found by a first pass over the
+     * file, see readReferences(). Without it, all features are held.
+     * The same pass counts the features referring to each spatial record: an edge is released, with its
+     * inner nodes, once the last of them has been handed on. Connected and isolated nodes, held features
+     * and the edges they use are kept to the end, so memory follows them rather than the whole chart.
+     */
+
+    public interface Sink {    // Receiver of completed features
+        void feature(S57map map, Feature feature);
+        void released(long node);    // An inner node of an edge, no longer referred to
+    }
+
+    private Sink sink;
+    private LongTab<Boolean> referenced;    // Features referred to by FFPT fields
+    private LongTab<Integer> uses;    // Number of features referring to each spatial record
+
+    private static class References implements S57dec.Visitor {    // First pass, collecting FFPT & FSPT references only
+        private LongTab<Boolean> refs;
+        private LongTab<Integer> prims;
+
+        References(LongTab<Boolean> r, LongTab<Integer> p) {
+            refs = r;
+            prims = p;
+        }
+
+        @Override
+        public void newFeature(long id, Pflag p, long objl) {
+        }
+
+        @Override
+        public void refObj(long id, int rind) {
+            refs.put(id, true);
+        }
+
+        @Override
+        public void newAtt(long attl, String atvl) {
+        }
+
+        @Override
+        public void newPrim(long id, long ornt, long usag) {
+            Integer n = prims.get(id);
+            prims.put(id, (n == null) ? 1 : n + 1);
+        }
+
+        @Override
+        public void endFeature() {
+        }
+
+        @Override
+        public void newEdge(long id) {
+        }
+
+        @Override
+        public void addConn(long id, int topi) {
+        }
+
+        @Override
+        public void newNode(long id, double lat, double lon, Nflag flag) {
+        }
+
+        @Override
+        public void newNode(long id, double lat, double lon, double depth) {
+        }
+
+        @Override
+        public void endFile() {
+        }
+    }
+
+    public S57stream(Sink s) {
+        super(true);
+        sink = s;
+    }
+
+    public void readReferences(FileInputStream in) throws IOException {    // First pass over the file, which is closed
+        referenced = new LongTab<>();
+        uses = new LongTab<>();
+        S57dec.decodeChart(in, new References(referenced, uses));
+    }
+
+    @Override
+    public void endFeature() {
+        Feature ftr = feature;
+        if ((ftr.id == 0) || (ftr.type == Obj.UNKOBJ) || (ftr.geom.prim == Pflag.POINT) || !ftr.rels.isEmpty()) {
+            return;
+        }
+        if ((referenced == null) || referenced.containsKey(ftr.id)) {    // May be the slave of a later master
+            return;
+        }
+        if (sortGeom(ftr)) {
+            index.remove(ftr.id);
+            ftr.reln = Rflag.MASTER;
+            sink.feature(this, ftr);
+            release(ftr);
+        }
+    }
+
+    private void release(Feature ftr) {    // Drops the edges no other feature refers to
+        for (Prim prim : ftr.geom.elems) {
+            Integer n = uses.get(prim.id);
+            if ((n != null) && (n > 1)) {
+                uses.put(prim.id, n - 1);
+            } else {
+                uses.remove(prim.id);
+                Edge edge = edges.remove(prim.id);
+                if (edge != null) {
+                    for (int i = 0; i < edge.nodes.size(); i++) {
+                        nodes.remove(edge.nodes.get(i));
+                        sink.released(edge.nodes.get(i));
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void endFile() {
+        super.endFile();
+        for (ArrayList<Feature> list : features.values()) {
+            for (Feature ftr : list) {
+                sink.feature(this, ftr);
+            }
+        }
+        features.clear();
+        index = new FtrTab();
+    }
+
+}
@@ -0,0 +1,294 @@
+// License: GPL. For details, see LICENSE file.
+package s57;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import s57.S57att.Att;
+import s57.S57map.AttMap;
+import s57.S57map.Feature;
+import s57.S57map.GeomIterator;
+import s57.S57map.LongTab;
+import s57.S57map.ObjTab;
+import s57.S57map.Pflag;
+import s57.S57map.Prim;
+import s57.S57map.Rflag;
+import s57.S57map.Snode;
+import s57.S57obj.Obj;
+import s57.S57val.AttVal;
+
+public class S57xml { // S57 ENC to OSM XML conversion
+    // CHECKSTYLE.OFF: LineLength
+
+    static final ArrayList<Att> typatts = new ArrayList<>(); static {
+        typatts.add(Att.OBJNAM); typatts.add(Att.NOBJNM); typatts.add(Att.STATUS); typatts.add(Att.INFORM); typatts.add(Att.NINFOM);
+        typatts.add(Att.PEREND); typatts.add(Att.PERSTA); typatts.add(Att.CONDTN); typatts.add(Att.CONRAD); typatts.add(Att.CONVIS);
+    }
+
+    private PrintStream out;
+    private List<Obj> types;    // Feature types to convert, all if empty
+    private S57map map;
+    private LongTab<Boolean> done;
+    private LongTab<Boolean> pending;    // Connected nodes written after the point features
+    private boolean started;
+
+    public S57xml(PrintStream o, List<Obj> t) {
+        out = o;
+        types = t;
+    }
+
+    public S57map getMap() {    // The map of the last conversion, without the records released by streaming
+        return map;
+    }
+
+    public void convert(File enc) throws IOException {    // Decodes the whole file, then writes it
+        done = new LongTab<>();
+        started = false;
+        pending = null;
+        map = new S57map(true);
+        try (FileInputStream in = new FileInputStream(enc)) {
+            S57dec.decodeChart(in, map);
+        }
+        writeHeader();
+        long[] ids = map.index.keys();
+        for (long id : ids) {
+            writePoint(map.index.get(id));
+        }
+        for (long id : ids) {
+            writeWays(map.index.get(id));
+        }
+        out.println("</osm>\n");
+    }
+
+    public void stream(File enc) throws IOException {    // Writes each feature as soon as it is decoded, see S57stream
+        done = new LongTab<>();
+        started = false;
+        pending = new LongTab<>();
+        S57stream smap = new S57stream(new S57stream.Sink() {
+            @Override
+            public void feature(S57map smap, Feature feature) {
+                if (!started) {
+                    writeHeader();
+                }
+                writePoint(feature);
+                writeWays(feature);
+            }
+
+            @Override
+            public void released(long ref) {
+                done.remove(ref);
+            }
+        });
+        map = smap;
+        try (FileInputStream in = new FileInputStream(enc)) {
+            smap.readReferences(in);
+        }
+        try (FileInputStream in = new FileInputStream(enc)) {
+            S57dec.decodeChart(in, smap);
+        }
+        if (!started) {
+            writeHeader();
+        }
+        long[] refs = pending.keys();
+        pending = null;
+        for (long ref : refs) {
+            writeNode(ref);
+        }
+        out.println("</osm>\n");
+    }
+
+    void writeHeader() {
+        started = true;
+        out.format("<?xml version='1.0' encoding='UTF-8'?>%n");
+        out.format("<osm version='0.6' upload='false' generator='js57toosm'>%n");
+        out.format("<bounds minlat='%.8f' minlon='%.8f' maxlat='%.8f' maxlon='%.8f'/>%n",
+                Math.toDegrees(map.bounds.minlat), Math.toDegrees(map.bounds.minlon),
+                Math.toDegrees(map.bounds.maxlat), Math.toDegrees(map.bounds.maxlon));
+    }
+
+    void writePoint(Feature feature) {
+        String type = S57obj.stringType(feature.type);
+        if (!type.isEmpty() && (types.isEmpty() || types.contains(feature.type))) {
+            if (feature.reln == Rflag.MASTER) {
+                if (feature.geom.prim == Pflag.POINT) {
+                    for (Prim prim : feature.geom.elems) {
+                        long ref = prim.id;
+                        Snode node;
+                        while ((node = map.nodes.get(ref)) != null) {
+                            if (!done.containsKey(ref)) {
+                                out.format("  <node id='%d' lat='%.8f' lon='%.8f' version='1'>%n",
+                                        -ref, Math.toDegrees(node.lat), Math.toDegrees(node.lon));
+                                out.format("    <tag k='seamark:type' v=\"%s\"/>%n", type);
+                                if ((feature.type == Obj.SOUNDG) && (node.flg == S57map.Nflag.DPTH))
+                                    out.format("    <tag k='seamark:sounding:depth' v='%.1f'/>%n", node.val);
+                                writeAtts(feature);
+                                out.format("  </node>%n");
+                                done.put(ref, true);
+                            }
+                            ref++;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    void writeNode(long ref) {
+        if (!done.containsKey(ref)) {
+            Snode node = map.nodes.get(ref);
+            if ((pending != null) && (node.flg == S57map.Nflag.CONN)) {
+                pending.put(ref, true);    // May yet be written as a point feature
+            } else {
+                out.format("  <node id='%d' lat='%.8f' lon='%.8f' version='1'/>%n",
+                        -ref, Math.toDegrees(node.lat), Math.toDegrees(node.lon));
+                done.put(ref, true);
+            }
+        }
+    }
+
+    void writeWays(Feature feature) {
+        String type = S57obj.stringType(feature.type);
+        if (!type.isEmpty() && (types.isEmpty() || types.contains(feature.type))) {
+            if (feature.reln == Rflag.MASTER) {
+                if ((feature.geom.prim == Pflag.LINE) ||
+                   ((feature.geom.prim == Pflag.AREA) && (feature.geom.outers == 1) && (feature.geom.inners == 0))) {
+                    GeomIterator git = map.new GeomIterator(feature.geom);
+                    while (git.hasComp()) {
+                        git.nextComp();
+                        while (git.hasEdge()) {
+                            git.nextEdge();
+                            while (git.hasNode()) {
+                                writeNode(git.nextRef());
+                            }
+                        }
+                    }
+                    git = map.new GeomIterator(feature.geom);
+                    while (git.hasComp()) {
+                        long edge = git.nextComp();
+                        out.format("  <way id='%d' version='1'>%n", -edge);
+                        while (git.hasEdge()) {
+                            git.nextEdge();
+                            while (git.hasNode()) {
+                                long ref = git.nextRef();
+                                out.format("    <nd ref='%d'/>%n", -ref);
+                            }
+                        }
+                        out.format("    <tag k='seamark:type' v='%s'/>%n", type);
+                        writeAtts(feature);
+                        out.format("  </way>%n");
+                    }
+                } else if (feature.geom.prim == Pflag.AREA) {
+                    GeomIterator git = map.new GeomIterator(feature.geom);
+                    while (git.hasComp()) {
+                        git.nextComp();
+                        while (git.hasEdge()) {
+                            git.nextEdge();
+                            while (git.hasNode()) {
+                                writeNode(git.nextRef());
+                            }
+                        }
+                    }
+                    git = map.new GeomIterator(feature.geom);
+                    while (git.hasComp()) {
+                        long ref = git.nextComp();
+                        out.format("  <way id='%d' version='1'>%n", -ref);
+                        while (git.hasEdge()) {
+                            git.nextEdge();
+                            while (git.hasNode()) {
+                                ref = git.nextRef();
+                                out.format("    <nd ref='%d'/>%n", -ref);
+                            }
+                        }
+                        out.format("  </way>%n");
+                    }
+                    out.format("  <relation id='%d' version='1'>%n", -map.xref++);
+                    out.format("    <tag k='type' v='multipolygon'/>%n");
+                    git = map.new GeomIterator(feature.geom);
+                    int outers = feature.geom.outers;
+                    while (git.hasComp()) {
+                        long ref = git.nextComp();
+                        if (outers-- > 0) {
+                            out.format("    <member type='way' ref='%d' role='outer'/>%n", -ref);
+                        } else {
+                            out.format("    <member type='way' ref='%d' role='inner'/>%n", -ref);
+                        }
+                    }
+                    out.format("    <tag k='seamark:type' v='%s'/>%n", type);
+                    writeAtts(feature);
+                    out.format("  </relation>%n");
+                }
+            }
+        }
+    }
+
+    void writeAtts(Feature feature) {
+        for (Map.Entry<Att, AttVal<?>> item : feature.atts.entrySet()) {
+            String attstr = S57att.stringAttribute(item.getKey());
+            String valstr = S57val.stringValue(item.getValue(), item.getKey());
+            if (!attstr.isEmpty() && !valstr.isEmpty()) {
+                if (typatts.contains(item.getKey())) {
+                    out.format("    <tag k='seamark:%s' v='%s'/>%n", attstr, escape(valstr));
+                } else {
+                    out.format("    <tag k='seamark:%s:%s' v='%s'/>%n",
+                            S57obj.stringType(feature.type), attstr, escape(valstr));
+                }
+            }
+        }
+        for (Obj obj : feature.objs.keySet()) {
+            ObjTab tab = feature.objs.get(obj);
+            for (int ix : tab.keySet()) {
+                AttMap atts = tab.get(ix);
+                for (Map.Entry<Att, AttVal<?>> item : atts.entrySet()) {
+                    String attstr = S57att.stringAttribute(item.getKey());
+                    String valstr = S57val.stringValue(item.getValue(), item.getKey());
+                    if (!attstr.isEmpty() && !valstr.isEmpty()) {
+                        if ((ix == 0) && (tab.size() == 1)) {
+                            out.format("    <tag k='seamark:%s:%s' v='%s'/>%n",
+                                    S57obj.stringType(obj), attstr, escape(valstr));
+                        } else {
+                            out.format("    <tag k='seamark:%s:%d:%s' v='%s'/>%n",
+                                    S57obj.stringType(obj), ix + 1, attstr, escape(valstr));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    static String escape(String str) {    // XML 1.0 attribute value, without the characters it cannot hold
+        StringBuilder sb = new StringBuilder(str.length());
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            switch (c) {
+            case '&':
+                sb.append("&amp;");
+                break;
+            case '<':
+                sb.append("&lt;");
+                break;
+            case '>':
+                sb.append("&gt;");
+                break;
+            case '"':
+                sb.append("&quot;");
+                break;
+            case '\'':
+                sb.append("&apos;");
+                break;
+            default:
+                if ((c >= 0x20) || (c == '\t') || (c == '\n') || (c == '\r')) {
+                    if ((c != 0xfffe) && (c != 0xffff)) {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+}
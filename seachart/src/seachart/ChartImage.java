@@ -20,7 +20,6 @@ import org.openstreetmap.josm.gui.NavigatableComponent.ZoomChangeListener;
 import org.openstreetmap.josm.gui.layer.ImageryLayer;
 
 import render.ChartContext;
-import render.Renderer;
 import s57.S57map;
 import s57.S57map.Feature;
 import s57.S57map.GeomIterator;
@@ -41,9 +40,11 @@ public class ChartImage extends ImageryLayer implements ZoomChangeListener, Char
     double width;
     double height;
     int zoom;
+    ChartTiles tiles;
 
     public ChartImage(ImageryInfo info) {
         super(info);
+        tiles = new ChartTiles(this);
         MapView.addZoomChangeListener(this);
         zoomChanged();
     }
@@ -70,7 +71,7 @@ public class ChartImage extends ImageryLayer implements ZoomChangeListener, Char
     @Override
     public void paint(Graphics2D g2, MapView mv, Bounds bb) {
         Rectangle rect = MainApplication.getMap().mapView.getBounds();
-        Renderer.reRender(g2, rect, zoom, Math.pow(2, (zoom-12)), SeachartAction.map, this);
+        tiles.paint(g2, mv, zoom);
         g2.setPaint(Color.black);
         g2.setFont(new Font("Arial", Font.BOLD, 20));
         Rectangle crect = g2.getClipBounds();
@@ -81,6 +82,24 @@ public class ChartImage extends ImageryLayer implements ZoomChangeListener, Char
         }
     }
 
+    public void invalidate(Bounds dirty) {
+        tiles.invalidate(dirty);
+        tileDone();
+    }
+
+    void tileDone() {
+        if ((MainApplication.getMap() != null) && (MainApplication.getMap().mapView != null)) {
+            MainApplication.getMap().mapView.repaint();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        MapView.removeZoomChangeListener(this);
+        tiles.dispose();
+        super.destroy();
+    }
+
     @Override
     public void zoomChanged() {
         if ((MainApplication.getMap() != null) && (MainApplication.getMap().mapView != null)) {
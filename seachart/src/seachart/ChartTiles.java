@@ -0,0 +1,290 @@
+// License: GPL. For details, see LICENSE file.
+package seachart;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.SwingUtilities;
+
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.projection.Projection;
+import org.openstreetmap.josm.gui.MapView;
+import org.openstreetmap.josm.tools.Logging;
+
+import render.ChartContext;
+import render.Renderer;
+import s57.S57map;
+import s57.S57map.Feature;
+import s57.S57map.MapBounds;
+import s57.S57map.Snode;
+
+public class ChartTiles { // Rendered tile cache for the chart layer
+
+    /*
+     * Tiles are square blocks of the map view at one view scale & symbol zoom, aligned on a grid of
+     * east/north coordinates, so that panning re-uses them. They are rendered one at a time on a
+     * background thread. Renderer.reRender() is synchronized, as the Renderer keeps static state, so
+     * other callers on the EDT wait for the tile in hand. An invalidated tile keeps its last image
+     * until the replacement has been rendered.
+     * Each tile is rendered from a view of the map culled to the tile & a margin of one tile for symbols
+     * and labels beyond their features, so a frame costs about one render of the visible features,
+     * whatever the number of tiles.
+     */
+
+    static final int SIZE = 256;    // Tile size in pixels
+    static final int LIMIT = 160;    // Maximum number of cached tiles
+
+    static class TileKey {
+        final double scale;    // East/north units per pixel
+        final int zoom;        // Symbol zoom level
+        final long x;
+        final long y;
+
+        TileKey(double s, int z, long ix, long iy) {
+            scale = s;
+            zoom = z;
+            x = ix;
+            y = iy;
+        }
+
+        double east() {
+            return x * SIZE * scale;
+        }
+
+        double north() {
+            return -y * SIZE * scale;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof TileKey))
+                return false;
+            TileKey key = (TileKey) obj;
+            return (key.scale == scale) && (key.zoom == zoom) && (key.x == x) && (key.y == y);
+        }
+
+        @Override
+        public int hashCode() {
+            long h = Double.doubleToLongBits(scale) * 31 + zoom;
+            h = h * 31 + x;
+            h = h * 31 + y;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    static class Tile {
+        BufferedImage image;    // Last rendered image, null if none yet
+        boolean stale;            // Image does not reflect the current map
+        boolean queued;            // Waiting for or being rendered
+        int version;            // Incremented on each invalidation
+
+        Tile() {
+            image = null;
+            stale = true;
+            queued = false;
+            version = 0;
+        }
+    }
+
+    class TileContext implements ChartContext {
+        TileKey key;
+        Projection proj;
+        double mile;
+        S57map chart;    // The whole map, of which a culled view is rendered
+
+        TileContext(TileKey k, Projection p, double m) {
+            key = k;
+            proj = p;
+            mile = m;
+        }
+
+        @Override
+        public Point2D getPoint(Snode coord) {
+            EastNorth en = proj.latlon2eastNorth(new LatLon(Math.toDegrees(coord.lat), Math.toDegrees(coord.lon)));
+            return new Point2D.Double((en.east() - key.east()) / key.scale, (key.north() - en.north()) / key.scale);
+        }
+
+        @Override
+        public double mile(Feature feature) {
+            return mile;
+        }
+
+        @Override
+        public boolean clip() {
+            return true;
+        }
+
+        @Override
+        public Color background(S57map map) {
+            return layer.background(chart);
+        }
+
+        @Override
+        public RuleSet ruleset() {
+            return layer.ruleset();
+        }
+    }
+
+    private final ChartImage layer;
+    private final LinkedHashMap<TileKey, Tile> tiles;
+    private HashSet<TileKey> visible;
+    private Projection proj;
+    private final ExecutorService worker;
+
+    public ChartTiles(ChartImage l) {
+        layer = l;
+        tiles = new LinkedHashMap<TileKey, Tile>(LIMIT, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<TileKey, Tile> eldest) {
+                return size() > LIMIT;
+            }
+        };
+        visible = new HashSet<>();
+        proj = null;
+        worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "SeaChart renderer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public synchronized void paint(Graphics2D g2, MapView mv, int zoom) {
+        if (mv.getProjection() != proj) {
+            proj = mv.getProjection();
+            tiles.clear();
+        }
+        double scale = mv.getScale();
+        double span = SIZE * scale;
+        Rectangle rect = mv.getBounds();
+        EastNorth tl = mv.getEastNorth(0, 0);
+        EastNorth br = mv.getEastNorth(rect.width, rect.height);
+        long x0 = (long) Math.floor(tl.east() / span);
+        long x1 = (long) Math.floor(br.east() / span);
+        long y0 = (long) Math.floor(-tl.north() / span);
+        long y1 = (long) Math.floor(-br.north() / span);
+        double mile = 185000 / mv.getDist100Pixel();
+        visible = new HashSet<>();
+        for (long y = y0; y <= y1; y++) {
+            for (long x = x0; x <= x1; x++) {
+                TileKey key = new TileKey(scale, zoom, x, y);
+                visible.add(key);
+                Tile tile = tiles.get(key);
+                if (tile == null) {
+                    tile = new Tile();
+                    tiles.put(key, tile);
+                }
+                if (tile.stale && !tile.queued) {
+                    request(key, tile, mile);
+                }
+                if (tile.image != null) {
+                    Point2D pt = mv.getPoint2D(new EastNorth(key.east(), key.north()));
+                    g2.drawImage(tile.image, (int) Math.round(pt.getX()), (int) Math.round(pt.getY()), null);
+                }
+            }
+        }
+    }
+
+    public synchronized void invalidate(Bounds dirty) {
+        if ((dirty == null) || (proj == null)) {
+            for (Tile tile : tiles.values()) {
+                tile.stale = true;
+                tile.version++;
+            }
+            return;
+        }
+        EastNorth min = proj.latlon2eastNorth(dirty.getMin());
+        EastNorth max = proj.latlon2eastNorth(dirty.getMax());
+        for (Map.Entry<TileKey, Tile> entry : tiles.entrySet()) {
+            TileKey key = entry.getKey();
+            double span = SIZE * key.scale;    // Margin of one tile for symbols & labels beyond the feature
+            if ((key.east() + span >= min.east() - span) && (key.east() <= max.east() + span)
+                    && (key.north() >= min.north() - span) && (key.north() - span <= max.north() + span)) {
+                entry.getValue().stale = true;
+                entry.getValue().version++;
+            }
+        }
+    }
+
+    public void dispose() {
+        worker.shutdownNow();
+    }
+
+    private void request(final TileKey key, final Tile tile, final double mile) {
+        tile.queued = true;
+        final TileContext context = new TileContext(key, proj, mile);
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                render(key, tile, context);
+            }
+        });
+    }
+
+    static MapBounds area(TileKey key, Projection proj) {    // Lat/lon bounds of a tile with a margin of one tile
+        double span = SIZE * key.scale;
+        MapBounds area = new MapBounds();
+        for (int i = 0; i <= 2; i++) {
+            for (int j = 0; j <= 2; j++) {
+                LatLon ll = proj.eastNorth2latlon(new EastNorth(key.east() - span + (i * 1.5 * span), key.north() + span - (j * 1.5 * span)));
+                area.minlat = Math.min(area.minlat, Math.toRadians(ll.lat()));
+                area.maxlat = Math.max(area.maxlat, Math.toRadians(ll.lat()));
+                area.minlon = Math.min(area.minlon, Math.toRadians(ll.lon()));
+                area.maxlon = Math.max(area.maxlon, Math.toRadians(ll.lon()));
+            }
+        }
+        return area;
+    }
+
+    private void render(TileKey key, Tile tile, TileContext context) {
+        int version;
+        synchronized (this) {
+            if (!visible.contains(key) || (context.proj != proj)) {
+                tile.queued = false;    // Left the view: dropped, re-requested if it comes back
+                return;
+            }
+            version = tile.version;
+        }
+        BufferedImage img = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = img.createGraphics();
+        try {
+            S57map map = SeachartAction.map;
+            if (map != null) {
+                context.chart = map;
+                Renderer.reRender(g2, new Rectangle(SIZE, SIZE), key.zoom, Math.pow(2, (key.zoom - 12)), map.cull(area(key, context.proj)), context);
+            }
+        } catch (RuntimeException e) {
+            Logging.error(e);
+        } finally {
+            g2.dispose();
+        }
+        synchronized (this) {
+            tile.queued = false;
+            if (tile.version == version) {
+                tile.image = img;
+                tile.stale = false;
+            } else if (tile.image == null) {
+                tile.image = img;
+            }
+        }
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                layer.tileDone();
+            }
+        });
+    }
+}
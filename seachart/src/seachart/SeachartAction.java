@@ -2,6 +2,7 @@
 package seachart;
 
 import java.awt.event.ActionEvent;
+import java.util.Collection;
 import java.util.Map.Entry;
 
 import javax.swing.SwingUtilities;
@@ -11,8 +12,10 @@ import org.openstreetmap.josm.actions.JosmAction;
 import org.openstreetmap.josm.data.Bounds;
 import org.openstreetmap.josm.data.coor.LatLon;
 import org.openstreetmap.josm.data.imagery.ImageryInfo;
+import org.openstreetmap.josm.data.osm.BBox;
 import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
 import org.openstreetmap.josm.data.osm.Relation;
 import org.openstreetmap.josm.data.osm.RelationMember;
@@ -35,6 +38,11 @@ import org.openstreetmap.josm.gui.layer.MainLayerManager.ActiveLayerChangeListen
 import org.openstreetmap.josm.gui.layer.OsmDataLayer;
 
 import s57.S57map;
+import s57.S57map.Edge;
+import s57.S57map.EdgeIterator;
+import s57.S57map.Feature;
+import s57.S57map.Prim;
+import s57.S57map.Snode;
 
 /**
  * @author Malcolm Herring
@@ -43,7 +51,7 @@ public class SeachartAction extends JosmAction implements ActiveLayerChangeListe
     private static String title = "SeaChart";
     private boolean isOpen = false;
     public static ChartImage rendering;
-    public static S57map map = null;
+    public static volatile S57map map = null;
     public DataSet data = null;
 
     private final DataSetListener dataSetListener = new DataSetListener() {
@@ -55,7 +63,7 @@ public class SeachartAction extends JosmAction implements ActiveLayerChangeListe
 
         @Override
         public void nodeMoved(NodeMovedEvent e) {
-            makeChart();
+            makeChart(e.getPrimitives());
         }
 
         @Override
@@ -65,27 +73,27 @@ public class SeachartAction extends JosmAction implements ActiveLayerChangeListe
 
         @Override
         public void primitivesAdded(PrimitivesAddedEvent e) {
-            makeChart();
+            makeChart(e.getPrimitives());
         }
 
         @Override
         public void primitivesRemoved(PrimitivesRemovedEvent e) {
-            makeChart();
+            makeChart(e.getPrimitives());
         }
 
         @Override
         public void relationMembersChanged(RelationMembersChangedEvent e) {
-            makeChart();
+            makeChart(e.getPrimitives());
         }
 
         @Override
         public void tagsChanged(TagsChangedEvent e) {
-            makeChart();
+            makeChart(e.getPrimitives());
         }
 
         @Override
         public void wayNodesChanged(WayNodesChangedEvent e) {
-            makeChart();
+            makeChart(e.getPrimitives());
         }
     };
 
@@ -156,11 +164,17 @@ public class SeachartAction extends JosmAction implements ActiveLayerChangeListe
         } else {
             data = null;
             map = null;
+            if (rendering != null) rendering.invalidate(null);
         }
     }
 
     void makeChart() {
-        map = new S57map(false);
+        makeChart(null);
+    }
+
+    void makeChart(Collection<? extends OsmPrimitive> changed) {
+        Bounds dirty = ((changed != null) && (map != null)) ? changedBounds(changed, map) : null;
+        S57map chart = new S57map(false);
         if (data != null) {
             double minlat = 90;
             double maxlat = -90;
@@ -180,52 +194,130 @@ public class SeachartAction extends JosmAction implements ActiveLayerChangeListe
                     maxlon = bounds.getMaxLon();
                 }
             }
-            map.addNode(1, maxlat, minlon);
-            map.addNode(2, minlat, minlon);
-            map.addNode(3, minlat, maxlon);
-            map.addNode(4, maxlat, maxlon);
-            map.bounds.minlat = Math.toRadians(minlat);
-            map.bounds.maxlat = Math.toRadians(maxlat);
-            map.bounds.minlon = Math.toRadians(minlon);
-            map.bounds.maxlon = Math.toRadians(maxlon);
+            chart.addNode(1, maxlat, minlon);
+            chart.addNode(2, minlat, minlon);
+            chart.addNode(3, minlat, maxlon);
+            chart.addNode(4, maxlat, maxlon);
+            chart.bounds.minlat = Math.toRadians(minlat);
+            chart.bounds.maxlat = Math.toRadians(maxlat);
+            chart.bounds.minlon = Math.toRadians(minlon);
+            chart.bounds.maxlon = Math.toRadians(maxlon);
             for (Node node : data.getNodes()) {
                 LatLon coor = node.getCoor();
                 if (coor != null) {
-                    map.addNode(node.getUniqueId(), coor.lat(), coor.lon());
+                    chart.addNode(node.getUniqueId(), coor.lat(), coor.lon());
                     for (Entry<String, String> entry : node.getKeys().entrySet()) {
-                        map.addTag(entry.getKey(), entry.getValue());
+                        chart.addTag(entry.getKey(), entry.getValue());
                     }
-                    map.tagsDone(node.getUniqueId());
+                    chart.tagsDone(node.getUniqueId());
                 }
             }
             for (Way way : data.getWays()) {
                 if (way.getNodesCount() > 0) {
-                    map.addEdge(way.getUniqueId());
+                    chart.addEdge(way.getUniqueId());
                     for (Node node : way.getNodes()) {
-                        map.addToEdge((node.getUniqueId()));
+                        chart.addToEdge((node.getUniqueId()));
                     }
                     for (Entry<String, String> entry : way.getKeys().entrySet()) {
-                        map.addTag(entry.getKey(), entry.getValue());
+                        chart.addTag(entry.getKey(), entry.getValue());
                     }
-                    map.tagsDone(way.getUniqueId());
+                    chart.tagsDone(way.getUniqueId());
                 }
             }
             for (Relation rel : data.getRelations()) {
                 if (rel.isMultipolygon() && (rel.getMembersCount() > 0)) {
-                    map.addArea(rel.getUniqueId());
+                    chart.addArea(rel.getUniqueId());
                     for (RelationMember mem : rel.getMembers()) {
                         if (mem.getType() == OsmPrimitiveType.WAY)
-                            map.addToArea(mem.getUniqueId(), (mem.getRole().equals("outer")));
+                            chart.addToArea(mem.getUniqueId(), (mem.getRole().equals("outer")));
                     }
                     for (Entry<String, String> entry : rel.getKeys().entrySet()) {
-                        map.addTag(entry.getKey(), entry.getValue());
+                        chart.addTag(entry.getKey(), entry.getValue());
                     }
-                    map.tagsDone(rel.getUniqueId());
+                    chart.tagsDone(rel.getUniqueId());
                 }
             }
-            map.mapDone();
-            if (rendering != null) rendering.zoomChanged();
+            chart.mapDone();
+        }
+        map = chart;
+        if (rendering != null) {
+            rendering.zoomChanged();
+            rendering.invalidate(dirty);
+        }
+    }
+
+    static Bounds changedBounds(Collection<? extends OsmPrimitive> changed, S57map old) {
+        Bounds dirty = null;
+        for (OsmPrimitive prim : changed) {
+            dirty = extend(dirty, prim, old);
+            if (prim instanceof Node) {
+                // A moved node also reshapes its ways, and the areas & labels placed on them
+                for (Way way : ((Node) prim).getParentWays()) {
+                    dirty = extend(dirty, way, old);
+                    for (OsmPrimitive ref : way.getReferrers()) {
+                        if (ref instanceof Relation) {
+                            dirty = extend(dirty, ref, old);
+                        }
+                    }
+                }
+            }
+        }
+        return (dirty != null) ? dirty : new Bounds(0, 0, 0, 0);
+    }
+
+    static Bounds extend(Bounds dirty, OsmPrimitive prim, S57map old) {
+        // Where the primitive is now
+        if (prim instanceof Node) {
+            LatLon coor = ((Node) prim).getCoor();
+            if (coor != null) {
+                dirty = extend(dirty, coor.lat(), coor.lon());
+            }
+        } else {
+            BBox box = prim.getBBox();
+            if ((box != null) && (box.getTopLeft() != null) && (box.getBottomRight() != null)) {
+                dirty = extend(dirty, box.getTopLeft().lat(), box.getTopLeft().lon());
+                dirty = extend(dirty, box.getBottomRight().lat(), box.getBottomRight().lon());
+            }
+        }
+        // Where it was when the current chart was made
+        long id = prim.getUniqueId();
+        if (prim instanceof Node) {
+            Snode node = old.nodes.get(id);
+            if (node != null) {
+                dirty = extend(dirty, Math.toDegrees(node.lat), Math.toDegrees(node.lon));
+            }
+        } else if (prim instanceof Way) {
+            dirty = extend(dirty, old, old.edges.get(id));
+        } else if (prim instanceof Relation) {
+            Feature feature = old.index.get(id);
+            if (feature != null) {
+                for (Prim elem : feature.geom.elems) {
+                    dirty = extend(dirty, old, old.edges.get(elem.id));
+                }
+            }
+        }
+        return dirty;
+    }
+
+    static Bounds extend(Bounds dirty, S57map old, Edge edge) {
+        if (edge != null) {
+            EdgeIterator eit = old.new EdgeIterator(edge, true);
+            while (eit.hasNext()) {
+                Snode node = eit.next();
+                if (node != null) {
+                    dirty = extend(dirty, Math.toDegrees(node.lat), Math.toDegrees(node.lon));
+                }
+            }
+        }
+        return dirty;
+    }
+
+    static Bounds extend(Bounds dirty, double lat, double lon) {
+        if (dirty == null) {
+            return new Bounds(lat, lon, lat, lon);
         }
+        dirty.extend(lat, lon);
+        return dirty;
     }
 
 }
@@ -0,0 +1,128 @@
+// License: GPL. For details, see LICENSE file.
+package s57;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import s57.S57map.LongTab;
+
+/**
+ * Unit test of {@link LongTab}.
+ */
+public class LongTabTest {
+
+    private static void assertSameContent(Map<Long, String> expected, LongTab<String> tab) {
+        assertEquals(expected.size(), tab.size());
+        for (Map.Entry<Long, String> e : expected.entrySet()) {
+            assertEquals(e.getValue(), tab.get(e.getKey()));
+        }
+        long[] keys = tab.keys();
+        Arrays.sort(keys);
+        long[] exp = new long[expected.size()];
+        int n = 0;
+        for (long k : expected.keySet()) {
+            exp[n++] = k;
+        }
+        Arrays.sort(exp);
+        assertTrue(Arrays.equals(exp, keys));
+        Map<Long, String> visited = new HashMap<>();
+        tab.forEach((k, v) -> visited.put(k, v));
+        assertEquals(expected, visited);
+    }
+
+    /**
+     * Checks put, get and remove of single keys.
+     */
+    @Test
+    public void testPutGetRemove() {
+        LongTab<String> tab = new LongTab<>();
+        assertTrue(tab.isEmpty());
+        assertNull(tab.put(-5L, "a"));
+        assertNull(tab.put(0L, "b"));
+        assertNull(tab.put(Long.MAX_VALUE, "c"));
+        assertEquals("a", tab.put(-5L, "A"));
+        assertEquals(3, tab.size());
+        assertEquals("A", tab.get(-5L));
+        assertEquals("b", tab.get(0L));
+        assertEquals("c", tab.get(Long.MAX_VALUE));
+        assertNull(tab.get(1L));
+        assertTrue(tab.containsKey(0L));
+        assertFalse(tab.containsKey(1L));
+
+        assertEquals("b", tab.remove(0L));
+        assertNull(tab.remove(0L));
+        assertFalse(tab.containsKey(0L));
+        // a null value removes the key
+        assertEquals("c", tab.put(Long.MAX_VALUE, null));
+        assertEquals(1, tab.size());
+    }
+
+    /**
+     * Checks that removing a key keeps the keys behind it in the same probe chain reachable.
+     */
+    @Test
+    public void testBackShiftDelete() {
+        // keys which share the home slot of a table of 16 slots
+        LongTab<String> probe = new LongTab<>();
+        Map<Long, String> expected = new HashMap<>();
+        long[] chain = new long[4];
+        int found = 0;
+        int home = slotOf(0, 16);
+        for (long k = 0; found < chain.length; k++) {
+            if (slotOf(k, 16) == home) {
+                chain[found++] = k;
+            }
+        }
+        for (long k : chain) {
+            probe.put(k, "v" + k);
+            expected.put(k, "v" + k);
+        }
+        assertSameContent(expected, probe);
+
+        // remove from the head, the middle and the tail of the chain
+        for (int i : new int[] {0, 2, 3, 1}) {
+            assertEquals("v" + chain[i], probe.remove(chain[i]));
+            expected.remove(chain[i]);
+            assertSameContent(expected, probe);
+        }
+        assertTrue(probe.isEmpty());
+    }
+
+    private static int slotOf(long key, int capacity) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & (capacity - 1);
+    }
+
+    /**
+     * Checks random puts and removes against a {@link HashMap}, across resizes.
+     */
+    @Test
+    public void testResize() {
+        Random random = new Random(42);
+        LongTab<String> tab = new LongTab<>();
+        Map<Long, String> expected = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            long key = random.nextInt(5000) - 2500;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), tab.remove(key));
+            } else {
+                String val = Integer.toString(i);
+                assertEquals(expected.put(key, val), tab.put(key, val));
+            }
+        }
+        assertSameContent(expected, tab);
+        for (long key : tab.keys()) {
+            tab.remove(key);
+        }
+        assertTrue(tab.isEmpty());
+    }
+}
@@ -0,0 +1,110 @@
+// License: GPL. For details, see LICENSE file.
+package s57;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import s57.S57map.MapBounds;
+import s57.S57obj.Obj;
+
+/**
+ * Unit test of {@link S57map} culling.
+ */
+public class S57mapTest {
+
+    private static final String OSM = String.join("\n",
+            "<?xml version='1.0' encoding='UTF-8'?>",
+            "<osm version='0.6'>",
+            "<bounds minlat='50.0' minlon='1.0' maxlat='51.0' maxlon='2.0'/>",
+            "<node id='-1' lat='50.1' lon='1.1' version='1'>",
+            "  <tag k='seamark:type' v='buoy_lateral'/>",
+            "  <tag k='seamark:buoy_lateral:category' v='port'/>",
+            "</node>",
+            "<node id='-2' lat='50.9' lon='1.9' version='1'>",
+            "  <tag k='seamark:type' v='buoy_lateral'/>",
+            "  <tag k='seamark:buoy_lateral:category' v='starboard'/>",
+            "</node>",
+            "<node id='-3' lat='50.4' lon='1.2' version='1'/>",
+            "<node id='-4' lat='50.5' lon='1.5' version='1'/>",
+            "<node id='-5' lat='50.6' lon='1.3' version='1'/>",
+            "<way id='-10' version='1'>",
+            "  <nd ref='-3'/>",
+            "  <nd ref='-4'/>",
+            "  <nd ref='-5'/>",
+            "  <tag k='seamark:type' v='cable_submarine'/>",
+            "</way>",
+            "</osm>");
+
+    private static S57map map() throws Exception {
+        S57map map = new S57map(false);
+        S57osm.OSMmap(new BufferedReader(new StringReader(OSM)), map, false);
+        return map;
+    }
+
+    private static MapBounds area(double minlat, double minlon, double maxlat, double maxlon) {
+        MapBounds area = new MapBounds();
+        area.minlat = Math.toRadians(minlat);
+        area.minlon = Math.toRadians(minlon);
+        area.maxlat = Math.toRadians(maxlat);
+        area.maxlon = Math.toRadians(maxlon);
+        return area;
+    }
+
+    private static int count(S57map map, Obj obj) {
+        return map.features.containsKey(obj) ? map.features.get(obj).size() : 0;
+    }
+
+    /**
+     * Unit test of {@link S57map#extent}: the bounds of the nodes of a line.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testExtent() throws Exception {
+        S57map map = map();
+        MapBounds extent = map.extent(map.features.get(Obj.CBLSUB).get(0));
+        assertEquals(Math.toRadians(50.4), extent.minlat, 1e-9);
+        assertEquals(Math.toRadians(50.6), extent.maxlat, 1e-9);
+        assertEquals(Math.toRadians(1.2), extent.minlon, 1e-9);
+        assertEquals(Math.toRadians(1.5), extent.maxlon, 1e-9);
+    }
+
+    /**
+     * Unit test of {@link S57map#cull}: only the features meeting the area are kept, with the spatial records of the map.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testCull() throws Exception {
+        S57map map = map();
+        assertEquals(2, count(map, Obj.BOYLAT));
+        assertEquals(1, count(map, Obj.CBLSUB));
+
+        S57map view = map.cull(area(50.0, 1.0, 50.2, 1.2));
+        assertEquals(1, count(view, Obj.BOYLAT));
+        assertSame(map.features.get(Obj.BOYLAT).get(0), view.features.get(Obj.BOYLAT).get(0));
+        assertFalse(view.features.containsKey(Obj.CBLSUB));
+        assertSame(map.nodes, view.nodes);
+        assertSame(map.edges, view.edges);
+        assertSame(map.bounds, view.bounds);
+
+        // the line crosses the area without any of its nodes in it
+        view = map.cull(area(50.45, 1.25, 50.55, 1.35));
+        assertEquals(0, count(view, Obj.BOYLAT));
+        assertEquals(1, count(view, Obj.CBLSUB));
+
+        view = map.cull(area(50.8, 1.8, 51.0, 2.0));
+        assertEquals(1, count(view, Obj.BOYLAT));
+        assertSame(map.features.get(Obj.BOYLAT).get(1), view.features.get(Obj.BOYLAT).get(0));
+
+        view = map.cull(map.bounds);
+        assertEquals(2, count(view, Obj.BOYLAT));
+        assertEquals(1, count(view, Obj.CBLSUB));
+        assertTrue(map.cull(area(10, 10, 11, 11)).features.isEmpty());
+    }
+}
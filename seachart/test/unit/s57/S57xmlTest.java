@@ -0,0 +1,184 @@
+// License: GPL. For details, see LICENSE file.
+package s57;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import s57.S57obj.Obj;
+
+/**
+ * Unit test of {@link S57xml}.
+ */
+public class S57xmlTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String OSM = String.join("\n",
+            "<?xml version='1.0' encoding='UTF-8'?>",
+            "<osm version='0.6'>",
+            "<bounds minlat='50.0' minlon='1.0' maxlat='50.1' maxlon='1.1'/>",
+            "<node id='-1' lat='50.01' lon='1.01' version='1'/>",
+            "<node id='-2' lat='50.02' lon='1.02' version='1'/>",
+            "<node id='-3' lat='50.03' lon='1.01' version='1'/>",
+            "<node id='-4' lat='50.04' lon='1.04' version='1'/>",
+            "<node id='-5' lat='50.05' lon='1.05' version='1'/>",
+            "<node id='-6' lat='50.06' lon='1.06' version='1'/>",
+            "<node id='-7' lat='50.07' lon='1.05' version='1'/>",
+            "<node id='-8' lat='50.08' lon='1.08' version='1'>",
+            "  <tag k='seamark:type' v='buoy_lateral'/>",
+            "  <tag k='seamark:buoy_lateral:category' v='port'/>",
+            "  <tag k='seamark:light:colour' v='red'/>",
+            "</node>",
+            // a line with a light as slave, which the encoder writes before its master
+            "<way id='-10' version='1'>",
+            "  <nd ref='-1'/>",
+            "  <nd ref='-2'/>",
+            "  <tag k='seamark:type' v='bridge'/>",
+            "  <tag k='seamark:bridge:category' v='fixed'/>",
+            "  <tag k='seamark:light:colour' v='white'/>",
+            "  <tag k='seamark:light:character' v='F'/>",
+            "</way>",
+            // an area with a topmark as slave
+            "<way id='-11' version='1'>",
+            "  <nd ref='-4'/>",
+            "  <nd ref='-5'/>",
+            "  <nd ref='-6'/>",
+            "  <nd ref='-7'/>",
+            "  <nd ref='-4'/>",
+            "  <tag k='seamark:type' v='anchorage'/>",
+            "  <tag k='seamark:anchorage:category' v='unrestricted'/>",
+            "  <tag k='seamark:daymark:colour' v='yellow'/>",
+            "</way>",
+            // a line without slaves
+            "<way id='-12' version='1'>",
+            "  <nd ref='-2'/>",
+            "  <nd ref='-3'/>",
+            "  <tag k='seamark:type' v='cable_submarine'/>",
+            "</way>",
+            "</osm>");
+
+    private File encode() throws Exception {
+        S57map map = new S57map(false);
+        S57osm.OSMmap(new BufferedReader(new StringReader(OSM)), map, false);
+        HashMap<String, String> meta = new HashMap<>();
+        meta.put("FILE", "TEST.000");
+        byte[] buf = new byte[1 << 20];
+        int len = S57enc.encodeChart(map, meta, buf);
+        File enc = folder.newFile("TEST.000");
+        try (FileOutputStream out = new FileOutputStream(enc)) {
+            out.write(buf, 0, len);
+        }
+        return enc;
+    }
+
+    /**
+     * Splits the OSM output into its elements, in a canonical order.
+     * Way ids are dropped, as they follow the order in which the ways are written.
+     */
+    private static List<String> elements(String osm) throws IOException {
+        List<String> elements = new ArrayList<>();
+        StringBuilder element = null;
+        BufferedReader in = new BufferedReader(new StringReader(osm));
+        for (String line = in.readLine(); line != null; line = in.readLine()) {
+            String tag = line.trim();
+            if (tag.startsWith("<node") || tag.startsWith("<way") || tag.startsWith("<relation")) {
+                element = new StringBuilder();
+            }
+            if (tag.startsWith("<way")) {
+                tag = tag.replaceFirst("id='[-0-9]*' ", "");
+            }
+            if (element != null) {
+                element.append(tag).append('\n');
+                if (tag.endsWith("/>") && (tag.startsWith("<node") || tag.startsWith("<way") || tag.startsWith("<relation"))
+                        || tag.startsWith("</node") || tag.startsWith("</way") || tag.startsWith("</relation")) {
+                    elements.add(element.toString());
+                    element = null;
+                }
+            }
+        }
+        Collections.sort(elements);
+        return elements;
+    }
+
+    private static String convert(S57xml xml, File enc, boolean stream, ByteArrayOutputStream buf) throws IOException {
+        if (stream) {
+            xml.stream(enc);
+        } else {
+            xml.convert(enc);
+        }
+        return new String(buf.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String convert(File enc, boolean stream) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        try (PrintStream out = new PrintStream(buf, true, "UTF-8")) {
+            return convert(new S57xml(out, new ArrayList<Obj>()), enc, stream, buf);
+        }
+    }
+
+    /**
+     * Checks that the streaming conversion gives the same elements as the in-memory conversion,
+     * also for slaves which come before their master in the file.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testStreamSameAsInMemory() throws Exception {
+        File enc = encode();
+
+        List<String> inMemory = elements(convert(enc, false));
+        List<String> streamed = elements(convert(enc, true));
+        assertTrue(String.join("", inMemory).contains("seamark:light:colour"));
+        assertEquals(String.join("", inMemory), String.join("", streamed));
+    }
+
+    /**
+     * Checks that streaming releases the edges of the features written as they are decoded,
+     * and keeps those of the features held to the end of the file.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testStreamReleasesEdges() throws Exception {
+        File enc = encode();
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        S57xml xml = new S57xml(new PrintStream(buf, true, "UTF-8"), new ArrayList<Obj>());
+        convert(xml, enc, false, buf);
+        int edges = xml.getMap().edges.size();
+        int nodes = xml.getMap().nodes.size();
+        assertEquals(4, edges);
+
+        buf.reset();
+        String osm = convert(xml, enc, true, buf);
+        // the cable and the coverage area, with its three inner nodes, are written on the fly,
+        // the bridge and the anchorage have slaves
+        assertEquals(edges - 2, xml.getMap().edges.size());
+        assertEquals(nodes - 3, xml.getMap().nodes.size());
+        assertTrue(osm.contains("cable_submarine"));
+    }
+
+    /**
+     * Unit test of {@link S57xml#escape}.
+     */
+    @Test
+    public void testEscape() {
+        assertEquals("a &amp; b &lt;c&gt; &quot;d&quot; &apos;e&apos;", S57xml.escape("a & b <c> \"d\" 'e'"));
+        assertEquals("tab\tline", S57xml.escape("tab\tline\u0001"));
+    }
+}
@@ -87,8 +87,7 @@ public class PanelS57 extends JPanel {
         DataSet data = new DataSet();
         data.setUploadDiscouraged(true);
 
-        for (long id : map.index.keySet()) {
-            Feature feature = map.index.get(id);
+        map.index.forEach((id, feature) -> {
             String type = S57obj.stringType(feature.type);
             if (!type.isEmpty() && (types.isEmpty() || types.contains(feature.type))) {
                 if (feature.reln == Rflag.MASTER) {
@@ -110,9 +109,8 @@ public class PanelS57 extends JPanel {
                     }
                 }
             }
-        }
-        for (long id : map.index.keySet()) {
-            Feature feature = map.index.get(id);
+        });
+        map.index.forEach((id, feature) -> {
             String type = S57obj.stringType(feature.type);
             if (!type.isEmpty() && (types.isEmpty() || types.contains(feature.type))) {
                 if (feature.reln == Rflag.MASTER) {
@@ -197,7 +195,7 @@ public class PanelS57 extends JPanel {
                     }
                 }
             }
-        }
+        });
 
         OsmDataLayer layer = new OsmDataLayer(data, "S-57 Import", null);
         Main.getLayerManager().addLayer(layer);
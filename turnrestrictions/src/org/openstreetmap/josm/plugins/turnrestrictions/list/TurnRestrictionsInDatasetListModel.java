@@ -1,9 +1,10 @@
 // License: GPL. For details, see LICENSE file.
 package org.openstreetmap.josm.plugins.turnrestrictions.list;
 
-import java.util.Collection;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.swing.DefaultListSelectionModel;
 
@@ -30,7 +31,8 @@ import org.openstreetmap.josm.gui.layer.OsmDataLayer;
  * the current edit layer.</p>
  *
  * <p>The model is a {@link DataSetListener}. It updates itself to reflect the list of turn
- * restrictions in the current data set.</p>
+ * restrictions in the current data set. The events consolidated in a {@link DataChangedEvent}
+ * are applied as one batch.</p>
  *
  */
 public class TurnRestrictionsInDatasetListModel extends TurnRestrictionsListModel implements ActiveLayerChangeListener, DataSetListener {
@@ -41,22 +43,6 @@ public class TurnRestrictionsInDatasetListModel extends TurnRestrictionsListMode
         super(selectionModel);
     }
 
-    /**
-     * Filters the list of turn restrictions from a collection of OSM primitives.
-     *
-     * @param primitives the primitives
-     * @return the list of turn restrictions
-     */
-    protected List<Relation> filterTurnRestrictions(Collection<? extends OsmPrimitive> primitives) {
-        List<Relation> ret = new LinkedList<>();
-        if (primitives == null) return ret;
-        for (OsmPrimitive p: primitives) {
-            if (!isTurnRestriction(p)) continue;
-            ret.add((Relation) p);
-        }
-        return ret;
-    }
-
     /* --------------------------------------------------------------------------- */
     /* interface ActiveLayerChangeListener                                           */
     /* --------------------------------------------------------------------------- */
@@ -67,13 +53,55 @@ public class TurnRestrictionsInDatasetListModel extends TurnRestrictionsListMode
             setTurnRestrictions(null);
             return;
         }
-        List<Relation> turnRestrictions = new LinkedList<>();
-        for (Relation r: newLayer.data.getRelations()) {
-            if (isValid(r) && isTurnRestriction(r)) {
-                turnRestrictions.add(r);
+        setTurnRestrictions(newLayer.data.getRelations());
+    }
+
+    /**
+     * Collects the relations changed by an event.
+     *
+     * @param event the event
+     * @param changes the relations, mapped to true if they have been added or changed,
+     * and to false if they have been removed
+     * @return false, if the event does not tell which primitives have changed
+     */
+    protected boolean collectChanges(AbstractDatasetChangedEvent event, Map<Relation, Boolean> changes) {
+        if (event instanceof DataChangedEvent) {
+            List<AbstractDatasetChangedEvent> events = ((DataChangedEvent) event).getEvents();
+            if (events == null) return false;
+            for (AbstractDatasetChangedEvent e: events) {
+                if (!collectChanges(e, changes)) return false;
+            }
+        } else if (event instanceof PrimitivesAddedEvent || event instanceof PrimitivesRemovedEvent
+                || event instanceof RelationMembersChangedEvent || event instanceof TagsChangedEvent) {
+            // a relation may also stop being a turn restriction, so don't filter by tags here
+            boolean removed = event instanceof PrimitivesRemovedEvent;
+            for (OsmPrimitive p: event.getPrimitives()) {
+                if (p instanceof Relation) {
+                    changes.put((Relation) p, !removed);
+                }
             }
         }
-        setTurnRestrictions(turnRestrictions);
+        return true;
+    }
+
+    /**
+     * Applies a data set event to the model.
+     *
+     * @param event the event
+     */
+    protected void update(AbstractDatasetChangedEvent event) {
+        Map<Relation, Boolean> changes = new LinkedHashMap<>();
+        if (!collectChanges(event, changes)) {
+            OsmDataLayer layer = MainApplication.getLayerManager().getEditLayer();
+            setTurnRestrictions(layer == null ? null : layer.data.getRelations());
+            return;
+        }
+        List<Relation> changed = new ArrayList<>();
+        List<Relation> removed = new ArrayList<>();
+        for (Map.Entry<Relation, Boolean> change: changes.entrySet()) {
+            (change.getValue() ? changed : removed).add(change.getKey());
+        }
+        updateTurnRestrictions(changed, removed);
     }
 
     /* --------------------------------------------------------------------------- */
@@ -81,57 +109,31 @@ public class TurnRestrictionsInDatasetListModel extends TurnRestrictionsListMode
     /* --------------------------------------------------------------------------- */
     @Override
     public void dataChanged(DataChangedEvent event) {
-        OsmDataLayer layer = MainApplication.getLayerManager().getEditLayer();
-        if (layer == null) {
+        if (MainApplication.getLayerManager().getEditLayer() == null) {
             setTurnRestrictions(null);
         } else {
-            List<Relation> turnRestrictions = filterTurnRestrictions(layer.data.getRelations());
-            setTurnRestrictions(turnRestrictions);
+            update(event);
         }
     }
 
     @Override
     public void primitivesAdded(PrimitivesAddedEvent event) {
-        List<Relation> turnRestrictions = filterTurnRestrictions(event.getPrimitives());
-        if (!turnRestrictions.isEmpty()) {
-            addTurnRestrictions(turnRestrictions);
-        }
+        update(event);
     }
 
     @Override
     public void primitivesRemoved(PrimitivesRemovedEvent event) {
-        List<Relation> turnRestrictions = filterTurnRestrictions(event.getPrimitives());
-        if (!turnRestrictions.isEmpty()) {
-            removeTurnRestrictions(turnRestrictions);
-        }
+        update(event);
     }
 
     @Override
     public void relationMembersChanged(RelationMembersChangedEvent event) {
-        List<Relation> turnRestrictions = filterTurnRestrictions(event.getPrimitives());
-        if (!turnRestrictions.isEmpty()) {
-            List<Relation> sel = getSelectedTurnRestrictions();
-            for (Relation tr: turnRestrictions) {
-                // enforce a repaint of the respective turn restriction
-                int idx = getTurnRestrictionIndex(tr);
-                fireContentsChanged(this, idx, idx);
-            }
-            setSelectedTurnRestrictions(sel);
-        }
+        update(event);
     }
 
     @Override
     public void tagsChanged(TagsChangedEvent event) {
-        List<Relation> turnRestrictions = filterTurnRestrictions(event.getPrimitives());
-        if (!turnRestrictions.isEmpty()) {
-            List<Relation> sel = getSelectedTurnRestrictions();
-            for (Relation tr: turnRestrictions) {
-                // enforce a repaint of the respective turn restriction
-                int idx = getTurnRestrictionIndex(tr);
-                fireContentsChanged(this, idx, idx);
-            }
-            setSelectedTurnRestrictions(sel);
-        }
+        update(event);
     }
 
     @Override
@@ -32,7 +32,7 @@ public class TurnRestrictionsInDatasetView extends AbstractTurnRestrictionsListV
 
     protected void registerAsListener() {
         MainApplication.getLayerManager().addActiveLayerChangeListener((ActiveLayerChangeListener) model);
-        DatasetEventManager.getInstance().addDatasetListener((DataSetListener) model, FireMode.IN_EDT);
+        DatasetEventManager.getInstance().addDatasetListener((DataSetListener) model, FireMode.IN_EDT_CONSOLIDATED);
         if (MainApplication.getLayerManager().getEditLayer() != null) {
             model.setTurnRestrictions(MainApplication.getLayerManager().getEditLayer().data.getRelations());
         }
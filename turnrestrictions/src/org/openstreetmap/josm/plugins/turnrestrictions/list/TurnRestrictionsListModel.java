@@ -2,29 +2,59 @@
 package org.openstreetmap.josm.plugins.turnrestrictions.list;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.swing.AbstractListModel;
 import javax.swing.DefaultListSelectionModel;
 
 import org.openstreetmap.josm.data.osm.DefaultNameFormatter;
-import org.openstreetmap.josm.data.osm.NameFormatter;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.Relation;
 
 /**
  * This is a list model for a list of turn restrictions.
  *
+ * <p>The turn restrictions are kept sorted by display name in an array, together with
+ * the index of each turn restriction. Changes are applied in place and reported with
+ * ranged list events, so that large lists are not sorted or searched again on each change.</p>
+ *
  */
 public class TurnRestrictionsListModel extends AbstractListModel<Relation> {
-    private final ArrayList<Relation> turnrestrictions = new ArrayList<>();
+    /** If a change gives more ranges than this, it is reported as a change of the whole list. */
+    static final int MAX_RANGES = 32;
+
+    private final ArrayList<Item> turnrestrictions = new ArrayList<>();
+    private final Map<Relation, Integer> indexes = new HashMap<>();
     private DefaultListSelectionModel selectionModel;
 
+    /**
+     * A turn restriction with its display name, which is the sort key.
+     */
+    private static final class Item implements Comparable<Item> {
+        private final Relation relation;
+        private final String name;
+
+        Item(Relation relation) {
+            this.relation = relation;
+            this.name = relation.getDisplayName(DefaultNameFormatter.getInstance());
+        }
+
+        @Override
+        public int compareTo(Item other) {
+            int c = name.compareTo(other.name);
+            if (c != 0) return c;
+            // turn restrictions with the same name always have the same order
+            return Long.compare(relation.getUniqueId(), other.relation.getUniqueId());
+        }
+    }
+
     /**
      * Creates the model
      *
@@ -41,24 +71,19 @@ public class TurnRestrictionsListModel extends AbstractListModel<Relation> {
      * @return the turn restriction at position {@code idx} in the list.
      */
     public Relation getTurnRestriction(int idx) {
-        return turnrestrictions.get(idx);
+        return turnrestrictions.get(idx).relation;
     }
 
     /**
      * Sorts the turn restrictions in this model
      */
     public void sort() {
-        Collections.sort(
-                turnrestrictions,
-                new Comparator<Relation>() {
-                    NameFormatter formatter = DefaultNameFormatter.getInstance();
-
-                    @Override
-                    public int compare(Relation r1, Relation r2) {
-                        return r1.getDisplayName(formatter).compareTo(r2.getDisplayName(formatter));
-                    }
-                }
-        );
+        // display names may have changed without notice
+        for (int i = 0; i < turnrestrictions.size(); i++) {
+            turnrestrictions.set(i, new Item(turnrestrictions.get(i).relation));
+        }
+        Collections.sort(turnrestrictions);
+        reindex(0);
     }
 
     protected boolean isValid(Relation r) {
@@ -88,19 +113,27 @@ public class TurnRestrictionsListModel extends AbstractListModel<Relation> {
      */
     public void setTurnRestrictions(Collection<Relation> turnrestrictions) {
         List<Relation> sel = getSelectedTurnRestrictions();
+        int oldSize = getSize();
         this.turnrestrictions.clear();
+        indexes.clear();
+        if (oldSize > 0) {
+            fireIntervalRemoved(this, 0, oldSize - 1);
+        }
         if (turnrestrictions == null) {
             selectionModel.clearSelection();
-            fireContentsChanged(this, 0, getSize());
             return;
         }
         for (Relation r: turnrestrictions) {
-            if (isValid(r) && isTurnRestriction(r)) {
-                this.turnrestrictions.add(r);
+            if (isValid(r) && isTurnRestriction(r) && !indexes.containsKey(r)) {
+                indexes.put(r, -1);
+                this.turnrestrictions.add(new Item(r));
             }
         }
-        sort();
-        fireIntervalAdded(this, 0, getSize());
+        Collections.sort(this.turnrestrictions);
+        reindex(0);
+        if (getSize() > 0) {
+            fireIntervalAdded(this, 0, getSize() - 1);
+        }
         setSelectedTurnRestrictions(sel);
     }
 
@@ -112,7 +145,8 @@ public class TurnRestrictionsListModel extends AbstractListModel<Relation> {
      * ways, and relations.
      */
     public void addTurnRestrictions(Collection<? extends OsmPrimitive> addedPrimitives) {
-        boolean added = false;
+        List<Item> added = new ArrayList<>();
+        Set<Relation> seen = new LinkedHashSet<>();
         for (OsmPrimitive p: addedPrimitives) {
             if (!isTurnRestriction(p)) {
                 continue;
@@ -120,16 +154,14 @@ public class TurnRestrictionsListModel extends AbstractListModel<Relation> {
 
             Relation r = (Relation) p;
             if (!isValid(r)) continue;
-            if (turnrestrictions.contains(r)) {
+            if (indexes.containsKey(r) || !seen.add(r)) {
                 continue;
             }
-            turnrestrictions.add(r);
-            added = true;
+            added.add(new Item(r));
         }
-        if (added) {
+        if (!added.isEmpty()) {
             List<Relation> sel = getSelectedTurnRestrictions();
-            sort();
-            fireIntervalAdded(this, 0, getSize());
+            insert(added);
             setSelectedTurnRestrictions(sel);
         }
     }
@@ -142,25 +174,226 @@ public class TurnRestrictionsListModel extends AbstractListModel<Relation> {
      */
     public void removeTurnRestrictions(Collection<? extends OsmPrimitive> removedPrimitives) {
         if (removedPrimitives == null) return;
-        Set<Relation> removedTurnRestrictions = new HashSet<>();
+        Set<Relation> removedTurnRestrictions = new LinkedHashSet<>();
         for (OsmPrimitive p: removedPrimitives) {
-            if (!isTurnRestriction(p)) continue;
-            removedTurnRestrictions.add((Relation) p);
+            if (indexes.containsKey(p)) {
+                removedTurnRestrictions.add((Relation) p);
+            }
         }
         if (removedTurnRestrictions.isEmpty()) return;
-        int size = turnrestrictions.size();
-        turnrestrictions.removeAll(removedTurnRestrictions);
-        if (size != turnrestrictions.size()) {
+        List<Relation> sel = getSelectedTurnRestrictions();
+        remove(removedTurnRestrictions);
+        setSelectedTurnRestrictions(sel);
+    }
+
+    /**
+     * Updates the model after a batch of changes. Removed turn restrictions are removed
+     * from the model. Changed relations are added, removed, moved or repainted, depending
+     * on whether they are turn restrictions now and on their display name.
+     *
+     * @param changedPrimitives the added or changed primitives. May include nodes, ways,
+     *   and relations
+     * @param removedPrimitives the removed primitives. May include nodes, ways,
+     *   and relations
+     */
+    public void updateTurnRestrictions(Collection<? extends OsmPrimitive> changedPrimitives,
+            Collection<? extends OsmPrimitive> removedPrimitives) {
+        Set<Relation> removed = new LinkedHashSet<>();
+        Set<Relation> changed = new LinkedHashSet<>();
+        if (removedPrimitives != null) {
+            for (OsmPrimitive p: removedPrimitives) {
+                if (indexes.containsKey(p)) {
+                    removed.add((Relation) p);
+                }
+            }
+        }
+        if (changedPrimitives != null) {
+            for (OsmPrimitive p: changedPrimitives) {
+                if (p instanceof Relation && !removed.contains(p)) {
+                    changed.add((Relation) p);
+                }
+            }
+        }
+
+        List<Item> added = new ArrayList<>();
+        List<Relation> repainted = new ArrayList<>();
+        for (Relation r: changed) {
+            Integer idx = indexes.get(r);
+            boolean keep = isValid(r) && isTurnRestriction(r);
+            if (idx == null) {
+                if (keep) {
+                    added.add(new Item(r));
+                }
+            } else if (!keep) {
+                removed.add(r);
+            } else {
+                Item item = new Item(r);
+                if (item.name.equals(turnrestrictions.get(idx).name)) {
+                    repainted.add(r);
+                } else {
+                    // the turn restriction moves to the position of its new name
+                    removed.add(r);
+                    added.add(item);
+                }
+            }
+        }
+
+        if (!removed.isEmpty() || !added.isEmpty()) {
             List<Relation> sel = getSelectedTurnRestrictions();
-            sort();
-            fireContentsChanged(this, 0, getSize());
+            remove(removed);
+            insert(added);
             setSelectedTurnRestrictions(sel);
         }
+        if (!repainted.isEmpty()) {
+            // enforce a repaint of the respective turn restrictions
+            int[] idx = new int[repainted.size()];
+            for (int i = 0; i < idx.length; i++) {
+                idx[i] = indexes.get(repainted.get(i));
+            }
+            fireRanges(toRanges(idx), RangeType.CHANGED);
+        }
+    }
+
+    /**
+     * Inserts turn restrictions at their position in the sorted list.
+     *
+     * @param added the turn restrictions, which are not in the model yet
+     */
+    private void insert(List<Item> added) {
+        if (added.isEmpty()) return;
+        Collections.sort(added);
+        int[] idx = new int[added.size()];
+        if (added.size() == 1) {
+            idx[0] = -Collections.binarySearch(turnrestrictions, added.get(0)) - 1;
+            turnrestrictions.add(idx[0], added.get(0));
+        } else {
+            // merge the sorted lists
+            ArrayList<Item> merged = new ArrayList<>(turnrestrictions.size() + added.size());
+            int i = 0;
+            int j = 0;
+            while (j < added.size()) {
+                if (i < turnrestrictions.size() && turnrestrictions.get(i).compareTo(added.get(j)) < 0) {
+                    merged.add(turnrestrictions.get(i++));
+                } else {
+                    idx[j] = merged.size();
+                    merged.add(added.get(j++));
+                }
+            }
+            merged.addAll(turnrestrictions.subList(i, turnrestrictions.size()));
+            turnrestrictions.clear();
+            turnrestrictions.addAll(merged);
+        }
+        reindex(idx[0]);
+        fireRanges(toRanges(idx), RangeType.ADDED);
+    }
+
+    /**
+     * Removes turn restrictions from the list.
+     *
+     * @param removed the turn restrictions, which are in the model
+     */
+    private void remove(Collection<Relation> removed) {
+        if (removed.isEmpty()) return;
+        int[] idx = new int[removed.size()];
+        int n = 0;
+        for (Relation r: removed) {
+            idx[n++] = indexes.remove(r);
+        }
+        Arrays.sort(idx);
+
+        // compact the list in one pass
+        int to = idx[0];
+        int k = 0;
+        for (int from = idx[0]; from < turnrestrictions.size(); from++) {
+            if (k < idx.length && idx[k] == from) {
+                k++;
+            } else {
+                turnrestrictions.set(to++, turnrestrictions.get(from));
+            }
+        }
+        turnrestrictions.subList(to, turnrestrictions.size()).clear();
+        reindex(idx[0]);
+        fireRanges(toRanges(idx), RangeType.REMOVED);
+    }
+
+    private void reindex(int from) {
+        for (int i = from; i < turnrestrictions.size(); i++) {
+            indexes.put(turnrestrictions.get(i).relation, i);
+        }
+    }
+
+    private enum RangeType { ADDED, REMOVED, CHANGED }
+
+    /**
+     * Groups indexes into ranges of consecutive indexes.
+     *
+     * @param idx the indexes, in any order
+     * @return the ranges as pairs of first and last index, in ascending order
+     */
+    private static List<int[]> toRanges(int[] idx) {
+        Arrays.sort(idx);
+        List<int[]> ranges = new ArrayList<>();
+        for (int i: idx) {
+            int[] last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+            if (last != null && last[1] + 1 == i) {
+                last[1] = i;
+            } else {
+                ranges.add(new int[] {i, i});
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * Fires the list events for ranges of indexes. The list is already changed. Added
+     * ranges are fired in ascending, removed ranges in descending order, so that the
+     * indexes of each event are valid when the previous events have been applied.
+     *
+     * @param ranges the ranges of the final indexes of added, or the former indexes of removed elements
+     * @param type the kind of change
+     */
+    private void fireRanges(List<int[]> ranges, RangeType type) {
+        if (ranges.size() > MAX_RANGES) {
+            // too many small changes, report a change of the whole list
+            int count = 0;
+            for (int[] range: ranges) {
+                count += range[1] - range[0] + 1;
+            }
+            switch (type) {
+            case ADDED:
+                if (getSize() > count) fireIntervalRemoved(this, 0, getSize() - count - 1);
+                fireIntervalAdded(this, 0, getSize() - 1);
+                break;
+            case REMOVED:
+                fireIntervalRemoved(this, 0, getSize() + count - 1);
+                if (getSize() > 0) fireIntervalAdded(this, 0, getSize() - 1);
+                break;
+            default:
+                fireContentsChanged(this, ranges.get(0)[0], ranges.get(ranges.size() - 1)[1]);
+            }
+            return;
+        }
+        switch (type) {
+        case ADDED:
+            for (int[] range: ranges) {
+                fireIntervalAdded(this, range[0], range[1]);
+            }
+            break;
+        case REMOVED:
+            for (int i = ranges.size() - 1; i >= 0; i--) {
+                fireIntervalRemoved(this, ranges.get(i)[0], ranges.get(i)[1]);
+            }
+            break;
+        default:
+            for (int[] range: ranges) {
+                fireContentsChanged(this, range[0], range[1]);
+            }
+        }
     }
 
     @Override
     public Relation getElementAt(int index) {
-        return turnrestrictions.get(index);
+        return turnrestrictions.get(index).relation;
     }
 
     @Override
@@ -176,14 +409,11 @@ public class TurnRestrictionsListModel extends AbstractListModel<Relation> {
      */
     public List<Relation> getSelectedNonNewRelations() {
         ArrayList<Relation> ret = new ArrayList<>();
-        for (int i = 0; i < getSize(); i++) {
-            if (!selectionModel.isSelectedIndex(i)) {
+        for (Relation r: getSelectedTurnRestrictions()) {
+            if (r.isNew()) {
                 continue;
             }
-            if (turnrestrictions.get(i).isNew()) {
-                continue;
-            }
-            ret.add(turnrestrictions.get(i));
+            ret.add(r);
         }
         return ret;
     }
@@ -196,11 +426,15 @@ public class TurnRestrictionsListModel extends AbstractListModel<Relation> {
      */
     public List<Relation> getSelectedTurnRestrictions() {
         ArrayList<Relation> ret = new ArrayList<>();
-        for (int i = 0; i < getSize(); i++) {
+        if (selectionModel.isSelectionEmpty()) {
+            return ret;
+        }
+        int max = Math.min(selectionModel.getMaxSelectionIndex(), getSize() - 1);
+        for (int i = selectionModel.getMinSelectionIndex(); i <= max; i++) {
             if (!selectionModel.isSelectedIndex(i)) {
                 continue;
             }
-            ret.add(turnrestrictions.get(i));
+            ret.add(turnrestrictions.get(i).relation);
         }
         return ret;
     }
@@ -215,7 +449,7 @@ public class TurnRestrictionsListModel extends AbstractListModel<Relation> {
         if (sel == null || sel.isEmpty())
             return;
         for (Relation r: sel) {
-            int i = turnrestrictions.indexOf(r);
+            int i = getTurnRestrictionIndex(r);
             if (i < 0) {
                 continue;
             }
@@ -229,8 +463,8 @@ public class TurnRestrictionsListModel extends AbstractListModel<Relation> {
      * @return index of relation (-1, if not found)
      */
     public int getTurnRestrictionIndex(Relation tr) {
-        int i = turnrestrictions.indexOf(tr);
-        if (i < 0) return -1;
+        Integer i = indexes.get(tr);
+        if (i == null) return -1;
         return i;
     }
 }
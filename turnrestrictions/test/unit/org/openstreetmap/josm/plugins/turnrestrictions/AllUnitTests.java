@@ -4,10 +4,12 @@ package org.openstreetmap.josm.plugins.turnrestrictions;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.openstreetmap.josm.plugins.turnrestrictions.editor.AllEditorTests;
+import org.openstreetmap.josm.plugins.turnrestrictions.list.TurnRestrictionsInDatasetListModelTest;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
     AllEditorTests.class,
-    TurnRestrictionBuilderTest.class
+    TurnRestrictionBuilderTest.class,
+    TurnRestrictionsInDatasetListModelTest.class
 })
 public class AllUnitTests {}
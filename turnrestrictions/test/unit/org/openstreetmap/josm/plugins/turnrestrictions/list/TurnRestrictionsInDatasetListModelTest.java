@@ -0,0 +1,243 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.turnrestrictions.list;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import javax.swing.DefaultListSelectionModel;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataSetListenerAdapter;
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+/**
+ * Unit test of {@link TurnRestrictionsInDatasetListModel}
+ */
+public class TurnRestrictionsInDatasetListModelTest {
+
+    @Rule
+    public JOSMTestRules rules = new JOSMTestRules().preferences();
+
+    private static final String[] RESTRICTIONS = {"no_left_turn", "no_right_turn", "no_u_turn", "only_straight_on"};
+
+    private final Random random = new Random(42);
+    private final List<AbstractDatasetChangedEvent> events = new ArrayList<>();
+    private final List<Relation> mirror = new ArrayList<>();
+    private int notifications;
+    private DataSet ds;
+    private OsmDataLayer layer;
+    private DefaultListSelectionModel selectionModel;
+    private TurnRestrictionsInDatasetListModel model;
+
+    /**
+     * Replays the list events of the model on a copy of its list.
+     */
+    private class Mirror implements ListDataListener {
+        @Override
+        public void intervalAdded(ListDataEvent e) {
+            notifications++;
+            for (int i = e.getIndex0(); i <= e.getIndex1(); i++) {
+                mirror.add(i, model.getElementAt(i));
+            }
+        }
+
+        @Override
+        public void intervalRemoved(ListDataEvent e) {
+            notifications++;
+            mirror.subList(e.getIndex0(), e.getIndex1() + 1).clear();
+        }
+
+        @Override
+        public void contentsChanged(ListDataEvent e) {
+            notifications++;
+            for (int i = e.getIndex0(); i <= e.getIndex1(); i++) {
+                mirror.set(i, model.getElementAt(i));
+            }
+        }
+    }
+
+    @Before
+    public void setUp() {
+        ds = new DataSet();
+        layer = new OsmDataLayer(ds, "test", null);
+        MainApplication.getLayerManager().addLayer(layer);
+        ds.addDataSetListener(new DataSetListenerAdapter(events::add));
+        selectionModel = new DefaultListSelectionModel();
+        model = new TurnRestrictionsInDatasetListModel(selectionModel);
+        model.addListDataListener(new Mirror());
+    }
+
+    @After
+    public void tearDown() {
+        MainApplication.getLayerManager().removeLayer(layer);
+    }
+
+    private <T> T pick(List<T> list) {
+        return list.isEmpty() ? null : list.get(random.nextInt(list.size()));
+    }
+
+    private Relation addTurnRestriction() {
+        Relation r = new Relation();
+        r.put("type", "restriction");
+        r.put("restriction", RESTRICTIONS[random.nextInt(RESTRICTIONS.length)]);
+        ds.addPrimitive(r);
+        return r;
+    }
+
+    /**
+     * Makes a random change of the data set, like a command would do.
+     */
+    private void randomEdit() {
+        Relation r = pick(new ArrayList<>(ds.getRelations()));
+        if (r == null || random.nextInt(6) == 0) {
+            addTurnRestriction();
+            return;
+        }
+        switch (random.nextInt(7)) {
+        case 0: // moves in the list
+            r.put("restriction", RESTRICTIONS[random.nextInt(RESTRICTIONS.length)]);
+            break;
+        case 1: // stays in place
+            r.put("note", Integer.toString(random.nextInt(100)));
+            break;
+        case 2: // no longer, or again, a turn restriction
+            r.put("type", random.nextBoolean() ? "restriction" : "multipolygon");
+            break;
+        case 3:
+            Node n = new Node(new LatLon(random.nextDouble(), random.nextDouble()));
+            ds.addPrimitive(n);
+            r.addMember(new RelationMember("via", n));
+            break;
+        case 4:
+            if (r.getMembersCount() > 0) {
+                r.removeMember(0);
+            }
+            break;
+        case 5:
+            r.setDeleted(!r.isDeleted());
+            break;
+        default:
+            ds.removePrimitive(r);
+        }
+    }
+
+    private void applyEvents(boolean batch) {
+        if (batch) {
+            // one batch, as consolidated by the data set event manager
+            model.dataChanged(new DataChangedEvent(ds, new ArrayList<>(events)));
+        } else {
+            for (AbstractDatasetChangedEvent event : events) {
+                event.fire(model);
+            }
+        }
+        events.clear();
+    }
+
+    private static List<Relation> elements(TurnRestrictionsListModel model) {
+        List<Relation> ret = new ArrayList<>();
+        for (int i = 0; i < model.getSize(); i++) {
+            ret.add(model.getElementAt(i));
+        }
+        return ret;
+    }
+
+    /**
+     * Checks that updates give the same list as populating the model again, fire consistent
+     * list events, and keep the selection.
+     */
+    @Test
+    public void testSameAsSetTurnRestrictions() {
+        for (int i = 0; i < 50; i++) {
+            addTurnRestriction();
+        }
+        model.setTurnRestrictions(ds.getRelations());
+        events.clear();
+
+        for (int step = 0; step < 500; step++) {
+            List<Relation> selected = new ArrayList<>();
+            for (int i = 0; i < model.getSize(); i++) {
+                if (random.nextInt(10) == 0) {
+                    selected.add(model.getElementAt(i));
+                }
+            }
+            model.setSelectedTurnRestrictions(selected);
+
+            ds.beginUpdate();
+            try {
+                for (int j = random.nextInt(5); j >= 0; j--) {
+                    randomEdit();
+                }
+            } finally {
+                ds.endUpdate();
+            }
+            applyEvents(random.nextBoolean());
+
+            TurnRestrictionsListModel reference = new TurnRestrictionsListModel(new DefaultListSelectionModel());
+            reference.setTurnRestrictions(ds.getRelations());
+            List<Relation> expected = elements(reference);
+            assertEquals("after edit " + step, expected, elements(model));
+            assertEquals("after edit " + step, expected, mirror);
+            for (int i = 0; i < model.getSize(); i++) {
+                assertEquals(i, model.getTurnRestrictionIndex(model.getElementAt(i)));
+            }
+            selected.retainAll(expected);
+            assertEquals(new HashSet<>(selected), new HashSet<>(model.getSelectedTurnRestrictions()));
+        }
+    }
+
+    /**
+     * Checks that a batch of changes fires a bounded number of list events.
+     */
+    @Test
+    public void testNotifications() {
+        model.setTurnRestrictions(ds.getRelations());
+        ds.beginUpdate();
+        try {
+            for (int i = 0; i < 1000; i++) {
+                addTurnRestriction();
+            }
+        } finally {
+            ds.endUpdate();
+        }
+        notifications = 0;
+        applyEvents(true);
+        assertEquals(1000, model.getSize());
+        assertTrue(notifications <= 2);
+
+        // tags of other primitives
+        Node n = new Node(new LatLon(1, 1));
+        ds.addPrimitive(n);
+        n.put("highway", "traffic_signals");
+        notifications = 0;
+        applyEvents(true);
+        assertEquals(0, notifications);
+
+        // a few changed turn restrictions
+        Relation r = model.getElementAt(500);
+        r.put("note", "checked");
+        notifications = 0;
+        applyEvents(true);
+        assertEquals(1, notifications);
+        assertEquals(500, model.getTurnRestrictionIndex(r));
+        assertEquals(elements(model), mirror);
+    }
+}
@@ -10,6 +10,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.swing.JOptionPane;
 
@@ -22,8 +24,6 @@ import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.Relation;
 import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.gui.Notification;
-import org.openstreetmap.josm.tools.Geometry;
-import org.openstreetmap.josm.tools.Pair;
 
 /**
  * Class with some useful functions that are reused in extend selection actions
@@ -34,6 +34,7 @@ public final class NodeWayUtils {
     static final int maxLevel = Main.pref.getInt("selection.maxrecursion", 15);
     static final int maxWays = Main.pref.getInt("selection.maxfoundways", 2000);
     static final int maxWays1 = Main.pref.getInt("selection.maxfoundways.intersection", 500);
+    static final int minParallelNodes = Main.pref.getInt("selection.inside.minparallelnodes", 10000);
 
     private NodeWayUtils() {
         // Hide default constructor for utilities classes
@@ -97,57 +98,6 @@ public final class NodeWayUtils {
         return ways.size() - s;
     }
 
-    /**
-     * Adds all ways intersecting one way to specified set
-     * @param ways collection of ways to search
-     * @param w way to check intersections
-     * @param newWays set to place the ways we found
-     */
-    static int addWaysIntersectingWay(Collection<Way> ways, Way w, Set<Way> newWays, Set<Way> excludeWays) {
-        List<Pair<Node, Node>> nodePairs = w.getNodePairs(false);
-        int count = 0;
-        for (Way anyway: ways) {
-            if (Objects.equals(anyway, w)) continue;
-            if (newWays.contains(anyway) || excludeWays.contains(anyway)) continue;
-
-            List<Pair<Node, Node>> nodePairs2 = anyway.getNodePairs(false);
-            loop: for (Pair<Node, Node> p1 : nodePairs) {
-                for (Pair<Node, Node> p2 : nodePairs2) {
-                    if (null != Geometry.getSegmentSegmentIntersection(
-                            p1.a.getEastNorth(), p1.b.getEastNorth(),
-                            p2.a.getEastNorth(), p2.b.getEastNorth())) {
-                        newWays.add(anyway);
-                        count++;
-                        break loop;
-                    }
-                }
-            }
-        }
-        return count;
-    }
-
-    static int addWaysIntersectingWay(Collection<Way> ways, Way w, Set<Way> newWays) {
-        List<Pair<Node, Node>> nodePairs = w.getNodePairs(false);
-        int count = 0;
-        for (Way anyway: ways) {
-            if (Objects.equals(anyway, w)) continue;
-            if (newWays.contains(anyway)) continue;
-            List<Pair<Node, Node>> nodePairs2 = anyway.getNodePairs(false);
-            loop: for (Pair<Node, Node> p1 : nodePairs) {
-                for (Pair<Node, Node> p2 : nodePairs2) {
-                    if (null != Geometry.getSegmentSegmentIntersection(
-                            p1.a.getEastNorth(), p1.b.getEastNorth(),
-                            p2.a.getEastNorth(), p2.b.getEastNorth())) {
-                        newWays.add(anyway);
-                        count++;
-                        break loop;
-                    }
-                }
-            }
-        }
-        return count;
-    }
-
     /**
      * Adds all ways from allWays intersecting initWays way to specified set newWays
      * @param allWays collection of ways to search
@@ -155,9 +105,11 @@ public final class NodeWayUtils {
      * @param newWays set to place the ways we found
      */
     public static int addWaysIntersectingWays(Collection<Way> allWays, Collection<Way> initWays, Set<Way> newWays) {
+        if (initWays.isEmpty()) return 0;
+        WaySegmentIndex index = new WaySegmentIndex(allWays);
         int count = 0;
         for (Way w : initWays) {
-            count += addWaysIntersectingWay(allWays, w, newWays);
+            count += index.addWaysIntersectingWay(w, newWays);
         }
         return count;
     }
@@ -184,7 +136,14 @@ public final class NodeWayUtils {
         return newNodes.size()-s;
     }
 
+    /**
+     * Adds all ways from allWays intersecting initWays way, or intersecting the ways found so far, to specified set newWays
+     * @param allWays collection of ways to search
+     * @param initWays ways to check intersections
+     * @param newWays set to place the ways we found
+     */
     public static void addWaysIntersectingWaysRecursively(Collection<Way> allWays, Collection<Way> initWays, Set<Way> newWays) {
+        WaySegmentIndex index = new WaySegmentIndex(allWays);
         Set<Way> foundWays = new HashSet<>();
         foundWays.addAll(initWays);
         newWays.addAll(initWays);
@@ -195,7 +154,7 @@ public final class NodeWayUtils {
             c = 0;
             newFoundWays = new HashSet<>();
             for (Way w : foundWays) {
-                c += addWaysIntersectingWay(allWays, w, newFoundWays, newWays);
+                c += index.addWaysIntersectingWay(w, newFoundWays, newWays);
             }
             foundWays = newFoundWays;
             newWays.addAll(newFoundWays);
@@ -348,21 +307,26 @@ public final class NodeWayUtils {
         return isPointInsidePolygon(p, buildPointList(usedWays));
     }
 
+    /**
+     * Finds the nodes inside the polygon, testing large collections in parallel chunks.
+     * @param nodes nodes to test
+     * @param polygon the polygon
+     * @return nodes inside the polygon or near its boundary
+     */
+    static Set<Node> getNodesInside(List<Node> nodes, PreparedPolygon polygon) {
+        Stream<Node> stream = nodes.size() >= minParallelNodes ? nodes.parallelStream() : nodes.stream();
+        return stream.filter(n -> polygon.contains(n.getEastNorth())).collect(Collectors.toCollection(HashSet::new));
+    }
+
     static void addAllInsideMultipolygon(DataSet data, Relation rel, Set<Way> newWays, Set<Node> newNodes) {
         if (!rel.isMultipolygon()) return;
         BBox box = rel.getBBox();
         Collection<Way> usedWays = rel.getMemberPrimitives(Way.class);
-        List<EastNorth> polyPoints = buildPointList(usedWays);
+        PreparedPolygon polygon = new PreparedPolygon(buildPointList(usedWays));
 
         List<Node> searchNodes = data.searchNodes(box);
-        Set<Node> newestNodes = new HashSet<>();
+        Set<Node> newestNodes = getNodesInside(searchNodes, polygon);
         Set<Way> newestWays = new HashSet<>();
-        for (Node n : searchNodes) {
-            //if (Geometry.nodeInsidePolygon(n, polyNodes)) {
-            if (NodeWayUtils.isPointInsidePolygon(n.getEastNorth(), polyPoints)) {
-                newestNodes.add(n);
-            }
-        }
 
         List<Way> searchWays = data.searchWays(box);
         for (Way w : searchWays) {
@@ -382,17 +346,11 @@ public final class NodeWayUtils {
     static void addAllInsideWay(DataSet data, Way way, Set<Way> newWays, Set<Node> newNodes) {
         if (!way.isClosed()) return;
         BBox box = way.getBBox();
-        Iterable<EastNorth> polyPoints = getWayPoints(way);
+        PreparedPolygon polygon = new PreparedPolygon(getWayPoints(way));
 
         List<Node> searchNodes = data.searchNodes(box);
-        Set<Node> newestNodes = new HashSet<>();
+        Set<Node> newestNodes = getNodesInside(searchNodes, polygon);
         Set<Way> newestWays = new HashSet<>();
-        for (Node n : searchNodes) {
-            //if (Geometry.nodeInsidePolygon(n, polyNodes)) {
-            if (NodeWayUtils.isPointInsidePolygon(n.getEastNorth(), polyPoints)) {
-                newestNodes.add(n);
-            }
-        }
 
         List<Way> searchWays = data.searchWays(box);
         for (Way w : searchWays) {
@@ -0,0 +1,154 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.utilsplugin2.selection;
+
+import java.util.Arrays;
+
+import org.openstreetmap.josm.data.coor.EastNorth;
+
+/**
+ * Polygon prepared for many point-in-polygon tests, giving the same results as
+ * {@link NodeWayUtils#isPointInsidePolygon(EastNorth, Iterable)}.
+ * The edges of all rings are sorted into horizontal bands, so that a test only looks at the edges
+ * of the band containing the point. Holes of multipolygons need no special handling: the test counts
+ * crossings of all rings. Instances are immutable and may be used by several threads.
+ */
+public final class PreparedPolygon {
+
+    // same tolerance as NodeWayUtils.getRayIntersectionsCount()
+    private static final double EPSILON = 1e-5;
+
+    // start and end point of each edge
+    private final double[] e1;
+    private final double[] n1;
+    private final double[] e2;
+    private final double[] n2;
+
+    private final double maxEast;
+    private final double minNorth;
+    private final double maxNorth;
+
+    private final double bandHeight;
+    // edges of band i are bandEdges[bandStart[i]] to bandEdges[bandStart[i+1]-1]
+    private final int[] bandStart;
+    private final int[] bandEdges;
+
+    /**
+     * Prepares a polygon.
+     * @param polygonPoints points forming the boundary, {@code null} to split unconnected rings or ways
+     */
+    public PreparedPolygon(Iterable<EastNorth> polygonPoints) {
+        int count = 0;
+        double[] coords = new double[64];
+        double maxE = Double.NEGATIVE_INFINITY;
+        double minN = Double.POSITIVE_INFINITY, maxN = Double.NEGATIVE_INFINITY;
+        EastNorth oldPoint = null;
+        for (EastNorth curPoint : polygonPoints) {
+            if (oldPoint != null && curPoint != null) {
+                if (4 * count + 4 > coords.length) {
+                    coords = Arrays.copyOf(coords, 2 * coords.length);
+                }
+                coords[4 * count] = oldPoint.east();
+                coords[4 * count + 1] = oldPoint.north();
+                coords[4 * count + 2] = curPoint.east();
+                coords[4 * count + 3] = curPoint.north();
+                count++;
+                maxE = Math.max(maxE, Math.max(oldPoint.east(), curPoint.east()));
+                minN = Math.min(minN, Math.min(oldPoint.north(), curPoint.north()));
+                maxN = Math.max(maxN, Math.max(oldPoint.north(), curPoint.north()));
+            }
+            oldPoint = curPoint;
+        }
+        e1 = new double[count];
+        n1 = new double[count];
+        e2 = new double[count];
+        n2 = new double[count];
+        for (int i = 0; i < count; i++) {
+            e1[i] = coords[4 * i];
+            n1[i] = coords[4 * i + 1];
+            e2[i] = coords[4 * i + 2];
+            n2[i] = coords[4 * i + 3];
+        }
+        maxEast = maxE + EPSILON;
+        minNorth = minN - EPSILON;
+        maxNorth = maxN + EPSILON;
+
+        int bands = Math.max(1, count);
+        bandHeight = count > 0 && maxNorth > minNorth ? (maxNorth - minNorth) / bands : 1;
+        bandStart = new int[bands + 1];
+        for (int i = 0; i < count; i++) {
+            for (int b = firstBand(i); b <= lastBand(i); b++) {
+                bandStart[b + 1]++;
+            }
+        }
+        for (int b = 0; b < bands; b++) {
+            bandStart[b + 1] += bandStart[b];
+        }
+        bandEdges = new int[bandStart[bands]];
+        int[] next = Arrays.copyOf(bandStart, bands);
+        for (int i = 0; i < count; i++) {
+            for (int b = firstBand(i); b <= lastBand(i); b++) {
+                bandEdges[next[b]++] = i;
+            }
+        }
+    }
+
+    private int band(double north) {
+        int b = (int) ((north - minNorth) / bandHeight);
+        return Math.max(0, Math.min(bandStart.length - 2, b));
+    }
+
+    // an edge is in all bands where it may be crossed by the ray, or where one of its ends may be close to the point
+    private int firstBand(int edge) {
+        return band(Math.min(n1[edge], n2[edge]) - EPSILON);
+    }
+
+    private int lastBand(int edge) {
+        return band(Math.max(n1[edge], n2[edge]) + EPSILON);
+    }
+
+    /**
+     * Determines if the point is inside the polygon, or near its boundary.
+     * @param point the point
+     * @return {@code true} if the point is inside the polygon or near its boundary
+     */
+    public boolean contains(EastNorth point) {
+        if (point == null) return false;
+        double e3 = point.east();
+        double n3 = point.north();
+        // the ray goes to the east: points west of the polygon are tested, as its rings may not be closed
+        if (e3 > maxEast || n3 < minNorth || n3 > maxNorth) return false;
+        int band = band(n3);
+        int interCount = 0;
+        for (int k = bandStart[band]; k < bandStart[band + 1]; k++) {
+            int i = bandEdges[k];
+            // the edge goes from oldPoint (e1, n1) to curPoint (e2, n2), see NodeWayUtils.getRayIntersectionsCount()
+            double cn = n2[i], ce = e2[i], on = n1[i], oe = e1[i];
+
+            if (Math.abs(cn-n3) < EPSILON && Math.abs(ce-e3) < EPSILON) return true; // vertex
+            if (Math.abs(on-n3) < EPSILON && Math.abs(oe-e3) < EPSILON) return true; // vertex
+
+            if (cn > on) {
+                if (cn > n3 && n3 >= on) {
+                    double d = (ce-e3)*(on-n3) - (cn-n3)*(oe-e3);
+                    if (d < -EPSILON) {
+                        interCount++;
+                    } else if (d <= EPSILON) return true; // boundary detected
+                }
+            } else if (cn == on) {
+                if (cn == n3) {
+                    double c = ce - e3;
+                    double o = oe - e3;
+                    if ((c <= 0 && o >= 0) || (c >= 0 && o <= 0)) return true; // boundary detected
+                }
+            } else {
+                if (cn <= n3 && n3 < on) {
+                    double d = (ce-e3)*(on-n3) - (cn-n3)*(oe-e3);
+                    if (d > EPSILON) {
+                        interCount++;
+                    } else if (d >= -EPSILON) return true; // boundary detected
+                }
+            }
+        }
+        return interCount % 2 == 1;
+    }
+}
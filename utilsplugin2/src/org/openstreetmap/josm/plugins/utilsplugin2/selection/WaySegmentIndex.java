@@ -0,0 +1,197 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.utilsplugin2.selection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.tools.Geometry;
+
+/**
+ * Regular grid over the segments of a collection of ways, to find the ways intersecting a given way
+ * without testing all segments of all ways.
+ * Built once for a search, then queried for each way whose intersections are needed.
+ */
+final class WaySegmentIndex {
+
+    // segments covering more cells than this are not put in the grid, but tested for every query
+    private static final int MAX_CELLS_PER_SEGMENT = 64;
+
+    private final List<Way> ways = new ArrayList<>();
+    private int[] segmentWays = new int[1024];
+    // start and end point of each segment
+    private EastNorth[] points = new EastNorth[2048];
+    private int size;
+
+    private final double cellSize;
+    private final Map<Long, Cell> cells = new HashMap<>();
+    private final Cell oversized = new Cell();
+
+    // last query segment, to test each indexed segment only once against it
+    private int[] visited;
+    private int query;
+
+    private static final class Cell {
+        int[] segments = new int[4];
+        int size;
+
+        void add(int segment) {
+            if (size == segments.length) {
+                segments = Arrays.copyOf(segments, 2 * size);
+            }
+            segments[size++] = segment;
+        }
+    }
+
+    /**
+     * Indexes the segments of the given ways.
+     * @param allWays ways to index
+     */
+    WaySegmentIndex(Collection<Way> allWays) {
+        double extent = 0;
+        for (Way w : allWays) {
+            int wayIndex = ways.size();
+            ways.add(w);
+            EastNorth previous = null;
+            for (Node n : w.getNodes()) {
+                EastNorth en = n.getEastNorth();
+                if (previous != null && en != null) {
+                    addSegment(wayIndex, previous, en);
+                    extent += Math.max(Math.abs(en.east() - previous.east()), Math.abs(en.north() - previous.north()));
+                }
+                previous = en;
+            }
+        }
+        // cells of twice the mean segment size: most segments are in one to four cells
+        cellSize = size > 0 && extent > 0 ? 2 * extent / size : 1;
+        for (int i = 0; i < size; i++) {
+            addToGrid(i);
+        }
+        visited = new int[size];
+    }
+
+    private void addSegment(int wayIndex, EastNorth a, EastNorth b) {
+        if (size == segmentWays.length) {
+            segmentWays = Arrays.copyOf(segmentWays, 2 * size);
+            points = Arrays.copyOf(points, 4 * size);
+        }
+        segmentWays[size] = wayIndex;
+        points[2 * size] = a;
+        points[2 * size + 1] = b;
+        size++;
+    }
+
+    private long cell(double coord) {
+        return (long) Math.floor(coord / cellSize);
+    }
+
+    private static long key(long x, long y) {
+        return (x << 32) ^ (y & 0xffffffffL);
+    }
+
+    private void addToGrid(int segment) {
+        EastNorth a = points[2 * segment];
+        EastNorth b = points[2 * segment + 1];
+        long minX = cell(Math.min(a.east(), b.east()));
+        long maxX = cell(Math.max(a.east(), b.east()));
+        long minY = cell(Math.min(a.north(), b.north()));
+        long maxY = cell(Math.max(a.north(), b.north()));
+        if ((maxX - minX + 1) * (maxY - minY + 1) > MAX_CELLS_PER_SEGMENT) {
+            oversized.add(segment);
+            return;
+        }
+        for (long x = minX; x <= maxX; x++) {
+            for (long y = minY; y <= maxY; y++) {
+                cells.computeIfAbsent(key(x, y), k -> new Cell()).add(segment);
+            }
+        }
+    }
+
+    /**
+     * Adds all indexed ways intersecting one way to specified set
+     * @param w way to check intersections
+     * @param newWays set to place the ways we found
+     * @param excludeWays ways that must not be added
+     * @return the number of ways added
+     */
+    int addWaysIntersectingWay(Way w, Set<Way> newWays, Set<Way> excludeWays) {
+        int count = 0;
+        EastNorth previous = null;
+        for (Node n : w.getNodes()) {
+            EastNorth en = n.getEastNorth();
+            if (previous != null && en != null) {
+                query++;
+                count += addWaysIntersectingSegment(w, previous, en, oversized, newWays, excludeWays);
+                long minX = cell(Math.min(previous.east(), en.east()));
+                long maxX = cell(Math.max(previous.east(), en.east()));
+                long minY = cell(Math.min(previous.north(), en.north()));
+                long maxY = cell(Math.max(previous.north(), en.north()));
+                if ((maxX - minX + 1) * (maxY - minY + 1) > MAX_CELLS_PER_SEGMENT) {
+                    // long segment: cheaper to test the cells that exist than to visit all covered cells
+                    for (Map.Entry<Long, Cell> e : cells.entrySet()) {
+                        long x = e.getKey() >> 32;
+                        long y = (int) e.getKey().longValue();
+                        if (x >= minX && x <= maxX && y >= minY && y <= maxY) {
+                            count += addWaysIntersectingSegment(w, previous, en, e.getValue(), newWays, excludeWays);
+                        }
+                    }
+                } else {
+                    for (long x = minX; x <= maxX; x++) {
+                        for (long y = minY; y <= maxY; y++) {
+                            Cell cell = cells.get(key(x, y));
+                            if (cell != null) {
+                                count += addWaysIntersectingSegment(w, previous, en, cell, newWays, excludeWays);
+                            }
+                        }
+                    }
+                }
+            }
+            previous = en;
+        }
+        return count;
+    }
+
+    /**
+     * Adds all indexed ways intersecting one way to specified set
+     * @param w way to check intersections
+     * @param newWays set to place the ways we found
+     * @return the number of ways added
+     */
+    int addWaysIntersectingWay(Way w, Set<Way> newWays) {
+        return addWaysIntersectingWay(w, newWays, Collections.<Way>emptySet());
+    }
+
+    private int addWaysIntersectingSegment(Way w, EastNorth a, EastNorth b, Cell cell,
+            Set<Way> newWays, Set<Way> excludeWays) {
+        int count = 0;
+        double minX = Math.min(a.east(), b.east());
+        double maxX = Math.max(a.east(), b.east());
+        double minY = Math.min(a.north(), b.north());
+        double maxY = Math.max(a.north(), b.north());
+        for (int i = 0; i < cell.size; i++) {
+            int segment = cell.segments[i];
+            if (visited[segment] == query) continue;
+            visited[segment] = query;
+            Way anyway = ways.get(segmentWays[segment]);
+            if (Objects.equals(anyway, w) || newWays.contains(anyway) || excludeWays.contains(anyway)) continue;
+            EastNorth c = points[2 * segment];
+            EastNorth d = points[2 * segment + 1];
+            if (Math.max(c.east(), d.east()) < minX || Math.min(c.east(), d.east()) > maxX
+                    || Math.max(c.north(), d.north()) < minY || Math.min(c.north(), d.north()) > maxY) continue;
+            if (null != Geometry.getSegmentSegmentIntersection(a, b, c, d)) {
+                newWays.add(anyway);
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,122 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.utilsplugin2.selection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+/**
+ * Unit test of {@link NodeWayUtils}.
+ */
+public class NodeWayUtilsTest {
+
+    /**
+     * Setup test.
+     */
+    @Rule
+    public JOSMTestRules rules = new JOSMTestRules().preferences().projection();
+
+    private static final double STEP = 0.001;
+
+    /**
+     * Creates a road grid of n horizontal and n vertical ways of n segments, each horizontal way crossing
+     * all vertical ways, and a copy of it far away.
+     */
+    private static List<Way> createGrid(int n) {
+        List<Way> ways = new ArrayList<>();
+        for (double offset : new double[] {0, 1}) {
+            for (int j = 0; j < n; j++) {
+                Way h = new Way();
+                Way v = new Way();
+                for (int i = 0; i <= n; i++) {
+                    h.addNode(new Node(new LatLon(offset + (j + 0.5) * STEP, offset + i * STEP)));
+                    v.addNode(new Node(new LatLon(offset + i * STEP, offset + (j + 0.5) * STEP)));
+                }
+                ways.add(h);
+                ways.add(v);
+            }
+        }
+        return ways;
+    }
+
+    /**
+     * Unit test of {@link NodeWayUtils#addWaysIntersectingWays}.
+     */
+    @Test
+    public void testAddWaysIntersectingWays() {
+        List<Way> ways = createGrid(10);
+        Set<Way> found = new HashSet<>();
+        assertEquals(10, NodeWayUtils.addWaysIntersectingWays(ways, Collections.singleton(ways.get(0)), found));
+        // the vertical ways of the first grid
+        Set<Way> expected = new HashSet<>();
+        for (int j = 0; j < 10; j++) {
+            expected.add(ways.get(2 * j + 1));
+        }
+        assertEquals(expected, found);
+
+        // a way crossing the whole grid with a single segment
+        Way diagonal = new Way();
+        diagonal.addNode(new Node(new LatLon(-STEP, -STEP)));
+        diagonal.addNode(new Node(new LatLon(11 * STEP, 11 * STEP)));
+        ways.add(diagonal);
+        found.clear();
+        assertEquals(20, NodeWayUtils.addWaysIntersectingWays(ways, Collections.singleton(diagonal), found));
+        found.clear();
+        assertEquals(11, NodeWayUtils.addWaysIntersectingWays(ways, Collections.singleton(ways.get(1)), found));
+        assertTrue(found.contains(diagonal));
+    }
+
+    /**
+     * Unit test of {@link NodeWayUtils#addWaysIntersectingWaysRecursively}: the whole grid is found, not its copy.
+     */
+    @Test
+    public void testAddWaysIntersectingWaysRecursively() {
+        List<Way> ways = createGrid(10);
+        Set<Way> found = new HashSet<>();
+        NodeWayUtils.addWaysIntersectingWaysRecursively(ways, Collections.singleton(ways.get(0)), found);
+        assertEquals(new HashSet<>(ways.subList(0, 20)), found);
+
+        found.clear();
+        NodeWayUtils.addWaysIntersectingWaysRecursively(ways, Collections.singleton(ways.get(21)), found);
+        assertEquals(new HashSet<>(ways.subList(20, 40)), found);
+    }
+
+    /**
+     * Unit test of {@link PreparedPolygon#contains}, against {@link NodeWayUtils#isPointInsidePolygon}.
+     */
+    @Test
+    public void testPreparedPolygon() {
+        // square with a square hole, rings separated by null
+        List<EastNorth> points = Arrays.asList(
+                new EastNorth(0, 0), new EastNorth(10, 0), new EastNorth(10, 10), new EastNorth(0, 10), new EastNorth(0, 0), null,
+                new EastNorth(4, 4), new EastNorth(6, 4), new EastNorth(6, 6), new EastNorth(4, 6), new EastNorth(4, 4), null);
+        PreparedPolygon polygon = new PreparedPolygon(points);
+        assertTrue(polygon.contains(new EastNorth(2, 2)));
+        assertFalse(polygon.contains(new EastNorth(5, 5)));
+        assertTrue(polygon.contains(new EastNorth(10, 5)));
+        assertTrue(polygon.contains(new EastNorth(6, 6)));
+        assertFalse(polygon.contains(new EastNorth(11, 5)));
+        assertFalse(polygon.contains(null));
+        for (double e = -1.5; e <= 11.5; e += 0.5) {
+            for (double n = -1.5; n <= 11.5; n += 0.5) {
+                EastNorth p = new EastNorth(e, n);
+                assertEquals(p.toString(), NodeWayUtils.isPointInsidePolygon(p, points), polygon.contains(p));
+            }
+        }
+    }
+}